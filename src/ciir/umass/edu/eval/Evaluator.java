@@ -16,8 +16,11 @@ import ciir.umass.edu.learning.boosting.RankBoost;
 import ciir.umass.edu.learning.neuralnet.ListNet;
 import ciir.umass.edu.learning.neuralnet.Neuron;
 import ciir.umass.edu.learning.neuralnet.RankNet;
+import ciir.umass.edu.learning.tree.EnsembleScorerFactory;
 import ciir.umass.edu.learning.tree.LambdaMART;
 import ciir.umass.edu.learning.tree.RFRanker;
+import ciir.umass.edu.learning.tree.RegressionTree;
+import ciir.umass.edu.learning.tree.ThresholdBuilder;
 import ciir.umass.edu.metric.ERRScorer;
 import ciir.umass.edu.metric.METRIC;
 import ciir.umass.edu.metric.MetricScorer;
@@ -132,6 +135,8 @@ public class Evaluator {
 			System.out.println("\t[ -tvs <x \\in [0..1]> ]\tIf you don't have separate validation data, use this to set train-validation split to be (x)(1.0-x)");
 
 			System.out.println("\t[ -save <model> ]\tSave the model learned (default=not-save)");
+			System.out.println("\t[ -binary ]\t\tSave the model in binary, which is smaller and much faster to load (MART, LambdaMART and");
+			System.out.println("\t\t\t\t  Random Forests only: other models are saved as text). -load reads both formats.");
 			
 			System.out.println("");
 			System.out.println("\t[ -test <file> ]\tSpecify if you want to evaluate the trained model on this data (default=unspecified)");
@@ -147,6 +152,10 @@ public class Evaluator {
 			//System.out.println("");
 			//System.out.println("\t[ -sparse ]\t\tUse sparse representation for all feature vectors (default=dense)");
 			
+			System.out.println("");
+			System.out.println("\t[ -cache <dir> ]\tCache parsed data files in this directory, so that they load much faster next time (default=no-cache)");
+			System.out.println("\t[ -cache_size <MB> ]\tSize budget of the cache. Least recently used files are evicted beyond it (default=" + (DatasetCache.maxSize >> 20) + ")");
+			
 			System.out.println("");
 			System.out.println("\t[ -kcv <k> ]\t\tSpecify if you want to perform k-fold cross validation using the specified training data (default=NoCV)");
 			System.out.println("\t\t\t\t-tvs can be used to further reserve a portion of the training data in each fold for validation");
@@ -192,10 +201,17 @@ public class Evaluator {
 			System.out.println("\t[ -shrinkage <factor> ]\tShrinkage, or learning rate (default=" + LambdaMART.learningRate + ")");
 			System.out.println("\t[ -tc <k> ]\t\tNumber of threshold candidates for tree spliting. -1 to use all feature values (default=" + 
                                            LambdaMART.nThreshold + ")");
+			System.out.println("\t[ -tcmode <mode> ]\tHow to pick the candidates of features with more than k values: equal (evenly spaced) or quantile (same number of docs between candidates) (default=equal)");
 			System.out.println("\t[ -mls <n> ]\t\tMin leaf support -- minimum % of docs each leaf has to contain (default=" +
                                            LambdaMART.minLeafSupport + ")");
+			System.out.println("\t[ -tree_growth <g> ]\tHow trees grow: bestfirst (split the leaf with the largest deviance first) or depthwise (one level at a time) (default=" + LambdaMART.treeGrowth + ")");
+			System.out.println("\t[ -max_depth <d> ]\tMax depth of the trees. -1 for no limit (default=" + LambdaMART.maxDepth + ")");
 			System.out.println("\t[ -estop <e> ]\t\tStop early when no improvement is observed on validaton data in e consecutive rounds (default=" + 
                                            LambdaMART.nRoundToStopEarly + ")");
+			System.out.println("\t[ -checkpoint <file> ]\tSave the training state to this file every few trees, to resume training from later on");
+			System.out.println("\t[ -checkpoint_every <n> ]\tNumber of trees between two checkpoints (default=" + LambdaMART.checkpointEvery + ")");
+			System.out.println("\t[ -resume <file> ]\tResume training from this checkpoint (same data and parameters as the checkpointed run)");
+			System.out.println("\t[ -init_model <file> ]\tContinue boosting from this LambdaMART/MART model (-tree is then the number of trees to add)");
 
 			System.out.println("");
 			System.out.println("    [-] ListNet-specific parameters");
@@ -214,7 +230,10 @@ public class Evaluator {
 			System.out.println("\t[ -shrinkage <factor> ]\tShrinkage, or learning rate (default=" + RFRanker.learningRate + ")");
 			System.out.println("\t[ -tc <k> ]\t\tNumber of threshold candidates for tree spliting. -1 to use all feature values (default=" +
                                            RFRanker.nThreshold + ")");
+			System.out.println("\t[ -tcmode <mode> ]\tHow to pick the candidates of features with more than k values: equal or quantile (default=equal)");
 			System.out.println("\t[ -mls <n> ]\t\tMin leaf support -- minimum % of docs each leaf has to contain (default=" + RFRanker.minLeafSupport + ")");
+			System.out.println("\t[ -tree_growth <g> ]\tHow trees grow: bestfirst or depthwise (default=" + LambdaMART.treeGrowth + ")");
+			System.out.println("\t[ -max_depth <d> ]\tMax depth of the trees. -1 for no limit (default=" + LambdaMART.maxDepth + ")");
 
 			System.out.println("");
 			System.out.println("    [-] Linear Regression-specific parameters");
@@ -233,6 +252,11 @@ public class Evaluator {
 			System.out.println("\t[ -qrel <file> ]\tTREC-style relevance judgment file. It only affects MAP and NDCG (default=unspecified)");
 			System.out.println("\t[ -idv <file> ]\t\tSave model performance (in test metric) on individual ranked lists (has to be used with -test)");
 			System.out.println("\t[ -norm ]\t\tNormalize feature vectors (similar to -norm for training/tuning)");
+			System.out.println("\t[ -cache <dir> ]\tCache parsed test data (similar to -cache for training/tuning)");
+			System.out.println("\t[ -codegen ]\t\tCompile tree ensembles (MART, LambdaMART, Random Forests) into Java code for scoring");
+			System.out.println("\t\t\t\t  (needs a JDK: without a Java compiler, trees are scored as usual)");
+			System.out.println("\t[ -codegen_cache <dir> ]\tWhere to keep compiled ensembles, so that later runs don't compile them again");
+			System.out.println("\t\t\t\t  (default=" + EnsembleScorerFactory.codeGenCacheDir + ")");
 			//System.out.println("\t[ -sparse ]\t\tUse sparse representation for all feature vectors (default=dense)");
 
 			System.out.println("");
@@ -285,8 +309,14 @@ public class Evaluator {
 			}
 			else if (args[i].equalsIgnoreCase ("-sparse"))
 				useSparseRepresentation = true;
+			else if (args[i].equalsIgnoreCase ("-cache"))
+				DatasetCache.cacheDir = args[++i];
+			else if (args[i].equalsIgnoreCase ("-cache_size"))
+				DatasetCache.maxSize = Long.parseLong(args[++i]) << 20;
 			else if (args[i].equalsIgnoreCase ("-save"))
 				Evaluator.modelFile = args[++i];
+			else if (args[i].equalsIgnoreCase ("-binary"))
+				Ranker.binaryModels = true;
 			else if (args[i].equalsIgnoreCase ("-kcvmd"))
 				kcvModelDir = args[++i];
 			else if (args[i].equalsIgnoreCase ("-kcvmn"))
@@ -304,7 +334,11 @@ public class Evaluator {
 			else if (args[i].equalsIgnoreCase ("-rank"))
 				rankFile = args[++i];
 			else if (args[i].equalsIgnoreCase ("-score"))
-				scoreFile = args[++i];			
+				scoreFile = args[++i];
+			else if (args[i].equalsIgnoreCase ("-codegen"))
+				EnsembleScorerFactory.useCodeGen = true;
+			else if (args[i].equalsIgnoreCase ("-codegen_cache"))
+				EnsembleScorerFactory.codeGenCacheDir = args[++i];			
 
 			//Ranker-specific parameters
 			//RankNet
@@ -375,13 +409,27 @@ public class Evaluator {
 				LambdaMART.learningRate = Float.parseFloat(args[++i]);
 				RFRanker.learningRate = Float.parseFloat(args[i]);
 			}
+			else if (args[i].equalsIgnoreCase ("-tcmode"))
+				LambdaMART.thresholdMode = ThresholdBuilder.getMode(args[++i]);
 			else if (args[i].equalsIgnoreCase ("-mls"))
 			{
 				LambdaMART.minLeafSupport = Integer.parseInt(args[++i]);
 				RFRanker.minLeafSupport = LambdaMART.minLeafSupport;
 			}
+			else if (args[i].equalsIgnoreCase ("-tree_growth"))
+				LambdaMART.treeGrowth = RegressionTree.getGrowth(args[++i]);
+			else if (args[i].equalsIgnoreCase ("-max_depth"))
+				LambdaMART.maxDepth = Integer.parseInt(args[++i]);
 			else if (args[i].equalsIgnoreCase ("-estop"))
 				LambdaMART.nRoundToStopEarly = Integer.parseInt(args[++i]);
+			else if (args[i].equalsIgnoreCase ("-checkpoint"))
+				LambdaMART.checkpointFile = args[++i];
+			else if (args[i].equalsIgnoreCase ("-checkpoint_every"))
+				LambdaMART.checkpointEvery = Integer.parseInt(args[++i]);
+			else if (args[i].equalsIgnoreCase ("-resume"))
+				LambdaMART.resumeFrom = args[++i];
+			else if (args[i].equalsIgnoreCase ("-init_model"))
+				LambdaMART.initModel = args[++i];
 			//for debugging
 			else if (args[i].equalsIgnoreCase ("-gcc"))
 				LambdaMART.gcCycle = Integer.parseInt(args[++i]);
@@ -681,6 +729,31 @@ public class Evaluator {
 	}
 
 
+	/**
+	 * Read the samples of @inputFile, keeping only the specified features (all of them if @features is null, or if the
+	 * selected ranker needs them all anyway).
+	 * @param inputFile
+	 * @param features
+	 * @return
+	 */
+	public List<RankList> readInput(String inputFile, int[] features)
+	{
+		return datasetBuilder(features).load(inputFile).getRankLists();
+	}
+
+
+	/**
+	 * @param features Features to load (see readInput(String, int[]))
+	 * @return A builder that loads datasets the way this evaluator is set up to.
+	 */
+	public DatasetBuilder datasetBuilder(int[] features)
+	{
+		if(features != null && !rFact.createRanker(type).usesSelectedFeaturesOnly())
+			features = null;
+		return new DatasetBuilder().setMustHaveRelDoc(mustHaveRelDoc).setSparse(useSparseRepresentation).setFeatures(features);
+	}
+
+
 	public void normalize(List<RankList> samples)
 	{
 		for (RankList sample : samples) nml.normalize(sample);
@@ -726,21 +799,14 @@ public class Evaluator {
 	 */
 	public void evaluate(String trainFile, String validationFile, String testFile, String featureDefFile)
 	{
-		List<RankList> train = readInput(trainFile);//read input
-		
-		List<RankList> validation = null;
-		//if(validationFile.compareTo("")!=0)
-                if (!validationFile.isEmpty())
-			validation = readInput(validationFile);
+		int[] features = readFeature(featureDefFile);//read features: only these are loaded
+		Dataset[] data = datasetBuilder(features).loadAll(trainFile, validationFile, testFile);//read input (all files at once)
+		List<RankList> train = data[0].getRankLists();
+		List<RankList> validation = (data[1] != null) ? data[1].getRankLists() : null;
+		List<RankList> test = (data[2] != null) ? data[2].getRankLists() : null;
 		
-		List<RankList> test = null;
-		//if(testFile.compareTo("")!=0)
-                if (!testFile.isEmpty())
-			test = readInput(testFile);
-		
-		int[] features = readFeature(featureDefFile);//read features
 		if(features == null)//no features specified ==> use all features in the training file
-			features = FeatureManager.getFeatureFromSampleVector(train);
+			features = data[0].getFeatures();
 		
 		if(normalize)
 		{
@@ -785,7 +851,7 @@ public class Evaluator {
 		//if(validationFile.compareTo("") != 0)
                 if (!validationFile.isEmpty())
 		{
-			validation = readInput(validationFile);
+			validation = readInput(validationFile, featureDefFile.isEmpty() ? null : features);
 			if(normalize)
 				normalize(validation, features);
 		}
@@ -823,7 +889,7 @@ public class Evaluator {
 		//if(testFile.compareTo("") != 0)
 		if (!testFile.isEmpty())
 		{
-			test = readInput(testFile);
+			test = readInput(testFile, featureDefFile.isEmpty() ? null : features);
 			if(normalize)
 				normalize(test, features);
 		}
@@ -874,12 +940,13 @@ public class Evaluator {
 		List<List<RankList>> validationData = new ArrayList<>();
 		List<List<RankList>> testData = new ArrayList<>();
 
+		//get features
+		int[] features = readFeature(featureDefFile);//read features: only these are loaded
+
 		//read all samples
 		//List<RankList> samples = FeatureManager.readInput(sampleFile);
-                List<RankList> samples = readInput (sampleFile);
+                List<RankList> samples = readInput (sampleFile, features);
 
-		//get features
-		int[] features = readFeature(featureDefFile);//read features
 		if(features == null)//no features specified ==> use all features in the training file
 			features = FeatureManager.getFeatureFromSampleVector(samples);
 
@@ -1164,21 +1231,18 @@ public class Evaluator {
 	 */
 	public void score(String modelFile, String testFile, String outputFile)
 	{
-		Ranker ranker = rFact.loadRankerFromFile(modelFile);
-		int[] features = ranker.getFeatures();
-		List<RankList> test = readInput(testFile);
-		if(normalize)
-			normalize(test, features);
+		final Ranker ranker = rFact.loadRankerFromFile(modelFile);
+		final int[] features = ranker.getFeatures();
 		
-		try {
-			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"));
-			for (RankList l : test) {
-				for (int j = 0; j < l.size(); j++) {
-					out.write(l.getID() + "\t" + j + "\t" + ranker.eval(l.get(j)) + "");
-					out.newLine();
+		try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"))) {
+			stream(testFile, ranker, new RankListPipeline.Task() {
+				public String process(RankList l)
+				{
+					if(normalize)
+						nml.normalize(l, features);
+					return scoreLines(ranker, l);
 				}
-			}
-			out.close();
+			}, out);
 		}
 		catch(IOException ex)
 		{
@@ -1215,12 +1279,8 @@ public class Evaluator {
 				int[] features = ranker.getFeatures();
 				if(normalize)
 					normalize(test, features);
-				for (RankList l : test) {
-					for (int j = 0; j < l.size(); j++) {
-						out.write(l.getID() + "\t" + j + "\t" + ranker.eval(l.get(j)) + "");
-						out.newLine();
-					}
-				}
+				for (RankList l : test)
+					out.write(scoreLines(ranker, l));
 			}
 			out.close();
 		}
@@ -1243,20 +1303,16 @@ public class Evaluator {
 		try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"))) {
 			for(int f=0;f<nFold;f++)
 			{
-                                //List<RankList> test = FeatureManager.readInput(testFiles.get(f));
-                                List<RankList> test = readInput(testFiles.get(f));
-				Ranker ranker = rFact.loadRankerFromFile(modelFiles.get(f));
-				int[] features = ranker.getFeatures();
-
-				if(normalize)
-					normalize(test, features);
-
-				for (RankList l : test) {
-					for (int j = 0; j < l.size(); j++) {
-						out.write(l.getID() + "\t" + j + "\t" + ranker.eval(l.get(j)) + "");
-						out.newLine();
+				final Ranker ranker = rFact.loadRankerFromFile(modelFiles.get(f));
+				final int[] features = ranker.getFeatures();
+				stream(testFiles.get(f), ranker, new RankListPipeline.Task() {
+					public String process(RankList l)
+					{
+						if(normalize)
+							nml.normalize(l, features);
+						return scoreLines(ranker, l);
 					}
-				}
+				}, out);
 			}
 		}
 		catch(IOException ex)
@@ -1274,28 +1330,18 @@ public class Evaluator {
 	 */
 	public void rank(String modelFile, String testFile, String indriRanking)
 	{
-		Ranker ranker = rFact.loadRankerFromFile(modelFile);
-		int[] features = ranker.getFeatures();
-		List<RankList> test = readInput(testFile);
+		final Ranker ranker = rFact.loadRankerFromFile(modelFile);
+		final int[] features = ranker.getFeatures();
 
-		if(normalize)
-			normalize(test, features);
-		try {
-			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indriRanking), "UTF-8"));
-			for (RankList l : test) {
-				double[] scores = new double[l.size()];
-				for (int j = 0; j < l.size(); j++)
-					scores[j] = ranker.eval(l.get(j));
-				int[] idx = MergeSorter.sort(scores, false);
-				for (int j = 0; j < idx.length; j++) {
-					int k = idx[j];
-					String str = l.getID() + " Q0 " + l.get(k).getDescription().replace("#", "").trim() +
-                                                     " " + (j + 1) + " " + SimpleMath.round(scores[k], 5) + " indri";
-					out.write(str);
-					out.newLine();
+		try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indriRanking), "UTF-8"))) {
+			stream(testFile, ranker, new RankListPipeline.Task() {
+				public String process(RankList l)
+				{
+					if(normalize)
+						nml.normalize(l, features);
+					return rankLines(ranker, l);
 				}
-			}
-			out.close();
+			}, out);
 		}
 		catch(IOException ex)
 		{
@@ -1311,19 +1357,19 @@ public class Evaluator {
 	 */
 	public void rank(String testFile, String indriRanking)
 	{
-		List<RankList> test = readInput(testFile);
-
-		try {
-			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indriRanking), "UTF-8"));
-			for (RankList l : test) {
-				for (int j = 0; j < l.size(); j++) {
-					String str = l.getID() + " Q0 " + l.get(j).getDescription().replace("#", "").trim() + " " +
-                                                     (j + 1) + " " + SimpleMath.round(1.0 - 0.0001 * j, 5) + " indri";
-					out.write(str);
-					out.newLine();
+		try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indriRanking), "UTF-8"))) {
+			stream(testFile, null, new RankListPipeline.Task() {
+				public String process(RankList l)
+				{
+					StringBuilder sb = new StringBuilder();
+					for (int j = 0; j < l.size(); j++) {
+						sb.append(l.getID() + " Q0 " + l.get(j).getDescription().replace("#", "").trim() + " " +
+                                                          (j + 1) + " " + SimpleMath.round(1.0 - 0.0001 * j, 5) + " indri");
+						sb.append(System.lineSeparator());
+					}
+					return sb.toString();
 				}
-			}
-			out.close();
+			}, out);
 		}
 		catch(IOException ex)
 		{
@@ -1362,19 +1408,8 @@ public class Evaluator {
 				if(normalize)
 					normalize(test, features);
 
-				for (RankList l : test) {
-					double[] scores = new double[l.size()];
-					for (int j = 0; j < l.size(); j++)
-						scores[j] = ranker.eval(l.get(j));
-					int[] idx = MergeSorter.sort(scores, false);
-					for (int j = 0; j < idx.length; j++) {
-						int k = idx[j];
-						String str = l.getID() + " Q0 " + l.get(k).getDescription().replace("#", "").trim() + " " +
-                                                            (j + 1) + " " + SimpleMath.round(scores[k], 5) + " indri";
-						out.write(str);
-						out.newLine();
-					}
-				}				
+				for (RankList l : test)
+					out.write(rankLines(ranker, l));
 			}
 			out.close();
 		}
@@ -1395,36 +1430,20 @@ public class Evaluator {
 	{
 		int nFold = modelFiles.size();
 
-		try {
-			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indriRanking), "UTF-8"));
-
+		try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indriRanking), "UTF-8"))) {
 			for(int f=0;f<nFold;f++)
 			{
-                                //List<RankList> test = FeatureManager.readInput(testFiles.get(f));
-				List<RankList> test = readInput(testFiles.get(f));
-				Ranker ranker = rFact.loadRankerFromFile(modelFiles.get(f));
-				int[] features = ranker.getFeatures();
-
-				if(normalize)
-					normalize(test, features);
-
-				for (RankList l : test) {
-					double[] scores = new double[l.size()];
-
-					for (int j = 0; j < l.size(); j++)
-						scores[j] = ranker.eval(l.get(j));
-
-					int[] idx = MergeSorter.sort(scores, false);
-
-					for (int j = 0; j < idx.length; j++) {
-						int k = idx[j];
-						String str = l.getID() + " Q0 " + l.get(k).getDescription().replace("#", "").trim() + " " + (j + 1) + " " + SimpleMath.round(scores[k], 5) + " indri";
-						out.write(str);
-						out.newLine();
+				final Ranker ranker = rFact.loadRankerFromFile(modelFiles.get(f));
+				final int[] features = ranker.getFeatures();
+				stream(testFiles.get(f), ranker, new RankListPipeline.Task() {
+					public String process(RankList l)
+					{
+						if(normalize)
+							nml.normalize(l, features);
+						return rankLines(ranker, l);
 					}
-				}				
+				}, out);
 			}
-			out.close();
 		}
 		catch(IOException ex)
 		{
@@ -1433,6 +1452,65 @@ public class Evaluator {
 	}
 
 
+	/**
+	 * Stream the ranked lists of a feature file through @task and write the results to @out, without holding the whole
+	 * file in memory. Ranked lists are processed on all threads unless @ranker can't be used concurrently.
+	 * @param inputFile
+	 * @param ranker Ranker used by @task (null if none)
+	 * @param task
+	 * @param out
+	 * @throws IOException
+	 */
+	private void stream(String inputFile, Ranker ranker, RankListPipeline.Task task, Writer out) throws IOException
+	{
+		System.out.print("Streaming feature file [" + inputFile + "]... ");
+		try (RankListReader in = new RankListReader(inputFile, mustHaveRelDoc, useSparseRepresentation)) {
+			RankListPipeline.run(in, task, out, ranker == null || ranker.isThreadSafe());
+			System.out.println("[Done.]");
+			System.out.println("(" + in.getRankListCount() + " ranked lists, " + in.getEntryCount() + " entries read)");
+		}
+	}
+
+
+	/**
+	 * @param ranker
+	 * @param l
+	 * @return One line per document of @l, with its (unsorted) index and its score.
+	 */
+	private static String scoreLines(Ranker ranker, RankList l)
+	{
+		StringBuilder sb = new StringBuilder();
+		double[] scores = new double[l.size()];
+		ranker.scoreBatch(l, scores);
+		for (int j = 0; j < l.size(); j++) {
+			sb.append(l.getID() + "\t" + j + "\t" + scores[j] + "");
+			sb.append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * @param ranker
+	 * @param l
+	 * @return The ranking of @l by @ranker, in indri's run format.
+	 */
+	private static String rankLines(Ranker ranker, RankList l)
+	{
+		StringBuilder sb = new StringBuilder();
+		double[] scores = new double[l.size()];
+		ranker.scoreBatch(l, scores);
+		int[] idx = MergeSorter.sort(scores, false);
+		for (int j = 0; j < idx.length; j++) {
+			int k = idx[j];
+			sb.append(l.getID() + " Q0 " + l.get(k).getDescription().replace("#", "").trim() + " " +
+                                  (j + 1) + " " + SimpleMath.round(scores[k], 5) + " indri");
+			sb.append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+
+
 	/**
 	 * Split the input file into two with respect to a specified split size.
 	 * @param sampleFile Input data file
@@ -1445,12 +1523,12 @@ public class Evaluator {
 	 */
 	private int[] prepareSplit(String sampleFile, String featureDefFile, double percentTrain, boolean normalize, List<RankList> trainingData, List<RankList> testData)
 	{
-                //read input
-		List<RankList> data = readInput(sampleFile);
-
-                //read features
+                //read features: only these are loaded
 		int[] features = readFeature(featureDefFile);
 
+                //read input
+		List<RankList> data = readInput(sampleFile, features);
+
                 // no features specified ==> use all features in the training file
 		if(features == null)
 			features = FeatureManager.getFeatureFromSampleVector(data);
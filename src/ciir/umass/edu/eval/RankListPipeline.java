@@ -0,0 +1,95 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.eval;
+
+import ciir.umass.edu.features.RankListReader;
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.utilities.MyThreadPool;
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Streams the ranked lists of a RankListReader through a Task on the threads of MyThreadPool and writes the output of
+ * each ranked list in input order.
+ *
+ * At most queueSize ranked lists per thread are in flight (read but not written yet) at any time, so memory use depends
+ * on the size of the largest ranked lists rather than on the size of the input.
+ */
+public class RankListPipeline {
+
+	//Parameters
+	public static int queueSize = 4;//ranked lists in flight per thread
+
+	/**
+	 * What has to be done for each ranked list (e.g. normalize, score and format the output).
+	 */
+	public interface Task {
+		/**
+		 * @param rl
+		 * @return The text to write for @rl.
+		 */
+		String process(RankList rl);
+	}
+
+	/**
+	 * @param in
+	 * @param task
+	 * @param out
+	 * @param parallel Whether @task can be run on several ranked lists at once.
+	 * @throws IOException
+	 */
+	public static void run(RankListReader in, final Task task, Writer out, boolean parallel) throws IOException
+	{
+		MyThreadPool p = MyThreadPool.getInstance();
+		if(!parallel || p.size() == 1)
+		{
+			RankList rl = null;
+			while((rl = in.next()) != null)
+				out.write(task.process(rl));
+			return;
+		}
+
+		int maxInFlight = p.size() * queueSize;
+		Deque<Future<String>> inFlight = new ArrayDeque<>();
+		try {
+			RankList rl = null;
+			while((rl = in.next()) != null)
+			{
+				if(inFlight.size() >= maxInFlight)
+					out.write(inFlight.removeFirst().get());
+				final RankList l = rl;
+				inFlight.addLast(p.submit(new Callable<String>() {
+					public String call()
+					{
+						return task.process(l);
+					}
+				}));
+			}
+			while(inFlight.size() > 0)
+				out.write(inFlight.removeFirst().get());
+		}
+		catch(InterruptedException | ExecutionException ex)
+		{
+			throw RankLibError.create("Error in RankListPipeline::run(): ", ex);
+		}
+		finally
+		{
+			for(Future<String> f : inFlight)
+				f.cancel(false);
+		}
+	}
+}
@@ -0,0 +1,476 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.features;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.FeatureMatrix;
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.learning.SparseDataPoint;
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Binary dataset format, meant to avoid re-parsing big text files (in the SVMLight-like format) over and over.
+ *
+ * The file is a header followed by a number of sections, all in big-endian byte order:
+ * <pre>
+ * header:   MAGIC, VERSION, layout (DENSE|SPARSE), #ranked lists, #rows, #features, #labels,
+ *           #bytes of ids, #bytes of descriptions, #unknown values (DENSE) or #non-zero values (SPARSE)
+ * int[#ranked lists+1]  offsets (rows of the i-th ranked list are [offsets[i], offsets[i+1]))
+ * int[#rows]            largest feature id specified on each row
+ * int[#rows+1]          label offsets (multiple labels/intents per row are allowed)
+ * float[#labels]        labels
+ * int[#ranked lists+1]  id offsets, followed by the ids (UTF-8)
+ * long[#rows+1]         description offsets, followed by the descriptions (UTF-8)
+ * DENSE:  long[#rows+1] unknown offsets, int[#unknown] unspecified feature ids, float[#rows] x #features (one column per feature)
+ * SPARSE: long[#rows+1] row pointers, int[#non-zero] feature ids, float[#non-zero] feature values
+ * </pre>
+ *
+ * Loading is copy-based, not zero-copy: read() maps the sections with FileChannel.map() only to copy them in bulk into heap
+ * arrays, i.e. the columns of a FeatureMatrix (dense) or the arrays of SparseDataPoint (sparse), and the learners never
+ * see the file itself. What it saves over the text format is the parsing: no text is involved except for the ids and
+ * descriptions. The whole dataset ends up on the heap, plus the feature ids and values
+ * of the file while they are converted (sparse layout, or dense layout into the sparse representation).
+ * Either layout can be loaded with either representation.
+ */
+public class BinaryDataset {
+
+	public static final int MAGIC = 0x524C4244;//"RLBD"
+	public static final int VERSION = 1;
+	public static final int DENSE = 0;
+	public static final int SPARSE = 1;
+
+	private static final int HEADER_SIZE = 4*6 + 8*4;
+	private static final int MAX_MAP_SIZE = 1 << 30;//map big sections piece by piece
+
+	/**
+	 * Check if the given file is a binary dataset (rather than a text file).
+	 * @param file
+	 * @return
+	 */
+	public static boolean isBinary(String file)
+	{
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			return in.readInt() == MAGIC;
+		}
+		catch(IOException ex)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Write the samples to a binary dataset file.
+	 * @param samples
+	 * @param outputFile
+	 * @param sparse Whether to store features in CSR layout (only known values) rather than in dense columns
+	 */
+	public static void write(List<RankList> samples, String outputFile, boolean sparse)
+	{
+		int nRows = 0;
+		int nFeatures = 0;
+		int nLabels = 0;
+		long idBytes = 0;
+		long descBytes = 0;
+		for(RankList rl : samples)
+		{
+			idBytes += utf8(rl.getID()).length;
+			for(int j=0;j<rl.size();j++)
+			{
+				DataPoint dp = rl.get(j);
+				nRows++;
+				nFeatures = Math.max(nFeatures, lastFeatureOf(dp));
+				nLabels += labelsOf(dp).length;
+				descBytes += utf8(dp.getDescription()).length;
+			}
+		}
+		if(idBytes > Integer.MAX_VALUE || descBytes > Integer.MAX_VALUE)
+			throw RankLibError.create("Error in BinaryDataset::write(): ids and descriptions must not exceed 2GB.");
+
+		//known (SPARSE) or unknown (DENSE) features of each row
+		long[] rowPtr = new long[nRows+1];
+		int row = 0;
+		for(RankList rl : samples)
+			for(int j=0;j<rl.size();j++)
+			{
+				float[] fVals = rl.get(j).getFeatureVector();
+				int c = 0;
+				for(int f=1;f<fVals.length;f++)
+					if(Float.isNaN(fVals[f]) != sparse)
+						c++;
+				rowPtr[row+1] = rowPtr[row] + c;
+				row++;
+			}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile), 1 << 20))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sparse ? SPARSE : DENSE);
+			out.writeInt(samples.size());
+			out.writeInt(nRows);
+			out.writeInt(nFeatures);
+			out.writeLong(nLabels);
+			out.writeLong(idBytes);
+			out.writeLong(descBytes);
+			out.writeLong(rowPtr[nRows]);
+
+			int offset = 0;
+			out.writeInt(offset);
+			for(RankList rl : samples)
+				out.writeInt(offset += rl.size());
+			for(RankList rl : samples)
+				for(int j=0;j<rl.size();j++)
+					out.writeInt(lastFeatureOf(rl.get(j)));
+			offset = 0;
+			out.writeInt(offset);
+			for(RankList rl : samples)
+				for(int j=0;j<rl.size();j++)
+					out.writeInt(offset += labelsOf(rl.get(j)).length);
+			for(RankList rl : samples)
+				for(int j=0;j<rl.size();j++)
+					for(float l : labelsOf(rl.get(j)))
+						out.writeFloat(l);
+
+			offset = 0;
+			out.writeInt(offset);
+			for(RankList rl : samples)
+				out.writeInt(offset += utf8(rl.getID()).length);
+			for(RankList rl : samples)
+				out.write(utf8(rl.getID()));
+			long pos = 0;
+			out.writeLong(pos);
+			for(RankList rl : samples)
+				for(int j=0;j<rl.size();j++)
+					out.writeLong(pos += utf8(rl.get(j).getDescription()).length);
+			for(RankList rl : samples)
+				for(int j=0;j<rl.size();j++)
+					out.write(utf8(rl.get(j).getDescription()));
+
+			for(int i=0;i<=nRows;i++)
+				out.writeLong(rowPtr[i]);
+			//feature ids: known ones (SPARSE) or unknown ones (DENSE)
+			for(RankList rl : samples)
+				for(int j=0;j<rl.size();j++)
+				{
+					float[] fVals = rl.get(j).getFeatureVector();
+					for(int f=1;f<fVals.length;f++)
+						if(Float.isNaN(fVals[f]) != sparse)
+							out.writeInt(f);
+				}
+			if(sparse)
+			{
+				for(RankList rl : samples)
+					for(int j=0;j<rl.size();j++)
+					{
+						float[] fVals = rl.get(j).getFeatureVector();
+						for(int f=1;f<fVals.length;f++)
+							if(!Float.isNaN(fVals[f]))
+								out.writeFloat(fVals[f]);
+					}
+			}
+			else
+			{
+				for(int f=1;f<=nFeatures;f++)
+					for(RankList rl : samples)
+					{
+						float[] column = rl.getFeatureColumn(f);
+						for(int j=0;j<rl.size();j++)
+						{
+							if(column != null)
+								out.writeFloat(column[rl.getMatrixOffset()+j]);
+							else
+							{
+								DataPoint dp = rl.get(j);
+								out.writeFloat((dp instanceof SparseDataPoint || f < dp.getLastFeature()) ? dp.getFeatureValue(f) : 0);
+							}
+						}
+					}
+			}
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in BinaryDataset::write(): ", ex);
+		}
+	}
+
+	/**
+	 * @param dp
+	 * @return Largest feature id specified for @dp.
+	 */
+	private static int lastFeatureOf(DataPoint dp)
+	{
+		//getLastFeature() is the length of the dense feature vector, except for SparseDataPoint where it's the number of known features
+		if(dp instanceof SparseDataPoint)
+		{
+			float[] fVals = dp.getFeatureVector();
+			return fVals.length-1;
+		}
+		return dp.getLastFeature()-1;
+	}
+
+	/**
+	 * Read a binary dataset file. With the dense representation, the data ends up in a single FeatureMatrix (as in FeatureManager.readInput()).
+	 * @param inputFile
+	 * @param mustHaveRelDoc
+	 * @param useSparseRepresentation
+	 * @return
+	 */
+	public static List<RankList> read(String inputFile, boolean mustHaveRelDoc, boolean useSparseRepresentation)
+	{
+		List<RankList> samples = null;
+		try (RandomAccessFile raf = new RandomAccessFile(inputFile, "r");
+			 FileChannel ch = raf.getChannel()) {
+			Sections in = new Sections(ch);
+			ByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if(header.getInt() != MAGIC)
+				throw RankLibError.create("Error in BinaryDataset::read(): " + inputFile + " is not a binary dataset.");
+			int version = header.getInt();
+			if(version != VERSION)
+				throw RankLibError.create("Error in BinaryDataset::read(): unsupported version (" + version + ").");
+			int layout = header.getInt();
+			int nLists = header.getInt();
+			int nRows = header.getInt();
+			int nFeatures = header.getInt();
+			int nLabels = (int)header.getLong();
+			int idBytes = (int)header.getLong();
+			int descBytes = (int)header.getLong();
+			long nValues = header.getLong();
+			in.pos = HEADER_SIZE;
+
+			int[] offsets = in.ints(nLists+1);
+			int[] lastFeature = in.ints(nRows);
+			int[] labelOffsets = in.ints(nRows+1);
+			float[] flatLabels = new float[nLabels];
+			in.floats(flatLabels, 0, nLabels);
+			float[][] labels = new float[nRows][];
+			for(int r=0;r<nRows;r++)
+			{
+				labels[r] = new float[labelOffsets[r+1]-labelOffsets[r]];
+				System.arraycopy(flatLabels, labelOffsets[r], labels[r], 0, labels[r].length);
+			}
+			flatLabels = null;
+
+			int[] idOffsets = in.ints(nLists+1);
+			byte[] bytes = in.bytes(idBytes);
+			String[] ids = new String[nLists];
+			for(int i=0;i<nLists;i++)
+				ids[i] = new String(bytes, idOffsets[i], idOffsets[i+1]-idOffsets[i], StandardCharsets.UTF_8);
+			long[] descOffsets = in.longs(nRows+1);
+			bytes = in.bytes(descBytes);
+			String[] descriptions = new String[nRows];
+			for(int r=0;r<nRows;r++)
+				descriptions[r] = new String(bytes, (int)descOffsets[r], (int)(descOffsets[r+1]-descOffsets[r]), StandardCharsets.UTF_8);
+			bytes = null;
+
+			long[] rowPtr = in.longs(nRows+1);
+			if(nValues > Integer.MAX_VALUE)
+				throw RankLibError.create("Error in BinaryDataset::read(): too many feature ids in " + inputFile + ".");
+			int[] fids = in.ints((int)nValues);
+			float[][] columns = null;//DENSE
+			float[] values = null;//SPARSE
+			if(layout == DENSE)
+			{
+				columns = new float[nFeatures+1][];
+				for(int f=1;f<=nFeatures;f++)
+				{
+					columns[f] = new float[nRows];
+					in.floats(columns[f], 0, nRows);
+				}
+			}
+			else
+			{
+				values = new float[(int)nValues];
+				in.floats(values, 0, values.length);
+			}
+
+			if(!useSparseRepresentation)
+			{
+				BitSet[] unknown = new BitSet[nRows];
+				if(layout == DENSE)
+				{
+					for(int r=0;r<nRows;r++)
+						for(long k=rowPtr[r];k<rowPtr[r+1];k++)
+						{
+							if(unknown[r] == null)
+								unknown[r] = new BitSet();
+							unknown[r].set(fids[(int)k]);
+						}
+				}
+				else//spread the known values into columns. Everything else is unknown.
+				{
+					columns = new float[nFeatures+1][];
+					for(int f=1;f<=nFeatures;f++)
+						columns[f] = new float[nRows];
+					for(int r=0;r<nRows;r++)
+					{
+						BitSet known = new BitSet();
+						for(int k=(int)rowPtr[r];k<rowPtr[r+1];k++)
+						{
+							columns[fids[k]][r] = values[k];
+							known.set(fids[k]);
+						}
+						if(known.cardinality() < lastFeature[r])
+						{
+							unknown[r] = new BitSet();
+							unknown[r].set(1, lastFeature[r]+1);
+							unknown[r].andNot(known);
+						}
+					}
+				}
+				samples = new FeatureMatrix(columns, lastFeature, unknown, offsets, labels, ids, descriptions).getRankLists();
+			}
+			else
+			{
+				samples = new ArrayList<>(nLists);
+				for(int i=0;i<nLists;i++)
+				{
+					List<DataPoint> rl = new ArrayList<>(offsets[i+1]-offsets[i]);
+					for(int r=offsets[i];r<offsets[i+1];r++)
+					{
+						int[] fIds = null;
+						float[] fVals = null;
+						if(layout == DENSE)//keep the features that are not unknown
+						{
+							int from = (int)rowPtr[r];
+							int n = lastFeature[r] - (int)(rowPtr[r+1]-rowPtr[r]);
+							fIds = new int[n];
+							fVals = new float[n];
+							for(int f=1, k=0, u=from;f<=lastFeature[r];f++)
+							{
+								if(u < rowPtr[r+1] && fids[u] == f)
+									u++;
+								else
+								{
+									fIds[k] = f;
+									fVals[k++] = columns[f][r];
+								}
+							}
+						}
+						else
+						{
+							int from = (int)rowPtr[r];
+							int n = (int)(rowPtr[r+1]-rowPtr[r]);
+							fIds = new int[n];
+							fVals = new float[n];
+							System.arraycopy(fids, from, fIds, 0, n);
+							System.arraycopy(values, from, fVals, 0, n);
+						}
+						rl.add(new SparseDataPoint(labels[r], ids[i], descriptions[r], fIds, fVals));
+					}
+					samples.add(new RankList(rl));
+				}
+			}
+
+			DataPoint.updateFeatureCount(nFeatures);//same as when parsing the text file
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in BinaryDataset::read(): ", ex);
+		}
+
+		if(mustHaveRelDoc)
+		{
+			List<RankList> relevant = new ArrayList<>();
+			for(RankList rl : samples)
+				for(int j=0;j<rl.size();j++)
+					if(rl.get(j).getLabel() > 0)
+					{
+						relevant.add(rl);
+						break;
+					}
+			samples = relevant;
+		}
+		return samples;
+	}
+
+	private static float[] labelsOf(DataPoint dp)
+	{
+		return (dp.getLabels() != null) ? dp.getLabels() : new float[]{dp.getLabel()};
+	}
+	private static byte[] utf8(String s)
+	{
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Consecutive sections of the file, each of them mapped into memory when it's read.
+	 */
+	static class Sections {
+		FileChannel ch = null;
+		long pos = 0;
+
+		Sections(FileChannel ch)
+		{
+			this.ch = ch;
+		}
+		private MappedByteBuffer map(long size) throws IOException
+		{
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, size);
+			pos += size;
+			return buf;
+		}
+		int[] ints(int n) throws IOException
+		{
+			int[] v = new int[n];
+			for(int from=0;from<n;)
+			{
+				int len = Math.min(n-from, MAX_MAP_SIZE/4);
+				map(len*4L).asIntBuffer().get(v, from, len);
+				from += len;
+			}
+			return v;
+		}
+		long[] longs(int n) throws IOException
+		{
+			long[] v = new long[n];
+			for(int from=0;from<n;)
+			{
+				int len = Math.min(n-from, MAX_MAP_SIZE/8);
+				map(len*8L).asLongBuffer().get(v, from, len);
+				from += len;
+			}
+			return v;
+		}
+		void floats(float[] v, int from, int n) throws IOException
+		{
+			for(int end=from+n;from<end;)
+			{
+				int len = Math.min(end-from, MAX_MAP_SIZE/4);
+				map(len*4L).asFloatBuffer().get(v, from, len);
+				from += len;
+			}
+		}
+		byte[] bytes(int n) throws IOException
+		{
+			byte[] v = new byte[n];
+			for(int from=0;from<n;)
+			{
+				int len = Math.min(n-from, MAX_MAP_SIZE);
+				map(len).get(v, from, len);
+				from += len;
+			}
+			return v;
+		}
+	}
+}
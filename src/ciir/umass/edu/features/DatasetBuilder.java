@@ -0,0 +1,134 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.features;
+
+import ciir.umass.edu.learning.Dataset;
+import ciir.umass.edu.utilities.MyThreadPool;
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Loads feature files (see FeatureManager.readInput()) into Datasets, each with its own number of features.
+ *
+ * A builder holds no state besides its settings, so it can be shared by several threads. loadAll() loads several files
+ * (e.g. train, validation and test data) at the same time.
+ */
+public class DatasetBuilder {
+
+	private boolean mustHaveRelDoc = false;
+	private boolean useSparseRepresentation = false;
+	private int[] features = null;
+
+	/**
+	 * @param mustHaveRelDoc Skip ranked lists without any relevant document
+	 * @return this
+	 */
+	public DatasetBuilder setMustHaveRelDoc(boolean mustHaveRelDoc)
+	{
+		this.mustHaveRelDoc = mustHaveRelDoc;
+		return this;
+	}
+	/**
+	 * @param useSparseRepresentation
+	 * @return this
+	 */
+	public DatasetBuilder setSparse(boolean useSparseRepresentation)
+	{
+		this.useSparseRepresentation = useSparseRepresentation;
+		return this;
+	}
+	/**
+	 * @param features Ids of the features to load (null for all of them, which is the default)
+	 * @return this
+	 */
+	public DatasetBuilder setFeatures(int[] features)
+	{
+		this.features = features;
+		return this;
+	}
+
+	/**
+	 * @param inputFile
+	 * @return The dataset stored in @inputFile.
+	 */
+	public Dataset load(String inputFile)
+	{
+		return new Dataset(inputFile, FeatureManager.readInput(inputFile, mustHaveRelDoc, useSparseRepresentation, features));
+	}
+
+	/**
+	 * Load several files at once, each on its own thread. Large text files are still split between the threads of
+	 * MyThreadPool (see ParallelFeatureReader), which is why the files are not loaded on the pool itself.
+	 * @param inputFiles
+	 * @return The datasets, in the same order as @inputFiles (null for null or empty file names).
+	 */
+	public Dataset[] loadAll(String... inputFiles)
+	{
+		Dataset[] datasets = new Dataset[inputFiles.length];
+		int n = 0;
+		for(String f : inputFiles)
+			if(f != null && !f.isEmpty())
+				n++;
+		if(n <= 1 || MyThreadPool.getInstance().size() == 1)
+		{
+			for(int i=0;i<inputFiles.length;i++)
+				if(inputFiles[i] != null && !inputFiles[i].isEmpty())
+					datasets[i] = load(inputFiles[i]);
+			return datasets;
+		}
+
+		List<FutureTask<Dataset>> tasks = new ArrayList<>(inputFiles.length);
+		for(int i=0;i<inputFiles.length;i++)
+		{
+			if(inputFiles[i] == null || inputFiles[i].isEmpty())
+			{
+				tasks.add(null);
+				continue;
+			}
+			final String inputFile = inputFiles[i];
+			FutureTask<Dataset> task = new FutureTask<>(new Callable<Dataset>() {
+				public Dataset call()
+				{
+					return load(inputFile);
+				}
+			});
+			tasks.add(task);
+			Thread t = new Thread(task, "DatasetBuilder-" + i);
+			t.setDaemon(true);
+			t.start();
+		}
+		for(int i=0;i<tasks.size();i++)
+		{
+			if(tasks.get(i) == null)
+				continue;
+			try {
+				datasets[i] = tasks.get(i).get();
+			}
+			catch(ExecutionException ex)
+			{
+				if(ex.getCause() instanceof RuntimeException)
+					throw (RuntimeException)ex.getCause();
+				if(ex.getCause() instanceof Error)
+					throw (Error)ex.getCause();
+				throw RankLibError.create("Error in DatasetBuilder::loadAll(): ", ex);
+			}
+			catch(InterruptedException ex)
+			{
+				throw RankLibError.create("Error in DatasetBuilder::loadAll(): ", ex);
+			}
+		}
+		return datasets;
+	}
+}
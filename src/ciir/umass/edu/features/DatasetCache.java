@@ -0,0 +1,224 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.features;
+
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * On-disk cache of parsed text feature files, stored as binary datasets (see BinaryDataset).
+ *
+ * Entries are keyed by the path, size and modification time of the text file, and by the representation (dense/sparse),
+ * so looking up an entry does not read the file (as with make, a change that keeps both the size and the modification time
+ * goes unnoticed). The content hash of the file is only computed when there is no entry for its current size and
+ * modification time, and an entry of the same path with the same content is then reused (e.g. after the file was touched
+ * or copied over). Entries hold all ranked lists of the file: mustHaveRelDoc is applied when an entry is loaded, so the same
+ * entry serves both settings and DataPoint.featureCount ends up the same as when parsing the text file. Whenever the total
+ * size of the cache goes over maxSize, the least recently used entries are deleted.
+ */
+public class DatasetCache {
+
+	//Parameters
+	public static String cacheDir = "";//no caching if empty
+	public static long maxSize = 10L << 30;//total size budget of the cache, in bytes
+
+	private static final String EXT = ".rlbd";
+
+	/**
+	 * @return Whether parsed datasets should be cached.
+	 */
+	public static boolean isEnabled()
+	{
+		return cacheDir.compareTo("") != 0;
+	}
+
+	/**
+	 * @param inputFile
+	 * @param useSparseRepresentation
+	 * @return The cache entry of the text file @inputFile (which may or may not exist yet).
+	 */
+	public static File getEntry(String inputFile, boolean useSparseRepresentation)
+	{
+		try {
+			//entry names: <hash of the path and representation>-<size>-<modification time>-<content hash>.rlbd
+			File f = new File(inputFile).getCanonicalFile();
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update((f.getPath() + "\n" + useSparseRepresentation + "\n").getBytes(StandardCharsets.UTF_8));
+			String prefix = toHex(md.digest()) + "-";
+			String stat = Long.toHexString(f.length()) + "-" + Long.toHexString(f.lastModified()) + "-";
+			List<File> entries = entriesOf(new File(cacheDir), prefix);
+			for(File e : entries)
+				if(e.getName().startsWith(prefix + stat))
+					return e;
+
+			String hash = toHex(contentHash(f));
+			File entry = new File(cacheDir, prefix + stat + hash + EXT);
+			for(File e : entries)
+				if(e.getName().endsWith("-" + hash + EXT))//same content: reuse the entry under the new name
+				{
+					try {
+						Files.move(e.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+					}
+					catch(IOException ex)
+					{
+						//e.g. another process got there first: either way, the entry may simply not exist
+					}
+					break;
+				}
+			return entry;
+		}
+		catch(IOException | NoSuchAlgorithmException ex)
+		{
+			throw RankLibError.create("Error in DatasetCache::getEntry(): ", ex);
+		}
+	}
+
+	/**
+	 * @param dir
+	 * @param prefix
+	 * @return The entries whose name starts with @prefix, i.e. those of a given file and representation.
+	 */
+	private static List<File> entriesOf(File dir, String prefix)
+	{
+		List<File> entries = new ArrayList<>();
+		File[] files = dir.listFiles();
+		if(files != null)
+			for(File f : files)
+				if(f.getName().startsWith(prefix) && f.getName().endsWith(EXT))
+					entries.add(f);
+		return entries;
+	}
+
+	private static byte[] contentHash(File f) throws IOException, NoSuchAlgorithmException
+	{
+		MessageDigest md = MessageDigest.getInstance("MD5");
+		byte[] buf = new byte[1 << 20];
+		try (InputStream in = new FileInputStream(f)) {
+			int n;
+			while((n = in.read(buf)) > 0)
+				md.update(buf, 0, n);
+		}
+		return md.digest();
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder sb = new StringBuilder();
+		for(byte b : bytes)
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+	/**
+	 * @param entry
+	 * @param mustHaveRelDoc
+	 * @param useSparseRepresentation
+	 * @return The ranked lists stored in the cache entry, or null if there is no such entry.
+	 */
+	public static List<RankList> load(File entry, boolean mustHaveRelDoc, boolean useSparseRepresentation)
+	{
+		if(!entry.isFile())
+			return null;
+		List<RankList> samples = BinaryDataset.read(entry.getPath(), mustHaveRelDoc, useSparseRepresentation);
+		entry.setLastModified(System.currentTimeMillis());//LRU
+		return samples;
+	}
+
+	/**
+	 * Store all ranked lists of a text file in its cache entry, replacing the entries of other versions of the file, then
+	 * evict old entries if the cache is too big. Failing to write to the cache is not an error: the entry is simply not
+	 * stored.
+	 * @param entry
+	 * @param samples
+	 * @param useSparseRepresentation
+	 * @return Whether the entry has been stored.
+	 */
+	public static boolean store(File entry, List<RankList> samples, boolean useSparseRepresentation)
+	{
+		File dir = entry.getParentFile();
+		File tmp = null;
+		try {
+			Files.createDirectories(dir.toPath());
+			//other processes may be using the cache at the same time: write to a temporary file and rename it
+			tmp = File.createTempFile(entry.getName(), ".tmp", dir);
+			BinaryDataset.write(samples, tmp.getPath(), useSparseRepresentation);
+			Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException | RuntimeException ex)
+		{
+			if(tmp != null)
+				tmp.delete();
+			System.out.println("WARNING: cannot write to the dataset cache [" + dir + "]: " + ex.getMessage());
+			return false;
+		}
+		String name = entry.getName();
+		for(File e : entriesOf(dir, name.substring(0, name.indexOf('-')+1)))
+			if(!e.getName().equals(name))
+				e.delete();
+		evict(dir);
+		return entry.isFile();
+	}
+
+	/**
+	 * Delete the least recently used entries until the total size of the cache is within maxSize.
+	 * @param dir
+	 */
+	static void evict(File dir)
+	{
+		File[] files = dir.listFiles();
+		if(files == null)
+			return;
+		List<File> entries = new ArrayList<>();
+		long total = 0;
+		for(File f : files)
+			if(f.getName().endsWith(EXT))
+			{
+				entries.add(f);
+				total += f.length();
+			}
+		if(total <= maxSize)
+			return;
+
+		final long[] lastUsed = new long[entries.size()];
+		Integer[] order = new Integer[entries.size()];
+		for(int i=0;i<order.length;i++)
+		{
+			lastUsed[i] = entries.get(i).lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(lastUsed[a], lastUsed[b]);
+			}
+		});
+		for(int i=0;i<order.length && total > maxSize;i++)
+		{
+			File f = entries.get(order[i]);
+			long size = f.length();
+			if(f.delete())
+				total -= size;
+		}
+	}
+}
@@ -10,10 +10,13 @@
 package ciir.umass.edu.features;
 
 import ciir.umass.edu.learning.DataPoint;
-import ciir.umass.edu.learning.DenseDataPoint;
+import ciir.umass.edu.learning.Dataset;
+import ciir.umass.edu.learning.FeatureMatrix;
+import ciir.umass.edu.learning.FeatureMatrixBuilder;
 import ciir.umass.edu.learning.RankList;
 import ciir.umass.edu.learning.SparseDataPoint;
 import ciir.umass.edu.utilities.FileUtils;
+import ciir.umass.edu.utilities.MyThreadPool;
 import ciir.umass.edu.utilities.RankLibError;
 
 import java.io.*;
@@ -31,6 +34,8 @@ public class FeatureManager {
 		List<String> rankingFiles = new ArrayList<>();
 		String outputDir = "";
 		boolean shuffle = false;
+		String binaryFile = "";
+		boolean sparse = false;
 		int nFold = 0;
 		float tvs = -1;//train-validation split in each fold
 		
@@ -51,6 +56,11 @@ public class FeatureManager {
 			System.out.println("\t-k <fold>\t\tThe number of folds");
 			System.out.println("\t[ -tvs <x \\in [0..1]> ] Train-validation split ratio (x)(1.0-x)");
 			
+			System.out.println("");
+			System.out.println("  [+] Binary conversion");
+			System.out.println("\t-convert <file>\t\tConvert the input data into a binary dataset file, which can then be used in place of the text file (loads much faster).");
+			System.out.println("\t[ -sparse ]\t\tStore only known feature values (compressed sparse rows) rather than dense feature columns.");
+			
 			System.out.println("");
 			System.out.println("  NOTE: If both -shuffle and -k are specified, the input data will be shuffled and then sequentially partitioned.");
 			System.out.println("");
@@ -69,8 +79,20 @@ public class FeatureManager {
 				tvs = Float.parseFloat(args[++i]);
 			else if (args[i].equalsIgnoreCase ("-output"))
 				outputDir = FileUtils.makePathStandard(args[++i]);
+			else if (args[i].equalsIgnoreCase ("-convert"))
+				binaryFile = args[++i];
+			else if (args[i].equalsIgnoreCase ("-sparse"))
+				sparse = true;
 		}		
 	
+		if(binaryFile.compareTo("") != 0)
+		{
+			List<RankList> samples = readInput(rankingFiles);
+			System.out.print("Saving binary dataset (" + (sparse ? "sparse" : "dense") + ")... ");
+			BinaryDataset.write(samples, binaryFile, sparse);
+			System.out.println("[Done]");
+		}
+	
 		if(shuffle || nFold > 0)
 		{
 			List<RankList> samples = readInput(rankingFiles);
@@ -78,6 +100,7 @@ public class FeatureManager {
 			if(samples.size() == 0)
 			{
 				System.out.println("Error: The input file is empty.");
+				MyThreadPool.getInstance().shutdown();
 				return;
 			}
 			
@@ -121,6 +144,7 @@ public class FeatureManager {
 				}
 			}
 		}
+		MyThreadPool.getInstance().shutdown();//big input files are read on the thread pool
 	}
 	
 
@@ -136,7 +160,10 @@ public class FeatureManager {
 
 
 	/**
-	 * Read a set of rankings from a single file.
+	 * Read a set of rankings from a single file. With the dense representation, the feature values of the whole file end
+	 * up in a single column-major FeatureMatrix, which the returned ranked lists are views on. The file can either be a
+	 * text file or a binary dataset (see BinaryDataset), which is detected automatically. Big text files are parsed on
+	 * multiple threads (see ParallelFeatureReader). Parsed text files are cached if DatasetCache is enabled.
 	 * @param inputFile
 	 * @param mustHaveRelDoc
 	 * @param useSparseRepresentation
@@ -144,6 +171,131 @@ public class FeatureManager {
 	 */
 	public static List<RankList> readInput(String inputFile, boolean mustHaveRelDoc, boolean useSparseRepresentation)	
 	{
+		return readInput(inputFile, mustHaveRelDoc, useSparseRepresentation, null);
+	}
+
+
+	/**
+	 * Same as readInput(String, boolean, boolean), keeping only the specified features: the values of the others are not
+	 * stored (nor parsed, for text files) and they read as unspecified, so memory use depends on the features used only.
+	 * Data points still refer to the kept features by their original ids.
+	 * @param inputFile
+	 * @param mustHaveRelDoc
+	 * @param useSparseRepresentation
+	 * @param features Ids of the features to keep (null for all of them)
+	 * @return
+	 */
+	public static List<RankList> readInput(String inputFile, boolean mustHaveRelDoc, boolean useSparseRepresentation, int[] features)
+	{
+		if(BinaryDataset.isBinary(inputFile))
+		{
+			System.out.print("Reading binary feature file [" + inputFile + "]... ");
+			List<RankList> samples = BinaryDataset.read(inputFile, mustHaveRelDoc, useSparseRepresentation);
+			printCounts(samples);
+			return project(samples, features, useSparseRepresentation);
+		}
+		if(DatasetCache.isEnabled())
+		{
+			File entry = DatasetCache.getEntry(inputFile, useSparseRepresentation);
+			List<RankList> samples = DatasetCache.load(entry, mustHaveRelDoc, useSparseRepresentation);
+			if(samples != null)
+			{
+				System.out.print("Reading feature file [" + inputFile + "] from the cache [" + entry + "]... ");
+				printCounts(samples);
+				return project(samples, features, useSparseRepresentation);
+			}
+			//cache all ranked lists and features: mustHaveRelDoc and the feature selection are applied when loading the entry
+			samples = readText(inputFile, false, useSparseRepresentation, null);
+			DatasetCache.store(entry, samples, useSparseRepresentation);
+			if(mustHaveRelDoc)
+			{
+				List<RankList> rel = new ArrayList<>();
+				for(RankList rl : samples)
+					if(hasRelDoc(rl))
+						rel.add(rl);
+				samples = rel;
+			}
+			return project(samples, features, useSparseRepresentation);
+		}
+		return readText(inputFile, mustHaveRelDoc, useSparseRepresentation, features);
+	}
+
+	/**
+	 * Keep only the specified features of the samples (see readInput(String, boolean, boolean, int[])). This is done in
+	 * place whenever possible, i.e. when the samples are views on a single FeatureMatrix (whose other columns are dropped)
+	 * or SparseDataPoint: the samples must not be shared with anything that needs the other features.
+	 * @param samples
+	 * @param features Ids of the features to keep (null for all of them)
+	 * @param useSparseRepresentation
+	 * @return
+	 */
+	public static List<RankList> project(List<RankList> samples, int[] features, boolean useSparseRepresentation)
+	{
+		if(features == null)
+			return samples;
+		boolean[] mask = DataPoint.featureMask(features);
+		FeatureMatrix matrix = (samples.size() > 0) ? samples.get(0).getFeatureMatrix() : null;
+		for(int i=0;i<samples.size() && matrix != null;i++)
+			if(samples.get(i).getFeatureMatrix() != matrix)
+				matrix = null;
+		if(matrix != null)
+		{
+			matrix.retainFeatures(mask);
+			return samples;
+		}
+		if(!useSparseRepresentation)
+			return new FeatureMatrix(samples, features).getRankLists();
+
+		for(RankList rl : samples)
+			for(int j=0;j<rl.size();j++)
+			{
+				DataPoint dp = rl.get(j);
+				if(dp instanceof SparseDataPoint)
+				{
+					((SparseDataPoint)dp).retainFeatures(mask);
+					continue;
+				}
+				float[] fVals = dp.getFeatureVector();
+				int n = 0;
+				for(int f=1;f<fVals.length && f<mask.length;f++)
+					if(mask[f] && !Float.isNaN(fVals[f]))
+						n++;
+				int[] fIds = new int[n];
+				float[] vals = new float[n];
+				for(int f=1, k=0;k<n;f++)
+					if(mask[f] && !Float.isNaN(fVals[f]))
+					{
+						fIds[k] = f;
+						vals[k++] = fVals[f];
+					}
+				rl.set(j, new SparseDataPoint(dp.getLabels(), dp.getID(), dp.getDescription(), fIds, vals));
+			}
+		return samples;
+	}
+
+	private static void printCounts(List<RankList> samples)
+	{
+		int countEntries = 0;
+		for(RankList rl : samples)
+			countEntries += rl.size();
+		System.out.println("[Done.]");
+		System.out.println("(" + samples.size() + " ranked lists, " + countEntries + " entries read)");
+	}
+
+	private static boolean hasRelDoc(RankList rl)
+	{
+		for(int i=0;i<rl.size();i++)
+			if(rl.get(i).getLabel() > 0)
+				return true;
+		return false;
+	}
+
+	private static List<RankList> readText(String inputFile, boolean mustHaveRelDoc, boolean useSparseRepresentation, int[] features)
+	{
+		boolean[] mask = DataPoint.featureMask(features);
+		if(ParallelFeatureReader.shouldUse(inputFile))
+			return ParallelFeatureReader.read(inputFile, mustHaveRelDoc, useSparseRepresentation, mask);
+
 		List<RankList> samples = new ArrayList<>();
 		int countRL = 0;
 		int countEntries = 0;
@@ -155,6 +307,9 @@ public class FeatureManager {
 			String lastID = "";
 			boolean hasRel = false;
 			List<DataPoint> rl = new ArrayList<>();
+			char[] line = new char[1024];
+			//dense data goes straight into the columns of a matrix
+			FeatureMatrixBuilder matrix = useSparseRepresentation ? null : new FeatureMatrixBuilder(mask, mustHaveRelDoc);
 
 			while((content = in.readLine()) != null)
 			{
@@ -168,12 +323,18 @@ public class FeatureManager {
 				if(countEntries % 10000 == 0)
 					System.out.print("\rReading feature file [" + inputFile + "]: " + countRL + "... ");
 				
-				DataPoint qp = null;
+				int n = content.length();
+				if(line.length < n)
+					line = new char[Math.max(n, line.length*2)];
+				content.getChars(0, n, line, 0);
 
-				if(useSparseRepresentation)
-					qp = new SparseDataPoint(content);
-				else
-					qp = new DenseDataPoint(content);
+				if(matrix != null)
+				{
+					matrix.add(line, 0, n);
+					countEntries++;
+					continue;
+				}
+				DataPoint qp = new SparseDataPoint(line, 0, n, mask);
 
 				if(lastID.compareTo("")!=0 && lastID.compareTo(qp.getID())!=0)
 				{
@@ -194,6 +355,8 @@ public class FeatureManager {
 				samples.add(new RankList(rl));
 
 			in.close();
+			if(matrix != null)
+				samples = matrix.build().getRankLists();
 			System.out.println("\rReading feature file [" + inputFile + "]... [Done.]            ");
 			System.out.println("(" + samples.size() + " ranked lists, " + countEntries + " entries read)");
 		}
@@ -263,11 +426,7 @@ public class FeatureManager {
 
 
 	/**
-	 * Obtain all features present in a sample set. 
-	 * Important: If your data (DataPoint objects) is loaded by RankLib (e.g. command-line use) or its APIs, there 
-         *              is nothing to watch out for.
-	 *            If you create the DataPoint objects yourself, make sure DataPoint.featureCount correctly reflects
-         *              the total number features present in your dataset.
+	 * Obtain all features present in a sample set, i.e. 1..the largest feature id of the samples (see Dataset.getFeatures()).
 	 * @param samples
 	 * @return
 	 */
@@ -278,13 +437,7 @@ public class FeatureManager {
 			throw RankLibError.create("Error in FeatureManager::getFeatureFromSampleVector(): There are no training samples.");
 		}
 
-		int fc = DataPoint.getFeatureCount();
-		int[] features = new int[fc];
-
-		for(int i=1;i<=fc;i++)
-			features[i-1] = i;
-
-		return features;
+		return new Dataset(samples).getFeatures();
 	}
 
 
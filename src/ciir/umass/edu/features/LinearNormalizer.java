@@ -9,12 +9,9 @@
 
 package ciir.umass.edu.features;
 
-import ciir.umass.edu.learning.DataPoint;
 import ciir.umass.edu.learning.RankList;
 import ciir.umass.edu.utilities.RankLibError;
 
-import java.util.Arrays;
-
 /**
  * @author Laura Dietz, vdang
  */
@@ -26,7 +23,7 @@ public class LinearNormalizer extends Normalizer {
 		{
       throw RankLibError.create("Error in LinearNormalizor::normalize(): The input ranked list is empty");
 		}
-		int nFeature = DataPoint.getFeatureCount();
+		int nFeature = rl.getFeatureCount();
         int[] fids = new int[nFeature];
         for(int i=1;i<=nFeature;i++)
         	fids[i-1] = i;
@@ -43,35 +40,25 @@ public class LinearNormalizer extends Normalizer {
 		//remove duplicate features from the input @fids ==> avoid normalizing the same features multiple times
 		fids = removeDuplicateFeatures(fids);
 				
-        float[] min = new float[fids.length];
-        float[] max = new float[fids.length];
-        //Arrays.fill(min, 0);
-        Arrays.fill (min, Float.MAX_VALUE);
-        //Arrays.fill(max, 0);
-        Arrays.fill(max, Float.MIN_VALUE);
-
-        for(int i=0;i<rl.size();i++)
+        //one feature at a time, so that the values of each feature can be read/written at once (i.e. a column of the feature matrix)
+        for(int j=0;j<fids.length;j++)
         {
-            DataPoint dp = rl.get(i);
-            for(int j=0;j<fids.length;j++)
+            float[] values = getFeatureValues(rl, fids[j]);
+            float min = Float.MAX_VALUE;
+            float max = Float.MIN_VALUE;
+            for(int i=0;i<values.length;i++)
             {
-                min[j] = Math.min(min[j],dp.getFeatureValue(fids[j]));
-                max[j] = Math.max(max[j],dp.getFeatureValue(fids[j]));
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
             }
-        }
-        for(int i=0;i<rl.size();i++)
-        {
-            DataPoint dp = rl.get(i);
-            for(int j=0;j<fids.length;j++)
+            for(int i=0;i<values.length;i++)
             {
-            	if(max[j] > min[j])
-            	{
-	                float value = (dp.getFeatureValue(fids[j]) - min[j]) / (max[j] - min[j]);
-	                dp.setFeatureValue(fids[j], value);
-            	}
+            	if(max > min)
+	                values[i] = (values[i] - min) / (max - min);
             	else
-            		dp.setFeatureValue(fids[j], 0);
+            		values[i] = 0;
             }
+            setFeatureValues(rl, fids[j], values);
         }
     }
     public String name()
@@ -12,6 +12,7 @@ package ciir.umass.edu.features;
 import java.util.HashSet;
 import java.util.List;
 
+import ciir.umass.edu.learning.DataPoint;
 import ciir.umass.edu.learning.RankList;
 
 /**
@@ -50,6 +51,49 @@ public class Normalizer {
 			fids[fi++] = i.intValue();
 		return fids;
 	}
+	/**
+	 * Get the values of a feature on all objects of the ranked list. They are copied straight from the feature matrix column
+	 * when the list is backed by one.
+	 * @param rl
+	 * @param fid
+	 * @return
+	 */
+	protected float[] getFeatureValues(RankList rl, int fid)
+	{
+		float[] values = new float[rl.size()];
+		float[] column = rl.getFeatureColumn(fid);
+		if(column != null)
+			System.arraycopy(column, rl.getMatrixOffset(), values, 0, values.length);
+		else
+		{
+			for(int i=0;i<rl.size();i++)
+				values[i] = rl.get(i).getFeatureValue(fid);
+		}
+		return values;
+	}
+	/**
+	 * Set the values of a feature on all objects of the ranked list (as returned, and modified, from getFeatureValues()).
+	 * @param rl
+	 * @param fid
+	 * @param values
+	 */
+	protected void setFeatureValues(RankList rl, int fid, float[] values)
+	{
+		float[] column = rl.getFeatureColumn(fid);
+		if(column != null)
+		{
+			System.arraycopy(values, 0, column, rl.getMatrixOffset(), values.length);
+			rl.getFeatureMatrix().markKnown(rl.getMatrixOffset(), rl.getMatrixOffset()+rl.size(), fid);
+		}
+		else
+		{
+			for(int i=0;i<rl.size();i++)
+			{
+				DataPoint dp = rl.get(i);
+				dp.setFeatureValue(fid, values[i]);
+			}
+		}
+	}
 	public String name()
 	{
 		//need overriding in subclass
@@ -0,0 +1,394 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.features;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.FeatureMatrixBuilder;
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.learning.SparseDataPoint;
+import ciir.umass.edu.utilities.MyThreadPool;
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Reads a text feature file (same format as FeatureManager.readInput()) on all threads of MyThreadPool.
+ *
+ * The file is cut into byte ranges whose boundaries fall on a change of qid, so each range holds whole ranked lists. Ranges
+ * are parsed independently and their ranked lists are stitched back together in file order, so the result is the same as
+ * reading the file sequentially. With the dense representation, each range is parsed straight into the columns of its own
+ * FeatureMatrixBuilder, and the columns of all ranges are then put together one feature at a time.
+ */
+public class ParallelFeatureReader {
+
+	//Parameters
+	public static long minFileSize = 16L << 20;//smaller files are not worth the trouble: FeatureManager reads them sequentially
+	public static int chunksPerThread = 4;//more chunks than threads to balance the load
+	public static int maxChunkSize = 256 << 20;
+
+	/**
+	 * @param inputFile
+	 * @return Whether the file should be read with this class rather than sequentially.
+	 */
+	public static boolean shouldUse(String inputFile)
+	{
+		return new File(inputFile).length() >= minFileSize && MyThreadPool.getInstance().size() > 1;
+	}
+
+	/**
+	 * Read a set of rankings from a single text file.
+	 * @param inputFile
+	 * @param mustHaveRelDoc
+	 * @param useSparseRepresentation
+	 * @return
+	 */
+	public static List<RankList> read(String inputFile, boolean mustHaveRelDoc, boolean useSparseRepresentation)
+	{
+		return read(inputFile, mustHaveRelDoc, useSparseRepresentation, null);
+	}
+
+	/**
+	 * Same as read(String, boolean, boolean), keeping only the features in @featureMask (see DataPoint.featureMask()).
+	 * @param inputFile
+	 * @param mustHaveRelDoc
+	 * @param useSparseRepresentation
+	 * @param featureMask
+	 * @return
+	 */
+	public static List<RankList> read(String inputFile, boolean mustHaveRelDoc, boolean useSparseRepresentation, boolean[] featureMask)
+	{
+		MyThreadPool p = MyThreadPool.getInstance();
+		System.out.print("Reading feature file [" + inputFile + "] on " + p.size() + " threads... ");
+
+		long[] bounds = null;
+		try (RandomAccessFile raf = new RandomAccessFile(inputFile, "r")) {
+			bounds = findChunks(raf, p.size());
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in ParallelFeatureReader::read(): ", ex);
+		}
+
+		int nChunks = bounds.length - 1;
+		Chunk[] chunks = new Chunk[nChunks];
+		CountDownLatch done = new CountDownLatch(nChunks);
+		for(int i=0;i<nChunks;i++)
+		{
+			chunks[i] = new Chunk(inputFile, bounds[i], bounds[i+1], useSparseRepresentation, mustHaveRelDoc, featureMask, done);
+			p.execute(chunks[i]);
+		}
+		try {
+			done.await();
+		}
+		catch(InterruptedException ex)
+		{
+			throw RankLibError.create("Error in ParallelFeatureReader::read(): ", ex);
+		}
+
+		if(!useSparseRepresentation)
+		{
+			List<FeatureMatrixBuilder> parts = new ArrayList<>(nChunks);
+			int countEntries = 0;
+			for(int i=0;i<nChunks;i++)
+			{
+				if(chunks[i].error != null)
+					throw RankLibError.create("Error in ParallelFeatureReader::read(): ", chunks[i].error);
+				parts.add(chunks[i].matrix);
+				countEntries += chunks[i].matrix.getEntryCount();
+				chunks[i] = null;
+			}
+			List<RankList> samples = FeatureMatrixBuilder.build(parts).getRankLists();
+			System.out.println("[Done.]");
+			System.out.println("(" + samples.size() + " ranked lists, " + countEntries + " entries read)");
+			return samples;
+		}
+
+		//stitch the ranked lists back together in file order
+		List<RankList> samples = new ArrayList<>();
+		List<DataPoint> rl = null;
+		String lastID = "";
+		int countEntries = 0;
+		for(Chunk c : chunks)
+		{
+			if(c.error != null)
+				throw RankLibError.create("Error in ParallelFeatureReader::read(): ", c.error);
+			for(List<DataPoint> group : c.groups)
+			{
+				//consecutive objects with the same id are from the same ranked list, even across chunks
+				if(rl != null && lastID.compareTo(group.get(0).getID()) == 0)
+					rl.addAll(group);
+				else
+				{
+					add(samples, rl, mustHaveRelDoc);
+					rl = group;
+				}
+				lastID = group.get(group.size()-1).getID();
+				countEntries += group.size();
+			}
+		}
+		add(samples, rl, mustHaveRelDoc);
+
+		System.out.println("[Done.]");
+		System.out.println("(" + samples.size() + " ranked lists, " + countEntries + " entries read)");
+		return samples;
+	}
+
+	private static void add(List<RankList> samples, List<DataPoint> rl, boolean mustHaveRelDoc)
+	{
+		if(rl == null || rl.size() == 0)
+			return;
+		boolean hasRel = !mustHaveRelDoc;
+		for(int i=0;i<rl.size() && !hasRel;i++)
+			hasRel = rl.get(i).getLabel() > 0;
+		if(hasRel)
+			samples.add(new RankList(rl));
+	}
+
+	/**
+	 * Cut the file into byte ranges, each of which starts at the beginning of a line with a different qid from the line before.
+	 * @param raf
+	 * @param nThreads
+	 * @return Boundaries of the ranges: the i-th range is [bounds[i], bounds[i+1])
+	 * @throws IOException
+	 */
+	static long[] findChunks(RandomAccessFile raf, int nThreads) throws IOException
+	{
+		long size = raf.length();
+		int nChunks = (int)Math.max(nThreads * chunksPerThread, size / maxChunkSize + 1);
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		for(int i=1;i<nChunks;i++)
+		{
+			long b = Math.max(size * i / nChunks, bounds.get(bounds.size()-1));
+			b = alignToQuery(raf, b, size);
+			if(b > bounds.get(bounds.size()-1) && b < size)
+				bounds.add(b);
+		}
+		bounds.add(size);
+
+		long[] r = new long[bounds.size()];
+		for(int i=0;i<r.length;i++)
+			r[i] = bounds.get(i);
+		return r;
+	}
+
+	/**
+	 * @param raf
+	 * @param pos
+	 * @param size
+	 * @return The start of the first line at or after @pos whose qid differs from the qid of the line before it (or @size).
+	 * @throws IOException
+	 */
+	private static long alignToQuery(RandomAccessFile raf, long pos, long size) throws IOException
+	{
+		LineScanner s = new LineScanner(raf, pos, size);
+		if(pos > 0)
+		{
+			//move to the start of the next line
+			raf.seek(pos-1);
+			if(raf.read() != '\n')
+				s.nextLine();
+		}
+		String qid = null;
+		long lineStart = s.pos;
+		String line = null;
+		while((line = s.nextLine()) != null)
+		{
+			String id = getID(line);
+			if(id != null)
+			{
+				if(qid != null && qid.compareTo(id) != 0)
+					return lineStart;
+				qid = id;
+			}
+			lineStart = s.pos;
+		}
+		return size;
+	}
+
+	/**
+	 * @param line
+	 * @return The qid of the line (as DataPoint would parse it), or null if the line doesn't contain any data point.
+	 */
+	static String getID(String line)
+	{
+		line = line.trim();
+		if(line.length() == 0 || line.indexOf("#") == 0)
+			return null;
+		int idx = line.indexOf("#");
+		if(idx != -1)
+			line = line.substring(0, idx).trim();
+		String[] fs = line.split("\\s+", 3);
+		if(fs.length < 2)
+			return null;
+		return fs[1].substring(fs[1].lastIndexOf(":")+1);
+	}
+
+	/**
+	 * Reads lines from a file one buffer at a time, keeping track of the file position.
+	 * Line terminators are the same as BufferedReader.readLine(): "\n", "\r" or "\r\n".
+	 */
+	static class LineScanner {
+		RandomAccessFile raf = null;
+		long pos = 0;
+		long end = 0;
+		byte[] buf = new byte[1 << 16];
+		int bufLen = 0;
+		int bufPos = 0;
+		long bufStart = 0;
+
+		LineScanner(RandomAccessFile raf, long pos, long end)
+		{
+			this.raf = raf;
+			this.pos = pos;
+			this.end = end;
+		}
+		private int read() throws IOException
+		{
+			if(pos >= end)
+				return -1;
+			if(bufPos >= bufLen || bufStart + bufPos != pos)
+			{
+				raf.seek(pos);
+				bufStart = pos;
+				bufPos = 0;
+				bufLen = raf.read(buf, 0, (int)Math.min(buf.length, end - pos));
+				if(bufLen <= 0)
+					return -1;
+			}
+			pos++;
+			return buf[bufPos++] & 0xFF;
+		}
+		String nextLine() throws IOException
+		{
+			if(pos >= end)
+				return null;
+			StringBuilder sb = new StringBuilder();
+			int c;
+			while((c = read()) != -1)
+			{
+				if(c == '\n')
+					break;
+				if(c == '\r')
+				{
+					if(pos < end && read() != '\n')
+						pos--;
+					break;
+				}
+				sb.append((char)c);
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Parses the data points in a byte range of the file and groups consecutive ones with the same id.
+	 */
+	static class Chunk implements Runnable {
+		String inputFile = "";
+		long start = 0;
+		long end = 0;
+		boolean useSparseRepresentation = false;
+		boolean[] featureMask = null;
+		CountDownLatch done = null;
+
+		List<List<DataPoint>> groups = new ArrayList<>();//sparse representation
+		FeatureMatrixBuilder matrix = null;//dense representation
+		Exception error = null;
+
+		Chunk(String inputFile, long start, long end, boolean useSparseRepresentation, boolean mustHaveRelDoc, boolean[] featureMask, CountDownLatch done)
+		{
+			this.inputFile = inputFile;
+			this.start = start;
+			this.end = end;
+			this.useSparseRepresentation = useSparseRepresentation;
+			this.featureMask = featureMask;
+			this.done = done;
+			if(!useSparseRepresentation)
+				matrix = new FeatureMatrixBuilder(featureMask, mustHaveRelDoc);
+		}
+		public void run()
+		{
+			try (RandomAccessFile raf = new RandomAccessFile(inputFile, "r");
+				 FileChannel ch = raf.getChannel()) {
+				if(end - start > Integer.MAX_VALUE - 8)
+					throw RankLibError.create("Error in ParallelFeatureReader::read(): ranked list too large (" + (end - start) + " bytes).");
+				ByteBuffer bb = ByteBuffer.allocate((int)(end - start));
+				while(bb.hasRemaining())
+					if(ch.read(bb, start + bb.position()) < 0)
+						break;
+				parse(bb.array(), bb.position());
+			}
+			catch(Throwable ex)
+			{
+				error = (ex instanceof Exception) ? (Exception)ex : new RuntimeException(ex);
+			}
+			finally
+			{
+				done.countDown();
+			}
+		}
+		private void parse(byte[] bytes, int length)
+		{
+			String lastID = "";
+			List<DataPoint> rl = new ArrayList<>();
+			char[] line = new char[1024];
+			int lineStart = 0;
+			while(lineStart < length)
+			{
+				int i = lineStart;
+				while(i < length && bytes[i] != '\n' && bytes[i] != '\r')
+					i++;
+				//decode the same way as the ASCII reader in FeatureManager, then trim()
+				int lineEnd = i;
+				while(lineStart < lineEnd && (bytes[lineStart] & 0xFF) <= ' ')
+					lineStart++;
+				while(lineEnd > lineStart && (bytes[lineEnd-1] & 0xFF) <= ' ')
+					lineEnd--;
+				int n = lineEnd - lineStart;
+				if(line.length < n)
+					line = new char[Math.max(n, line.length*2)];
+				for(int k=0;k<n;k++)
+				{
+					byte b = bytes[lineStart+k];
+					line[k] = (b >= 0) ? (char)b : '\uFFFD';
+				}
+				if(i < length && bytes[i] == '\r' && i+1 < length && bytes[i+1] == '\n')
+					i++;
+				lineStart = i + 1;
+
+				if(n == 0 || line[0] == '#')
+					continue;
+				if(matrix != null)
+				{
+					matrix.add(line, 0, n);
+					continue;
+				}
+				DataPoint qp = new SparseDataPoint(line, 0, n, featureMask);
+				if(lastID.compareTo("") != 0 && lastID.compareTo(qp.getID()) != 0)
+				{
+					groups.add(rl);
+					rl = new ArrayList<>();
+				}
+				lastID = qp.getID();
+				rl.add(qp);
+			}
+			if(rl.size() > 0)
+				groups.add(rl);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.features;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.DenseDataPoint;
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.learning.SparseDataPoint;
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads the ranked lists of a feature file (same format as FeatureManager.readInput()) one at a time, so that only the
+ * ranked list being read is in memory rather than the whole file.
+ *
+ * Binary datasets (see BinaryDataset) are loaded at once and then handed out one ranked list at a time.
+ */
+public class RankListReader implements Closeable {
+
+	private String inputFile = "";
+	private boolean mustHaveRelDoc = false;
+	private boolean useSparseRepresentation = false;
+
+	private BufferedReader in = null;
+	private Iterator<RankList> loaded = null;//binary datasets
+	private DataPoint pending = null;//first data point of the next ranked list
+	private int countRL = 0;
+	private int countEntries = 0;
+
+	/**
+	 * @param inputFile
+	 * @param mustHaveRelDoc Skip ranked lists without any relevant document
+	 * @param useSparseRepresentation
+	 */
+	public RankListReader(String inputFile, boolean mustHaveRelDoc, boolean useSparseRepresentation)
+	{
+		this.inputFile = inputFile;
+		this.mustHaveRelDoc = mustHaveRelDoc;
+		this.useSparseRepresentation = useSparseRepresentation;
+		try {
+			if(BinaryDataset.isBinary(inputFile))
+				loaded = BinaryDataset.read(inputFile, mustHaveRelDoc, useSparseRepresentation).iterator();
+			else
+				in = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile), "ASCII"));
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in RankListReader::RankListReader(): ", ex);
+		}
+	}
+
+	/**
+	 * @return The next ranked list of the file, or null if there is none left.
+	 */
+	public RankList next()
+	{
+		RankList rl = null;
+		if(loaded != null)
+			rl = loaded.hasNext() ? loaded.next() : null;
+		else
+		{
+			do {
+				rl = readNext();
+			} while(rl != null && mustHaveRelDoc && !hasRel(rl));
+		}
+		if(rl != null)
+		{
+			countRL++;
+			countEntries += rl.size();
+		}
+		return rl;
+	}
+
+	private RankList readNext()
+	{
+		List<DataPoint> rl = new ArrayList<>();
+		if(pending != null)
+			rl.add(pending);
+		pending = null;
+		try {
+			String content = "";
+			while(in != null && (content = in.readLine()) != null)
+			{
+				content = content.trim();
+				if(content.length() == 0)
+					continue;
+				if(content.indexOf("#")==0)
+					continue;
+
+				DataPoint qp = null;
+				if(useSparseRepresentation)
+					qp = new SparseDataPoint(content);
+				else
+					qp = new DenseDataPoint(content);
+
+				if(rl.size() > 0 && rl.get(0).getID().compareTo(qp.getID())!=0)
+				{
+					pending = qp;
+					break;
+				}
+				rl.add(qp);
+			}
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in RankListReader::next(): ", ex);
+		}
+		return (rl.size() > 0) ? new RankList(rl) : null;
+	}
+
+	private static boolean hasRel(RankList rl)
+	{
+		for(int i=0;i<rl.size();i++)
+			if(rl.get(i).getLabel() > 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return Number of ranked lists returned so far.
+	 */
+	public int getRankListCount()
+	{
+		return countRL;
+	}
+
+	/**
+	 * @return Number of data points in the ranked lists returned so far.
+	 */
+	public int getEntryCount()
+	{
+		return countEntries;
+	}
+
+	public String getInputFile()
+	{
+		return inputFile;
+	}
+
+	public void close()
+	{
+		loaded = null;
+		pending = null;
+		if(in == null)
+			return;
+		try {
+			in.close();
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in RankListReader::close(): ", ex);
+		}
+		finally
+		{
+			in = null;
+		}
+	}
+}
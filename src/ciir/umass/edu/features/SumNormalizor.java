@@ -9,9 +9,6 @@
 
 package ciir.umass.edu.features;
 
-import java.util.Arrays;
-
-import ciir.umass.edu.learning.DataPoint;
 import ciir.umass.edu.learning.RankList;
 
 /**
@@ -25,24 +22,11 @@ public class SumNormalizor extends Normalizer {
 			System.out.println("Error in SumNormalizor::normalize(): The input ranked list is empty");
 			System.exit(1);
 		}
-		int nFeature = DataPoint.getFeatureCount();
-		double[] norm = new double[nFeature];
-		Arrays.fill(norm, 0);
-		for(int i=0;i<rl.size();i++)
-		{
-			DataPoint dp = rl.get(i);
-			for(int j=1;j<=nFeature;j++)
-				norm[j-1] += Math.abs(dp.getFeatureValue(j));
-		}
-		for(int i=0;i<rl.size();i++)
-		{
-			DataPoint dp = rl.get(i);
-			for(int j=1;j<=nFeature;j++)
-			{
-				if(norm[j-1] > 0)
-					dp.setFeatureValue(j, (float)(dp.getFeatureValue(j)/norm[j-1]));
-			}
-		}
+		int nFeature = rl.getFeatureCount();
+		int[] fids = new int[nFeature];
+		for(int j=1;j<=nFeature;j++)
+			fids[j-1] = j;
+		normalize(rl, fids);
 	}
 	@Override
 	public void normalize(RankList rl, int[] fids) {
@@ -55,20 +39,19 @@ public class SumNormalizor extends Normalizer {
 		//remove duplicate features from the input @fids ==> avoid normalizing the same features multiple times
 		fids = removeDuplicateFeatures(fids);
 				
-		double[] norm = new double[fids.length];
-		Arrays.fill(norm, 0);
-		for(int i=0;i<rl.size();i++)
-		{
-			DataPoint dp = rl.get(i);
-			for(int j=0;j<fids.length;j++)
-				norm[j] += Math.abs(dp.getFeatureValue(fids[j]));
-		}
-		for(int i=0;i<rl.size();i++)
+		//one feature at a time, so that the values of each feature can be read/written at once (i.e. a column of the feature matrix)
+		for(int j=0;j<fids.length;j++)
 		{
-			DataPoint dp = rl.get(i);
-			for(int j=0;j<fids.length;j++)
-				if(norm[j] > 0)
-					dp.setFeatureValue(fids[j], (float)(dp.getFeatureValue(fids[j])/norm[j]));
+			float[] values = getFeatureValues(rl, fids[j]);
+			double norm = 0;
+			for(int i=0;i<values.length;i++)
+				norm += Math.abs(values[i]);
+			if(norm > 0)
+			{
+				for(int i=0;i<values.length;i++)
+					values[i] = (float)(values[i]/norm);
+				setFeatureValues(rl, fids[j], values);
+			}
 		}
 	}
 	public String name()
@@ -9,9 +9,6 @@
 
 package ciir.umass.edu.features;
 
-import java.util.Arrays;
-
-import ciir.umass.edu.learning.DataPoint;
 import ciir.umass.edu.learning.RankList;
 
 /**
@@ -25,38 +22,11 @@ public class ZScoreNormalizor extends Normalizer {
 			System.out.println("Error in ZScoreNormalizor::normalize(): The input ranked list is empty");
 			System.exit(1);
 		}
-		int nFeature = DataPoint.getFeatureCount();
-		double[] means = new double[nFeature];
-		Arrays.fill(means, 0);
-		for(int i=0;i<rl.size();i++)
-		{
-			DataPoint dp = rl.get(i);
-			for(int j=1;j<=nFeature;j++)
-				means[j-1] += dp.getFeatureValue(j);
-		}
-		
+		int nFeature = rl.getFeatureCount();
+		int[] fids = new int[nFeature];
 		for(int j=1;j<=nFeature;j++)
-		{
-			means[j-1] = means[j-1] / rl.size();
-			double std = 0;
-			for(int i=0;i<rl.size();i++)
-			{
-				DataPoint p = rl.get(i);
-				double x = p.getFeatureValue(j) - means[j-1];
-				std += x*x;
-			}
-			std = Math.sqrt(std / (rl.size()-1));
-			//normalize
-			if(std > 0)
-			{
-				for(int i=0;i<rl.size();i++)
-				{
-					DataPoint p = rl.get(i);
-					double x = (p.getFeatureValue(j) - means[j-1])/std;//x ~ standard normal (0, 1)
-					p.setFeatureValue(j, (float)x);
-				}
-			}
-		}
+			fids[j-1] = j;
+		normalize(rl, fids);
 	}
 	@Override
 	public void normalize(RankList rl, int[] fids) {
@@ -69,35 +39,30 @@ public class ZScoreNormalizor extends Normalizer {
 		//remove duplicate features from the input @fids ==> avoid normalizing the same features multiple times
 		fids = removeDuplicateFeatures(fids);
 		
-		double[] means = new double[fids.length];
-		Arrays.fill(means, 0);
-		for(int i=0;i<rl.size();i++)
-		{
-			DataPoint dp = rl.get(i);
-			for(int j=0;j<fids.length;j++)
-				means[j] += dp.getFeatureValue(fids[j]);
-		}
-		
+		//one feature at a time, so that the values of each feature can be read/written at once (i.e. a column of the feature matrix)
 		for(int j=0;j<fids.length;j++)
 		{
-			means[j] = means[j] / rl.size();
+			float[] values = getFeatureValues(rl, fids[j]);
+			double mean = 0;
+			for(int i=0;i<values.length;i++)
+				mean += values[i];
+			mean = mean / values.length;
 			double std = 0;
-			for(int i=0;i<rl.size();i++)
+			for(int i=0;i<values.length;i++)
 			{
-				DataPoint p = rl.get(i);
-				double x = p.getFeatureValue(fids[j]) - means[j];
+				double x = values[i] - mean;
 				std += x*x;
 			}
-			std = Math.sqrt(std / (rl.size()-1));
+			std = Math.sqrt(std / (values.length-1));
 			//normalize
 			if(std > 0.0)
 			{
-				for(int i=0;i<rl.size();i++)
+				for(int i=0;i<values.length;i++)
 				{
-					DataPoint p = rl.get(i);
-					double x = (p.getFeatureValue(fids[j]) - means[j])/std;//x ~ standard normal (0, 1)
-					p.setFeatureValue(fids[j], (float)x);
+					double x = (values[i] - mean)/std;//x ~ standard normal (0, 1)
+					values[i] = (float)x;
 				}
+				setFeatureValues(rl, fids[j], values);
 			}
 		}
 	}
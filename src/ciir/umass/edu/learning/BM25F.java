@@ -260,6 +260,14 @@ public class BM25F extends CoorAscent {
         }
  		return score;
 	}
+    public boolean isThreadSafe()
+    {
+        return false;  // eval() sets the number of fields from the first data point it sees
+    }
+    public boolean usesSelectedFeaturesOnly()
+    {
+        return false;  // fields are laid out by position
+    }
     public Ranker createNew()
     {
         return new BM25F();
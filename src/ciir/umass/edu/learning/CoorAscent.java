@@ -16,7 +16,9 @@ import ciir.umass.edu.utilities.RankLibError;
 import ciir.umass.edu.utilities.SimpleMath;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.StringReader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -216,23 +218,41 @@ public class CoorAscent extends Ranker {
 	public RankList rank(RankList rl)
 	{
 		double[] score = new double[rl.size()];
+		int offset = rl.getMatrixOffset();
 		if(current_feature == -1)
 		{
-			for(int i=0;i<rl.size();i++)
+			float[][] columns = getColumns(rl);
+			if(columns != null)//go through the feature matrix one column at a time
 			{
 				for(int j=0;j<features.length;j++)
-					score[i] += weight[j] * rl.get(i).getFeatureValue(features[j]);
-				rl.get(i).setCached(score[i]);//use cache of a data point to store its score given the model at this state
+				{
+					float[] column = columns[j];
+					for(int i=0;i<rl.size();i++)
+						score[i] += weight[j] * column[offset+i];
+				}
+				for(int i=0;i<rl.size();i++)
+					rl.get(i).setCached(score[i]);//use cache of a data point to store its score given the model at this state
+			}
+			else
+			{
+				for(int i=0;i<rl.size();i++)
+				{
+					for(int j=0;j<features.length;j++)
+						score[i] += weight[j] * rl.get(i).getFeatureValue(features[j]);
+					rl.get(i).setCached(score[i]);//use cache of a data point to store its score given the model at this state
+				}
 			}
 		}
 		else//This branch is only active during the training process. Here we trade the "clean" codes for efficiency 
 		{
+			float[] column = rl.getFeatureColumn(features[current_feature]);
 			for(int i=0;i<rl.size();i++)
 			{
 				//cached score = a_1*x_1 + a_2*x_2 + ... + a_n*x_n
 				//a_2 ==> a'_2
 				//new score = cached score + (a'_2 - a_2)*x_2  ====> NO NEED TO RE-COMPUTE THE WHOLE THING
-				score[i] = rl.get(i).getCached() + weight_change * rl.get(i).getFeatureValue(features[current_feature]);
+				float x = (column != null) ? column[offset+i] : rl.get(i).getFeatureValue(features[current_feature]);
+				score[i] = rl.get(i).getCached() + weight_change * x;
 				rl.get(i).setCached(score[i]);
 			}
 		}
@@ -252,23 +272,26 @@ public class CoorAscent extends Ranker {
 	}
 	public String toString()
 	{
-		String output = "";
+		StringBuilder output = new StringBuilder();
 		for(int i=0;i<weight.length;i++)
-			output += features[i] + ":" + weight[i] + ((i==weight.length-1)?"":" ");
-		return output;
+			output.append(features[i] + ":" + weight[i] + ((i==weight.length-1)?"":" "));
+		return output.toString();
 	}
 	public String model()
 	{
-		String output = "## " + name() + "\n";
-		output += "## Restart = " + nRestart + "\n";
-		output += "## MaxIteration = " + nMaxIteration + "\n";
-		output += "## StepBase = " + stepBase + "\n";
-		output += "## StepScale = " + stepScale + "\n";
-		output += "## Tolerance = " + tolerance + "\n";
-		output += "## Regularized = " + regularized + "\n";
-		output += "## Slack = " + slack + "\n";
-		output += toString();
-		return output;
+		return writeModelToString();
+	}
+	public void writeModel(Writer out) throws IOException
+	{
+		out.write("## " + name() + "\n");
+		out.write("## Restart = " + nRestart + "\n");
+		out.write("## MaxIteration = " + nMaxIteration + "\n");
+		out.write("## StepBase = " + stepBase + "\n");
+		out.write("## StepScale = " + stepScale + "\n");
+		out.write("## Tolerance = " + tolerance + "\n");
+		out.write("## Regularized = " + regularized + "\n");
+		out.write("## Slack = " + slack + "\n");
+		out.write(toString());
 	}
 	public void loadFromString(String fullText)
 	{
@@ -325,16 +348,31 @@ public class CoorAscent extends Ranker {
 		for(int j=0;j<samples.size();j++)
 		{
 			RankList rl = samples.get(j);
+			int offset = rl.getMatrixOffset();
+			float[] column = rl.getFeatureColumn(features[current_feature]);
 			for(int i=0;i<rl.size();i++)
 			{
 				//cached score = a_1*x_1 + a_2*x_2 + ... + a_n*x_n
 				//a_2 ==> a'_2
 				//new score = cached score + (a'_2 - a_2)*x_2  ====> NO NEED TO RE-COMPUTE THE WHOLE THING
-				double score = rl.get(i).getCached() + weight_change * rl.get(i).getFeatureValue(features[current_feature]);
+				float x = (column != null) ? column[offset+i] : rl.get(i).getFeatureValue(features[current_feature]);
+				double score = rl.get(i).getCached() + weight_change * x;
 				rl.get(i).setCached(score);
 			}
 		}
 	}
+	/**
+	 * @param rl
+	 * @return Columns (from the feature matrix backing @rl) of all features in the model, or null if they can't all be read this way.
+	 */
+	private float[][] getColumns(RankList rl)
+	{
+		float[][] columns = new float[features.length][];
+		for(int j=0;j<features.length;j++)
+			if((columns[j] = rl.getFeatureColumn(features[j])) == null)
+				return null;
+		return columns;
+	}
 	private void scaleCached(double sum)
 	{
 		for(int j=0;j<samples.size();j++)
@@ -407,4 +445,4 @@ public class CoorAscent extends Ranker {
 	{
 		return getDistance(weight, ca.weight);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
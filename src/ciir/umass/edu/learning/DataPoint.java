@@ -21,9 +21,18 @@ import java.util.Arrays;
  */
 public abstract class DataPoint {
 	
+	/** @deprecated Not used anymore: data points have no size limit. */
+	@Deprecated
 	public static int MAX_FEATURE = 51;
+	/** @deprecated Not used anymore: data points have no size limit. */
+	@Deprecated
 	public static int FEATURE_INCREASE = 10;
 
+	/**
+	 * @deprecated The largest feature id of all data points parsed so far in the JVM, whichever dataset they belong to. Use
+	 * Dataset.getFeatureCount() (or RankList.getFeatureCount()) instead.
+	 */
+	@Deprecated
 	public static int featureCount = 0;
 	public int lastFeature = -1;
 	protected static float UNKNOWN = Float.NaN;
@@ -61,63 +70,27 @@ public abstract class DataPoint {
 	 */
 	protected float[] parse(String text)
 	{
-		fVals = new float[MAX_FEATURE];
-		Arrays.fill(fVals, UNKNOWN);
-		int lastFeature = -1;
+		DataPointParser parser = DataPointParser.get();
+		return parse(parser.toChars(text), 0, text.length());
+	}
+	
+	/**
+	 * Same as parse(String), on the line made of the chars [start, end) of the buffer.
+	 * @param buf
+	 * @param start
+	 * @param end
+	 * @return Dense array of feature values
+	 */
+	protected float[] parse(char[] buf, int start, int end)
+	{
 		try {
-			int idx = text.indexOf("#");
-			if(idx != -1)
-			{
-				description = text.substring(idx);
-				text = text.substring(0, idx).trim();//remove the comment part at the end of the line
-			}
-			String[] fs = text.split("\\s+");
-			String[] ls = fs[0].split(",");
-			labels = new float[ls.length];
-			for(int i = 0; i < ls.length; i++)
-				labels[i] = Float.parseFloat(ls[i]);
-			label = labels[0];
-			if(label < 0)
-			{
-				System.out.println("Relevance label cannot be negative. System will now exit.");
-				System.exit(1);
-			}
-			id = getValue(fs[1]);
-			String key = "";
-			String val = "";
-			for(int i=2;i<fs.length;i++)
-			{
-				knownFeatures++;
-				key = getKey(fs[i]);
-				val = getValue(fs[i]);
-				int f = Integer.parseInt(key);
-				if(f <= 0) throw RankLibError.create("Cannot use feature numbering less than or equal to zero. Start your features at 1.");
-				if(f >= MAX_FEATURE)
-				{
-					while(f >= MAX_FEATURE)
-						MAX_FEATURE += FEATURE_INCREASE;
-					float[] tmp = new float [MAX_FEATURE];
-					System.arraycopy(fVals, 0, tmp, 0, fVals.length);
-					Arrays.fill(tmp, fVals.length, MAX_FEATURE, UNKNOWN);
-					fVals = tmp;
-				}
-				fVals[f] = Float.parseFloat(val);
-				
-				if(f > featureCount)//#feature will be the max_id observed
-					featureCount = f;
-				
-				if(f > lastFeature)//note that lastFeature is the max_id observed for this current data point, whereas featureCount is the max_id observed on the entire dataset
-					lastFeature = f;
-			}
-			//shrink fVals
-			float[] tmp = new float[lastFeature+1];
-			System.arraycopy(fVals, 0, tmp, 0, lastFeature+1);
-			fVals = tmp;
+			fVals = DataPointParser.get().parse(this, buf, start, end);
 		}
 		catch(Exception ex)
 		{
 			throw RankLibError.create("Error in DataPoint::parse()", ex);
 		}
+		updateFeatureCount(fVals.length - 1);//kept up to date for code that still relies on it
 		return fVals;
 	}
 	
@@ -160,6 +133,36 @@ public abstract class DataPoint {
 		setFeatureVector(fVals);
 	}
 	
+	/**
+	 * Same as DataPoint(String), from the chars [start, end) of the buffer.
+	 * @param buf
+	 * @param start
+	 * @param end
+	 */
+	protected DataPoint(char[] buf, int start, int end)
+	{
+		float[] fVals = parse(buf, start, end);
+		setFeatureVector(fVals);
+	}
+	
+	/**
+	 * @param features Ids of the features to keep when parsing data points (null for all of them)
+	 * @return featureMask[fid] is true iff the feature is to be kept (null if @features is null)
+	 */
+	public static boolean[] featureMask(int[] features)
+	{
+		if(features == null)
+			return null;
+		int max = 0;
+		for(int f : features)
+			max = Math.max(max, f);
+		boolean[] mask = new boolean[max+1];
+		for(int f : features)
+			if(f > 0)
+				mask[f] = true;
+		return mask;
+	}
+	
 	public String getID()
 	{
 		return id;
@@ -213,12 +216,38 @@ public abstract class DataPoint {
 		return output;
 	}
 	
+	/**
+	 * @deprecated See featureCount.
+	 */
+	@Deprecated
 	public static int getFeatureCount()
 	{
 		return featureCount;
 	}
+	/**
+	 * Raise featureCount to @f if it's lower. The lock is only taken when it is, so this is cheap enough to call for every
+	 * data point parsed.
+	 * @param f
+	 */
+	public static void updateFeatureCount(int f)
+	{
+		if(f > featureCount)
+			raiseFeatureCount(f);
+	}
+	private static synchronized void raiseFeatureCount(int f)
+	{
+		if(f > featureCount)
+			featureCount = f;
+	}
 
 	public int getLastFeature() {
 		return fVals.length;
 	}
+
+	/**
+	 * @return The largest feature id specified for this data point (0 if there is none).
+	 */
+	public int getMaxFeature() {
+		return Math.max(getLastFeature() - 1, 0);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,341 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning;
+
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.util.Arrays;
+
+/**
+ * Scanner for lines in the SVMLight-like input format: "label[,label...] qid:id fid:value fid:value ... # description".
+ *
+ * It works in place on a char[] and keeps the (fid, value) pairs in buffers that are re-used from one line to the next, so
+ * that the only things allocated per line are what ends up in the DataPoint: the label array, the id and description strings,
+ * and the feature array(s) (allocated once at their final size). FeatureMatrixBuilder reads the pairs straight from the
+ * buffers (see scan()), without any dense array. Number parsing is done directly on the chars too, with
+ * Float.parseFloat()/Integer.parseInt() as the fall-back for anything but plain decimal numbers, so the values are exactly
+ * the same as before.
+ *
+ * One instance per thread (see get()).
+ */
+class DataPointParser {
+
+	private static final ThreadLocal<DataPointParser> parsers = new ThreadLocal<DataPointParser>() {
+		@Override
+		protected DataPointParser initialValue()
+		{
+			return new DataPointParser();
+		}
+	};
+	//powers of 10 that are exact in float
+	private static final float[] POW10 = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+	private char[] line = new char[1024];
+	private float[] labels = new float[4];
+
+	//what scan() found on the last line
+	int nLabels = 0;
+	String id = "";
+	String description = null;//null if the line has none
+	int lastFeature = -1;//the largest feature id on the line, kept or not
+	int nFeatures = 0;//number of (fid, value) pairs kept, in @fids and @vals (in the order of the line)
+	int[] fids = new int[64];
+	float[] vals = new float[64];
+
+	/**
+	 * @return The parser of the calling thread.
+	 */
+	static DataPointParser get()
+	{
+		return parsers.get();
+	}
+
+	/**
+	 * @param text
+	 * @return A buffer holding the chars of @text (starting at 0).
+	 */
+	char[] toChars(String text)
+	{
+		if(line.length < text.length())
+			line = new char[Math.max(text.length(), line.length*2)];
+		text.getChars(0, text.length(), line, 0);
+		return line;
+	}
+
+	/**
+	 * Parse one line, and set the label(s), id, description and number of known features of the data point accordingly.
+	 * @param dp
+	 * @param buf
+	 * @param start
+	 * @param end
+	 * @return Dense array of feature values
+	 */
+	float[] parse(DataPoint dp, char[] buf, int start, int end)
+	{
+		scan(buf, start, end, null);
+		setMetadata(dp);
+		dp.knownFeatures += nFeatures;
+
+		float[] fVals = new float[lastFeature+1];
+		Arrays.fill(fVals, DataPoint.UNKNOWN);
+		for(int i=0;i<nFeatures;i++)
+			fVals[fids[i]] = vals[i];//in case of duplicates, the last one wins
+		return fVals;
+	}
+
+	/**
+	 * Parse one line into a sparse data point, keeping only the features in @featureMask. Unlike parse(), nothing is
+	 * allocated for the features that are left out, however large their ids.
+	 * @param dp
+	 * @param buf
+	 * @param start
+	 * @param end
+	 * @param featureMask See scan()
+	 * @return The largest feature id on the line, kept or not
+	 */
+	int parse(SparseDataPoint dp, char[] buf, int start, int end, boolean[] featureMask)
+	{
+		scan(buf, start, end, featureMask);
+		setMetadata(dp);
+
+		//ids are in ascending order on any sane line: otherwise, sort them (stable, so the last of duplicates still wins)
+		for(int i=1;i<nFeatures;i++)
+		{
+			int f = fids[i];
+			float v = vals[i];
+			int j = i;
+			for(;j>0 && fids[j-1] > f;j--)
+			{
+				fids[j] = fids[j-1];
+				vals[j] = vals[j-1];
+			}
+			fids[j] = f;
+			vals[j] = v;
+		}
+		int n = 0;
+		for(int i=0;i<nFeatures;i++)
+		{
+			if(n > 0 && fids[n-1] == fids[i])
+				n--;
+			fids[n] = fids[i];
+			vals[n++] = vals[i];
+		}
+		dp.fIds = Arrays.copyOf(fids, n);
+		dp.fVals = Arrays.copyOf(vals, n);
+		dp.knownFeatures = n;
+		return lastFeature;
+	}
+	private void setMetadata(DataPoint dp)
+	{
+		if(description != null)
+			dp.description = description;
+		dp.labels = getLabels();
+		dp.label = dp.labels[0];
+		dp.id = id;
+	}
+
+	/**
+	 * Parse one line into the fields of the parser (see nLabels, id, description, lastFeature and the kept (fid, value) pairs),
+	 * which stay valid until the next call.
+	 * @param buf
+	 * @param start
+	 * @param end
+	 * @param featureMask Features to keep (see DataPoint.featureMask()), or null to keep them all. The values of the others
+	 * are not parsed, and they are not part of the pairs (but they do count for @lastFeature).
+	 */
+	void scan(char[] buf, int start, int end, boolean[] featureMask)
+	{
+		description = null;
+		int hash = indexOf(buf, start, end, '#');
+		if(hash != -1)
+		{
+			description = new String(buf, hash, end-hash);
+			end = hash;
+			while(start < end && buf[start] <= ' ')
+				start++;
+			while(end > start && buf[end-1] <= ' ')
+				end--;
+		}
+		int p = skipSpaces(buf, start, end);
+
+		//label(s)
+		int tokenEnd = nextSpace(buf, p, end);
+		nLabels = 0;
+		int last = tokenEnd;//trailing empty labels are ignored (as String.split() does)
+		while(last > p && buf[last-1] == ',')
+			last--;
+		for(int s=p;;s++)
+		{
+			int e = indexOf(buf, s, last, ',');
+			if(e == -1)
+				e = last;
+			if(nLabels == labels.length)
+				labels = Arrays.copyOf(labels, labels.length*2);
+			labels[nLabels++] = parseFloat(buf, s, e);
+			if(e >= last)
+				break;
+			s = e;
+		}
+		if(labels[0] < 0)
+		{
+			System.out.println("Relevance label cannot be negative. System will now exit.");
+			System.exit(1);
+		}
+
+		//qid
+		p = skipSpaces(buf, tokenEnd, end);
+		if(p >= end)
+			throw RankLibError.create("Missing qid in: " + new String(buf, start, end-start));
+		tokenEnd = nextSpace(buf, p, end);
+		int idStart = lastIndexOf(buf, p, tokenEnd, ':') + 1;
+		id = new String(buf, idStart, tokenEnd-idStart);
+
+		//features
+		nFeatures = 0;
+		lastFeature = -1;
+		for(p=skipSpaces(buf, tokenEnd, end);p<end;p=skipSpaces(buf, tokenEnd, end))
+		{
+			tokenEnd = nextSpace(buf, p, end);
+			int colon = indexOf(buf, p, tokenEnd, ':');
+			if(colon == -1)
+				throw RankLibError.create("Invalid feature: " + new String(buf, p, tokenEnd-p));
+			int f = parseInt(buf, p, colon);
+			if(f <= 0) throw RankLibError.create("Cannot use feature numbering less than or equal to zero. Start your features at 1.");
+			if(f > lastFeature)
+				lastFeature = f;
+			if(featureMask != null && (f >= featureMask.length || !featureMask[f]))
+				continue;
+			float v = parseFloat(buf, lastIndexOf(buf, colon, tokenEnd, ':')+1, tokenEnd);
+			if(nFeatures == fids.length)
+			{
+				fids = Arrays.copyOf(fids, fids.length*2);
+				vals = Arrays.copyOf(vals, vals.length*2);
+			}
+			fids[nFeatures] = f;
+			vals[nFeatures++] = v;
+		}
+	}
+	/**
+	 * @return The label(s) found by the last scan().
+	 */
+	float[] getLabels()
+	{
+		return Arrays.copyOf(labels, nLabels);
+	}
+
+	private static boolean isSpace(char c)
+	{
+		//same as \s in regular expressions
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	private static int skipSpaces(char[] buf, int p, int end)
+	{
+		while(p < end && isSpace(buf[p]))
+			p++;
+		return p;
+	}
+	private static int nextSpace(char[] buf, int p, int end)
+	{
+		while(p < end && !isSpace(buf[p]))
+			p++;
+		return p;
+	}
+	private static int indexOf(char[] buf, int start, int end, char c)
+	{
+		for(int i=start;i<end;i++)
+			if(buf[i] == c)
+				return i;
+		return -1;
+	}
+	private static int lastIndexOf(char[] buf, int start, int end, char c)
+	{
+		for(int i=end-1;i>=start;i--)
+			if(buf[i] == c)
+				return i;
+		return start-1;
+	}
+
+	/**
+	 * Same as Integer.parseInt(new String(buf, start, end-start)).
+	 */
+	static int parseInt(char[] buf, int start, int end)
+	{
+		if(end - start > 0 && end - start <= 9)
+		{
+			int v = 0;
+			int i = start;
+			for(;i<end;i++)
+			{
+				char c = buf[i];
+				if(c < '0' || c > '9')
+					break;
+				v = v*10 + (c - '0');
+			}
+			if(i == end)
+				return v;
+		}
+		return Integer.parseInt(new String(buf, start, end-start));
+	}
+
+	/**
+	 * Same as Float.parseFloat(new String(buf, start, end-start)).
+	 *
+	 * Plain decimal numbers whose digits fit in 24 bits and whose decimal exponent is within [-10, 10] are converted with a
+	 * single float multiplication/division of two exact values, which is correctly rounded (Clinger's fast path). Everything
+	 * else goes through Float.parseFloat().
+	 */
+	static float parseFloat(char[] buf, int start, int end)
+	{
+		int i = start;
+		boolean negative = false;
+		if(i < end && (buf[i] == '-' || buf[i] == '+'))
+			negative = (buf[i++] == '-');
+		long m = 0;
+		int exp = 0;
+		int digits = 0;
+		boolean ok = true;
+		for(;i<end && buf[i] >= '0' && buf[i] <= '9';i++, digits++)
+		{
+			m = m*10 + (buf[i] - '0');
+			if(m > (1 << 24))
+				ok = false;
+		}
+		if(i < end && buf[i] == '.')
+		{
+			for(i++;i<end && buf[i] >= '0' && buf[i] <= '9';i++, digits++)
+			{
+				m = m*10 + (buf[i] - '0');
+				exp--;
+				if(m > (1 << 24))
+					ok = false;
+			}
+		}
+		if(i < end && digits > 0 && (buf[i] == 'e' || buf[i] == 'E'))
+		{
+			i++;
+			boolean negExp = false;
+			if(i < end && (buf[i] == '-' || buf[i] == '+'))
+				negExp = (buf[i++] == '-');
+			int e = 0;
+			int expDigits = 0;
+			for(;i<end && buf[i] >= '0' && buf[i] <= '9' && expDigits < 4;i++, expDigits++)
+				e = e*10 + (buf[i] - '0');
+			if(expDigits == 0)
+				ok = false;
+			exp += negExp ? -e : e;
+		}
+		if(ok && i == end && digits > 0 && exp >= -10 && exp <= 10)
+		{
+			float v = (exp >= 0) ? (float)m * POW10[exp] : (float)m / POW10[-exp];
+			return negative ? -v : v;
+		}
+		return Float.parseFloat(new String(buf, start, end-start));
+	}
+}
@@ -0,0 +1,86 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning;
+
+import java.util.List;
+
+/**
+ * A set of ranked lists (e.g. the content of a feature file) along with its number of features.
+ *
+ * The number of features belongs to the dataset rather than to the JVM (unlike the deprecated DataPoint.featureCount), so
+ * several datasets can be loaded at the same time, or live side by side, without getting in the way of each other.
+ * See DatasetBuilder for loading datasets from files.
+ */
+public class Dataset {
+
+	private String name = "";
+	private List<RankList> samples = null;
+	private int featureCount = 0;
+
+	/**
+	 * @param samples
+	 */
+	public Dataset(List<RankList> samples)
+	{
+		this("", samples);
+	}
+	/**
+	 * @param name Where the samples come from (e.g. the file name)
+	 * @param samples
+	 */
+	public Dataset(String name, List<RankList> samples)
+	{
+		this.name = name;
+		this.samples = samples;
+		featureCount = getFeatureCount(samples);
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+	public List<RankList> getRankLists()
+	{
+		return samples;
+	}
+	public int size()
+	{
+		return samples.size();
+	}
+	/**
+	 * @return The largest feature id specified in the dataset.
+	 */
+	public int getFeatureCount()
+	{
+		return featureCount;
+	}
+	/**
+	 * @return All feature ids of the dataset, i.e. 1..getFeatureCount().
+	 */
+	public int[] getFeatures()
+	{
+		int[] features = new int[featureCount];
+		for(int i=1;i<=featureCount;i++)
+			features[i-1] = i;
+		return features;
+	}
+
+	/**
+	 * @param samples
+	 * @return The largest feature id specified in @samples.
+	 */
+	public static int getFeatureCount(List<RankList> samples)
+	{
+		int fc = 0;
+		for(RankList rl : samples)
+			fc = Math.max(fc, rl.getFeatureCount());
+		return fc;
+	}
+}
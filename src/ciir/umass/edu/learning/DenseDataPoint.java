@@ -8,6 +8,19 @@ public class DenseDataPoint extends DataPoint {
 		super(text);
 	}
 	
+	public DenseDataPoint(char[] buf, int start, int end) {
+		super(buf, start, end);
+	}
+	
+	/**
+	 * A data point with no label or id, around the given feature values.
+	 * @param fVals fVals[fid] is the value of feature fid (fVals[0] is un-used)
+	 */
+	public DenseDataPoint(float[] fVals)
+	{
+		this.fVals = fVals;
+	}
+	
 	public DenseDataPoint(DenseDataPoint dp)
 	{
 		label = dp.label;
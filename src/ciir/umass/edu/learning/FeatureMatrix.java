@@ -0,0 +1,340 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning;
+
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Column-major (struct-of-arrays) storage for the feature values of an entire dataset: one contiguous float[] per feature,
+ * plus the label of each row and the boundaries of the ranked lists (i.e. qid groups).
+ *
+ * Rows are numbered in file order. The ranked lists returned by getRankLists() are thin views on this matrix: each of their
+ * DataPoint (see MatrixDataPoint) reads and writes its feature values directly from/to the columns, so learners can either
+ * keep using the DataPoint API or grab the columns for tight loops.
+ *
+ * Features that are not specified for a row are stored as 0, which is what DataPoint.getFeatureValue() returns for them anyway.
+ * Which of them were unspecified is remembered on the side (only for rows that have any) so the rows print out as they were read.
+ *
+ * A matrix can also hold a subset of the features only (see FeatureMatrix(List, int[])). Columns are still indexed by the
+ * original feature ids, with null columns for the features that were left out, so ids in models are unaffected. A null
+ * column is all there is to know about such a feature: it is unspecified on every row, without any per-row bookkeeping.
+ */
+public class FeatureMatrix {
+
+	protected int nRows = 0;
+	protected int nFeatures = 0;//the largest feature id in the dataset
+	protected float[][] columns = null;//columns[fid][row]. columns[0] is un-used since feature id MUST start from 1. Null for features left out
+	protected float[] labels = null;
+	protected int[] lastFeature = null;//the largest feature id specified on each row
+	protected BitSet[] unknown = null;//unknown[row] lists the unspecified features (< lastFeature[row]) of the row that have a column. It's null if the row has none
+	protected int[] columnsUpTo = null;//columnsUpTo[fid] is the number of non-null columns among 1..fid
+	protected int[] offsets = null;//rows of the i-th ranked list are [offsets[i], offsets[i+1])
+	protected List<RankList> rankLists = null;
+
+	/**
+	 * Copy the (dense) samples into a column-major matrix.
+	 * @param samples
+	 */
+	public FeatureMatrix(List<RankList> samples)
+	{
+		this(samples, null);
+	}
+	/**
+	 * Copy the specified features of the samples into a column-major matrix. The other features get no column and are
+	 * unspecified on every row.
+	 * @param samples
+	 * @param features Ids of the features to keep, or null for all of them
+	 */
+	public FeatureMatrix(List<RankList> samples, int[] features)
+	{
+		boolean[] mask = DataPoint.featureMask(features);
+		offsets = new int[samples.size()+1];
+		for(int i=0;i<samples.size();i++)
+		{
+			RankList rl = samples.get(i);
+			offsets[i+1] = offsets[i] + rl.size();
+			for(int j=0;j<rl.size();j++)
+			{
+				int last = rl.get(j).getLastFeature() - 1;
+				if(last > nFeatures)
+					nFeatures = last;
+			}
+		}
+		nRows = offsets[samples.size()];
+
+		labels = new float[nRows];
+		lastFeature = new int[nRows];
+		unknown = new BitSet[nRows];
+		columns = new float[nFeatures+1][];
+		for(int f=1;f<=nFeatures;f++)
+			if(mask == null || (f < mask.length && mask[f]))
+				columns[f] = new float[nRows];
+		countColumns();
+
+		rankLists = new ArrayList<>(samples.size());
+		for(int i=0;i<samples.size();i++)
+		{
+			RankList rl = samples.get(i);
+			List<DataPoint> views = new ArrayList<>(rl.size());
+			for(int j=0;j<rl.size();j++)
+			{
+				int row = offsets[i] + j;
+				DataPoint dp = rl.get(j);
+				float[] fVals = dp.getFeatureVector();
+				for(int f=1;f<fVals.length;f++)
+				{
+					if(columns[f] == null)
+						continue;//left out: the null column says it all
+					if(!DataPoint.isUnknown(fVals[f]))
+						columns[f][row] = fVals[f];
+					else
+					{
+						if(unknown[row] == null)
+							unknown[row] = new BitSet();
+						unknown[row].set(f);
+					}
+				}
+				labels[row] = dp.getLabel();
+				lastFeature[row] = fVals.length - 1;
+				views.add(new MatrixDataPoint(this, row, dp));
+			}
+			rankLists.add(new RankList(views, this, offsets[i]));
+		}
+	}
+	/**
+	 * Create a matrix from its raw content (e.g. as stored in a binary dataset file).
+	 * @param columns columns[fid][row], with columns[0] un-used
+	 * @param lastFeature The largest feature id specified on each row
+	 * @param unknown Unspecified features of each row, among those with a column (null entries for rows that have none). Can
+	 * be null if there is none at all.
+	 * @param offsets Rows of the i-th ranked list are [offsets[i], offsets[i+1])
+	 * @param labels The label(s) of each row
+	 * @param ids The id of each ranked list
+	 * @param descriptions The description of each row
+	 */
+	public FeatureMatrix(float[][] columns, int[] lastFeature, BitSet[] unknown, int[] offsets, float[][] labels, String[] ids, String[] descriptions)
+	{
+		this.columns = columns;
+		this.lastFeature = lastFeature;
+		this.unknown = (unknown != null) ? unknown : new BitSet[lastFeature.length];
+		this.offsets = offsets;
+		nRows = lastFeature.length;
+		nFeatures = columns.length - 1;
+		countColumns();
+		this.labels = new float[nRows];
+		for(int row=0;row<nRows;row++)
+			this.labels[row] = labels[row][0];
+
+		rankLists = new ArrayList<>(offsets.length-1);
+		for(int i=0;i<offsets.length-1;i++)
+		{
+			List<DataPoint> views = new ArrayList<>(offsets[i+1]-offsets[i]);
+			for(int row=offsets[i];row<offsets[i+1];row++)
+				views.add(new MatrixDataPoint(this, row, labels[row], ids[i], descriptions[row]));
+			rankLists.add(new RankList(views, this, offsets[i]));
+		}
+	}
+
+	/**
+	 * @return The ranked lists (in file order), whose data points are views on this matrix.
+	 */
+	public List<RankList> getRankLists()
+	{
+		return rankLists;
+	}
+	public int rowCount()
+	{
+		return nRows;
+	}
+	public int featureCount()
+	{
+		return nFeatures;
+	}
+	public int rankListCount()
+	{
+		return offsets.length - 1;
+	}
+	/**
+	 * @param rankList Index of a ranked list
+	 * @return The row of the first data point of the ranked list
+	 */
+	public int getOffset(int rankList)
+	{
+		return offsets[rankList];
+	}
+	/**
+	 * Get the contiguous column of values for a feature. Entry k is the value on row k.
+	 * @param fid
+	 * @return The column, or null if the feature is not present in the dataset.
+	 */
+	public float[] getColumn(int fid)
+	{
+		if(fid <= 0 || fid > nFeatures)
+			return null;
+		return columns[fid];
+	}
+	public float[] getLabels()
+	{
+		return labels;
+	}
+	public float getLabel(int row)
+	{
+		return labels[row];
+	}
+	public int getLastFeature(int row)
+	{
+		return lastFeature[row];
+	}
+	/**
+	 * @param row
+	 * @param fid
+	 * @return The value of the feature on the row, 0 if it's unspecified (see isUnknown()).
+	 */
+	public float getFeatureValue(int row, int fid)
+	{
+		if(fid <= 0 || fid > lastFeature[row])
+			throw RankLibError.create("Error in FeatureMatrix::getFeatureValue(): requesting unspecified feature, fid=" + fid);
+		return (columns[fid] != null) ? columns[fid][row] : 0;
+	}
+	public void setFeatureValue(int row, int fid, float fval)
+	{
+		if(fid <= 0 || fid > lastFeature[row] || columns[fid] == null)
+			throw RankLibError.create("Error in FeatureMatrix::setFeatureValue(): feature (id=" + fid + ") not found.");
+		columns[fid][row] = fval;
+		if(unknown[row] != null)
+			unknown[row].clear(fid);
+	}
+	/**
+	 * @param row
+	 * @param fid
+	 * @return Whether the feature is unspecified on the row, i.e. it was not given for the row or it was left out of the
+	 * matrix. getFeatureValue() reads such features as 0, and fails on the same ids as this method.
+	 */
+	public boolean isUnknown(int row, int fid)
+	{
+		if(fid <= 0 || fid > lastFeature[row])
+			throw RankLibError.create("Error in FeatureMatrix::isUnknown(): requesting unspecified feature, fid=" + fid);
+		return columns[fid] == null || (unknown[row] != null && unknown[row].get(fid));
+	}
+	/**
+	 * @param row
+	 * @return Number of features specified on the row.
+	 */
+	public int knownFeatureCount(int row)
+	{
+		int n = columnsUpTo[Math.max(0, lastFeature[row])];
+		return (unknown[row] != null) ? n - unknown[row].cardinality() : n;
+	}
+	private void countColumns()
+	{
+		columnsUpTo = new int[nFeatures+1];
+		for(int f=1;f<=nFeatures;f++)
+			columnsUpTo[f] = columnsUpTo[f-1] + ((columns[f] != null) ? 1 : 0);
+	}
+	/**
+	 * Check if every row in [begin, end) specifies a value (possibly an unknown one) for the feature, i.e. whether
+	 * DataPoint.getFeatureValue(fid) would succeed on all of them. Code working on columns directly should fall back to the
+	 * DataPoint API (and its error reporting) when this is not the case.
+	 * @param begin
+	 * @param end
+	 * @param fid
+	 * @return
+	 */
+	public boolean covers(int begin, int end, int fid)
+	{
+		if(getColumn(fid) == null)
+			return false;
+		for(int i=begin;i<end;i++)
+			if(lastFeature[i] < fid)
+				return false;
+		return true;
+	}
+	/**
+	 * Mark the feature as specified on rows [begin, end). To be called after writing into a column directly.
+	 * @param begin
+	 * @param end
+	 * @param fid
+	 */
+	public void markKnown(int begin, int end, int fid)
+	{
+		for(int i=begin;i<end;i++)
+			if(unknown[i] != null)
+				unknown[i].clear(fid);
+	}
+	/**
+	 * Keep only the specified features, in place: the columns of the other features are dropped, so they become unspecified
+	 * on every row, just as in a matrix built by FeatureMatrix(List, int[]). The data points of getRankLists() see the change.
+	 * @param featureMask featureMask[fid] is true iff the feature is to be kept (see DataPoint.featureMask())
+	 */
+	public void retainFeatures(boolean[] featureMask)
+	{
+		BitSet kept = new BitSet(nFeatures+1);
+		for(int f=1;f<=nFeatures;f++)
+		{
+			if(f >= featureMask.length || !featureMask[f])
+				columns[f] = null;
+			if(columns[f] != null)
+				kept.set(f);
+		}
+		for(int row=0;row<nRows;row++)
+			if(unknown[row] != null)
+			{
+				unknown[row].and(kept);//only features that have a column are listed
+				if(unknown[row].isEmpty())
+					unknown[row] = null;
+			}
+		countColumns();
+		for(RankList rl : rankLists)
+			for(int j=0;j<rl.size();j++)
+				rl.get(j).knownFeatures = knownFeatureCount(rl.getMatrixOffset()+j);
+	}
+
+	/**
+	 * Get the values of the specified features over a set of data points, one contiguous array per feature (i.e. the output
+	 * is indexed [feature][point]). If the points are exactly the rows of a feature matrix (in order), its columns are returned
+	 * as is. Otherwise, the values are gathered into new arrays, reading straight from the matrix whenever possible.
+	 *
+	 * The result is read-only: since its arrays may be the columns of the matrix, writing into them would change the data
+	 * points themselves, without the bookkeeping of unspecified features. Use DataPoint.setFeatureValue() (or copy the
+	 * arrays) instead.
+	 * @param points
+	 * @param fids
+	 * @return Read-only values of each feature.
+	 */
+	public static float[][] getColumns(DataPoint[] points, int[] fids)
+	{
+		float[][] values = new float[fids.length][];
+
+		FeatureMatrix m = null;
+		if(points.length > 0 && points[0] instanceof MatrixDataPoint)
+			m = ((MatrixDataPoint)points[0]).matrix;
+		boolean identity = (m != null && m.nRows == points.length);
+		for(int i=0;i<points.length && identity;i++)
+			identity = (points[i] instanceof MatrixDataPoint) && ((MatrixDataPoint)points[i]).matrix == m && ((MatrixDataPoint)points[i]).row == i;
+
+		for(int f=0;f<fids.length;f++)
+		{
+			if(identity && m.getColumn(fids[f]) != null)
+			{
+				values[f] = m.getColumn(fids[f]);
+				continue;
+			}
+			float[] v = new float[points.length];
+			for(int i=0;i<points.length;i++)
+				v[i] = points[i].getFeatureValue(fids[f]);
+			values[f] = v;
+		}
+		return values;
+	}
+}
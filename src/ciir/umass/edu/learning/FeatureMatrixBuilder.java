@@ -0,0 +1,284 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning;
+
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Builds a FeatureMatrix from the lines of a feature file as they are parsed: feature values go straight from the parser
+ * (see DataPointParser.scan()) into growable columns, so no DataPoint is ever created for them. Loading a file then takes
+ * about the memory of the final matrix, instead of the memory of all its data points plus the matrix they are copied into.
+ *
+ * Consecutive lines with the same id make up a ranked list, as in FeatureManager.readInput(). Large files can be split
+ * into parts (made of whole ranked lists) that are built separately, e.g. on different threads, and then put together with
+ * build(List).
+ */
+public class FeatureMatrixBuilder {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private boolean[] featureMask = null;
+	private int[] kept = null;//ids of the features in @featureMask, in ascending order
+	private boolean mustHaveRelDoc = false;
+
+	private int nRows = 0;
+	private int capacity = 0;//number of rows the arrays below have room for
+	private int nFeatures = 0;//the largest feature id so far (in ranked lists that are skipped too)
+	private float[][] columns = new float[1][];//columns[fid][row]. Null for features that have no value yet
+	private int[] lastFeature = new int[0];
+	private BitSet[] unknown = new BitSet[0];
+	private float[][] labels = new float[0][];
+	private String[] descriptions = new String[0];
+	private int[] seen = new int[1];//seen[fid] is the number of the last line the feature was found on (to tell duplicates apart)
+
+	//rows of the i-th ranked list are [listStart[i], listStart[i+1]) (the last one is still open: it ends at @nRows)
+	private int nLists = 0;
+	private int[] listStart = new int[16];
+	private String[] ids = new String[16];
+	private boolean hasRel = false;//whether the open ranked list has a relevant document
+	private String lastID = null;//id of the last line, whether its ranked list is kept or not
+	private int countEntries = 0;
+
+	/**
+	 * @param featureMask Features to keep (see DataPoint.featureMask()), or null for all of them
+	 * @param mustHaveRelDoc Skip ranked lists without any relevant document
+	 */
+	public FeatureMatrixBuilder(boolean[] featureMask, boolean mustHaveRelDoc)
+	{
+		this.featureMask = featureMask;
+		this.mustHaveRelDoc = mustHaveRelDoc;
+		if(featureMask != null)
+		{
+			int n = 0;
+			kept = new int[featureMask.length];
+			for(int f=1;f<featureMask.length;f++)
+				if(featureMask[f])
+					kept[n++] = f;
+			kept = Arrays.copyOf(kept, n);
+		}
+	}
+
+	/**
+	 * Parse a line (same format as DataPoint(String)) and add it as a new row.
+	 * @param buf
+	 * @param start
+	 * @param end
+	 */
+	public void add(char[] buf, int start, int end)
+	{
+		DataPointParser p = DataPointParser.get();
+		try {
+			p.scan(buf, start, end, featureMask);
+		}
+		catch(Exception ex)
+		{
+			throw RankLibError.create("Error in FeatureMatrixBuilder::add(): ", ex);
+		}
+		if(lastID == null || lastID.compareTo(p.id) != 0)
+		{
+			closeList();
+			if(nLists == ids.length)
+			{
+				ids = Arrays.copyOf(ids, nLists*2);
+				listStart = Arrays.copyOf(listStart, nLists*2+1);
+			}
+			ids[nLists] = p.id;
+			listStart[nLists++] = nRows;
+			hasRel = false;
+		}
+		lastID = p.id;
+		countEntries++;
+
+		if(nRows == capacity)
+			grow();
+		if(p.lastFeature > nFeatures)
+		{
+			nFeatures = p.lastFeature;
+			columns = Arrays.copyOf(columns, nFeatures+1);
+			seen = Arrays.copyOf(seen, nFeatures+1);
+		}
+		int row = nRows++;
+		labels[row] = p.getLabels();
+		descriptions[row] = (p.description != null) ? p.description : "";
+		lastFeature[row] = p.lastFeature;
+		if(labels[row][0] > 0)
+			hasRel = true;
+
+		int known = 0;
+		for(int i=0;i<p.nFeatures;i++)
+		{
+			int f = p.fids[i];
+			if(columns[f] == null)
+				columns[f] = new float[capacity];
+			columns[f][row] = p.vals[i];//in case of duplicates, the last one wins
+			if(seen[f] != countEntries)
+			{
+				seen[f] = countEntries;
+				known++;
+			}
+		}
+		//features not given on the line are unspecified. Those left out get no column, which says it all: they take no room here
+		if(kept != null)
+		{
+			for(int i=0;i<kept.length && kept[i]<=p.lastFeature;i++)
+				if(seen[kept[i]] != countEntries)
+				{
+					if(unknown[row] == null)
+						unknown[row] = new BitSet(p.lastFeature+1);
+					unknown[row].set(kept[i]);
+				}
+		}
+		else if(known < p.lastFeature)
+		{
+			unknown[row] = new BitSet(p.lastFeature+1);
+			unknown[row].set(1, p.lastFeature+1);
+			for(int i=0;i<p.nFeatures;i++)
+				unknown[row].clear(p.fids[i]);
+		}
+	}
+
+	/**
+	 * @return Number of lines added so far (including those of ranked lists that are skipped).
+	 */
+	public int getEntryCount()
+	{
+		return countEntries;
+	}
+	/**
+	 * @return Number of ranked lists so far.
+	 */
+	public int getRankListCount()
+	{
+		return nLists;
+	}
+
+	private void grow()
+	{
+		capacity = Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1));
+		for(int f=1;f<columns.length;f++)
+			if(columns[f] != null)
+				columns[f] = Arrays.copyOf(columns[f], capacity);
+		lastFeature = Arrays.copyOf(lastFeature, capacity);
+		unknown = Arrays.copyOf(unknown, capacity);
+		labels = Arrays.copyOf(labels, capacity);
+		descriptions = Arrays.copyOf(descriptions, capacity);
+	}
+
+	/**
+	 * Drop the open ranked list if it has to have a relevant document and it doesn't: its rows are re-used.
+	 */
+	private void closeList()
+	{
+		if(nLists == 0 || !mustHaveRelDoc || hasRel)
+			return;
+		int from = listStart[--nLists];
+		for(int f=1;f<columns.length;f++)
+			if(columns[f] != null)
+				Arrays.fill(columns[f], from, nRows, 0);
+		Arrays.fill(unknown, from, nRows, null);
+		Arrays.fill(labels, from, nRows, null);
+		Arrays.fill(descriptions, from, nRows, null);
+		nRows = from;
+	}
+
+	/**
+	 * @return The matrix of all the lines added. The builder can't be used anymore afterwards.
+	 */
+	public FeatureMatrix build()
+	{
+		List<FeatureMatrixBuilder> parts = new ArrayList<>(1);
+		parts.add(this);
+		return build(parts);
+	}
+
+	/**
+	 * Put the parts of a file together, in order. Each column is copied from all parts at once and then released from them,
+	 * so that the parts and the matrix don't take twice the memory. The builders can't be used anymore afterwards.
+	 * @param parts Builders with the same settings, each with whole ranked lists
+	 * @return The matrix of all the lines added to @parts.
+	 */
+	public static FeatureMatrix build(List<FeatureMatrixBuilder> parts)
+	{
+		int nRows = 0;
+		int nLists = 0;
+		int nFeatures = 0;//of the rows that are kept
+		int maxFeature = 0;
+		for(FeatureMatrixBuilder b : parts)
+		{
+			b.closeList();
+			nRows += b.nRows;
+			nLists += b.nLists;
+			for(int i=0;i<b.nRows;i++)
+				nFeatures = Math.max(nFeatures, b.lastFeature[i]);
+			maxFeature = Math.max(maxFeature, b.nFeatures);
+		}
+		boolean[] mask = parts.isEmpty() ? null : parts.get(0).featureMask;
+
+		float[][] columns = new float[nFeatures+1][];
+		for(int f=1;f<=nFeatures;f++)
+		{
+			if(mask != null && (f >= mask.length || !mask[f]))
+				continue;
+			FeatureMatrixBuilder first = parts.get(0);
+			if(parts.size() == 1 && f < first.columns.length && first.columns[f] != null && first.capacity == nRows)
+				columns[f] = first.columns[f];//exactly the right size already
+			else
+			{
+				columns[f] = new float[nRows];
+				int row = 0;
+				for(FeatureMatrixBuilder b : parts)
+				{
+					if(f < b.columns.length && b.columns[f] != null)
+						System.arraycopy(b.columns[f], 0, columns[f], row, b.nRows);
+					row += b.nRows;
+				}
+			}
+			for(FeatureMatrixBuilder b : parts)
+				if(f < b.columns.length)
+					b.columns[f] = null;
+		}
+
+		int[] lastFeature = new int[nRows];
+		BitSet[] unknown = new BitSet[nRows];
+		float[][] labels = new float[nRows][];
+		String[] descriptions = new String[nRows];
+		int[] offsets = new int[nLists+1];
+		String[] ids = new String[nLists];
+		int row = 0;
+		int list = 0;
+		for(FeatureMatrixBuilder b : parts)
+		{
+			System.arraycopy(b.lastFeature, 0, lastFeature, row, b.nRows);
+			System.arraycopy(b.unknown, 0, unknown, row, b.nRows);
+			System.arraycopy(b.labels, 0, labels, row, b.nRows);
+			System.arraycopy(b.descriptions, 0, descriptions, row, b.nRows);
+			for(int i=0;i<b.nLists;i++)
+			{
+				offsets[list] = row + b.listStart[i];
+				ids[list++] = b.ids[i];
+			}
+			row += b.nRows;
+			b.columns = null;
+			b.lastFeature = null;
+			b.unknown = null;
+			b.labels = null;
+			b.descriptions = null;
+		}
+		offsets[nLists] = nRows;
+
+		DataPoint.updateFeatureCount(maxFeature);//kept up to date for code that still relies on it, as when parsing data points
+		return new FeatureMatrix(columns, lastFeature, unknown, offsets, labels, ids, descriptions);
+	}
+}
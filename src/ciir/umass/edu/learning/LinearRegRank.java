@@ -15,7 +15,9 @@ import ciir.umass.edu.utilities.RankLibError;
 import ciir.umass.edu.utilities.SimpleMath;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.StringReader;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -49,7 +51,7 @@ public class LinearRegRank extends Ranker {
 		/*int nSample = 0;
 		for(int i=0;i<samples.size();i++)
 			nSample += samples.get(i).size();*/
-		int nVar = DataPoint.getFeatureCount();
+		int nVar = Dataset.getFeatureCount(samples);
 		
 		double[][] xTx = new double[nVar][];
 		for(int i=0;i<nVar;i++)
@@ -107,23 +109,31 @@ public class LinearRegRank extends Ranker {
 			score += weight[i] * p.getFeatureValue(features[i]);
 		return score;
 	}
+	public boolean usesSelectedFeaturesOnly()
+	{
+		return false;//learn() reads features 1..(feature count of the training data)-1 whatever the selection
+	}
 	public Ranker createNew()
 	{
 		return new LinearRegRank();
 	}
 	public String toString()
 	{
-		String output = "0:" + weight[0] + " ";		
+		StringBuilder output = new StringBuilder();
+		output.append("0:" + weight[0] + " ");
 		for(int i=0;i<features.length;i++)
-			output += features[i] + ":" + weight[i] + ((i==weight.length-1)?"":" ");
-		return output;
+			output.append(features[i] + ":" + weight[i] + ((i==weight.length-1)?"":" "));
+		return output.toString();
 	}
 	public String model()
 	{
-		String output = "## " + name() + "\n";
-		output += "## Lambda = " + lambda + "\n";
-		output += toString();
-		return output;
+		return writeModelToString();
+	}
+	public void writeModel(Writer out) throws IOException
+	{
+		out.write("## " + name() + "\n");
+		out.write("## Lambda = " + lambda + "\n");
+		out.write(toString());
 	}
   @Override
 	public void loadFromString(String fullText)
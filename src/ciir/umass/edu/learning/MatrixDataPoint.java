@@ -0,0 +1,117 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning;
+
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.util.BitSet;
+
+/**
+ * A data point whose feature values live in a row of a FeatureMatrix (see FeatureMatrix.getRankLists()).
+ * Labels, id and description are kept on the object itself, just like for the other DataPoint implementations.
+ */
+public class MatrixDataPoint extends DataPoint {
+
+	protected FeatureMatrix matrix = null;
+	protected int row = -1;
+
+	/**
+	 * @param matrix
+	 * @param row
+	 * @param dp The data point the row was built from. Its metadata (label(s), id, description) is shared with this view.
+	 */
+	public MatrixDataPoint(FeatureMatrix matrix, int row, DataPoint dp)
+	{
+		this.matrix = matrix;
+		this.row = row;
+		label = dp.label;
+		labels = dp.labels;
+		id = dp.id;
+		description = dp.description;
+		cached = dp.cached;
+		knownFeatures = matrix.knownFeatureCount(row);
+	}
+	public MatrixDataPoint(FeatureMatrix matrix, int row, float[] labels, String id, String description)
+	{
+		this.matrix = matrix;
+		this.row = row;
+		this.labels = labels;
+		label = labels[0];
+		this.id = id;
+		this.description = description;
+		knownFeatures = matrix.knownFeatureCount(row);
+	}
+
+	public FeatureMatrix getFeatureMatrix()
+	{
+		return matrix;
+	}
+	public int getRow()
+	{
+		return row;
+	}
+
+	@Override
+	public float getFeatureValue(int fid)
+	{
+		if(fid <= 0 || fid > matrix.lastFeature[row])
+		{
+			throw RankLibError.create("Error in MatrixDataPoint::getFeatureValue(): requesting unspecified feature, fid=" + fid);
+		}
+		float[] column = matrix.columns[fid];
+		return (column != null) ? column[row] : 0;//value for unspecified feature is stored as 0 (features left out of the matrix have no column)
+	}
+
+	@Override
+	public void setFeatureValue(int fid, float fval)
+	{
+		if(fid <= 0 || fid > matrix.lastFeature[row])
+		{
+			throw RankLibError.create("Error in MatrixDataPoint::setFeatureValue(): feature (id=" + fid + ") not found.");
+		}
+		matrix.setFeatureValue(row, fid, fval);
+	}
+
+	@Override
+	public void setFeatureVector(float[] dfVals) {
+		if(dfVals.length - 1 > matrix.lastFeature[row])
+			throw RankLibError.create("Error in MatrixDataPoint::setFeatureVector(): the matrix row can only hold " + matrix.lastFeature[row] + " features.");
+		for(int f=1;f<=matrix.lastFeature[row];f++)
+		{
+			if(f < dfVals.length && !isUnknown(dfVals[f]))
+				matrix.setFeatureValue(row, f, dfVals[f]);
+			else if(matrix.columns[f] != null)//features left out of the matrix are unspecified already
+			{
+				matrix.columns[f][row] = 0;
+				if(matrix.unknown[row] == null)
+					matrix.unknown[row] = new BitSet();
+				matrix.unknown[row].set(f);
+			}
+		}
+	}
+
+	/**
+	 * Gets a copy of the row as a dense array of feature values. Unspecified features are reported as unknown (NaN).
+	 */
+	@Override
+	public float[] getFeatureVector() {
+		float[] fVals = new float[matrix.lastFeature[row]+1];
+		if(fVals.length > 0)
+			fVals[0] = UNKNOWN;
+		for(int f=1;f<fVals.length;f++)
+			fVals[f] = matrix.isUnknown(row, f) ? UNKNOWN : matrix.columns[f][row];
+		return fVals;
+	}
+
+	@Override
+	public int getLastFeature() {
+		return matrix.lastFeature[row] + 1;//same convention as DataPoint (i.e. the length of the dense feature vector)
+	}
+}
@@ -21,6 +21,8 @@ import ciir.umass.edu.utilities.Sorter;
 public class RankList {
 
 	protected DataPoint[] rl = null;
+	protected FeatureMatrix matrix = null;//if not null, rl[i] is row (offset+i) of this matrix
+	protected int offset = 0;
 	
 	public RankList(List<DataPoint> rl)
 	{
@@ -28,11 +30,25 @@ public class RankList {
 		for(int i=0;i<rl.size();i++)
 			this.rl[i] = rl.get(i);
 	}
+	/**
+	 * A ranked list whose data points are the rows [offset, offset+rl.size()) of the feature matrix.
+	 * @param rl
+	 * @param matrix
+	 * @param offset
+	 */
+	public RankList(List<DataPoint> rl, FeatureMatrix matrix, int offset)
+	{
+		this(rl);
+		this.matrix = matrix;
+		this.offset = offset;
+	}
 	public RankList(RankList rl)
 	{
 		this.rl = new DataPoint[rl.size()];
 		for(int i=0;i<rl.size();i++)
 			this.rl[i] = rl.get(i);
+		matrix = rl.matrix;
+		offset = rl.offset;
 	}
 	public RankList(RankList rl, int[] idx)
 	{
@@ -61,6 +77,43 @@ public class RankList {
 	public void set(int k, DataPoint p)
 	{
 		rl[k] = p;
+		matrix = null;//the list is no longer a contiguous block of the matrix
+	}
+	/**
+	 * @return The largest feature id specified for the data points of this list.
+	 */
+	public int getFeatureCount()
+	{
+		int fc = 0;
+		for(int i=0;i<rl.length;i++)
+			fc = Math.max(fc, rl[i].getMaxFeature());
+		return fc;
+	}
+	/**
+	 * @return The feature matrix holding the data points of this list (in this order), or null if there is none.
+	 */
+	public FeatureMatrix getFeatureMatrix()
+	{
+		return matrix;
+	}
+	/**
+	 * @return The row of the first data point of this list in its feature matrix.
+	 */
+	public int getMatrixOffset()
+	{
+		return offset;
+	}
+	/**
+	 * Get the column of the given feature in the feature matrix of this list. The values of the list's data points are at
+	 * [getMatrixOffset(), getMatrixOffset()+size()).
+	 * @param fid
+	 * @return The column, or null if the list is not backed by a feature matrix or some of its data points do not have the feature.
+	 */
+	public float[] getFeatureColumn(int fid)
+	{
+		if(matrix == null || !matrix.covers(offset, offset+rl.length, fid))
+			return null;
+		return matrix.getColumn(fid);
 	}
 	public RankList getCorrectRanking()
 	{
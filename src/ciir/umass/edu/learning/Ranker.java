@@ -11,8 +11,19 @@
 package ciir.umass.edu.learning;
 
 import ciir.umass.edu.metric.MetricScorer;
-import ciir.umass.edu.utilities.FileUtils;
 import ciir.umass.edu.utilities.MergeSorter;
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -39,6 +50,11 @@ import java.nio.file.attribute.PosixFilePermissions;
  */
 public abstract class Ranker {
 	public static boolean verbose = true;
+	public static boolean binaryModels = false;//save models in binary (rankers which have no binary format save them as text)
+	
+	//Binary models start with these, then the name of the ranker (see saveBinary())
+	public static final byte[] BINARY_MAGIC = {'R', 'L', 'B', 'M'};
+	public static final int BINARY_VERSION = 1;
 
 	protected List<RankList> samples = new ArrayList<RankList>();//training samples
 	protected int[] features = null;
@@ -95,8 +111,7 @@ public abstract class Ranker {
 	public RankList rank(RankList rl)
 	{
 		double[] scores = new double[rl.size()];
-		for(int i=0;i<rl.size();i++)
-			scores[i] = eval(rl.get(i));
+		scoreBatch(rl, scores);
 		int[] idx = MergeSorter.sort(scores, false);
 		return new RankList(rl, idx);
 	}
@@ -127,7 +142,60 @@ public abstract class Ranker {
 		     }         
                 }
             
-		FileUtils.write(modelFile, "ASCII", model());
+		if(binaryModels && hasBinaryModel())
+			saveBinary(modelFile);
+		else
+		{
+			try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(modelFile), "ASCII"))) {
+				writeModel(out);
+			}
+			catch(IOException ex)
+			{
+				throw RankLibError.create("Error in Ranker::save(): ", ex);
+			}
+		}
+	}
+	/**
+	 * Write the model as text (the same text as model()). Rankers whose models can be large override this to write them
+	 * piece by piece, and implement model() with writeModelToString().
+	 * @param out
+	 */
+	public void writeModel(Writer out) throws IOException
+	{
+		out.write(model());
+	}
+	/**
+	 * @return What writeModel() writes.
+	 */
+	protected String writeModelToString()
+	{
+		StringWriter out = new StringWriter();
+		try {
+			writeModel(out);
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create(ex);
+		}
+		return out.toString();
+	}
+	/**
+	 * Save the model in binary: BINARY_MAGIC, BINARY_VERSION, name(), then whatever writeBinaryModel() writes. Binary
+	 * models are smaller and much faster to load than text ones (see RankerFactory.loadRankerFromFile()).
+	 * @param modelFile
+	 */
+	public void saveBinary(String modelFile)
+	{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(modelFile)))) {
+			out.write(BINARY_MAGIC);
+			out.writeInt(BINARY_VERSION);
+			out.writeUTF(name());
+			writeBinaryModel(out);
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in Ranker::saveBinary(): ", ex);
+		}
 	}
 	
 	protected void PRINT(String msg)
@@ -189,6 +257,90 @@ public abstract class Ranker {
 	{
 		return -1.0;
 	}
+	/**
+	 * Score all documents of a ranked list at once. Rankers that score many documents faster than one at a time (e.g. tree
+	 * ensembles, which go through each block of trees once per block of documents) override this.
+	 * @param rl
+	 * @param out [Output] The score of each document of @rl (the same as eval())
+	 */
+	public void scoreBatch(RankList rl, double[] out)
+	{
+		for(int i=0;i<rl.size();i++)
+			out[i] = eval(rl.get(i));
+	}
+	/**
+	 * Same as scoreBatch(RankList, double[]), on documents given as rows of feature values (see toRows()).
+	 * @param rows rows[i][fid] is the value of feature fid for document i (rows[i][0] is un-used). Rows must go up to the
+	 * largest feature used by the ranker.
+	 * @param out [Output]
+	 */
+	public void scoreBatch(float[][] rows, double[] out)
+	{
+		for(int i=0;i<rows.length;i++)
+			out[i] = eval(new DenseDataPoint(rows[i]));
+	}
+	/**
+	 * @param rl
+	 * @param features
+	 * @return Rows for scoreBatch() with the values of @features for each document of @rl (features beyond the last one of a
+	 * document are taken as unspecified, i.e. 0).
+	 */
+	public static float[][] toRows(RankList rl, int[] features)
+	{
+		int maxFeature = 0;
+		for(int i=0;i<features.length;i++)
+			maxFeature = Math.max(maxFeature, features[i]);
+		float[][] rows = new float[rl.size()][];
+		for(int j=0;j<rl.size();j++)
+		{
+			DataPoint dp = rl.get(j);
+			int last = dp.getMaxFeature();
+			rows[j] = new float[maxFeature+1];
+			for(int i=0;i<features.length;i++)
+				if(features[i] <= last)
+					rows[j][features[i]] = dp.getFeatureValue(features[i]);
+		}
+		return rows;
+	}
+	/**
+	 * @return Whether the ranker has a binary model format (see writeBinaryModel() and loadBinaryModel()).
+	 */
+	public boolean hasBinaryModel()
+	{
+		return false;
+	}
+	/**
+	 * Write the model in binary (rankers which have a binary format have to override this and loadBinaryModel()).
+	 * @param out
+	 */
+	protected void writeBinaryModel(DataOutput out) throws IOException
+	{
+		throw RankLibError.create(name() + " has no binary model format.");
+	}
+	/**
+	 * Load a model written by writeBinaryModel() (the counterpart of loadFromString()).
+	 * @param in
+	 */
+	public void loadBinaryModel(DataInput in) throws IOException
+	{
+		throw RankLibError.create(name() + " has no binary model format.");
+	}
+	/**
+	 * @return Whether eval() can be called from several threads at once. Rankers whose eval() uses internal buffers (or
+	 * changes the ranker in any other way) have to override this.
+	 */
+	public boolean isThreadSafe()
+	{
+		return true;
+	}
+	/**
+	 * @return Whether the ranker only looks at the features it is given (see setFeatures()), so that the other ones do not
+	 * have to be loaded at all. Rankers that address features by position have to override this.
+	 */
+	public boolean usesSelectedFeaturesOnly()
+	{
+		return true;
+	}
 
   public abstract Ranker createNew();
   public abstract String toString();
@@ -21,8 +21,13 @@ import ciir.umass.edu.metric.MetricScorer;
 import ciir.umass.edu.utilities.FileUtils;
 import ciir.umass.edu.utilities.RankLibError;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.StringReader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -109,9 +114,31 @@ public class RankerFactory {
 		r.setMetricScorer(scorer);
 		return r;
 	}
+	/**
+	 * @param modelFile A model saved either as text or in binary (see Ranker.saveBinary())
+	 * @return
+	 */
 	public Ranker loadRankerFromFile(String modelFile)
 	{
-    return loadRankerFromString(FileUtils.read(modelFile, "ASCII"));
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(modelFile)))) {
+			byte[] magic = new byte[Ranker.BINARY_MAGIC.length];
+			if(in.read(magic) == magic.length && Arrays.equals(magic, Ranker.BINARY_MAGIC))
+			{
+				int version = in.readInt();
+				if(version != Ranker.BINARY_VERSION)
+					throw RankLibError.create("Error in RankerFactory::loadRankerFromFile(): unsupported binary model version " + version + " in " + modelFile);
+				String name = in.readUTF();
+				System.out.println("Model:\t\t" + name);
+				Ranker r = createRanker(map.get(name.toUpperCase()));
+				r.loadBinaryModel(in);
+				return r;
+			}
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in RankerFactory::loadRankerFromFile(): ", ex);
+		}
+		return loadRankerFromString(FileUtils.read(modelFile, "ASCII"));
 	}
   public Ranker loadRankerFromString(String fullText)
   {
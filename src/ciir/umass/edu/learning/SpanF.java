@@ -348,6 +348,10 @@ public class SpanF extends CoorAscent {
             wids[i] = l.get(i);
         return wids;
     }
+    public boolean usesSelectedFeaturesOnly()
+    {
+        return false;  // fields are laid out by position
+    }
     double getDistance(double[] w1, double[] w2)
     {
         assert(w1.length == w2.length);
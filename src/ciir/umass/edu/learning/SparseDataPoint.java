@@ -9,6 +9,8 @@
 
 package ciir.umass.edu.learning;
 
+import ciir.umass.edu.utilities.RankLibError;
+
 import java.util.Arrays;
 
 /**
@@ -39,6 +41,53 @@ public class SparseDataPoint extends DataPoint {
 		super(text);
 	}
 
+	public SparseDataPoint(char[] buf, int start, int end) {
+		super(buf, start, end);
+	}
+
+	/**
+	 * Same as SparseDataPoint(char[], int, int), keeping only the features in @featureMask (see DataPoint.featureMask()):
+	 * the others are left unspecified, and take no memory.
+	 * @param buf
+	 * @param start
+	 * @param end
+	 * @param featureMask
+	 */
+	public SparseDataPoint(char[] buf, int start, int end, boolean[] featureMask) {
+		if(featureMask == null)
+		{
+			setFeatureVector(parse(buf, start, end));
+			return;
+		}
+		int lastFeature;
+		try {
+			lastFeature = DataPointParser.get().parse(this, buf, start, end, featureMask);
+		}
+		catch(Exception ex)
+		{
+			throw RankLibError.create("Error in SparseDataPoint::SparseDataPoint()", ex);
+		}
+		updateFeatureCount(lastFeature);//same as when parsing all features
+	}
+
+	/**
+	 * @param labels
+	 * @param id
+	 * @param description
+	 * @param fIds Ids of the known features (in ascending order)
+	 * @param fVals Their values
+	 */
+	public SparseDataPoint(float[] labels, String id, String description, int[] fIds, float[] fVals)
+	{
+		this.labels = labels;
+		label = labels[0];
+		this.id = id;
+		this.description = description;
+		this.fIds = fIds;
+		this.fVals = fVals;
+		knownFeatures = fIds.length;
+	}
+
 	public SparseDataPoint(SparseDataPoint dp)
  	{
 		label = dp.label;
@@ -84,7 +133,7 @@ public class SparseDataPoint extends DataPoint {
 	public float getFeatureValue(int fid)
 	{
 		//long time = System.nanoTime();
-		if(fid <= 0 || fid > getFeatureCount())
+		if(fid <= 0)//there is no upper bound: features beyond the last known one are unspecified
 		{
 			System.out.println("Error in SparseDataPoint::getFeatureValue(): requesting invalid feature, fid=" + fid);
 			System.exit(1);
@@ -102,7 +151,7 @@ public class SparseDataPoint extends DataPoint {
 	@Override
 	public void setFeatureValue(int fid, float fval) 
 	{
-		if(fid <= 0 || fid > getFeatureCount())
+		if(fid <= 0)
 		{
 			System.out.println("Error in SparseDataPoint::setFeatureValue(): feature (id=" + fid + ") out of range.");
 			System.exit(1);
@@ -135,10 +184,39 @@ public class SparseDataPoint extends DataPoint {
 		assert(pos == knownFeatures);
 	}	
 	
+	/**
+	 * Keep only the specified features, in place (see DataPoint.featureMask()). The others become unspecified.
+	 * @param featureMask
+	 */
+	public void retainFeatures(boolean[] featureMask)
+	{
+		int n = 0;
+		for(int i=0;i<knownFeatures;i++)
+			if(fIds[i] < featureMask.length && featureMask[fIds[i]])
+			{
+				fIds[n] = fIds[i];
+				fVals[n++] = fVals[i];
+			}
+		if(n < knownFeatures)
+		{
+			fIds = Arrays.copyOf(fIds, n);
+			fVals = Arrays.copyOf(fVals, n);
+			knownFeatures = n;
+			lastMinId = -1;
+			lastMinPos = -1;
+		}
+	}
+
+	@Override
+	public int getMaxFeature()
+	{
+		return (knownFeatures > 0) ? fIds[knownFeatures-1] : 0;
+	}
+
 	@Override
 	public float[] getFeatureVector()
 	{
-		float[] dfVals = new float[fIds[knownFeatures -1]];
+		float[] dfVals = new float[(knownFeatures > 0) ? fIds[knownFeatures-1]+1 : 1];
 		Arrays.fill(dfVals, UNKNOWN);
 		for (int i=0; i<knownFeatures; i++)
 			dfVals[fIds[i]] = fVals[i];
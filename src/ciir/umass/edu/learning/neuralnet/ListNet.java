@@ -17,7 +17,9 @@ import ciir.umass.edu.utilities.RankLibError;
 import ciir.umass.edu.utilities.SimpleMath;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.StringReader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -166,19 +168,20 @@ public class ListNet extends RankNet {
 	}
 	public String model()
 	{
-		String output = "## " + name() + "\n";
-		output += "## Epochs = " + nIteration + "\n";
-		output += "## No. of features = " + features.length + "\n";
+		return writeModelToString();
+	}
+	public void writeModel(Writer out) throws IOException
+	{
+		out.write("## " + name() + "\n");
+		out.write("## Epochs = " + nIteration + "\n");
+		out.write("## No. of features = " + features.length + "\n");
 		
 		//print used features
-		for(int i=0;i<features.length;i++)
-			output += features[i] + ((i==features.length-1)?"":" ");
-		output += "\n";
+		writeFeatures(out);
 		//print network information
-		output += "0\n";//[# hidden layers, *ALWAYS* 0 since we're using linear net]
+		out.write("0\n");//[# hidden layers, *ALWAYS* 0 since we're using linear net]
 		//print learned weights
-		output += toString();
-		return output;
+		writeWeights(out);
 	}
   @Override
 	public void loadFromString(String fullText)
@@ -17,7 +17,10 @@ import ciir.umass.edu.utilities.RankLibError;
 import ciir.umass.edu.utilities.SimpleMath;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -368,46 +371,77 @@ public class RankNet extends Ranker {
 			layers.get(k).computeOutput();		
 		return outputLayer.get(0).getOutput();
 	}	
+	public boolean isThreadSafe()
+	{
+		return false;//eval() goes through the outputs of the neurons
+	}
 	public Ranker createNew()
 	{
 		return new RankNet();
 	}
 	public String toString()
 	{
-		String output = "";
+		StringWriter out = new StringWriter();
+		try {
+			writeWeights(out);
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create(ex);
+		}
+		return out.toString();
+	}
+	/**
+	 * Write the learned weights, one line per neuron (that has out links): [layer] [neuron] [weights...]
+	 * @param out
+	 * @throws IOException
+	 */
+	protected void writeWeights(Writer out) throws IOException
+	{
 		for(int i=0;i<layers.size()-1;i++)//loop through all layers
 		{
 			for(int j=0;j<layers.get(i).size();j++)//loop through all neurons on in the current layer
 			{
-				output += i + " " + j + " ";
+				out.write(i + " " + j + " ");
 				Neuron n = layers.get(i).get(j);
 				for(int k=0;k<n.getOutLinks().size();k++)//loop through all out links (synapses) of the current neuron
-					output += n.getOutLinks().get(k).getWeight() + ((k==n.getOutLinks().size()-1)?"":" ");
-				output += "\n";
+					out.write(n.getOutLinks().get(k).getWeight() + ((k==n.getOutLinks().size()-1)?"":" "));
+				out.write("\n");
 			}
 		}
-		return output;
+	}
+	/**
+	 * Write the features used by the network, on a single line.
+	 * @param out
+	 * @throws IOException
+	 */
+	protected void writeFeatures(Writer out) throws IOException
+	{
+		for(int i=0;i<features.length;i++)
+			out.write(features[i] + ((i==features.length-1)?"":" "));
+		out.write("\n");
 	}
 	public String model()
 	{
-		String output = "## " + name() + "\n";
-		output += "## Epochs = " + nIteration + "\n";
-		output += "## No. of features = " + features.length + "\n";
-		output += "## No. of hidden layers = " + (layers.size()-2) + "\n";
+		return writeModelToString();
+	}
+	public void writeModel(Writer out) throws IOException
+	{
+		out.write("## " + name() + "\n");
+		out.write("## Epochs = " + nIteration + "\n");
+		out.write("## No. of features = " + features.length + "\n");
+		out.write("## No. of hidden layers = " + (layers.size()-2) + "\n");
 		for(int i=1;i<layers.size()-1;i++)
-			output += "## Layer " + i + ": " + layers.get(i).size() + " neurons\n";
+			out.write("## Layer " + i + ": " + layers.get(i).size() + " neurons\n");
 		
 		//print used features
-		for(int i=0;i<features.length;i++)
-			output += features[i] + ((i==features.length-1)?"":" ");
-		output += "\n";
+		writeFeatures(out);
 		//print network information
-		output += layers.size()-2 + "\n";//[# hidden layers]
+		out.write(layers.size()-2 + "\n");//[# hidden layers]
 		for(int i=1;i<layers.size()-1;i++)
-			output += layers.get(i).size() + "\n";//[#neurons]
+			out.write(layers.get(i).size() + "\n");//[#neurons]
 		//print learned weights
-		output += toString();
-		return output;
+		writeWeights(out);
 	}
 	public void loadFromString(String fullText)
 	{
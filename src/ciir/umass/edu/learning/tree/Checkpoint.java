@@ -0,0 +1,213 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * State of a LambdaMART/MART training run after some rounds of boosting: the trees so far, the model scores on the training
+ * and validation samples, and the best round on the validation data. Training resumed from a checkpoint goes on exactly as
+ * if it had never stopped (LambdaMART/MART use no random numbers, and everything else is recomputed at each round).
+ *
+ * Checkpoints are binary: CHECKPOINT_MAGIC, CHECKPOINT_VERSION, the name of the ranker, the number of rounds, the trees (see
+ * Ensemble.write()), the training scores, the validation scores (-1 if there is no validation data), and the best round.
+ */
+public class Checkpoint {
+
+	public static final byte[] CHECKPOINT_MAGIC = {'R', 'L', 'C', 'P'};
+	public static final int CHECKPOINT_VERSION = 1;
+
+	protected String rankerName = "";
+	protected int rounds = 0;
+	protected Ensemble ensemble = null;
+	protected double[] modelScores = null;
+	protected double[][] modelScoresOnValidation = null;//null if there is no validation data
+	protected double bestScoreOnValidationData = 0.0;
+	protected int bestModelOnValidation = 0;
+
+	private Checkpoint()
+	{
+	}
+
+	/**
+	 * Take a snapshot of the training state: the arrays are copied, so that the ranker can go on while the snapshot is written.
+	 * @param ranker
+	 * @param rounds Number of rounds done so far
+	 */
+	public Checkpoint(LambdaMART ranker, int rounds)
+	{
+		this.rankerName = ranker.name();
+		this.rounds = rounds;
+		//trees never change once fitted: a new list of the same ones is enough
+		ensemble = new Ensemble();
+		for(int i=0;i<ranker.ensemble.treeCount();i++)
+			ensemble.add(ranker.ensemble.getTree(i), ranker.ensemble.getWeight(i));
+		modelScores = Arrays.copyOf(ranker.modelScores, ranker.modelScores.length);
+		if(ranker.modelScoresOnValidation != null)
+		{
+			modelScoresOnValidation = new double[ranker.modelScoresOnValidation.length][];
+			for(int i=0;i<modelScoresOnValidation.length;i++)
+				modelScoresOnValidation[i] = Arrays.copyOf(ranker.modelScoresOnValidation[i], ranker.modelScoresOnValidation[i].length);
+		}
+		bestScoreOnValidationData = ranker.getScoreOnValidationData();
+		bestModelOnValidation = ranker.bestModelOnValidation;
+	}
+
+	/**
+	 * Write the checkpoint to @file. It goes to a temporary file first, which then replaces @file: a run stopped while
+	 * writing leaves the previous checkpoint in place.
+	 * @param file
+	 */
+	public void write(File file)
+	{
+		File tmp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))
+		{
+			out.write(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeUTF(rankerName);
+			out.writeInt(rounds);
+			ensemble.write(out);
+			writeScores(out, modelScores);
+			if(modelScoresOnValidation == null)
+				out.writeInt(-1);
+			else
+			{
+				out.writeInt(modelScoresOnValidation.length);
+				for(int i=0;i<modelScoresOnValidation.length;i++)
+					writeScores(out, modelScoresOnValidation[i]);
+			}
+			out.writeDouble(bestScoreOnValidationData);
+			out.writeInt(bestModelOnValidation);
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in Checkpoint::write(): ", ex);
+		}
+		try {
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException ex)
+			{
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in Checkpoint::write(): ", ex);
+		}
+	}
+	private static void writeScores(DataOutputStream out, double[] scores) throws IOException
+	{
+		out.writeInt(scores.length);
+		for(int i=0;i<scores.length;i++)
+			out.writeDouble(scores[i]);
+	}
+
+	/**
+	 * @param file
+	 * @return The checkpoint in @file.
+	 */
+	public static Checkpoint read(File file)
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			byte[] magic = new byte[CHECKPOINT_MAGIC.length];
+			in.readFully(magic);
+			if(!Arrays.equals(magic, CHECKPOINT_MAGIC))
+				throw RankLibError.create("Error in Checkpoint::read(): " + file + " is not a checkpoint.");
+			int version = in.readInt();
+			if(version != CHECKPOINT_VERSION)
+				throw RankLibError.create("Error in Checkpoint::read(): unsupported checkpoint version " + version + ".");
+			Checkpoint c = new Checkpoint();
+			c.rankerName = in.readUTF();
+			c.rounds = in.readInt();
+			c.ensemble = new Ensemble(in);
+			c.modelScores = readScores(in);
+			int nValidation = in.readInt();
+			if(nValidation >= 0)
+			{
+				c.modelScoresOnValidation = new double[nValidation][];
+				for(int i=0;i<nValidation;i++)
+					c.modelScoresOnValidation[i] = readScores(in);
+			}
+			c.bestScoreOnValidationData = in.readDouble();
+			c.bestModelOnValidation = in.readInt();
+			return c;
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in Checkpoint::read(): ", ex);
+		}
+	}
+	private static double[] readScores(DataInputStream in) throws IOException
+	{
+		double[] scores = new double[in.readInt()];
+		for(int i=0;i<scores.length;i++)
+			scores[i] = in.readDouble();
+		return scores;
+	}
+
+	/**
+	 * Restore the training state of @ranker, which must have been initialized with the same data as the checkpointed one
+	 * (except for the best score on the validation data, see getBestScoreOnValidationData()).
+	 * @param ranker
+	 */
+	public void restore(LambdaMART ranker)
+	{
+		if(!rankerName.equals(ranker.name()))
+			throw RankLibError.create("Error in Checkpoint::restore(): the checkpoint is for " + rankerName + ", not " + ranker.name() + ".");
+		if(modelScores.length != ranker.modelScores.length)
+			throw RankLibError.create("Error in Checkpoint::restore(): the checkpoint has " + modelScores.length + " training samples, not " + ranker.modelScores.length + ".");
+		if((modelScoresOnValidation == null) != (ranker.modelScoresOnValidation == null))
+			throw RankLibError.create("Error in Checkpoint::restore(): the checkpoint was made " + ((modelScoresOnValidation == null) ? "without" : "with") + " validation data.");
+		if(modelScoresOnValidation != null)
+		{
+			if(modelScoresOnValidation.length != ranker.modelScoresOnValidation.length)
+				throw RankLibError.create("Error in Checkpoint::restore(): the checkpoint has " + modelScoresOnValidation.length + " validation queries, not " + ranker.modelScoresOnValidation.length + ".");
+			for(int i=0;i<modelScoresOnValidation.length;i++)
+				if(modelScoresOnValidation[i].length != ranker.modelScoresOnValidation[i].length)
+					throw RankLibError.create("Error in Checkpoint::restore(): validation query " + i + " doesn't have the same number of samples as in the checkpoint.");
+		}
+		ranker.ensemble = ensemble;
+		System.arraycopy(modelScores, 0, ranker.modelScores, 0, modelScores.length);
+		if(modelScoresOnValidation != null)
+			for(int i=0;i<modelScoresOnValidation.length;i++)
+				System.arraycopy(modelScoresOnValidation[i], 0, ranker.modelScoresOnValidation[i], 0, modelScoresOnValidation[i].length);
+		ranker.bestModelOnValidation = bestModelOnValidation;
+		ranker.modelScoresRanked = false;
+	}
+
+	public double getBestScoreOnValidationData()
+	{
+		return bestScoreOnValidationData;
+	}
+	/**
+	 * @return Number of rounds of boosting done before the checkpoint.
+	 */
+	public int getRounds()
+	{
+		return rounds;
+	}
+}
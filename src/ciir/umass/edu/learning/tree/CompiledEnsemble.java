@@ -0,0 +1,80 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Base class of the scorers generated by EnsembleCompiler: each of them scores rows with the trees of a model hard-coded
+ * as nested ifs, and adds up their outputs exactly like FlatEnsemble does.
+ */
+public abstract class CompiledEnsemble implements EnsembleScorer {
+
+	/**
+	 * Hash of the source a generated class (or nested class) was compiled from. EnsembleCompiler checks it on every class it
+	 * loads from its cache, before any code of the class can run.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	public @interface Source {
+		String value();
+	}
+
+	protected int[] features = null;//distinct features used by the trees, in ascending order
+	protected int maxFeature = 0;
+	protected int nTrees = 0;
+
+	/**
+	 * @param features Features used by the trees, in ascending order
+	 * @param nTrees
+	 */
+	protected CompiledEnsemble(int[] features, int nTrees)
+	{
+		this.features = features;
+		this.maxFeature = (features.length > 0) ? features[features.length-1] : 0;
+		this.nTrees = nTrees;
+	}
+
+	public abstract double eval(float[] row);
+
+	public double eval(DataPoint dp)
+	{
+		return eval(toRow(dp));
+	}
+	public void eval(float[][] rows, double[] out)
+	{
+		for(int i=0;i<rows.length;i++)
+			out[i] = eval(rows[i]);
+	}
+	public float[] toRow(DataPoint dp)
+	{
+		int last = dp.getMaxFeature();
+		float[] row = new float[maxFeature+1];
+		for(int i=0;i<features.length;i++)
+		{
+			int fid = features[i];
+			row[fid] = (fid <= last) ? dp.getFeatureValue(fid) : 0;
+		}
+		return row;
+	}
+	public int getMaxFeature()
+	{
+		return maxFeature;
+	}
+	public int treeCount()
+	{
+		return nTrees;
+	}
+}
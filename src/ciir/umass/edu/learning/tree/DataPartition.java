@@ -0,0 +1,66 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+/**
+ * The samples of each node of a tree being fitted, as one permutation of all training samples: each node owns a contiguous
+ * range [begin, end) of it, and splitting a node re-arranges its range in place (its left child gets the first part, its
+ * right child the rest). Samples keep their relative order when they are split, so each node sees its samples in the
+ * same order as if they had been copied to arrays of their own.
+ *
+ * One partition can be re-used by all trees of a learner (see reset()).
+ */
+public class DataPartition {
+
+	protected int[] index = null;
+	protected int[] buffer = null;//scratch space for splitting ranges in place
+
+	public DataPartition(int nSamples)
+	{
+		index = new int[nSamples];
+		buffer = new int[nSamples];
+		reset();
+	}
+
+	/**
+	 * Put all samples back in order, e.g. before fitting a new tree.
+	 */
+	public void reset()
+	{
+		for(int i=0;i<index.length;i++)
+			index[i] = i;
+	}
+
+	public int size()
+	{
+		return index.length;
+	}
+	/**
+	 * @return The permutation of samples. Samples of a node with range [begin, end) are index[begin], ..., index[end-1].
+	 */
+	public int[] getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * Split the samples in [@begin, @end) on a threshold of a feature.
+	 * @param bins
+	 * @param f Index of the feature
+	 * @param threshold Index of the threshold
+	 * @param begin
+	 * @param end
+	 * @return The end of the left part: samples in [@begin, return value) don't exceed @threshold, the others do.
+	 */
+	public int split(FeatureBins bins, int f, int threshold, int begin, int end)
+	{
+		return bins.partition(f, threshold, index, begin, end, buffer);
+	}
+}
@@ -11,13 +11,18 @@ package ciir.umass.edu.learning.tree;
 
 import ciir.umass.edu.learning.DataPoint;
 import ciir.umass.edu.utilities.RankLibError;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.ByteArrayInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -41,40 +46,81 @@ public class Ensemble {
 		weights = new ArrayList<Float>();
 		trees.addAll(e.trees);
 		weights.addAll(e.weights);
+		features = e.features;
 	}
 	public Ensemble(String xmlRep)
+	{
+		this(new StringReader(xmlRep));
+	}
+	/**
+	 * Parse the first <ensemble> of @xml, reading no further than its end.
+	 * @param xml
+	 */
+	public Ensemble(Reader xml)
 	{
 		try {
-			trees = new ArrayList<RegressionTree>();
-			weights = new ArrayList<Float>();
-			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-			byte[] xmlDATA = xmlRep.getBytes();
-			ByteArrayInputStream in = new ByteArrayInputStream(xmlDATA);
-			Document doc = dBuilder.parse(in);
-			NodeList nl = doc.getElementsByTagName("tree");
-			HashMap<Integer, Integer> fids = new HashMap<Integer, Integer>();
-			for(int i=0;i<nl.getLength();i++)
-			{
-				Node n = nl.item(i);//each node corresponds to a "tree" (tag)
-				//create a regression tree from this node
-				Split root = create(n.getFirstChild(), fids);
-				//get the weight for this tree
-				float weight = Float.parseFloat(n.getAttributes().getNamedItem("weight").getNodeValue());
-				//add it to the ensemble
-				trees.add(new RegressionTree(root));
-				weights.add(weight);
-			}
-			features = new int[fids.keySet().size()];
-			int i = 0;
-			for(Integer fid : fids.keySet())
-				features[i++] = fid;
+			XMLStreamReader in = xmlFactory().createXMLStreamReader(xml);
+			while(in.next() != XMLStreamConstants.START_ELEMENT)
+				;
+			read(in);
+			in.close();
 		}
 		catch(Exception ex)
 		{
 			throw RankLibError.create("Error in Emsemble(xmlRepresentation): ", ex);
 		}
 	}
+	/**
+	 * Read an ensemble written by write().
+	 * @param in
+	 */
+	public Ensemble(DataInput in) throws IOException
+	{
+		trees = new ArrayList<RegressionTree>();
+		weights = new ArrayList<Float>();
+		HashMap<Integer, Integer> fids = new HashMap<Integer, Integer>();
+		int nTrees = in.readInt();
+		for(int i=0;i<nTrees;i++)
+		{
+			weights.add(in.readFloat());
+			trees.add(new RegressionTree(read(in, fids)));
+		}
+		setFeatures(fids);
+	}
+	
+	/**
+	 * Parse the ensembles of a model, in the XML format of toString(), in linear time: each of them is streamed from the
+	 * text (lines that are not part of an ensemble, e.g. "##" headers, are skipped).
+	 * @param text
+	 * @return All ensembles of @text, in order (e.g. the bags of RFRanker).
+	 */
+	public static List<Ensemble> parseAll(String text)
+	{
+		List<Ensemble> ensembles = new ArrayList<Ensemble>();
+		try {
+			int start = text.indexOf("<ensemble>");
+			while(start != -1)
+			{
+				StringReader in = new StringReader(text);
+				in.skip(start);
+				ensembles.add(new Ensemble(in));
+				int end = text.indexOf("</ensemble>", start);
+				start = (end == -1) ? -1 : text.indexOf("<ensemble>", end);
+			}
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create("Error in Emsemble::parseAll(): ", ex);
+		}
+		return ensembles;
+	}
+	private static XMLInputFactory xmlFactory()
+	{
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
 	
 	public void add(RegressionTree tree, float weight)
 	{
@@ -119,15 +165,31 @@ public class Ensemble {
 	}
 	public String toString()
 	{
-		String strRep = "<ensemble>" + "\n";
+		StringWriter out = new StringWriter();
+		try {
+			write(out);
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create(ex);
+		}
+		return out.toString();
+	}
+	/**
+	 * Write the ensemble in XML (the same text as toString()), one node at a time.
+	 * @param out
+	 */
+	public void write(Writer out) throws IOException
+	{
+		out.write("<ensemble>" + "\n");
 		for(int i=0;i<trees.size();i++)
 		{
-			strRep += "\t<tree id=\"" + (i+1) + "\" weight=\"" + weights.get(i) + "\">" + "\n";
-			strRep += trees.get(i).toString("\t\t");
-			strRep += "\t</tree>" + "\n";
+			out.write("\t<tree id=\"" + (i+1) + "\" weight=\"" + weights.get(i) + "\">" + "\n");
+			if(trees.get(i).root != null)
+				trees.get(i).root.write(out, "\t\t");
+			out.write("\t</tree>" + "\n");
 		}
-		strRep += "</ensemble>" + "\n";
-		return strRep;
+		out.write("</ensemble>" + "\n");
 	}
 	public int[] getFeatures()
 	{
@@ -135,29 +197,104 @@ public class Ensemble {
 	}
 	
 	/**
-	 * Each input node @n corersponds to a <split> tag in the model file.
-	 * @param n
+	 * Write the ensemble in a compact binary format: the number of trees, then for each tree its weight and its nodes in
+	 * pre-order (feature and threshold for splits, -1 and output for leaves). Like in toString(), outputs are kept as floats.
+	 * @param out
+	 */
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeInt(trees.size());
+		for(int i=0;i<trees.size();i++)
+		{
+			out.writeFloat(weights.get(i));
+			write(trees.get(i).root, out);
+		}
+	}
+	private static void write(Split s, DataOutput out) throws IOException
+	{
+		if(s.getLeft() == null)
+		{
+			out.writeInt(-1);
+			out.writeFloat((float)s.getOutput());
+			return;
+		}
+		out.writeInt(s.getFeatureID());
+		out.writeFloat(s.getThreshold());
+		write(s.getLeft(), out);
+		write(s.getRight(), out);
+	}
+	private static Split read(DataInput in, HashMap<Integer, Integer> fids) throws IOException
+	{
+		int fid = in.readInt();
+		Split s = null;
+		if(fid == -1)
+		{
+			s = new Split();
+			s.setOutput(in.readFloat());
+			return s;
+		}
+		fids.put(fid, 0);
+		s = new Split(fid, in.readFloat(), 0);
+		s.setLeft(read(in, fids));
+		s.setRight(read(in, fids));
+		return s;
+	}
+	
+	/**
+	 * Read the <ensemble> element @in is at.
+	 * @param in
+	 */
+	private void read(XMLStreamReader in) throws XMLStreamException
+	{
+		trees = new ArrayList<RegressionTree>();
+		weights = new ArrayList<Float>();
+		HashMap<Integer, Integer> fids = new HashMap<Integer, Integer>();
+		while(in.nextTag() == XMLStreamConstants.START_ELEMENT)//each one is a <tree>
+		{
+			float weight = Float.parseFloat(in.getAttributeValue(null, "weight"));
+			in.nextTag();//<split>
+			trees.add(new RegressionTree(read(in, fids)));
+			weights.add(weight);
+			in.nextTag();//</tree>
+		}
+		setFeatures(fids);
+	}
+	/**
+	 * Each <split> element corresponds to a node of a tree.
+	 * @param in At the <split> element of the node
+	 * @param fids
 	 * @return
 	 */
-	private Split create(Node n, HashMap<Integer, Integer> fids)
+	private static Split read(XMLStreamReader in, HashMap<Integer, Integer> fids) throws XMLStreamException
 	{
 		Split s = null;
-		if(n.getFirstChild().getNodeName().compareToIgnoreCase("feature") == 0)//this is a split
+		in.nextTag();
+		if(in.getLocalName().compareToIgnoreCase("feature") == 0)//this is a split
 		{
-			NodeList nl = n.getChildNodes();
-			int fid = Integer.parseInt(nl.item(0).getFirstChild().getNodeValue().trim());//<feature>
+			int fid = Integer.parseInt(in.getElementText().trim());//<feature>
 			fids.put(fid, 0);
-			float threshold = Float.parseFloat(nl.item(1).getFirstChild().getNodeValue().trim());//<threshold>
+			in.nextTag();
+			float threshold = Float.parseFloat(in.getElementText().trim());//<threshold>
 			s = new Split(fid, threshold, 0);
-			s.setLeft(create(nl.item(2), fids));
-			s.setRight(create(nl.item(3), fids));
+			in.nextTag();
+			s.setLeft(read(in, fids));
+			in.nextTag();
+			s.setRight(read(in, fids));
 		}
 		else//this is a stump
 		{
-			float output = Float.parseFloat(n.getFirstChild().getFirstChild().getNodeValue().trim());
+			float output = Float.parseFloat(in.getElementText().trim());
 			s = new Split();
 			s.setOutput(output);
 		}
+		in.nextTag();//</split>
 		return s;
 	}
+	private void setFeatures(HashMap<Integer, Integer> fids)
+	{
+		features = new int[fids.keySet().size()];
+		int i = 0;
+		for(Integer fid : fids.keySet())
+			features[i++] = fid;
+	}
 }
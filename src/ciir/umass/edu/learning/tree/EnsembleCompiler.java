@@ -0,0 +1,423 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.utilities.RankLibError;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns trained trees into Java code (one nested if per split node), compiles it with the JDK's compiler and loads it as a
+ * CompiledEnsemble. This takes a while for large models, so compiled classes are kept in a cache directory, under a name
+ * made from the hash of their source (i.e. of the model): later runs with the same model just load them.
+ *
+ * Classes of the cache run inside this JVM, so the cache must be private: it is created readable by its owner only, and
+ * refused if it belongs to another user or if others can write to it. On top of that, each class carries the full hash of
+ * its source (see CompiledEnsemble.Source), which is checked when the class is loaded, before anything of it runs. Classes
+ * that don't match are compiled again.
+ *
+ * The code is split to stay within the JVM's limits: trees (and subtrees of large trees) go into methods of at most a few
+ * hundred nodes, so that they are small enough for the JIT, and methods are spread over nested classes holding at most
+ * @maxNodesPerClass nodes each, so that their constants fit in a class file.
+ */
+public class EnsembleCompiler {
+
+	//Parameters
+	public static int maxNodesPerMethod = 128;//subtrees larger than this get their own method
+	public static int maxTreesPerMethod = 64;
+	public static int maxNodesPerClass = 4000;
+
+	public static final String CLASS_PREFIX = "RankLibEnsemble_";
+	private static final String CLASS_NAME = "__CLASS__";//replaced with the actual name once the source is hashed
+	private static final String SOURCE_HASH = "__HASH__";//replaced with the hash of the source
+
+	protected File cacheDir = null;
+
+	//while generating
+	private List<StringBuilder> parts = null;
+	private int partNodes = 0;
+	private int nMethods = 0;
+
+	/**
+	 * @param cacheDir Where compiled classes are kept
+	 */
+	public EnsembleCompiler(File cacheDir)
+	{
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * @return Whether a Java compiler is available (i.e. whether we are running on a JDK rather than a JRE).
+	 */
+	public static boolean isAvailable()
+	{
+		return ToolProvider.getSystemJavaCompiler() != null;
+	}
+
+	/**
+	 * @param groups
+	 * @param average Whether to average the scores of @groups (rather than adding them up, see FlatEnsemble)
+	 * @return A scorer for @groups, or null if there is no Java compiler (and the scorer isn't in the cache).
+	 */
+	public CompiledEnsemble compile(Ensemble[] groups, boolean average)
+	{
+		String source = generate(groups, average);
+		String hash = hash(source);
+		String className = CLASS_PREFIX + hash.substring(0, 32);
+		source = source.replace(CLASS_NAME, className).replace(SOURCE_HASH, hash);
+		try {
+			checkCacheDir();
+			if(new File(cacheDir, className + ".class").exists())
+			{
+				CompiledEnsemble ce = load(className, hash);
+				if(ce != null)
+					return ce;
+			}
+			JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+			if(javac == null)
+				return null;
+			compile(javac, className, source);
+			CompiledEnsemble ce = load(className, hash);
+			if(ce == null)
+				throw RankLibError.create("Error in EnsembleCompiler::compile(): can't load " + className + " from " + cacheDir);
+			return ce;
+		}
+		catch(RankLibError ex)
+		{
+			throw ex;
+		}
+		catch(Exception ex)
+		{
+			throw RankLibError.create("Error in EnsembleCompiler::compile(): ", ex);
+		}
+	}
+
+	/**
+	 * Create the cache directory (accessible to the current user only) if it doesn't exist. Otherwise, make sure that nobody
+	 * else can put classes in it.
+	 */
+	private void checkCacheDir() throws IOException
+	{
+		Path dir = cacheDir.toPath();
+		boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+		if(!Files.exists(dir))
+		{
+			if(posix)
+				Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			else
+				Files.createDirectories(dir);
+		}
+		UserPrincipal user = dir.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+		if(!Files.getOwner(dir).equals(user))
+			throw RankLibError.create("Error in EnsembleCompiler::compile(): " + cacheDir + " belongs to another user.");
+		if(posix)
+		{
+			Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(dir);
+			if(permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE))
+				throw RankLibError.create("Error in EnsembleCompiler::compile(): " + cacheDir + " can be written by other users.");
+		}
+	}
+
+	/**
+	 * @param className
+	 * @param hash
+	 * @return A new instance of the scorer from the cache, or null if its classes don't match @hash.
+	 */
+	private CompiledEnsemble load(String className, String hash) throws Exception
+	{
+		Class<?> c = null;
+		try {
+			c = new CacheLoader(cacheDir, className, hash).loadClass(className);//not initialized yet
+		}
+		catch(ClassNotFoundException ex)
+		{
+			return null;
+		}
+		if(!CompiledEnsemble.class.isAssignableFrom(c))
+			return null;
+		return (CompiledEnsemble)c.getConstructor().newInstance();
+	}
+
+	/**
+	 * Loads the classes of one scorer from the cache, and only those. Each of them is checked against the hash of the source
+	 * of the scorer right after it's defined, i.e. before it can be initialized.
+	 */
+	private static class CacheLoader extends ClassLoader {
+		private final File dir;
+		private final String className;
+		private final String hash;
+
+		CacheLoader(File dir, String className, String hash)
+		{
+			super(CompiledEnsemble.class.getClassLoader());
+			this.dir = dir;
+			this.className = className;
+			this.hash = hash;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException
+		{
+			if(!name.equals(className) && !name.startsWith(className + "$"))
+				throw new ClassNotFoundException(name);
+			try {
+				byte[] bytes = Files.readAllBytes(new File(dir, name + ".class").toPath());
+				Class<?> c = defineClass(name, bytes, 0, bytes.length);
+				CompiledEnsemble.Source source = c.getAnnotation(CompiledEnsemble.Source.class);
+				if(source == null || !source.value().equals(hash))
+					throw new ClassNotFoundException(name + " was not compiled from the expected source");
+				return c;
+			}
+			catch(IOException | LinkageError ex)
+			{
+				throw new ClassNotFoundException(name, ex);
+			}
+		}
+	}
+
+	private void compile(JavaCompiler javac, String className, final String source) throws Exception
+	{
+		//compile into a directory of our own, then move the classes into the cache: the outer class last, since it tells
+		//whether the cache has the scorer (other processes may be looking at the same cache)
+		File tmpDir = Files.createTempDirectory(cacheDir.toPath(), className).toFile();
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		List<String> options = Arrays.asList("-d", tmpDir.getPath(), "-classpath", classPath(), "-g:none", "-nowarn");
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		try {
+			if(!javac.getTask(null, null, diagnostics, options, null, Arrays.asList(file)).call())
+			{
+				StringBuilder msg = new StringBuilder();
+				for(Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics())
+					msg.append("\n").append(d.toString());
+				throw RankLibError.create("Error in EnsembleCompiler::compile(): can't compile " + className + msg);
+			}
+			File outer = new File(tmpDir, className + ".class");
+			for(File f : tmpDir.listFiles())
+				if(!f.equals(outer))
+					Files.move(f.toPath(), new File(cacheDir, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(outer.toPath(), new File(cacheDir, outer.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			for(File f : tmpDir.listFiles())
+				f.delete();
+			tmpDir.delete();
+		}
+	}
+
+	/**
+	 * @return Class path of the generated code: where RankLib itself comes from, and the class path of this JVM.
+	 */
+	private static String classPath() throws Exception
+	{
+		String path = new File(CompiledEnsemble.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+		return path + File.pathSeparator + System.getProperty("java.class.path");
+	}
+
+	private static String hash(String source)
+	{
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for(int i=0;i<digest.length;i++)
+				sb.append(String.format("%02x", digest[i]));
+			return sb.toString();
+		}
+		catch(Exception ex)
+		{
+			throw RankLibError.create("Error in EnsembleCompiler::hash(): ", ex);
+		}
+	}
+
+	/**
+	 * @param groups
+	 * @param average
+	 * @return Source of a CompiledEnsemble for @groups, with CLASS_NAME as its class name and SOURCE_HASH as the hash of its
+	 * source.
+	 */
+	public String generate(Ensemble[] groups, boolean average)
+	{
+		parts = new ArrayList<StringBuilder>();
+		partNodes = maxNodesPerClass;
+		nMethods = 0;
+		FlatEnsemble flat = new FlatEnsemble(groups, average);
+
+		//a group is added up in chunk methods of at most @maxTreesPerMethod trees each (each chunk takes and returns the sum
+		//of the group so far), and the score in methods of at most @maxTreesPerMethod trees or chunks (taking and returning
+		//the total so far)
+		List<String> totals = new ArrayList<String>();
+		StringBuilder body = new StringBuilder();
+		int units = 0;
+		for(int g=0;g<groups.length;g++)
+		{
+			Ensemble e = groups[g];
+			List<String> calls = new ArrayList<String>();
+			for(int begin=0;begin<e.treeCount();begin+=maxTreesPerMethod)
+			{
+				int end = Math.min(e.treeCount(), begin+maxTreesPerMethod);
+				if(e.treeCount() <= maxTreesPerMethod)//no need for a chunk
+				{
+					for(int i=begin;i<end;i++)
+						calls.add("s += " + tree(e.getTree(i).root, e.getWeight(i)) + "(f);");
+					break;
+				}
+				StringBuilder chunk = new StringBuilder();
+				for(int i=begin;i<end;i++)
+					chunk.append("\t\t\ts += " + tree(e.getTree(i).root, e.getWeight(i)) + "(f);\n");
+				calls.add("s = " + method("float", "float[] f, float s", chunk.toString() + "\t\t\treturn s;\n") + "(f, s);");
+			}
+			if(units > 0 && units + calls.size() > maxTreesPerMethod)
+			{
+				totals.add(method("double", "float[] f, double total", body.toString() + "\t\t\treturn total;\n"));
+				body = new StringBuilder();
+				units = 0;
+			}
+			body.append("\t\t\t{\n\t\t\t\tfloat s = 0;\n");
+			for(String call : calls)
+				body.append("\t\t\t\t").append(call).append("\n");
+			body.append("\t\t\t\ttotal += s;\n\t\t\t}\n");
+			units += calls.size();
+		}
+		if(units > 0)
+			totals.add(method("double", "float[] f, double total", body.toString() + "\t\t\treturn total;\n"));
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("//Generated by RankLib's EnsembleCompiler: " + flat.treeCount() + " trees in " + groups.length + " group(s)\n");
+		String annotation = "@" + CompiledEnsemble.Source.class.getCanonicalName() + "(\"" + SOURCE_HASH + "\")\n";
+		sb.append(annotation);
+		sb.append("public final class " + CLASS_NAME + " extends " + CompiledEnsemble.class.getName() + " {\n");
+		sb.append("\tpublic " + CLASS_NAME + "()\n\t{\n");
+		sb.append("\t\tsuper(new int[]{");
+		int[] features = flat.getFeatures();
+		for(int i=0;i<features.length;i++)
+			sb.append((i > 0) ? ", " : "").append(features[i]);
+		sb.append("}, " + flat.treeCount() + ");\n\t}\n");
+		sb.append("\tpublic double eval(float[] f)\n\t{\n\t\tdouble total = 0;\n");
+		for(String m : totals)
+			sb.append("\t\ttotal = " + m + "(f, total);\n");
+		sb.append(average ? "\t\treturn total/" + groups.length + ";\n" : "\t\treturn total;\n");
+		sb.append("\t}\n");
+		for(int p=0;p<parts.size();p++)
+			sb.append("\t" + annotation).append("\tstatic final class P" + p + " {\n").append(parts.get(p)).append("\t}\n");
+		sb.append("}\n");
+		parts = null;
+		return sb.toString();
+	}
+
+	/**
+	 * Add a method to the current nested class.
+	 * @return The (qualified) name of the method.
+	 */
+	private String method(String type, String params, String body)
+	{
+		if(parts.size() == 0)
+			parts.add(new StringBuilder());
+		String name = "m" + (nMethods++);
+		parts.get(parts.size()-1).append("\t\tstatic " + type + " " + name + "(" + params + ")\n\t\t{\n" + body + "\t\t}\n");
+		return "P" + (parts.size()-1) + "." + name;
+	}
+	/**
+	 * Add the methods of a tree (starting a new nested class if the current one is full).
+	 * @return The (qualified) name of the method of its root.
+	 */
+	private String tree(Split root, float weight)
+	{
+		int n = size(root);
+		if(parts.size() == 0 || (partNodes > 0 && partNodes + n > maxNodesPerClass))
+		{
+			parts.add(new StringBuilder());
+			partNodes = 0;
+		}
+		partNodes += n;
+		String name = "m" + (nMethods++);
+		subtree(root, weight, name);
+		return "P" + (parts.size()-1) + "." + name;
+	}
+	/**
+	 * Add the method @name for the subtree under @s, then the ones of its large subtrees.
+	 */
+	private void subtree(Split s, float weight, String name)
+	{
+		StringBuilder body = new StringBuilder();
+		List<Split> large = new ArrayList<Split>();
+		List<String> names = new ArrayList<String>();
+		code(s, weight, "\t\t\t", body, true, large, names);
+		parts.get(parts.size()-1).append("\t\tstatic double " + name + "(float[] f)\n\t\t{\n" + body + "\t\t}\n");
+		for(int i=0;i<large.size();i++)
+			subtree(large.get(i), weight, names.get(i));
+	}
+	private void code(Split s, float weight, String indent, StringBuilder body, boolean isRoot, List<Split> large, List<String> names)
+	{
+		if(s.getLeft() == null)
+		{
+			body.append(indent).append("return ").append(literal(s.getOutput() * weight)).append(";\n");
+			return;
+		}
+		if(!isRoot && size(s) > maxNodesPerMethod)
+		{
+			String name = "m" + (nMethods++);
+			large.add(s);
+			names.add(name);
+			body.append(indent).append("return ").append(name).append("(f);\n");
+			return;
+		}
+		body.append(indent).append("if(f[" + s.getFeatureID() + "] <= " + literal(s.getThreshold()) + ")\n");
+		code(s.getLeft(), weight, indent + "\t", body, false, large, names);
+		body.append(indent).append("else\n");
+		code(s.getRight(), weight, indent + "\t", body, false, large, names);
+	}
+
+	private static int size(Split s)
+	{
+		if(s.getLeft() == null)
+			return 1;
+		return 1 + size(s.getLeft()) + size(s.getRight());
+	}
+	private static String literal(float v)
+	{
+		if(Float.isNaN(v))
+			return "Float.NaN";
+		if(Float.isInfinite(v))
+			return (v > 0) ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY";
+		return Float.toString(v) + "f";
+	}
+	private static String literal(double v)
+	{
+		if(Double.isNaN(v))
+			return "Double.NaN";
+		if(Double.isInfinite(v))
+			return (v > 0) ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+		return Double.toString(v);
+	}
+}
@@ -0,0 +1,46 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+
+/**
+ * Scores data points with trained trees (see EnsembleScorerFactory). Implementations must give exactly the same scores as
+ * Ensemble.eval() (or RFRanker.eval() for averaged bags), and must be safe to use from several threads.
+ */
+public interface EnsembleScorer {
+	/**
+	 * @param dp
+	 * @return
+	 */
+	public double eval(DataPoint dp);
+	/**
+	 * @param row Feature values, indexed by feature id: row[fid] is the value of feature fid (0 for unspecified features,
+	 * see toRow()). It must have at least getMaxFeature()+1 values.
+	 * @return
+	 */
+	public double eval(float[] row);
+	/**
+	 * Score a batch of rows (see eval(float[])), going through the trees block by block rather than once per row.
+	 * @param rows
+	 * @param out [Output] The score of each row
+	 */
+	public void eval(float[][] rows, double[] out);
+	/**
+	 * @param dp
+	 * @return A row for eval(float[]) with the values of the features used by the trees.
+	 */
+	public float[] toRow(DataPoint dp);
+	/**
+	 * @return The largest feature id used by the trees.
+	 */
+	public int getMaxFeature();
+	public int treeCount();
+}
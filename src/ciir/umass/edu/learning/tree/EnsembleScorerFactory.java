@@ -0,0 +1,112 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.DenseDataPoint;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Picks the scoring engine for trained trees: a QuickScorer when all trees have at most 64 leaves (the common case for
+ * LambdaMART/MART), a FlatEnsemble otherwise. With @useCodeGen, trees are compiled into Java code instead (see
+ * EnsembleCompiler), unless there is no Java compiler around.
+ *
+ * Generated code and QuickScorers are only used once they have given exactly the same scores as Ensemble.eval() on a batch
+ * of synthetic data points, whose feature values are the thresholds of the trees and their neighbors (so that they take both
+ * sides of as many splits as possible). Should they ever differ, the trees are scored by the next engine in line.
+ */
+public class EnsembleScorerFactory {
+
+	//Parameters
+	public static boolean useQuickScorer = true;
+	public static int nCheckPoints = 100;//number of synthetic data points for the correctness check
+	public static boolean useCodeGen = false;
+	public static String codeGenCacheDir = System.getProperty("user.home") + File.separator + ".ranklib" + File.separator + "codegen";//must be private to the user (see EnsembleCompiler)
+
+	public EnsembleScorerFactory()
+	{
+	}
+
+	/**
+	 * @param e
+	 * @return
+	 */
+	public EnsembleScorer createScorer(Ensemble e)
+	{
+		return createScorer(new Ensemble[]{e}, false);
+	}
+	/**
+	 * @param groups
+	 * @param average Whether to average the scores of @groups (rather than adding them up, see FlatEnsemble)
+	 * @return
+	 */
+	public EnsembleScorer createScorer(Ensemble[] groups, boolean average)
+	{
+		if(useCodeGen)
+		{
+			CompiledEnsemble ce = new EnsembleCompiler(new File(codeGenCacheDir)).compile(groups, average);
+			if(ce != null && check(ce, groups, average))
+				return ce;
+		}
+		if(useQuickScorer && QuickScorer.fits(groups))
+		{
+			QuickScorer qs = new QuickScorer(groups, average);
+			if(check(qs, groups, average))
+				return qs;
+		}
+		return new FlatEnsemble(groups, average);
+	}
+
+	/**
+	 * @param scorer
+	 * @param groups
+	 * @param average
+	 * @return Whether @scorer gives the same scores as @groups on synthetic data points.
+	 */
+	public boolean check(EnsembleScorer scorer, Ensemble[] groups, boolean average)
+	{
+		//thresholds of each feature
+		FlatEnsemble flat = new FlatEnsemble(groups, average);
+		int maxFeature = flat.getMaxFeature();
+		int[] nThresholds = new int[maxFeature+1];
+		for(int n=0;n<flat.feature.length;n++)
+			nThresholds[flat.feature[n]]++;
+		float[][] thresholds = new float[maxFeature+1][];
+		for(int f=0;f<=maxFeature;f++)
+			thresholds[f] = new float[nThresholds[f]];
+		for(int n=0;n<flat.feature.length;n++)
+			thresholds[flat.feature[n]][--nThresholds[flat.feature[n]]] = flat.threshold[n];
+
+		Random rand = new Random(42);
+		for(int i=0;i<nCheckPoints;i++)
+		{
+			float[] row = new float[maxFeature+1];
+			for(int f=1;f<=maxFeature;f++)
+			{
+				if(thresholds[f].length == 0)
+					continue;
+				float t = thresholds[f][rand.nextInt(thresholds[f].length)];
+				int side = rand.nextInt(3);
+				row[f] = (side == 0) ? t : ((side == 1) ? Math.nextUp(t) : Math.nextAfter(t, Double.NEGATIVE_INFINITY));
+			}
+			DataPoint dp = new DenseDataPoint(row);
+			double expected = 0;
+			for(int g=0;g<groups.length;g++)
+				expected += groups[g].eval(dp);
+			if(average)
+				expected /= groups.length;
+			if(scorer.eval(dp) != expected || scorer.eval(row) != expected)
+				return false;
+		}
+		return true;
+	}
+}
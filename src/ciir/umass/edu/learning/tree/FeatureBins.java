@@ -0,0 +1,292 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+/**
+ * Bin codes of the training samples: code(f, k) is the index of the first candidate threshold of feature f that sample k
+ * does not exceed (see FeatureHistogram).
+ *
+ * Codes are stored column-major, one array per feature, in the narrowest type that holds the largest code of the feature:
+ * byte (up to 256 bins, e.g. features with at most 256 distinct values), short (up to 65,536 bins) or int. The histogram
+ * kernels below run on one column at a time, which is 2-4x less memory to stream through than int codes.
+ */
+public class FeatureBins {
+
+	protected int nSamples = 0;
+	protected byte[][] codes8 = null;//non-null for features stored as bytes (unsigned)
+	protected short[][] codes16 = null;//non-null for features stored as shorts (unsigned)
+	protected int[][] codes32 = null;//non-null for the others
+
+	/**
+	 * @param nFeatures
+	 * @param nSamples
+	 */
+	public FeatureBins(int nFeatures, int nSamples)
+	{
+		this.nSamples = nSamples;
+		codes8 = new byte[nFeatures][];
+		codes16 = new short[nFeatures][];
+		codes32 = new int[nFeatures][];
+	}
+
+	public int featureCount()
+	{
+		return codes8.length;
+	}
+	public int sampleCount()
+	{
+		return nSamples;
+	}
+
+	/**
+	 * Store the codes of a feature. Different features can be set from different threads.
+	 * @param f Index of the feature
+	 * @param codes Code of each sample
+	 * @param maxCode The largest value in @codes
+	 */
+	public void set(int f, int[] codes, int maxCode)
+	{
+		if(maxCode <= 0xFF)
+		{
+			byte[] c = new byte[nSamples];
+			for(int k=0;k<nSamples;k++)
+				c[k] = (byte)codes[k];
+			codes8[f] = c;
+		}
+		else if(maxCode <= 0xFFFF)
+		{
+			short[] c = new short[nSamples];
+			for(int k=0;k<nSamples;k++)
+				c[k] = (short)codes[k];
+			codes16[f] = c;
+		}
+		else
+			codes32[f] = codes.clone();
+	}
+
+	/**
+	 * @param f Index of the feature
+	 * @param k Index of the sample
+	 * @return The code of sample @k for feature @f.
+	 */
+	public int get(int f, int k)
+	{
+		if(codes8[f] != null)
+			return codes8[f][k] & 0xFF;
+		if(codes16[f] != null)
+			return codes16[f][k] & 0xFFFF;
+		return codes32[f][k];
+	}
+
+	/**
+	 * sum[code(f, k)] += labels[k] for all samples.
+	 * @param f
+	 * @param labels
+	 * @param sum
+	 */
+	public void accumulate(int f, double[] labels, double[] sum)
+	{
+		accumulate(f, labels, sum, 0, nSamples-1);
+	}
+	/**
+	 * sum[code(f, k)] += labels[k] for the samples k in [@start, @end].
+	 * @param f
+	 * @param labels
+	 * @param sum
+	 * @param start
+	 * @param end
+	 */
+	public void accumulate(int f, double[] labels, double[] sum, int start, int end)
+	{
+		if(codes8[f] != null)
+		{
+			byte[] c = codes8[f];
+			for(int k=start;k<=end;k++)
+				sum[c[k] & 0xFF] += labels[k];
+		}
+		else if(codes16[f] != null)
+		{
+			short[] c = codes16[f];
+			for(int k=start;k<=end;k++)
+				sum[c[k] & 0xFFFF] += labels[k];
+		}
+		else
+		{
+			int[] c = codes32[f];
+			for(int k=start;k<=end;k++)
+				sum[c[k]] += labels[k];
+		}
+	}
+
+	/**
+	 * sum[code(f, k)] += labels[k] and count[code(f, k)]++ for the samples k in @soi.
+	 * @param f
+	 * @param soi
+	 * @param labels
+	 * @param sum
+	 * @param count
+	 */
+	public void accumulate(int f, int[] soi, double[] labels, double[] sum, int[] count)
+	{
+		accumulate(f, soi, labels, sum, count, 0, soi.length-1);
+	}
+	/**
+	 * sum[code(f, k)] += labels[k] and count[code(f, k)]++ for the samples k in soi[@start..@end].
+	 * @param f
+	 * @param soi
+	 * @param labels
+	 * @param sum
+	 * @param count
+	 * @param start
+	 * @param end
+	 */
+	public void accumulate(int f, int[] soi, double[] labels, double[] sum, int[] count, int start, int end)
+	{
+		if(codes8[f] != null)
+		{
+			byte[] c = codes8[f];
+			for(int i=start;i<=end;i++)
+			{
+				int k = soi[i];
+				int t = c[k] & 0xFF;
+				sum[t] += labels[k];
+				count[t]++;
+			}
+		}
+		else if(codes16[f] != null)
+		{
+			short[] c = codes16[f];
+			for(int i=start;i<=end;i++)
+			{
+				int k = soi[i];
+				int t = c[k] & 0xFFFF;
+				sum[t] += labels[k];
+				count[t]++;
+			}
+		}
+		else
+		{
+			int[] c = codes32[f];
+			for(int i=start;i<=end;i++)
+			{
+				int k = soi[i];
+				int t = c[k];
+				sum[t] += labels[k];
+				count[t]++;
+			}
+		}
+	}
+
+	/**
+	 * Split samples on a threshold of a feature (keeping their order).
+	 * @param f
+	 * @param threshold Index of the threshold
+	 * @param idx Samples to split
+	 * @param left [Output] Samples whose code is at most @threshold
+	 * @param right [Output] The others
+	 */
+	public void partition(int f, int threshold, int[] idx, int[] left, int[] right)
+	{
+		int l = 0;
+		int r = 0;
+		if(codes8[f] != null)
+		{
+			byte[] c = codes8[f];
+			for(int j=0;j<idx.length;j++)
+			{
+				int k = idx[j];
+				if((c[k] & 0xFF) <= threshold)
+					left[l++] = k;
+				else
+					right[r++] = k;
+			}
+		}
+		else if(codes16[f] != null)
+		{
+			short[] c = codes16[f];
+			for(int j=0;j<idx.length;j++)
+			{
+				int k = idx[j];
+				if((c[k] & 0xFFFF) <= threshold)
+					left[l++] = k;
+				else
+					right[r++] = k;
+			}
+		}
+		else
+		{
+			int[] c = codes32[f];
+			for(int j=0;j<idx.length;j++)
+			{
+				int k = idx[j];
+				if(c[k] <= threshold)
+					left[l++] = k;
+				else
+					right[r++] = k;
+			}
+		}
+	}
+
+	/**
+	 * Split samples idx[@begin..@end-1] on a threshold of a feature, in place (keeping their order).
+	 * @param f
+	 * @param threshold Index of the threshold
+	 * @param idx
+	 * @param begin
+	 * @param end
+	 * @param buffer Scratch space, with room for at least @end-@begin samples
+	 * @return The position in @idx of the first sample whose code exceeds @threshold (@end if there are none).
+	 */
+	public int partition(int f, int threshold, int[] idx, int begin, int end, int[] buffer)
+	{
+		//samples which go left are moved down right away (there are never more of them than samples seen so far), the others
+		//wait in @buffer until they can be put after them
+		int l = begin;
+		int r = 0;
+		if(codes8[f] != null)
+		{
+			byte[] c = codes8[f];
+			for(int j=begin;j<end;j++)
+			{
+				int k = idx[j];
+				if((c[k] & 0xFF) <= threshold)
+					idx[l++] = k;
+				else
+					buffer[r++] = k;
+			}
+		}
+		else if(codes16[f] != null)
+		{
+			short[] c = codes16[f];
+			for(int j=begin;j<end;j++)
+			{
+				int k = idx[j];
+				if((c[k] & 0xFFFF) <= threshold)
+					idx[l++] = k;
+				else
+					buffer[r++] = k;
+			}
+		}
+		else
+		{
+			int[] c = codes32[f];
+			for(int j=begin;j<end;j++)
+			{
+				int k = idx[j];
+				if(c[k] <= threshold)
+					idx[l++] = k;
+				else
+					buffer[r++] = k;
+			}
+		}
+		System.arraycopy(buffer, 0, idx, l, r);
+		return l;
+	}
+}
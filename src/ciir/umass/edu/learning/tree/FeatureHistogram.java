@@ -15,6 +15,7 @@ import java.util.List;
 import java.util.Random;
 
 import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.FeatureMatrix;
 import ciir.umass.edu.utilities.MyThreadPool;
 import ciir.umass.edu.utilities.WorkerThread;
 
@@ -30,6 +31,7 @@ public class FeatureHistogram {
 	
 	//Parameter
 	public static float samplingRate = 1;
+	public static int minRowsPerThread = 10000;//fewest samples per thread for histograms to be built by splitting samples (rather than features) among threads
 	
 	//Variables
 	public int[] features = null;
@@ -38,7 +40,8 @@ public class FeatureHistogram {
 	public double sumResponse = 0;
 	public double sqSumResponse = 0;
 	public int[][] count = null;
-	public int[][] sampleToThresholdMap = null;
+	public FeatureBins bins = null;//the threshold each sample falls under, for each feature (shared by all nodes of the tree)
+	public HistogramPool pool = null;//where the histograms of tree nodes get their @sum and @count from (null: always allocate new ones)
 	
 	//whether to re-use its parents @sum and @count instead of cleaning up the parent and re-allocate for the children.
 	//@sum and @count of any intermediate tree node (except for root) can be re-used.  
@@ -50,6 +53,19 @@ public class FeatureHistogram {
 	}
 	
 	public void construct(DataPoint[] samples, double[] labels, int[][] sampleSortedIdx, int[] features, float[][] thresholds)
+	{
+		construct(FeatureMatrix.getColumns(samples, features), labels, sampleSortedIdx, features, thresholds);
+	}
+	/**
+	 * Construct the histogram of the root node.
+	 * @param values Feature values of the samples, one column per feature (i.e. values[f][k] is the value of features[f] on sample k).
+	 * Read-only: they can be the columns of a FeatureMatrix (see FeatureMatrix.getColumns()).
+	 * @param labels
+	 * @param sampleSortedIdx
+	 * @param features
+	 * @param thresholds
+	 */
+	public void construct(float[][] values, double[] labels, int[][] sampleSortedIdx, int[] features, float[][] thresholds)
 	{
 		this.features = features;
 		this.thresholds = thresholds;
@@ -59,19 +75,20 @@ public class FeatureHistogram {
 		
 		sum = new double[features.length][];
 		count = new int[features.length][];
-		sampleToThresholdMap = new int[features.length][];
+		bins = new FeatureBins(features.length, labels.length);
 		
 		MyThreadPool p = MyThreadPool.getInstance();
 		if(p.size() == 1)
-			construct(samples, labels, sampleSortedIdx, thresholds, 0, features.length-1);
+			construct(values, labels, sampleSortedIdx, thresholds, 0, features.length-1);
 		else
-			p.execute(new Worker(this, samples, labels, sampleSortedIdx, thresholds), features.length);			
+			p.execute(new Worker(this, values, labels, sampleSortedIdx, thresholds), features.length);			
 	}
-	protected void construct(DataPoint[] samples, double[] labels, int[][] sampleSortedIdx, float[][] thresholds, int start, int end)
+	protected void construct(float[][] values, double[] labels, int[][] sampleSortedIdx, float[][] thresholds, int start, int end)
 	{
+		int[] stMap = new int[labels.length];//re-used for all features, then packed into @bins
 		for(int i=start;i<=end;i++)
 		{
-			int fid = features[i];			
+			float[] fv = values[i];
 			//get the list of samples associated with this node (sorted in ascending order with respect to the current feature)
 			int[] idx = sampleSortedIdx[i];
 			
@@ -79,7 +96,7 @@ public class FeatureHistogram {
 			float[] threshold = thresholds[i];
 			double[] sumLabel = new double[threshold.length];
 			int[] c = new int[threshold.length];
-			int[] stMap = new int[samples.length];
+			int maxCode = 0;
 			
 			int last = -1;
 			for(int t=0;t<threshold.length;t++)
@@ -89,7 +106,7 @@ public class FeatureHistogram {
 				for(;j<idx.length;j++)
 				{
 					int k = idx[j];
-					if(samples[k].getFeatureValue(fid) >  threshold[t])
+					if(fv[k] >  threshold[t])
 						break;
 					sumLeft += labels[k];
 					if(i == 0)
@@ -98,12 +115,13 @@ public class FeatureHistogram {
 						sqSumResponse += labels[k] * labels[k];
 					}
 					stMap[k] =  t;
+					maxCode = t;
 				}
 				last = j-1;	
 				sumLabel[t] = sumLeft;
 				c[t] = last+1;
 			}
-			sampleToThresholdMap[i] = stMap;
+			bins.set(i, stMap, maxCode);
 			sum[i] = sumLabel;
 			count[i] = c;
 		}
@@ -117,25 +135,26 @@ public class FeatureHistogram {
 		MyThreadPool p = MyThreadPool.getInstance();
 		if(p.size() == 1)
 			update(labels, 0, features.length-1);
+		else if(byRows(labels.length))
+			accumulateByRows(null, 0, labels.length, labels);
 		else
 			p.execute(new Worker(this, labels), features.length);
 	}
 	protected void update(double[] labels, int start, int end)
 	{
+		//one feature at a time: this streams through one column of bin codes rather than through all of them at once
 		for(int f=start;f<=end;f++)
+		{
 			Arrays.fill(sum[f], 0);
-		for(int k=0;k<labels.length;k++)
+			bins.accumulate(f, labels, sum[f]);
+			//count doesn't change, so no need to re-compute
+		}
+		if(start == 0)
 		{
-			for(int f=start;f<=end;f++)
+			for(int k=0;k<labels.length;k++)
 			{
-				int t = sampleToThresholdMap[f][k];
-				sum[f][t] += labels[k];
-				if(f == 0)
-				{
-					sumResponse += labels[k];
-					sqSumResponse += labels[k]*labels[k];
-				}
-				//count doesn't change, so no need to re-compute
+				sumResponse += labels[k];
+				sqSumResponse += labels[k]*labels[k];
 			}
 		}
 		for(int f=start;f<=end;f++)
@@ -146,47 +165,77 @@ public class FeatureHistogram {
 	}
 	
 	public void construct(FeatureHistogram parent, int[] soi, double[] labels)
+	{
+		construct(parent, soi, 0, soi.length, labels);
+	}
+	/**
+	 * Construct the histogram of a node from its samples: soi[@from], ..., soi[@to-1].
+	 * @param parent
+	 * @param soi
+	 * @param from
+	 * @param to
+	 * @param labels
+	 */
+	public void construct(FeatureHistogram parent, int[] soi, int from, int to, double[] labels)
+	{
+		init(parent);
+		
+		MyThreadPool p = MyThreadPool.getInstance();
+		if(p.size() == 1)
+			construct(parent, soi, from, to, labels, 0, features.length-1);
+		else if(byRows(to - from))
+			accumulateByRows(soi, from, to, labels);
+		else
+			p.execute(new Worker(this, parent, soi, from, to, labels), features.length);	
+	}
+	/**
+	 * Get ready to build the histogram of a child of @parent (to be filled in from its samples).
+	 * @param parent
+	 */
+	protected void init(FeatureHistogram parent)
 	{
 		this.features = parent.features;
 		this.thresholds = parent.thresholds;
 		sumResponse = 0;
 		sqSumResponse = 0;
-		sum = new double[features.length][];
-		count = new int[features.length][];
-		sampleToThresholdMap = parent.sampleToThresholdMap;
-		
-		MyThreadPool p = MyThreadPool.getInstance();
-		if(p.size() == 1)
-			construct(parent, soi, labels, 0, features.length-1);
+		pool = parent.pool;
+		if(pool != null)
+		{
+			sum = pool.takeSum();
+			count = pool.takeCount();
+		}
 		else
-			p.execute(new Worker(this, parent, soi, labels), features.length);	
+		{
+			sum = new double[features.length][];
+			count = new int[features.length][];
+		}
+		bins = parent.bins;
 	}
-	protected void construct(FeatureHistogram parent, int[] soi, double[] labels, int start, int end)
+	protected void construct(FeatureHistogram parent, int[] soi, int from, int to, double[] labels, int start, int end)
 	{
 		//init
 		for(int i=start;i<=end;i++)
 		{			
 			float[] threshold = thresholds[i];
-			sum[i] = new double[threshold.length];
-			count[i] = new int[threshold.length];
+			if(sum[i] == null)
+			{
+				sum[i] = new double[threshold.length];
+				count[i] = new int[threshold.length];
+			}
 			Arrays.fill(sum[i], 0);
 			Arrays.fill(count[i], 0);
 		}
 		
 		//update
-		for(int i=0;i<soi.length;i++)
+		for(int f=start;f<=end;f++)
+			bins.accumulate(f, soi, labels, sum[f], count[f], from, to-1);
+		if(start == 0)
 		{
-			int k = soi[i];
-			for(int f=start;f<=end;f++)
+			for(int i=from;i<to;i++)
 			{
-				int t = sampleToThresholdMap[f][k];
-				sum[f][t] += labels[k];
-				count[f][t] ++;
-				if(f == 0)
-				{
-					sumResponse += labels[k];
-					sqSumResponse += labels[k]*labels[k];
-				}
+				int k = soi[i];
+				sumResponse += labels[k];
+				sqSumResponse += labels[k]*labels[k];
 			}
 		}
 		
@@ -200,50 +249,193 @@ public class FeatureHistogram {
 		}
 	}	
 	
-	public void construct(FeatureHistogram parent, FeatureHistogram leftSibling, boolean reuseParent)
+	/**
+	 * Whether to split the samples (rather than the features) among threads when building a histogram. With only a few
+	 * features, splitting them leaves most threads idle (e.g. 10 features on 8 threads: 2 rounds of work for 10 features' worth),
+	 * so as long as there are enough samples, each thread builds a partial histogram of its share of the samples instead.
+	 * @param nRows Number of samples
+	 * @return
+	 */
+	protected boolean byRows(int nRows)
+	{
+		int nThreads = MyThreadPool.getInstance().size();
+		if(nThreads == 1 || features.length >= 2 * nThreads)
+			return false;
+		//each thread also has to clear and add up its own copy of the histogram
+		int maxThresholds = 0;
+		for(int f=0;f<thresholds.length;f++)
+			maxThresholds = Math.max(maxThresholds, thresholds[f].length);
+		return nRows / nThreads >= Math.max(minRowsPerThread, 4 * maxThresholds);
+	}
+	/**
+	 * Compute @sum (and @count, unless @soi is null), @sumResponse and @sqSumResponse from the samples soi[@from..@to-1]
+	 * (samples @from..@to-1 if @soi is null): each thread builds the histogram of a range of samples, then these partial
+	 * histograms are added up. Partial results are always added up in the same order, so the outcome only depends on the
+	 * number of threads.
+	 * @param soi
+	 * @param from
+	 * @param to
+	 * @param labels
+	 */
+	protected void accumulateByRows(int[] soi, int from, int to, double[] labels)
+	{
+		MyThreadPool p = MyThreadPool.getInstance();
+		WorkerThread[] partials = p.execute(new Worker(this, soi, from, labels), to - from);
+		sumResponse = 0;
+		sqSumResponse = 0;
+		for(int i=0;i<partials.length;i++)
+		{
+			Worker wk = (Worker)partials[i];
+			sumResponse += wk.partialSumResponse;
+			sqSumResponse += wk.partialSqSumResponse;
+		}
+		p.execute(new Worker(this, partials, soi != null), features.length);
+		for(int i=0;i<partials.length;i++)
+		{
+			Worker wk = (Worker)partials[i];
+			if(pool != null)
+				pool.release(wk.partialSum, wk.partialCount);
+		}
+	}
+	protected void accumulate(int[] soi, double[] labels, Worker wk, int start, int end)
+	{
+		double[][] s = takeSum();
+		int[][] c = (soi == null) ? null : takeCount();
+		for(int f=0;f<features.length;f++)
+		{
+			Arrays.fill(s[f], 0);
+			if(soi == null)
+				bins.accumulate(f, labels, s[f], start, end);
+			else
+			{
+				Arrays.fill(c[f], 0);
+				bins.accumulate(f, soi, labels, s[f], c[f], start, end);
+			}
+		}
+		double sr = 0;
+		double sqsr = 0;
+		for(int i=start;i<=end;i++)
+		{
+			int k = (soi == null) ? i : soi[i];
+			sr += labels[k];
+			sqsr += labels[k] * labels[k];
+		}
+		wk.partialSum = s;
+		wk.partialCount = c;
+		wk.partialSumResponse = sr;
+		wk.partialSqSumResponse = sqsr;
+	}
+	protected void reduce(WorkerThread[] partials, boolean withCount, int start, int end)
+	{
+		for(int f=start;f<=end;f++)
+		{
+			int nThresholds = thresholds[f].length;
+			if(sum[f] == null)
+			{
+				sum[f] = new double[nThresholds];
+				count[f] = new int[nThresholds];
+			}
+			double[] s = sum[f];
+			int[] c = count[f];
+			Arrays.fill(s, 0);
+			if(withCount)
+				Arrays.fill(c, 0);
+			for(int i=0;i<partials.length;i++)
+			{
+				Worker wk = (Worker)partials[i];
+				double[] ps = wk.partialSum[f];
+				for(int t=0;t<nThresholds;t++)
+					s[t] += ps[t];
+				if(withCount)
+				{
+					int[] pc = wk.partialCount[f];
+					for(int t=0;t<nThresholds;t++)
+						c[t] += pc[t];
+				}
+			}
+			for(int t=1;t<nThresholds;t++)
+			{
+				s[t] += s[t-1];
+				if(withCount)
+					c[t] += c[t-1];
+			}
+		}
+	}
+	
+	/**
+	 * Construct the histogram of a node from the ones of its parent and its sibling (by subtraction).
+	 * @param parent
+	 * @param sibling
+	 * @param reuseParent Whether to take over the arrays of @parent (which is then no longer usable)
+	 */
+	public void construct(FeatureHistogram parent, FeatureHistogram sibling, boolean reuseParent)
 	{
 		this.reuseParent = reuseParent;
 		this.features = parent.features;
 		this.thresholds = parent.thresholds;
-		sumResponse = parent.sumResponse - leftSibling.sumResponse;
-		sqSumResponse = parent.sqSumResponse - leftSibling.sqSumResponse;
+		sumResponse = parent.sumResponse - sibling.sumResponse;
+		sqSumResponse = parent.sqSumResponse - sibling.sqSumResponse;
 		
+		pool = parent.pool;
 		if(reuseParent)
 		{
 			sum = parent.sum;
 			count = parent.count;
 		}
+		else if(pool != null)
+		{
+			sum = pool.takeSum();
+			count = pool.takeCount();
+		}
 		else
 		{
 			sum = new double[features.length][];
 			count = new int[features.length][];
 		}
-		sampleToThresholdMap = parent.sampleToThresholdMap;
+		bins = parent.bins;
 		
 		MyThreadPool p = MyThreadPool.getInstance();
 		if(p.size() == 1)
-			construct(parent, leftSibling, 0, features.length-1);
+			construct(parent, sibling, 0, features.length-1);
 		else
-			p.execute(new Worker(this, parent, leftSibling), features.length);
+			p.execute(new Worker(this, parent, sibling), features.length);
+		
+		if(reuseParent)
+		{
+			//these now belong to this node
+			parent.sum = null;
+			parent.count = null;
+		}
 	}
-	protected void construct(FeatureHistogram parent, FeatureHistogram leftSibling, int start, int end)
+	protected void construct(FeatureHistogram parent, FeatureHistogram sibling, int start, int end)
 	{
 		for(int f=start;f<=end;f++)
 		{
 			float[] threshold = thresholds[f];
-			if(!reuseParent)
+			if(sum[f] == null)
 			{
 				sum[f] = new double[threshold.length];
 				count[f] = new int[threshold.length];
 			}
 			for(int t=0;t<threshold.length;t++)
 			{
-				sum[f][t] = parent.sum[f][t] - leftSibling.sum[f][t];
-				count[f][t] = parent.count[f][t] - leftSibling.count[f][t];
+				sum[f][t] = parent.sum[f][t] - sibling.sum[f][t];
+				count[f][t] = parent.count[f][t] - sibling.count[f][t];
 			}
 		}
 	}
 	
+	/**
+	 * Give @sum and @count back to the pool once the node is done with them.
+	 */
+	public void release()
+	{
+		if(pool != null && sum != null)
+			pool.release(sum, count);
+		sum = null;
+		count = null;
+	}
+	
 	protected Config findBestSplit(int[] usedFeatures, int minLeafSupport, int start, int end)
 	{
 		Config cfg = new Config();
@@ -274,7 +466,49 @@ public class FeatureHistogram {
 		}		
 		return cfg;
 	}
+	/**
+	 * Split a node (whose histogram is this one) and build the histograms of its children.
+	 * @param sp
+	 * @param labels
+	 * @param minLeafSupport
+	 * @return false if the node can't be split.
+	 */
 	public boolean findBestSplit(Split sp, double[] labels, int minLeafSupport)
+	{
+		if(!splitSamples(sp, minLeafSupport))
+			return false;
+		
+		//only go through the samples of the smaller child: the histogram of the other one is what's left of the parent's
+		Split left = sp.getLeft();
+		Split right = sp.getRight();
+		int[] index = sp.getPartition().getIndex();
+		FeatureHistogram lh = new FeatureHistogram();
+		FeatureHistogram rh = new FeatureHistogram();
+		if(left.getSampleCount() <= right.getSampleCount())
+		{
+			lh.construct(sp.hist, index, left.getBegin(), left.getEnd(), labels);
+			rh.construct(sp.hist, lh, !sp.isRoot());
+		}
+		else
+		{
+			rh.construct(sp.hist, index, right.getBegin(), right.getEnd(), labels);
+			lh.construct(sp.hist, rh, !sp.isRoot());
+		}
+		left.setHistogram(lh);
+		right.setHistogram(rh);
+		
+		sp.clearSamples();
+		
+		return true;
+	}
+	/**
+	 * Find the best split of a node (whose histogram is this one), split its samples accordingly and give it two children.
+	 * The histograms of the children are left to be built (see findBestSplit() and constructChildren()).
+	 * @param sp
+	 * @param minLeafSupport
+	 * @return false if the node can't be split.
+	 */
+	public boolean splitSamples(Split sp, int minLeafSupport)
 	{
 		if(sp.getDeviance() >= 0.0 && sp.getDeviance() <= 0.0)//equals 0
 			return false;//no need to split
@@ -338,37 +572,249 @@ public class FeatureHistogram {
 		double sumRight = s - sumLeft;
 		int countRight = c - countLeft;
 		
-		int[] left = new int[countLeft];
-		int[] right = new int[countRight];
-		int l = 0;
-		int r = 0;
-		int k = 0;
-		int[] idx = sp.getSamples();
-		for(int j=0;j<idx.length;j++)
+		DataPartition partition = sp.getPartition();
+		int begin = sp.getBegin();
+		int end = sp.getEnd();
+		int mid = partition.split(bins, best.featureIdx, best.thresholdIdx, begin, end);
+		
+		double var = sqSumResponse - sumResponse * sumResponse / (end - begin);
+		sp.set(features[best.featureIdx], thresholds[best.featureIdx][best.thresholdIdx], var);
+		Split left = new Split(partition, begin, mid, null, 0, sumLeft);
+		Split right = new Split(partition, mid, end, null, 0, sumRight);
+		left.setDepth(sp.getDepth()+1);
+		right.setDepth(sp.getDepth()+1);
+		sp.setLeft(left);
+		sp.setRight(right);
+		
+		return true;
+	}
+	
+	/**
+	 * Build the histograms of the children of several nodes which have just been split (see splitSamples()), with a
+	 * single pass over the samples of their smaller children: these are split among threads, each of which fills in
+	 * the histograms of the nodes it fully covers and partial histograms of the (at most two) nodes it shares with other
+	 * threads. The larger children get what's left of their parents' histograms.
+	 * @param parents Nodes that were split. They must all share the same DataPartition.
+	 * @param labels
+	 */
+	public static void constructChildren(List<Split> parents, double[] labels)
+	{
+		int n = parents.size();
+		if(n == 0)
+			return;
+		FeatureHistogram[] hists = new FeatureHistogram[n];
+		int[] from = new int[n];
+		int[] to = new int[n];
+		int[] offset = new int[n+1];//samples of hists[i] are [offset[i], offset[i+1]) when laid end-to-end
+		for(int i=0;i<n;i++)
 		{
-			k = idx[j];
-			if(sampleToThresholdMap[best.featureIdx][k] <= best.thresholdIdx)//go to the left
-				left[l++] = k;
-			else//go to the right
-				right[r++] = k;
+			Split sp = parents.get(i);
+			Split smaller = (sp.getLeft().getSampleCount() <= sp.getRight().getSampleCount()) ? sp.getLeft() : sp.getRight();
+			hists[i] = new FeatureHistogram();
+			hists[i].init(sp.hist);
+			from[i] = smaller.getBegin();
+			to[i] = smaller.getEnd();
+			offset[i+1] = offset[i] + to[i] - from[i];
 		}
+		int[] soi = parents.get(0).getPartition().getIndex();
 		
-		FeatureHistogram lh = new FeatureHistogram();
-		lh.construct(sp.hist, left, labels);
-		FeatureHistogram rh = new FeatureHistogram();
-		rh.construct(sp.hist, lh, !sp.isRoot());
-
-		double var = sqSumResponse - sumResponse * sumResponse / idx.length;
-		double varLeft = lh.sqSumResponse - lh.sumResponse * lh.sumResponse / left.length;
-		double varRight = rh.sqSumResponse - rh.sumResponse * rh.sumResponse / right.length;
-		
-		sp.set(features[best.featureIdx], thresholds[best.featureIdx][best.thresholdIdx], var);
-		sp.setLeft(new Split(left, lh, varLeft, sumLeft));
-		sp.setRight(new Split(right, rh, varRight, sumRight));
+		MyThreadPool p = MyThreadPool.getInstance();
+		if(p.size() == 1)
+			accumulate(hists, soi, from, to, offset, labels, null, 0, offset[n]-1);
+		else
+		{
+			WorkerThread[] workers = p.execute(new LevelWorker(hists, soi, from, to, offset, labels), offset[n]);
+			//add up histograms of nodes shared by several threads (always in the same order)
+			boolean[] started = new boolean[n];
+			for(int w=0;w<workers.length;w++)
+			{
+				List<Partial> partials = ((LevelWorker)workers[w]).partials;
+				for(int j=0;j<partials.size();j++)
+				{
+					Partial pt = partials.get(j);
+					FeatureHistogram h = hists[pt.node];
+					if(!started[pt.node])
+					{
+						for(int f=0;f<h.features.length;f++)
+						{
+							h.allocate(f);
+							Arrays.fill(h.sum[f], 0);
+							Arrays.fill(h.count[f], 0);
+						}
+						started[pt.node] = true;
+					}
+					for(int f=0;f<h.features.length;f++)
+					{
+						double[] s = h.sum[f];
+						int[] c = h.count[f];
+						for(int t=0;t<s.length;t++)
+						{
+							s[t] += pt.sum[f][t];
+							c[t] += pt.count[f][t];
+						}
+					}
+					h.sumResponse += pt.sumResponse;
+					h.sqSumResponse += pt.sqSumResponse;
+					if(h.pool != null)
+						h.pool.release(pt.sum, pt.count);
+				}
+			}
+		}
+		for(int i=0;i<n;i++)
+		{
+			FeatureHistogram h = hists[i];
+			for(int f=0;f<h.features.length;f++)
+			{
+				double[] s = h.sum[f];
+				int[] c = h.count[f];
+				for(int t=1;t<s.length;t++)
+				{
+					s[t] += s[t-1];
+					c[t] += c[t-1];
+				}
+			}
+		}
 		
-		sp.clearSamples();
+		for(int i=0;i<n;i++)
+		{
+			Split sp = parents.get(i);
+			Split smaller = (sp.getLeft().getSampleCount() <= sp.getRight().getSampleCount()) ? sp.getLeft() : sp.getRight();
+			Split larger = (smaller == sp.getLeft()) ? sp.getRight() : sp.getLeft();
+			smaller.setHistogram(hists[i]);
+			FeatureHistogram h = new FeatureHistogram();
+			h.construct(sp.hist, hists[i], !sp.isRoot());
+			larger.setHistogram(h);
+			sp.clearSamples();
+		}
+	}
+	/**
+	 * Fill in the (non-cumulative) histograms of samples [@start, @end] of the nodes laid end-to-end (see constructChildren()).
+	 * Nodes whose samples are all in the range are filled in directly, the others get a partial histogram in @partials.
+	 */
+	protected static void accumulate(FeatureHistogram[] hists, int[] soi, int[] from, int[] to, int[] offset, double[] labels, List<Partial> partials, int start, int end)
+	{
+		for(int i=0;i<hists.length;i++)
+		{
+			if(offset[i+1] <= start || offset[i] > end)
+				continue;
+			FeatureHistogram h = hists[i];
+			int lo = Math.max(start, offset[i]);
+			int hi = Math.min(end, offset[i+1]-1);
+			boolean whole = (lo == offset[i] && hi == offset[i+1]-1);
+			double[][] s = null;
+			int[][] c = null;
+			if(whole)
+			{
+				for(int f=0;f<h.features.length;f++)
+					h.allocate(f);
+				s = h.sum;
+				c = h.count;
+			}
+			else
+			{
+				s = h.takeSum();
+				c = h.takeCount();
+			}
+			//samples soi[a..b]
+			int a = from[i] + lo - offset[i];
+			int b = from[i] + hi - offset[i];
+			for(int f=0;f<h.features.length;f++)
+			{
+				Arrays.fill(s[f], 0);
+				Arrays.fill(c[f], 0);
+				h.bins.accumulate(f, soi, labels, s[f], c[f], a, b);
+			}
+			double sr = 0;
+			double sqsr = 0;
+			for(int j=a;j<=b;j++)
+			{
+				int k = soi[j];
+				sr += labels[k];
+				sqsr += labels[k] * labels[k];
+			}
+			if(whole)
+			{
+				h.sumResponse = sr;
+				h.sqSumResponse = sqsr;
+			}
+			else
+			{
+				Partial pt = new Partial();
+				pt.node = i;
+				pt.sum = s;
+				pt.count = c;
+				pt.sumResponse = sr;
+				pt.sqSumResponse = sqsr;
+				partials.add(pt);
+			}
+		}
+	}
+	/**
+	 * @return Sums for a whole extra histogram (from the pool if there is one). Their content is undefined.
+	 */
+	protected double[][] takeSum()
+	{
+		if(pool != null)
+			return pool.takeSum();
+		double[][] s = new double[features.length][];
+		for(int f=0;f<features.length;f++)
+			s[f] = new double[thresholds[f].length];
+		return s;
+	}
+	/**
+	 * @return Counts for a whole extra histogram (from the pool if there is one). Their content is undefined.
+	 */
+	protected int[][] takeCount()
+	{
+		if(pool != null)
+			return pool.takeCount();
+		int[][] c = new int[features.length][];
+		for(int f=0;f<features.length;f++)
+			c[f] = new int[thresholds[f].length];
+		return c;
+	}
+	private void allocate(int f)
+	{
+		if(sum[f] == null)
+		{
+			sum[f] = new double[thresholds[f].length];
+			count[f] = new int[thresholds[f].length];
+		}
+	}
+	
+	static class Partial {
+		int node = -1;
+		double[][] sum = null;
+		int[][] count = null;
+		double sumResponse = 0;
+		double sqSumResponse = 0;
+	}
+	static class LevelWorker extends WorkerThread {
+		FeatureHistogram[] hists = null;
+		int[] soi = null;
+		int[] from = null;
+		int[] to = null;
+		int[] offset = null;
+		double[] labels = null;
+		List<Partial> partials = new ArrayList<Partial>();
 		
-		return true;
+		LevelWorker(FeatureHistogram[] hists, int[] soi, int[] from, int[] to, int[] offset, double[] labels)
+		{
+			this.hists = hists;
+			this.soi = soi;
+			this.from = from;
+			this.to = to;
+			this.offset = offset;
+			this.labels = labels;
+		}
+		public void run()
+		{
+			accumulate(hists, soi, from, to, offset, labels, partials, start, end);
+		}
+		public WorkerThread clone()
+		{
+			return new LevelWorker(hists, soi, from, to, offset, labels);
+		}
 	}	
 
 	class Worker extends WorkerThread {
@@ -386,15 +832,27 @@ public class FeatureHistogram {
 		//construct (type = 2)
 		FeatureHistogram parent = null;
 		int[] soi = null;
+		int from = 0;//samples are soi[from..to-1] (also for type 5)
+		int to = 0;
 		
 		//construct (type = 3)
-		FeatureHistogram leftSibling = null;
+		FeatureHistogram sibling = null;
 		
 		//construct (type = 4)
-		DataPoint[] samples;
+		float[][] values;
 		int[][] sampleSortedIdx;
 		float[][] thresholds;
 		
+		//partial histogram of a range of samples (type = 5)
+		double[][] partialSum = null;
+		int[][] partialCount = null;
+		double partialSumResponse = 0;
+		double partialSqSumResponse = 0;
+		
+		//add up partial histograms (type = 6)
+		WorkerThread[] partials = null;
+		boolean withCount = false;
+		
 		public Worker()
 		{
 		}
@@ -411,30 +869,47 @@ public class FeatureHistogram {
 			this.fh = fh;
 			this.labels = labels;
 		}
-		public Worker(FeatureHistogram fh, FeatureHistogram parent, int[] soi, double[] labels)
+		public Worker(FeatureHistogram fh, FeatureHistogram parent, int[] soi, int from, int to, double[] labels)
 		{
 			type = 2;
 			this.fh = fh;
 			this.parent = parent;
 			this.soi = soi;
+			this.from = from;
+			this.to = to;
 			this.labels = labels;
 		}
-		public Worker(FeatureHistogram fh, FeatureHistogram parent, FeatureHistogram leftSibling)
+		public Worker(FeatureHistogram fh, FeatureHistogram parent, FeatureHistogram sibling)
 		{
 			type = 3;
 			this.fh = fh;
 			this.parent = parent;
-			this.leftSibling = leftSibling;
+			this.sibling = sibling;
 		}
-		public Worker(FeatureHistogram fh, DataPoint[] samples, double[] labels, int[][] sampleSortedIdx, float[][] thresholds)
+		public Worker(FeatureHistogram fh, float[][] values, double[] labels, int[][] sampleSortedIdx, float[][] thresholds)
 		{
 			type = 4;
 			this.fh = fh;
-			this.samples = samples;
+			this.values = values;
 			this.labels = labels;
 			this.sampleSortedIdx = sampleSortedIdx;
 			this.thresholds = thresholds;			
 		}
+		public Worker(FeatureHistogram fh, int[] soi, int from, double[] labels)
+		{
+			type = 5;
+			this.fh = fh;
+			this.soi = soi;
+			this.from = from;
+			this.labels = labels;
+		}
+		public Worker(FeatureHistogram fh, WorkerThread[] partials, boolean withCount)
+		{
+			type = 6;
+			this.fh = fh;
+			this.partials = partials;
+			this.withCount = withCount;
+		}
 		public void run()
 		{
 			if(type == 0)
@@ -442,11 +917,15 @@ public class FeatureHistogram {
 			else if(type == 1)
 				fh.update(labels, start, end);
 			else if(type == 2)
-				fh.construct(parent, soi, labels, start, end);
+				fh.construct(parent, soi, from, to, labels, start, end);
 			else if(type == 3)
-				fh.construct(parent, leftSibling, start, end);
+				fh.construct(parent, sibling, start, end);
 			else if(type == 4)
-				fh.construct(samples, labels, sampleSortedIdx, thresholds, start, end);
+				fh.construct(values, labels, sampleSortedIdx, thresholds, start, end);
+			else if(type == 5)
+				fh.accumulate(soi, labels, this, from+start, from+end);
+			else if(type == 6)
+				fh.reduce(partials, withCount, start, end);
 		}		
 		public WorkerThread clone()
 		{
@@ -465,15 +944,21 @@ public class FeatureHistogram {
 			//construct (type = 2)
 			wk.parent = parent;
 			wk.soi = soi;
+			wk.from = from;
+			wk.to = to;
 			
 			//construct (type = 3)
-			wk.leftSibling = leftSibling;
+			wk.sibling = sibling;
 			
-			//construct (type = 1)
-			wk.samples = samples;
+			//construct (type = 4)
+			wk.values = values;
 			wk.sampleSortedIdx = sampleSortedIdx;
 			wk.thresholds = thresholds;			
 			
+			//add up partial histograms (type = 6)
+			wk.partials = partials;
+			wk.withCount = withCount;
+			
 			return wk;
 		}
 	}
@@ -0,0 +1,265 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+
+import java.util.Arrays;
+
+/**
+ * A read-only copy of trained trees, laid out in flat arrays for fast scoring: one entry per split node in @feature,
+ * @threshold, @left and @right, and one per leaf in @leafValue. Children >= 0 are split nodes, children < 0 are leaves
+ * (leaf ~child). Each leaf value already has the weight of its tree folded in.
+ *
+ * Trees come in groups: the score of each group is the sum of its trees' outputs (an Ensemble), and groups are either
+ * added up (a single Ensemble) or averaged (the bags of RFRanker). Scores are accumulated exactly like Ensemble.eval()
+ * and RFRanker.eval() do, so they are exactly the same.
+ */
+public class FlatEnsemble implements EnsembleScorer {
+
+	//Parameters
+	public static int rowBlockSize = 16;//rows scored together by eval(float[][], double[])
+	public static int treeBlockSize = 64;//trees each block of rows goes through before moving on to the next ones
+
+	protected int[] feature = null;
+	protected float[] threshold = null;
+	protected int[] left = null;
+	protected int[] right = null;
+	protected double[] leafValue = null;//leaf output * tree weight (kept as a double: Ensemble.eval() adds this product up before rounding)
+	protected int[] root = null;//root of each tree
+	protected int[] groupEnd = null;//trees of group g are [groupEnd[g-1], groupEnd[g])
+	protected boolean average = false;//whether the score is the average of the groups (rather than their sum)
+	protected int[] features = null;//distinct features used by the trees
+	protected int maxFeature = 0;
+
+	private int nNodes = 0;
+	private int nLeaves = 0;
+
+	/**
+	 * @param e
+	 */
+	public FlatEnsemble(Ensemble e)
+	{
+		this(new Ensemble[]{e}, false);
+	}
+	/**
+	 * @param rf
+	 */
+	public FlatEnsemble(RFRanker rf)
+	{
+		this(rf.getEnsembles(), true);
+	}
+	/**
+	 * @param groups
+	 * @param average Whether to average the scores of @groups (rather than adding them up)
+	 */
+	public FlatEnsemble(Ensemble[] groups, boolean average)
+	{
+		this.average = average;
+		int nTrees = 0;
+		int nodes = 0;
+		int leaves = 0;
+		for(int g=0;g<groups.length;g++)
+		{
+			for(int i=0;i<groups[g].treeCount();i++)
+			{
+				int n = groups[g].getTree(i).leaves().size();
+				nodes += n - 1;
+				leaves += n;
+			}
+			nTrees += groups[g].treeCount();
+		}
+		feature = new int[nodes];
+		threshold = new float[nodes];
+		left = new int[nodes];
+		right = new int[nodes];
+		leafValue = new double[leaves];
+		root = new int[nTrees];
+		groupEnd = new int[groups.length];
+
+		int t = 0;
+		for(int g=0;g<groups.length;g++)
+		{
+			Ensemble e = groups[g];
+			for(int i=0;i<e.treeCount();i++)
+				root[t++] = add(e.getTree(i).root, e.getWeight(i));
+			groupEnd[g] = t;
+		}
+		
+		int[] sorted = feature.clone();
+		Arrays.sort(sorted);
+		int nFeatures = 0;
+		for(int n=0;n<sorted.length;n++)
+			if(n == 0 || sorted[n] != sorted[n-1])
+				sorted[nFeatures++] = sorted[n];
+		features = Arrays.copyOf(sorted, nFeatures);
+		maxFeature = (nFeatures > 0) ? features[nFeatures-1] : 0;
+	}
+
+	private int add(Split s, float weight)
+	{
+		if(s.getLeft() == null)
+		{
+			leafValue[nLeaves] = s.getOutput() * weight;
+			return ~(nLeaves++);
+		}
+		int n = nNodes++;
+		feature[n] = s.getFeatureID();
+		threshold[n] = s.getThreshold();
+		left[n] = add(s.getLeft(), weight);
+		right[n] = add(s.getRight(), weight);
+		return n;
+	}
+
+	public int treeCount()
+	{
+		return root.length;
+	}
+	/**
+	 * @return Features used by the trees, in ascending order.
+	 */
+	public int[] getFeatures()
+	{
+		return features;
+	}
+	/**
+	 * @return The largest feature id used by the trees (rows given to eval(float[]) must go up to it).
+	 */
+	public int getMaxFeature()
+	{
+		return maxFeature;
+	}
+
+	/**
+	 * @param row Feature values, indexed by feature id: row[fid] is the value of feature fid (0 for unspecified features,
+	 * see toRow()). It must have at least getMaxFeature()+1 values.
+	 * @return
+	 */
+	public double eval(float[] row)
+	{
+		double total = 0;
+		int t = 0;
+		for(int g=0;g<groupEnd.length;g++)
+		{
+			float s = 0;
+			for(;t<groupEnd[g];t++)
+			{
+				int n = root[t];
+				while(n >= 0)
+					n = (row[feature[n]] <= threshold[n]) ? left[n] : right[n];
+				s += leafValue[~n];
+			}
+			total += s;
+		}
+		return average ? total/groupEnd.length : total;
+	}
+	/**
+	 * Same scores as eval(float[]) on each row. Rows go through the trees block by block, so that the nodes of a block of
+	 * trees are used by a whole block of rows while they are in cache (trees are still added up in the same order).
+	 * @param rows
+	 * @param out [Output]
+	 */
+	public void eval(float[][] rows, double[] out)
+	{
+		eval(rows, rows.length, out);
+	}
+	/**
+	 * Same as eval(float[][], double[]) on the first @nRows rows only (e.g. when rows are re-used for batches of various sizes).
+	 * @param rows
+	 * @param nRows
+	 * @param out [Output]
+	 */
+	public void eval(float[][] rows, int nRows, double[] out)
+	{
+		float[] s = new float[rowBlockSize];
+		for(int begin=0;begin<nRows;begin+=rowBlockSize)
+		{
+			int end = Math.min(nRows, begin+rowBlockSize);
+			for(int r=begin;r<end;r++)
+				out[r] = 0;
+			int t = 0;
+			for(int g=0;g<groupEnd.length;g++)
+			{
+				Arrays.fill(s, 0);
+				for(;t<groupEnd[g];t+=treeBlockSize)
+				{
+					int lastTree = Math.min(groupEnd[g], t+treeBlockSize);
+					for(int r=begin;r<end;r++)
+					{
+						float[] row = rows[r];
+						float sr = s[r-begin];
+						for(int k=t;k<lastTree;k++)
+						{
+							int n = root[k];
+							while(n >= 0)
+								n = (row[feature[n]] <= threshold[n]) ? left[n] : right[n];
+							sr += leafValue[~n];
+						}
+						s[r-begin] = sr;
+					}
+				}
+				t = groupEnd[g];
+				for(int r=begin;r<end;r++)
+					out[r] += s[r-begin];
+			}
+			if(average)
+				for(int r=begin;r<end;r++)
+					out[r] /= groupEnd.length;
+		}
+	}
+	/**
+	 * Same score as eval(toRow(dp)), without the copy.
+	 * @param dp
+	 * @return
+	 */
+	public double eval(DataPoint dp)
+	{
+		double total = 0;
+		int t = 0;
+		for(int g=0;g<groupEnd.length;g++)
+		{
+			float s = 0;
+			for(;t<groupEnd[g];t++)
+			{
+				int n = root[t];
+				while(n >= 0)
+					n = (dp.getFeatureValue(feature[n]) <= threshold[n]) ? left[n] : right[n];
+				s += leafValue[~n];
+			}
+			total += s;
+		}
+		return average ? total/groupEnd.length : total;
+	}
+
+	/**
+	 * @param dp
+	 * @return A row for eval(float[]) with the values of the features used by the trees.
+	 */
+	public float[] toRow(DataPoint dp)
+	{
+		return toRow(dp, new float[maxFeature+1]);
+	}
+	/**
+	 * Copy the values of the features used by the trees (features beyond the last one of @dp are taken as unspecified).
+	 * @param dp
+	 * @param row [Output] Room for getMaxFeature()+1 values (values of features not used by the trees are left untouched)
+	 * @return @row
+	 */
+	public float[] toRow(DataPoint dp, float[] row)
+	{
+		int last = dp.getMaxFeature();
+		for(int i=0;i<features.length;i++)
+		{
+			int fid = features[i];
+			row[fid] = (fid <= last) ? dp.getFeatureValue(fid) : 0;
+		}
+		return row;
+	}
+}
@@ -0,0 +1,83 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded pool of @sum/@count arrays for the histograms of tree nodes (see FeatureHistogram), so that they can be re-used
+ * by the nodes of all trees instead of being re-allocated at every split.
+ *
+ * A tree with n leaves never holds more than n node histograms at once (besides the one of the root, which isn't pooled),
+ * plus one partial histogram per thread while a node is being built (see FeatureHistogram.accumulateByRows), so a pool of
+ * that many buffers is enough for the learner to stop allocating after the first tree.
+ */
+public class HistogramPool {
+
+	protected float[][] thresholds = null;
+	protected int capacity = 0;
+	protected List<double[][]> sums = new ArrayList<double[][]>();
+	protected List<int[][]> counts = new ArrayList<int[][]>();
+
+	/**
+	 * @param thresholds Candidate thresholds of each feature (these give the size of the histograms)
+	 * @param capacity Max number of buffers kept around for re-use (-1 for no limit)
+	 */
+	public HistogramPool(float[][] thresholds, int capacity)
+	{
+		this.thresholds = thresholds;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return Sums for a new histogram (their content is undefined).
+	 */
+	public synchronized double[][] takeSum()
+	{
+		if(sums.size() > 0)
+			return sums.remove(sums.size()-1);
+		double[][] sum = new double[thresholds.length][];
+		for(int f=0;f<thresholds.length;f++)
+			sum[f] = new double[thresholds[f].length];
+		return sum;
+	}
+	/**
+	 * @return Counts for a new histogram (their content is undefined).
+	 */
+	public synchronized int[][] takeCount()
+	{
+		if(counts.size() > 0)
+			return counts.remove(counts.size()-1);
+		int[][] count = new int[thresholds.length][];
+		for(int f=0;f<thresholds.length;f++)
+			count[f] = new int[thresholds[f].length];
+		return count;
+	}
+	/**
+	 * Give the arrays of a histogram that is no longer used back to the pool. They are dropped if the pool is full.
+	 * @param sum
+	 * @param count Can be null (e.g. for histograms which only need sums)
+	 */
+	public synchronized void release(double[][] sum, int[][] count)
+	{
+		if(capacity == -1 || sums.size() < capacity)
+			sums.add(sum);
+		if(count != null && (capacity == -1 || counts.size() < capacity))
+			counts.add(count);
+	}
+	/**
+	 * @return Number of buffers currently available for re-use.
+	 */
+	public synchronized int size()
+	{
+		return sums.size();
+	}
+}
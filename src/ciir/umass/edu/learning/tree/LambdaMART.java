@@ -10,19 +10,27 @@
 package ciir.umass.edu.learning.tree;
 
 import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.FeatureMatrix;
 import ciir.umass.edu.learning.RankList;
 import ciir.umass.edu.learning.Ranker;
+import ciir.umass.edu.learning.RankerFactory;
 import ciir.umass.edu.metric.MetricScorer;
+import ciir.umass.edu.metric.QueryContext;
+import ciir.umass.edu.metric.SwapChangeListener;
 import ciir.umass.edu.utilities.MergeSorter;
 import ciir.umass.edu.utilities.MyThreadPool;
 import ciir.umass.edu.utilities.RankLibError;
 import ciir.umass.edu.utilities.SimpleMath;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.TreeSet;
 
 /**
  * @author vdang
@@ -36,9 +44,16 @@ public class LambdaMART extends Ranker {
 	public static int nTrees = 1000;//the number of trees
 	public static float learningRate = 0.1F;//or shrinkage
 	public static int nThreshold = 256;
+	public static ThresholdBuilder.Mode thresholdMode = ThresholdBuilder.Mode.EQUAL_WIDTH;//how to pick candidates for features with more than nThreshold values
 	public static int nRoundToStopEarly = 100;//If no performance gain on the *VALIDATION* data is observed in #rounds, stop the training process right away. 
 	public static int nTreeLeaves = 10;
 	public static int minLeafSupport = 1;
+	public static RegressionTree.Growth treeGrowth = RegressionTree.Growth.BEST_FIRST;
+	public static int maxDepth = -1;//-1 for no limit
+	public static String checkpointFile = null;//if set, the training state is saved there every @checkpointEvery trees (see Checkpoint)
+	public static int checkpointEvery = 100;
+	public static String resumeFrom = null;//checkpoint to resume training from
+	public static String initModel = null;//LambdaMART/MART model to continue boosting from (@nTrees more trees are added to it)
 	
 	//for debugging
 	public static int gcCycle = 100;
@@ -46,17 +61,37 @@ public class LambdaMART extends Ranker {
 	//Local variables
 	protected float[][] thresholds = null;
 	protected Ensemble ensemble = null;
+	protected volatile EnsembleScorer ensembleScorer = null;//scores with @ensemble, made on first use once it's final (see getEnsembleScorer())
+	protected boolean ensembleIsFinal = false;//@ensemble is trained or loaded, and won't change anymore
+	protected boolean isBag = false;//trained as a bag of a RFRanker: its trees are only scored as part of the forest
 	protected double[] modelScores = null;//on training data
 	
 	protected double[][] modelScoresOnValidation = null;
+	protected ThreadLocal<float[][]> validationBatch = null;//rows of the validation query being scored (see computeModelScoreOnValidation())
 	protected int bestModelOnValidation = Integer.MAX_VALUE-2;
 	
 	//Training instances prepared for MART
 	protected DataPoint[] martSamples = null;//Need initializing only once
 	protected int[][] sortedIdx = null;//sorted list of samples in @martSamples by each feature -- Need initializing only once 
+	protected float[][] featureValues = null;//values of each feature on @martSamples (one column per feature, read-only: see FeatureMatrix.getColumns()) -- Only needed during initialization
 	protected FeatureHistogram hist = null;
+	protected DataPartition partition = null;//samples of each node of the tree being fitted (re-used for all trees)
 	protected double[] pseudoResponses = null;//different for each iteration
 	protected double[] weights = null;//different for each iteration
+	protected QueryContext[] contexts = null;//what @scorer needs about each training query (labels, gains, ideal DCG...), built once
+	protected QueryContext[] validationContexts = null;
+	protected int[] rankedIdx = null;//samples of each query sorted by @modelScores (indexes in @modelScores), if @modelScoresRanked
+	protected boolean modelScoresRanked = false;
+	protected double[] queryScores = null;//score of each training query, for the current model
+	protected double[] validationQueryScores = null;
+	private Thread checkpointWriter = null;//checkpoints are written in the background, one at a time
+	private volatile RuntimeException checkpointError = null;
+	private ThreadLocal<QueryBuffers> queryBuffers = new ThreadLocal<QueryBuffers>() {//re-used by each thread across queries and iterations
+		@Override
+		protected QueryBuffers initialValue() {
+			return new QueryBuffers();
+		}
+	};
 	
 	public LambdaMART()
 	{		
@@ -94,6 +129,14 @@ public class LambdaMART extends Ranker {
 			}
 			current += rl.size();
 		}			
+		contexts = new QueryContext[samples.size()];
+		for(int i=0;i<samples.size();i++)
+			contexts[i] = scorer.createContext(samples.get(i));
+		rankedIdx = new int[dpCount];
+		modelScoresRanked = false;
+		queryScores = new double[samples.size()];
+		//if the samples come straight from a feature matrix, this simply picks up its columns
+		featureValues = FeatureMatrix.getColumns(martSamples, features);
 		
 		//sort (MART) samples by each feature so that we can quickly retrieve a sorted list of samples by any feature later on.
 		sortedIdx = new int[features.length][];
@@ -109,50 +152,7 @@ public class LambdaMART extends Ranker {
 		}
 		
 		//Create a table of candidate thresholds (for each feature). Later on, we will select the best tree split from these candidates 
-		thresholds = new float[features.length][];
-		for(int f=0;f<features.length;f++)
-		{
-			//For this feature, keep track of the list of unique values and the max/min 
-			List<Float> values = new ArrayList<Float>();
-			float fmax = Float.NEGATIVE_INFINITY;
-			float fmin = Float.MAX_VALUE;
-			for(int i=0;i<martSamples.length;i++)
-			{
-				int k = sortedIdx[f][i];//get samples sorted with respect to this feature
-				float fv = martSamples[k].getFeatureValue(features[f]);
-				values.add(fv);
-				if(fmax < fv)
-					fmax = fv;
-				if(fmin > fv)
-					fmin = fv;
-				//skip all samples with the same feature value
-				int j=i+1;
-				while(j < martSamples.length)
-				{
-					if(martSamples[sortedIdx[f][j]].getFeatureValue(features[f]) > fv)
-						break;
-					j++;
-				}
-				i = j-1;//[i, j] gives the range of samples with the same feature value
-			}
-			
-			if(values.size() <= nThreshold || nThreshold == -1)
-			{
-				thresholds[f] = new float[values.size()+1];
-				for(int i=0;i<values.size();i++)
-					thresholds[f][i] = values.get(i);
-				thresholds[f][values.size()] = Float.MAX_VALUE;
-			}
-			else
-			{
-				float step = (Math.abs(fmax - fmin))/nThreshold;
-				thresholds[f] = new float[nThreshold+1];
-				thresholds[f][0] = fmin;
-				for(int j=1;j<nThreshold;j++)
-					thresholds[f][j] = thresholds[f][j-1] + step;
-				thresholds[f][nThreshold] = Float.MAX_VALUE;
-			}
-		}
+		thresholds = ThresholdBuilder.build(featureValues, sortedIdx, nThreshold, thresholdMode);
 		
 		if(validationSamples != null)
 		{
@@ -162,13 +162,36 @@ public class LambdaMART extends Ranker {
 				modelScoresOnValidation[i] = new double[validationSamples.get(i).size()];
 				Arrays.fill(modelScoresOnValidation[i], 0);
 			}
+			//each new tree is scored on the validation queries one batch (i.e. query) at a time, from rows re-used by each thread
+			int maxSize = 0;
+			for(int i=0;i<validationSamples.size();i++)
+				maxSize = Math.max(maxSize, validationSamples.get(i).size());
+			int maxFeature = 0;
+			for(int i=0;i<features.length;i++)
+				maxFeature = Math.max(maxFeature, features[i]);
+			final int nRows = maxSize;
+			final int rowLength = maxFeature+1;
+			validationBatch = new ThreadLocal<float[][]>() {
+				@Override
+				protected float[][] initialValue() {
+					return new float[nRows][rowLength];
+				}
+			};
+			validationContexts = new QueryContext[validationSamples.size()];
+			for(int i=0;i<validationSamples.size();i++)
+				validationContexts[i] = scorer.createContext(validationSamples.get(i));
+			validationQueryScores = new double[validationSamples.size()];
 		}
 		
 		//compute the feature histogram (this is used to speed up the procedure of finding the best tree split later on)
 		hist = new FeatureHistogram();
-		hist.construct(martSamples, pseudoResponses, sortedIdx, features, thresholds);
+		hist.construct(featureValues, pseudoResponses, sortedIdx, features, thresholds);
+		//a tree never needs more node histograms than leaves (plus partial ones for each thread): re-use them from one tree to the next
+		hist.pool = new HistogramPool(thresholds, (nTreeLeaves == -1) ? -1 : nTreeLeaves + p.size());
+		partition = new DataPartition(martSamples.length);
 		//we no longer need the sorted indexes of samples
 		sortedIdx = null;
+		featureValues = null;
 		
 		System.gc();
 		PRINTLN("[Done]");
@@ -177,6 +200,19 @@ public class LambdaMART extends Ranker {
 	public void learn()
 	{
 		ensemble = new Ensemble();
+		ensembleScorer = null;
+		ensembleIsFinal = false;
+		int start = 0;
+		if(resumeFrom != null)
+		{
+			Checkpoint checkpoint = Checkpoint.read(new File(resumeFrom));
+			checkpoint.restore(this);
+			bestScoreOnValidationData = checkpoint.getBestScoreOnValidationData();
+			start = checkpoint.getRounds();
+			PRINTLN("Resuming from " + resumeFrom + " (" + start + " trees)");
+		}
+		else if(initModel != null)
+			warmStart(initModel);
 		
 		PRINTLN("---------------------------------");
 		PRINTLN("Training starts...");
@@ -185,7 +221,7 @@ public class LambdaMART extends Ranker {
 		PRINTLN("---------------------------------");		
 		
 		//Start the gradient boosting process
-		for(int m=0; m<nTrees; m++)
+		for(int m=start; m<nTrees; m++)
 		{
 			PRINT(new int[]{7}, new String[]{(m+1)+""});
 			
@@ -199,7 +235,8 @@ public class LambdaMART extends Ranker {
 			hist.update(pseudoResponses);
 		
 			//Fit a regression tree			
-			RegressionTree rt = new RegressionTree(nTreeLeaves, martSamples, pseudoResponses, hist, minLeafSupport);
+			RegressionTree rt = new RegressionTree(nTreeLeaves, martSamples, pseudoResponses, hist, minLeafSupport, partition);
+			rt.setGrowth(treeGrowth, maxDepth);
 			rt.fit();
 			
 			//Add this tree to the ensemble (our model)
@@ -213,10 +250,11 @@ public class LambdaMART extends Ranker {
 			for(int i=0;i<leaves.size();i++)
 			{
 				Split s = leaves.get(i);
-				int[] idx = s.getSamples();
-				for(int j=0;j<idx.length;j++)
+				int[] idx = s.getPartition().getIndex();
+				for(int j=s.getBegin();j<s.getEnd();j++)
 					modelScores[idx[j]] += learningRate * s.getOutput();
 			}
+			modelScoresRanked = false;
 
 			//clear references to data that is no longer used
 			rt.clearSamples();
@@ -233,20 +271,18 @@ public class LambdaMART extends Ranker {
 			//		scoreOnTrainingData = scorer.score(rank(samples);
 			//
 			//However, this function is more efficient since it uses the cached outputs of the model (as opposed to re-evaluating the model 
-			//on the entire training set).
+			//on the entire training set). It also leaves the samples ranked for the next round of lambdas.
 			
 			PRINT(new int[]{9}, new String[]{SimpleMath.round(scoreOnTrainingData, 4) + ""});			
 			
 			//Evaluate the current model on the validation data (if available)
 			if(validationSamples != null)
 			{
-				//Update the model's scores on all validation samples
-				for(int i=0;i<modelScoresOnValidation.length;i++)
-					for(int j=0;j<modelScoresOnValidation[i].length;j++)
-						modelScoresOnValidation[i][j] += learningRate * rt.eval(validationSamples.get(i).get(j));
-				
+				//Update the model's scores on all validation samples with the new tree, and evaluate them
+				Ensemble newTree = new Ensemble();
+				newTree.add(rt, 1.0f);
 				//again, equivalent to scoreOnValidation=scorer.score(rank(validationSamples)), but more efficient since we use the cached models' outputs
-				double score = computeModelScoreOnValidation();
+				double score = computeModelScoreOnValidation(new FlatEnsemble(newTree));
 				
 				PRINT(new int[]{9}, new String[]{SimpleMath.round(score, 4) + ""});
 				if(score > bestScoreOnValidationData)
@@ -258,14 +294,34 @@ public class LambdaMART extends Ranker {
 			
 			PRINTLN("");
 			
+			if(checkpointFile != null && (m+1) % checkpointEvery == 0)
+				writeCheckpoint(m+1);
+			
 			//Should we stop early?
-			if(m - bestModelOnValidation > nRoundToStopEarly)
+			if(ensemble.treeCount()-1 - bestModelOnValidation > nRoundToStopEarly)
 				break;
 		}
+		waitForCheckpoint();
 		
 		//Rollback to the best model observed on the validation data
 		while(ensemble.treeCount() > bestModelOnValidation+1)
 			ensemble.remove(ensemble.treeCount()-1);
+		ensembleIsFinal = true;
+		validationBatch = null;
+		//trees of an initial model (see warmStart()) may use features that were not given for training
+		TreeSet<Integer> all = new TreeSet<Integer>();
+		for(int f : features)
+			all.add(f);
+		if(ensemble.getFeatures() != null)//only known for trees that were loaded, not fitted
+			for(int f : ensemble.getFeatures())
+				all.add(f);
+		if(all.size() > features.length)
+		{
+			features = new int[all.size()];
+			int k = 0;
+			for(int f : all)
+				features[k++] = f;
+		}
 		
 		//Finishing up
 		scoreOnTrainingData = scorer.score(rank(samples));
@@ -280,10 +336,175 @@ public class LambdaMART extends Ranker {
 		PRINTLN("---------------------------------");
 	}
 
+	/**
+	 * Start from the trees of the model in @modelFile: they become the first trees of the ensemble, and the model scores on
+	 * the training and validation samples are set to their outputs. On the validation data, the initial model is the one
+	 * to beat (its trees are never rolled back).
+	 * @param modelFile A LambdaMART/MART model (text or binary)
+	 */
+	protected void warmStart(String modelFile)
+	{
+		Ranker r = new RankerFactory().loadRankerFromFile(modelFile);
+		if(!(r instanceof LambdaMART))
+			throw RankLibError.create("Error in LambdaMART::warmStart(): " + modelFile + " is not a LambdaMART/MART model.");
+		LambdaMART init = (LambdaMART)r;
+		ensemble = new Ensemble(init.ensemble);
+		initModelScores(init.getEnsembleScorer(), init.ensemble.getFeatures());
+		PRINTLN("Starting from " + modelFile + " (" + ensemble.treeCount() + " trees)");
+		if(validationSamples != null)
+		{
+			bestScoreOnValidationData = computeModelScoreOnValidation(null);
+			bestModelOnValidation = ensemble.treeCount()-1;
+			PRINTLN(scorer.name() + " of the initial model on validation data: " + SimpleMath.round(bestScoreOnValidationData, 4));
+		}
+	}
+	/**
+	 * Set the model scores on all training and validation samples to the outputs of @initScorer. Training and validation
+	 * queries are scored in a single parallel pass.
+	 * @param initScorer
+	 * @param initFeatures Features used by @initScorer
+	 */
+	protected void initModelScores(EnsembleScorer initScorer, int[] initFeatures)
+	{
+		MyThreadPool p = MyThreadPool.getInstance();
+		if(p.size() == 1)//single-thread
+		{
+			initModelScores(0, samples.size()-1, 0, initScorer, initFeatures);
+			if(validationSamples != null)
+				initModelScoresOnValidation(0, validationSamples.size()-1, initScorer, initFeatures);
+		}
+		else
+		{
+			int[] partition = p.partition(samples.size());
+			int current = 0;
+			for(int i=0;i<partition.length-1;i++)
+			{
+				p.execute(new Worker(this, partition[i], partition[i+1]-1, current, initScorer, initFeatures));
+				for(int j=partition[i]; j<=partition[i+1]-1;j++)
+					current += samples.get(j).size();
+			}
+			if(validationSamples != null)
+			{
+				partition = p.partition(validationSamples.size());
+				for(int i=0;i<partition.length-1;i++)
+					p.execute(new Worker(this, partition[i], partition[i+1]-1, initScorer, initFeatures));
+			}
+			p.await();
+		}
+		modelScoresRanked = false;
+	}
+	protected void initModelScores(int start, int end, int current, EnsembleScorer initScorer, int[] initFeatures)
+	{
+		double[] out = new double[0];
+		for(int i=start;i<=end;i++)
+		{
+			RankList rl = samples.get(i);
+			if(out.length < rl.size())
+				out = new double[rl.size()];
+			initScorer.eval(toRows(rl, initFeatures), out);
+			System.arraycopy(out, 0, modelScores, current, rl.size());
+			current += rl.size();
+		}
+	}
+	protected void initModelScoresOnValidation(int start, int end, EnsembleScorer initScorer, int[] initFeatures)
+	{
+		for(int i=start;i<=end;i++)
+			initScorer.eval(toRows(validationSamples.get(i), initFeatures), modelScoresOnValidation[i]);
+	}
+
+	/**
+	 * Save the training state to @checkpointFile in the background, once the previous checkpoint is written. The boosting
+	 * loop only waits for the copy of the model scores.
+	 * @param rounds Number of rounds done so far
+	 */
+	protected void writeCheckpoint(int rounds)
+	{
+		waitForCheckpoint();
+		final Checkpoint checkpoint = new Checkpoint(this, rounds);
+		final File file = new File(checkpointFile);
+		checkpointWriter = new Thread(new Runnable() {
+			public void run() {
+				try {
+					checkpoint.write(file);
+				}
+				catch(RuntimeException ex)
+				{
+					checkpointError = ex;
+				}
+			}
+		}, "RankLib checkpoint");
+		checkpointWriter.start();
+	}
+	/**
+	 * Wait for the checkpoint being written (if any), and report its errors.
+	 */
+	protected void waitForCheckpoint()
+	{
+		if(checkpointWriter != null)
+		{
+			try {
+				checkpointWriter.join();
+			}
+			catch(InterruptedException ex)
+			{
+				throw RankLibError.create("Error in LambdaMART::waitForCheckpoint(): ", ex);
+			}
+			checkpointWriter = null;
+		}
+		if(checkpointError != null)
+		{
+			RuntimeException ex = checkpointError;
+			checkpointError = null;
+			throw ex;
+		}
+	}
+
+	/**
+	 * @return The scorer of the ensemble (see EnsembleScorerFactory), or null while the ensemble is being trained, and for
+	 * bags of a RFRanker. It's made on first use only, since it may take a while (e.g. to compile the trees).
+	 */
+	protected EnsembleScorer getEnsembleScorer()
+	{
+		if(ensembleScorer != null || !ensembleIsFinal || isBag)
+			return ensembleScorer;
+		synchronized(this)
+		{
+			if(ensembleScorer == null)
+				ensembleScorer = new EnsembleScorerFactory().createScorer(ensemble);
+			return ensembleScorer;
+		}
+	}
+
 	public double eval(DataPoint dp)
 	{
+		EnsembleScorer es = getEnsembleScorer();
+		if(es != null)
+			return es.eval(dp);
 		return ensemble.eval(dp);
-	}	
+	}
+	public void scoreBatch(RankList rl, double[] out)
+	{
+		EnsembleScorer es = getEnsembleScorer();
+		if(es == null)
+		{
+			super.scoreBatch(rl, out);
+			return;
+		}
+		float[][] rows = new float[rl.size()][];
+		for(int i=0;i<rl.size();i++)
+			rows[i] = es.toRow(rl.get(i));
+		es.eval(rows, out);
+	}
+	public void scoreBatch(float[][] rows, double[] out)
+	{
+		EnsembleScorer es = getEnsembleScorer();
+		if(es == null)
+		{
+			super.scoreBatch(rows, out);
+			return;
+		}
+		es.eval(rows, out);
+	}
 
 	public Ranker createNew()
 	{
@@ -297,53 +518,68 @@ public class LambdaMART extends Ranker {
 
 	public String model()
 	{
-		String output = "## " + name() + "\n";
-		output += "## No. of trees = " + nTrees + "\n";
-		output += "## No. of leaves = " + nTreeLeaves + "\n";
-		output += "## No. of threshold candidates = " + nThreshold + "\n";
-		output += "## Learning rate = " + learningRate + "\n";
-		output += "## Stop early = " + nRoundToStopEarly + "\n";
-		output += "\n";
-		output += toString();
-		return output;
+		return writeModelToString();
+	}
+	public void writeModel(Writer out) throws IOException
+	{
+		out.write("## " + name() + "\n");
+		out.write("## No. of trees = " + nTrees + "\n");
+		out.write("## No. of leaves = " + nTreeLeaves + "\n");
+		out.write("## No. of threshold candidates = " + nThreshold + "\n");
+		if(thresholdMode != ThresholdBuilder.Mode.EQUAL_WIDTH)
+			out.write("## Threshold candidates = " + thresholdMode.name().toLowerCase() + "\n");
+		if(treeGrowth != RegressionTree.Growth.BEST_FIRST)
+			out.write("## Tree growth = " + treeGrowth + "\n");
+		if(maxDepth != -1)
+			out.write("## Max depth = " + maxDepth + "\n");
+		out.write("## Learning rate = " + learningRate + "\n");
+		out.write("## Stop early = " + nRoundToStopEarly + "\n");
+		out.write("\n");
+		ensemble.write(out);
 	}
 
         @Override
 	public void loadFromString(String fullText)
 	{
 		try {
-			String content = "";
-			//String model = "";
-                        StringBuffer model = new StringBuffer ();
-			BufferedReader in = new BufferedReader(new StringReader(fullText));
-			while((content = in.readLine()) != null)
-			{
-				content = content.trim();
-				if(content.length() == 0)
-					continue;
-				if(content.indexOf("##")==0)
-					continue;
-				//actual model component
-				//model += content;
-                                model.append (content);
-			}
-			in.close();
-			//load the ensemble
-			ensemble = new Ensemble(model.toString());
-			features = ensemble.getFeatures();
+			//load the ensemble (streamed from the text, skipping the "##" header lines)
+			List<Ensemble> ensembles = Ensemble.parseAll(fullText);
+			if(ensembles.size() == 0)
+				throw RankLibError.create("No <ensemble> in the model.");
+			setEnsemble(ensembles.get(0));
 		}
 		catch(Exception ex)
 		{
 			throw RankLibError.create("Error in LambdaMART::load(): ", ex);
 		}
 	}
+	public boolean hasBinaryModel()
+	{
+		return true;
+	}
+	protected void writeBinaryModel(DataOutput out) throws IOException
+	{
+		ensemble.write(out);
+	}
+	public void loadBinaryModel(DataInput in) throws IOException
+	{
+		setEnsemble(new Ensemble(in));
+	}
+	private void setEnsemble(Ensemble e)
+	{
+		ensemble = e;
+		ensembleScorer = null;
+		ensembleIsFinal = true;
+		features = ensemble.getFeatures();
+	}
 
 	public void printParameters()
 	{
 		PRINTLN("No. of trees: " + nTrees);
 		PRINTLN("No. of leaves: " + nTreeLeaves);
-		PRINTLN("No. of threshold candidates: " + nThreshold);
+		PRINTLN("No. of threshold candidates: " + nThreshold + " (" + thresholdMode.name().toLowerCase() + ")");
 		PRINTLN("Min leaf support: " + minLeafSupport);
+		PRINTLN("Tree growth: " + treeGrowth + ((maxDepth == -1) ? "" : " (max depth: " + maxDepth + ")"));
 		PRINTLN("Learning rate: " + learningRate);
 		PRINTLN("Stop early: " + nRoundToStopEarly + " rounds without performance gain on validation data");		
 	}	
@@ -391,28 +627,41 @@ public class LambdaMART extends Ranker {
 	protected void computePseudoResponses(int start, int end, int current)
 	{
 		int cutoff = scorer.getK();
+		QueryBuffers changes = queryBuffers.get();//changes of the current query, see QueryBuffers
 		//compute the lambda for each document (a.k.a "pseudo response")
 		for(int i=start;i<=end;i++)
 		{
-			RankList orig = samples.get(i);			
-			int[] idx = MergeSorter.sort(modelScores, current, current+orig.size()-1, false);
-			RankList rl = new RankList(orig, idx, current);
-			double[][] changes = scorer.swapChange(rl);
+			QueryContext ctx = contexts[i];
+			int n = ctx.size();
+			if(ctx.labelGroupCount() < 2)//all documents have the same label: no pair to learn from
+			{
+				current += n;
+				continue;
+			}
+			if(!modelScoresRanked)
+				rankByModelScores(i, current);
+			int[] idx = rankedIdx;//samples of this query are idx[current...current+n-1]
+			int[] order = changes.order(n);
+			for(int j=0;j<n;j++)
+				order[j] = idx[current+j] - current;
+			//pairs below the cut-off point are skipped anyway: only get the changes of pairs with at least one document above it
+			changes.reset(n, (cutoff < 0) ? 0 : (int)Math.min((long)cutoff+1, n));
+			scorer.swapChange(ctx, order, changes.depth, changes);
+			float[] labels = ctx.getLabels();
 			//NOTE: j, k are indices in the sorted (by modelScore) list, not the original
 			// ==> need to map back with idx[j] and idx[k] 
-			for(int j=0;j<rl.size();j++)
+			for(int j=0;j<n;j++)
 			{
-				DataPoint p1 = rl.get(j);
-				int mj = idx[j];
-				for(int k=0;k<rl.size();k++)
+				float l1 = labels[order[j]];
+				int mj = idx[current+j];
+				for(int k=0;k<n;k++)
 				{
 					if(j > cutoff && k > cutoff)//swaping these pair won't result in any change in target measures since they're below the cut-off point
 						break;
-					DataPoint p2 = rl.get(k);
-					int mk = idx[k];
-					if(p1.getLabel() > p2.getLabel())
+					int mk = idx[current+k];
+					if(l1 > labels[order[k]])
 					{
-						double deltaNDCG = Math.abs(changes[j][k]);
+						double deltaNDCG = Math.abs(changes.get(j, k));
 						if(deltaNDCG > 0)
 						{
 							double rho = 1.0 / (1 + Math.exp(modelScores[mj] - modelScores[mk]));
@@ -426,7 +675,7 @@ public class LambdaMART extends Ranker {
 					}
 				}
 			}
-			current += orig.size();
+			current += n;
 		}
 	}
 
@@ -438,8 +687,8 @@ public class LambdaMART extends Ranker {
 			float s1 = 0F;
 			float s2 = 0F;
 			Split s = leaves.get(i);
-			int[] idx = s.getSamples();
-			for(int j=0;j<idx.length;j++)
+			int[] idx = s.getPartition().getIndex();
+			for(int j=s.getBegin();j<s.getEnd();j++)
 			{
 				int k = idx[j];
 				s1 += pseudoResponses[k];
@@ -460,6 +709,13 @@ public class LambdaMART extends Ranker {
 		int[] idx = MergeSorter.sort(score, true); 
 		return idx;
 	}
+	protected int[] sortSamplesByFeature(float[] values)
+	{
+		double[] score = new double[values.length];
+		for(int i=0;i<values.length;i++)
+			score[i] = values[i];
+		return MergeSorter.sort(score, true);
+	}
 
 	/**
 	 * This function is equivalent to the inherited function rank(...), but it uses the cached model's outputs instead of computing them from scratch.
@@ -477,94 +733,112 @@ public class LambdaMART extends Ranker {
 		return new RankList(orig, idx);
 	}
 
+	/**
+	 * Sort the samples of the @i-th query (starting at @current in @modelScores) by their current model scores.
+	 */
+	protected void rankByModelScores(int i, int current)
+	{
+		int n = samples.get(i).size();
+		int[] idx = MergeSorter.sort(modelScores, current, current+n-1, false);
+		System.arraycopy(idx, 0, rankedIdx, current, n);
+	}
+
 	protected float computeModelScoreOnTraining() 
 	{
-		/*float s = 0;
-		int current = 0;	
 		MyThreadPool p = MyThreadPool.getInstance();
 		if(p.size() == 1)//single-thread
-			s = computeModelScoreOnTraining(0, samples.size()-1, current);
+			computeModelScoreOnTraining(0, samples.size()-1, 0);
 		else
 		{
-			List<Worker> workers = new ArrayList<Worker>();
 			//divide the entire dataset into chunks of equal size for each worker thread
 			int[] partition = p.partition(samples.size());
+			int current = 0;
 			for(int i=0;i<partition.length-1;i++)
 			{
-				//execute the worker
-				Worker wk = new Worker(this, partition[i], partition[i+1]-1, current);
-				workers.add(wk);//keep it so we can get back results from it later on
-				p.execute(wk);
-				
-				if(i < partition.length-2)
-					for(int j=partition[i]; j<=partition[i+1]-1;j++)
-						current += samples.get(j).size();
-			}		
+				p.execute(new Worker(this, partition[i], partition[i+1]-1, current));
+				for(int j=partition[i]; j<=partition[i+1]-1;j++)
+					current += samples.get(j).size();
+			}
 			//wait for all workers to complete before we move on to the next stage
 			p.await();
-			for(int i=0;i<workers.size();i++)
-				s += workers.get(i).score;
-		}*/
-		float s = computeModelScoreOnTraining(0, samples.size()-1, 0);
+		}
+		modelScoresRanked = true;
+		//add up the scores in the order of the queries, whatever the number of threads
+		float s = 0;
+		for(int i=0;i<samples.size();i++)
+			s += queryScores[i];
 		s = s / samples.size();
 		return s;
 	}
 
-	protected float computeModelScoreOnTraining(int start, int end, int current) 
+	/**
+	 * Rank the samples of queries @start...@end by their cached model scores (see @rankedIdx), and score each query.
+	 */
+	protected void computeModelScoreOnTraining(int start, int end, int current) 
 	{
-		float s = 0;
+		QueryBuffers buffers = queryBuffers.get();
 		int c = current;
-
 		for(int i=start;i<=end;i++)
 		{
-			s += scorer.score(rank(i, c));
-			c += samples.get(i).size();
+			int n = samples.get(i).size();
+			rankByModelScores(i, c);
+			int[] order = buffers.order(n);
+			for(int j=0;j<n;j++)
+				order[j] = rankedIdx[c+j] - c;
+			queryScores[i] = scorer.score(contexts[i], order);
+			c += n;
 		}
-		return s;
 	}
 
-	protected float computeModelScoreOnValidation() 
+	/**
+	 * Add the outputs of the latest tree to the model scores on the validation data, and score it.
+	 * @param treeScorer The latest tree (with weight 1), or null to only score the current model
+	 * @return
+	 */
+	protected float computeModelScoreOnValidation(FlatEnsemble treeScorer) 
 	{
-		/*float score = 0;
 		MyThreadPool p = MyThreadPool.getInstance();
 		if(p.size() == 1)//single-thread
-			score = computeModelScoreOnValidation(0, validationSamples.size()-1);
+			computeModelScoreOnValidation(0, validationSamples.size()-1, treeScorer);
 		else
 		{
-			List<Worker> workers = new ArrayList<Worker>();
-			//divide the entire dataset into chunks of equal size for each worker thread
 			int[] partition = p.partition(validationSamples.size());
 			for(int i=0;i<partition.length-1;i++)
-			{
-				//execute the worker
-				Worker wk = new Worker(this, partition[i], partition[i+1]-1);
-				workers.add(wk);//keep it so we can get back results from it later on
-				p.execute(wk);
-			}		
-			//wait for all workers to complete before we move on to the next stage
+				p.execute(new Worker(this, partition[i], partition[i+1]-1, treeScorer));
 			p.await();
-			for(int i=0;i<workers.size();i++)
-				score += workers.get(i).score;
-		}*/
-		float score = computeModelScoreOnValidation(0, validationSamples.size()-1);
+		}
+		float score = 0;
+		for(int i=0;i<validationSamples.size();i++)
+			score += validationQueryScores[i];
 		return score/validationSamples.size();
 	}
 
-	protected float computeModelScoreOnValidation(int start, int end) 
+	protected void computeModelScoreOnValidation(int start, int end, FlatEnsemble treeScorer) 
 	{
-		float score = 0;
+		float[][] rows = (treeScorer != null) ? validationBatch.get() : null;
+		double[] treeScores = new double[0];
 		for(int i=start;i<=end;i++)
 		{
+			if(treeScorer != null)
+			{
+				RankList rl = validationSamples.get(i);
+				if(treeScores.length < rl.size())
+					treeScores = new double[rl.size()];
+				for(int j=0;j<rl.size();j++)
+					treeScorer.toRow(rl.get(j), rows[j]);//only the features of the tree: the others are not read
+				treeScorer.eval(rows, rl.size(), treeScores);
+				for(int j=0;j<modelScoresOnValidation[i].length;j++)
+					modelScoresOnValidation[i][j] += learningRate * treeScores[j];
+			}
 			int[] idx = MergeSorter.sort(modelScoresOnValidation[i], false);
-			score += scorer.score(new RankList(validationSamples.get(i), idx));
+			validationQueryScores[i] = scorer.score(validationContexts[i], idx);
 		}
-		return score;
 	}
 	
 	protected void sortSamplesByFeature(int fStart, int fEnd)
 	{
 		for(int i=fStart;i<=fEnd; i++)
-			sortedIdx[i] = sortSamplesByFeature(martSamples, features[i]);
+			sortedIdx[i] = sortSamplesByFeature(featureValues[i]);
 	}
 
 	//For multi-threading processing
@@ -586,6 +860,46 @@ public class LambdaMART extends Ranker {
 		}
 	}
 
+	/**
+	 * Buffers for one query at a time: the order of its documents, and the changes in score from swapping pairs of them,
+	 * only for the pairs where the first document is in the top @depth (stored row by row, @depth rows of n). Each thread
+	 * keeps its own and re-uses it for all queries.
+	 */
+	static class QueryBuffers implements SwapChangeListener {
+		double[] changes = new double[0];
+		int[] order = new int[0];//order of the documents of the current query (see MetricScorer.swapChange())
+		int n = 0;
+		int depth = 0;
+
+		int[] order(int n)
+		{
+			if(order.length < n)
+				order = new int[n];
+			return order;
+		}
+
+		void reset(int n, int depth)
+		{
+			this.n = n;
+			this.depth = depth;
+			if(changes.length < n * depth)
+				changes = new double[n * depth];
+			else
+				Arrays.fill(changes, 0, n * depth, 0);
+		}
+		public void swapChange(int i, int j, double change)
+		{
+			changes[i * n + j] = change;
+		}
+		/**
+		 * @return Change from swapping documents @i and @j (one of them must be in the top @depth).
+		 */
+		double get(int i, int j)
+		{
+			return (i < j) ? changes[i * n + j] : changes[j * n + i];
+		}
+	}
+
 	class LambdaComputationWorker implements Runnable {
 		LambdaMART ranker = null;
 		int rlStart = -1;
@@ -611,19 +925,22 @@ public class LambdaMART extends Ranker {
 		int rlStart = -1;
 		int rlEnd = -1;
 		int martStart = -1;
+		FlatEnsemble treeScorer = null;
+		EnsembleScorer initScorer = null;
+		int[] initFeatures = null;
 		int type = -1;
 		
-		//compute score on validation
-		float score = 0;
-		
-		Worker(LambdaMART ranker, int rlStart, int rlEnd)
+		//update and score the validation data
+		Worker(LambdaMART ranker, int rlStart, int rlEnd, FlatEnsemble treeScorer)
 		{
 			type = 3;
 			this.ranker = ranker;
 			this.rlStart = rlStart;
 			this.rlEnd = rlEnd;
+			this.treeScorer = treeScorer;
 		}
 
+		//score the training data
 		Worker(LambdaMART ranker, int rlStart, int rlEnd, int martStart)
 		{
 			type = 4;
@@ -633,12 +950,39 @@ public class LambdaMART extends Ranker {
 			this.martStart = martStart;
 		}
 
+		//score the training data with the initial model
+		Worker(LambdaMART ranker, int rlStart, int rlEnd, int martStart, EnsembleScorer initScorer, int[] initFeatures)
+		{
+			type = 5;
+			this.ranker = ranker;
+			this.rlStart = rlStart;
+			this.rlEnd = rlEnd;
+			this.martStart = martStart;
+			this.initScorer = initScorer;
+			this.initFeatures = initFeatures;
+		}
+
+		//score the validation data with the initial model
+		Worker(LambdaMART ranker, int rlStart, int rlEnd, EnsembleScorer initScorer, int[] initFeatures)
+		{
+			type = 6;
+			this.ranker = ranker;
+			this.rlStart = rlStart;
+			this.rlEnd = rlEnd;
+			this.initScorer = initScorer;
+			this.initFeatures = initFeatures;
+		}
+
 		public void run()
 		{
-			if(type == 4)
-				score = ranker.computeModelScoreOnTraining(rlStart, rlEnd, martStart);
+			if(type == 5)
+				ranker.initModelScores(rlStart, rlEnd, martStart, initScorer, initFeatures);
+			else if(type == 6)
+				ranker.initModelScoresOnValidation(rlStart, rlEnd, initScorer, initFeatures);
+			else if(type == 4)
+				ranker.computeModelScoreOnTraining(rlStart, rlEnd, martStart);
 			else if(type == 3)
-				score = ranker.computeModelScoreOnValidation(rlStart, rlEnd);
+				ranker.computeModelScoreOnValidation(rlStart, rlEnd, treeScorer);
 		}
 	}
 }
@@ -53,13 +53,13 @@ public class MART extends LambdaMART {
 		{
 			float s1 = 0.0F;
 			Split s = leaves.get(i);
-			int[] idx = s.getSamples();
-			for(int j=0;j<idx.length;j++)
+			int[] idx = s.getPartition().getIndex();
+			for(int j=s.getBegin();j<s.getEnd();j++)
 			{
 				int k = idx[j];
 				s1 += pseudoResponses[k];
 			}
-			s.setOutput(s1/idx.length);
+			s.setOutput(s1/s.getSampleCount());
 		}
 	}
 }
@@ -0,0 +1,286 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.utilities.RankLibError;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Scores trees of at most 64 leaves without walking them (QuickScorer, Lucchese et al., SIGIR 2015). The leaves of each
+ * tree are numbered from left to right, and each tree keeps a 64-bit mask of the leaves a data point can still exit from.
+ * Split nodes are grouped by feature and sorted by threshold: for each feature, the nodes whose test fails (value >
+ * threshold, so the data point goes right) are exactly a prefix of that list, and each of them clears the leaves of its left
+ * subtree from the mask of its tree. Once all features are done, the exit leaf of each tree is the lowest bit left in its mask.
+ *
+ * This touches every split node whose test fails (instead of one node per level), but with no data-dependent jumps
+ * between nodes, and each feature value is read once. Scores are exactly the same as the ones of FlatEnsemble.
+ */
+public class QuickScorer implements EnsembleScorer {
+
+	public static final int MAX_LEAVES = 64;
+
+	//Parameters
+	public static int rowBlockSize = 16;//rows scored together by eval(float[][], double[])
+
+	protected int[] features = null;//distinct features used by the trees, in ascending order
+	protected int[] featureStart = null;//nodes testing features[i] are [featureStart[i], featureStart[i+1])
+	protected float[] threshold = null;//node thresholds, ascending within each feature
+	protected int[] tree = null;//tree of each node
+	protected long[] mask = null;//leaves each node leaves in its tree when its test fails (all but the ones of its left subtree)
+	protected double[] leafValue = null;//leaf output * tree weight, leaves of tree t from leafStart[t] (from left to right)
+	protected int[] leafStart = null;
+	protected int[] groupEnd = null;//trees of group g are [groupEnd[g-1], groupEnd[g])
+	protected boolean average = false;
+	protected int maxFeature = 0;
+
+	private ThreadLocal<long[]> leaves = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[leafStart.length];
+		}
+	};
+	private ThreadLocal<long[]> blockLeaves = new ThreadLocal<long[]>() {//leaves of a block of rows, one row after the other
+		@Override
+		protected long[] initialValue() {
+			return new long[rowBlockSize * leafStart.length];
+		}
+	};
+	//nodes while building
+	private int nNodes = 0;
+	private int nLeaves = 0;
+	private int[] nodeFeature = null;
+
+	/**
+	 * @param groups
+	 * @param average Whether to average the scores of @groups (rather than adding them up)
+	 */
+	public QuickScorer(Ensemble[] groups, boolean average)
+	{
+		this.average = average;
+		int nTrees = 0;
+		int nodes = 0;
+		for(int g=0;g<groups.length;g++)
+		{
+			for(int i=0;i<groups[g].treeCount();i++)
+			{
+				int n = groups[g].getTree(i).leaves().size();
+				if(n > MAX_LEAVES)
+					throw RankLibError.create("Error in QuickScorer: trees can't have more than " + MAX_LEAVES + " leaves (found " + n + ").");
+				nodes += n - 1;
+				nLeaves += n;
+			}
+			nTrees += groups[g].treeCount();
+		}
+		nodeFeature = new int[nodes];
+		float[] nodeThreshold = new float[nodes];
+		int[] nodeTree = new int[nodes];
+		long[] nodeMask = new long[nodes];
+		leafValue = new double[nLeaves];
+		leafStart = new int[nTrees];
+		groupEnd = new int[groups.length];
+
+		nLeaves = 0;
+		int t = 0;
+		for(int g=0;g<groups.length;g++)
+		{
+			Ensemble e = groups[g];
+			for(int i=0;i<e.treeCount();i++)
+			{
+				leafStart[t] = nLeaves;
+				add(e.getTree(i).root, e.getWeight(i), t, nodeThreshold, nodeTree, nodeMask);
+				t++;
+			}
+			groupEnd[g] = t;
+		}
+
+		//sort the nodes by feature, then by threshold (ties keep the tree order, which doesn't matter anyway)
+		Integer[] order = new Integer[nodes];
+		for(int n=0;n<nodes;n++)
+			order[n] = n;
+		final float[] thr = nodeThreshold;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if(nodeFeature[a] != nodeFeature[b])
+					return (nodeFeature[a] < nodeFeature[b]) ? -1 : 1;
+				return Float.compare(thr[a], thr[b]);
+			}
+		});
+		threshold = new float[nodes];
+		tree = new int[nodes];
+		mask = new long[nodes];
+		int[] featureOf = new int[nodes];
+		int nFeatures = 0;
+		for(int i=0;i<nodes;i++)
+		{
+			int n = order[i];
+			threshold[i] = nodeThreshold[n];
+			tree[i] = nodeTree[n];
+			mask[i] = nodeMask[n];
+			featureOf[i] = nodeFeature[n];
+			if(i == 0 || featureOf[i] != featureOf[i-1])
+				nFeatures++;
+		}
+		features = new int[nFeatures];
+		featureStart = new int[nFeatures+1];
+		for(int i=0,k=0;i<nodes;i++)
+			if(i == 0 || featureOf[i] != featureOf[i-1])
+			{
+				features[k] = featureOf[i];
+				featureStart[k++] = i;
+			}
+		featureStart[nFeatures] = nodes;
+		maxFeature = (nFeatures > 0) ? features[nFeatures-1] : 0;
+		nodeFeature = null;
+	}
+
+	/**
+	 * Number the leaves under @s from left to right, and record the split nodes.
+	 * @return A mask with the bits of the leaves under @s.
+	 */
+	private long add(Split s, float weight, int t, float[] nodeThreshold, int[] nodeTree, long[] nodeMask)
+	{
+		if(s.getLeft() == null)
+		{
+			leafValue[nLeaves] = s.getOutput() * weight;
+			return 1L << (nLeaves++ - leafStart[t]);
+		}
+		int n = nNodes++;
+		nodeFeature[n] = s.getFeatureID();
+		nodeThreshold[n] = s.getThreshold();
+		nodeTree[n] = t;
+		long leftLeaves = add(s.getLeft(), weight, t, nodeThreshold, nodeTree, nodeMask);
+		long rightLeaves = add(s.getRight(), weight, t, nodeThreshold, nodeTree, nodeMask);
+		nodeMask[n] = ~leftLeaves;
+		return leftLeaves | rightLeaves;
+	}
+
+	/**
+	 * @param groups
+	 * @return Whether all trees of @groups are small enough for a QuickScorer.
+	 */
+	public static boolean fits(Ensemble[] groups)
+	{
+		for(int g=0;g<groups.length;g++)
+			for(int i=0;i<groups[g].treeCount();i++)
+				if(groups[g].getTree(i).leaves().size() > MAX_LEAVES)
+					return false;
+		return true;
+	}
+
+	public int treeCount()
+	{
+		return leafStart.length;
+	}
+	/**
+	 * @return Features used by the trees, in ascending order.
+	 */
+	public int[] getFeatures()
+	{
+		return features;
+	}
+	public int getMaxFeature()
+	{
+		return maxFeature;
+	}
+
+	public double eval(float[] row)
+	{
+		long[] v = leaves.get();
+		Arrays.fill(v, -1L);
+		for(int i=0;i<features.length;i++)
+			mask(v, 0, i, row[features[i]]);
+		return score(v, 0);
+	}
+	/**
+	 * Same scores as eval(float[]) on each row. Rows are scored by blocks, feature after feature: the nodes of a feature are
+	 * used by a whole block of rows while they are in cache.
+	 * @param rows
+	 * @param out [Output]
+	 */
+	public void eval(float[][] rows, double[] out)
+	{
+		int nTrees = leafStart.length;
+		long[] v = blockLeaves.get();
+		if(v.length < rowBlockSize * nTrees)//rowBlockSize changed
+			blockLeaves.set(v = new long[rowBlockSize * nTrees]);
+		for(int begin=0;begin<rows.length;begin+=rowBlockSize)
+		{
+			int end = Math.min(rows.length, begin+rowBlockSize);
+			Arrays.fill(v, 0, (end-begin) * nTrees, -1L);
+			for(int i=0;i<features.length;i++)
+			{
+				int fid = features[i];
+				for(int r=begin;r<end;r++)
+					mask(v, (r-begin) * nTrees, i, rows[r][fid]);
+			}
+			for(int r=begin;r<end;r++)
+				out[r] = score(v, (r-begin) * nTrees);
+		}
+	}
+	/**
+	 * Same score as eval(toRow(dp)), without the copy.
+	 * @param dp
+	 * @return
+	 */
+	public double eval(DataPoint dp)
+	{
+		long[] v = leaves.get();
+		Arrays.fill(v, -1L);
+		int last = dp.getMaxFeature();
+		for(int i=0;i<features.length;i++)
+		{
+			int fid = features[i];
+			mask(v, 0, i, (fid <= last) ? dp.getFeatureValue(fid) : 0);
+		}
+		return score(v, 0);
+	}
+	/**
+	 * Clear the leaves @value can't reach in the trees which test feature features[i].
+	 * @param v Leaves of each tree (from @offset)
+	 */
+	private void mask(long[] v, int offset, int i, float value)
+	{
+		int end = featureStart[i+1];
+		for(int n=featureStart[i];n<end;n++)
+		{
+			if(value <= threshold[n])//this node and the ones after it send @value left
+				break;
+			v[offset + tree[n]] &= mask[n];
+		}
+	}
+	private double score(long[] v, int offset)
+	{
+		double total = 0;
+		int t = 0;
+		for(int g=0;g<groupEnd.length;g++)
+		{
+			float s = 0;
+			for(;t<groupEnd[g];t++)
+				s += leafValue[leafStart[t] + Long.numberOfTrailingZeros(v[offset + t])];
+			total += s;
+		}
+		return average ? total/groupEnd.length : total;
+	}
+
+	public float[] toRow(DataPoint dp)
+	{
+		int last = dp.getMaxFeature();
+		float[] row = new float[maxFeature+1];
+		for(int i=0;i<features.length;i++)
+		{
+			int fid = features[i];
+			row[fid] = (fid <= last) ? dp.getFeatureValue(fid) : 0;
+		}
+		return row;
+	}
+}
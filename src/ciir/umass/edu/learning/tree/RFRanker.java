@@ -14,9 +14,11 @@ import ciir.umass.edu.metric.MetricScorer;
 import ciir.umass.edu.utilities.RankLibError;
 import ciir.umass.edu.utilities.SimpleMath;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashSet;
 import java.util.List;
 
@@ -36,6 +38,7 @@ public class RFRanker extends Ranker {
 	
 	//Variables
 	protected Ensemble[] ensembles = null;//bag of ensembles, each can be a single tree or an ensemble of gradient boosted trees
+	protected EnsembleScorer ensembleScorer = null;//scores with all bags (see EnsembleScorerFactory)
 	
 	public RFRanker()
 	{		
@@ -49,6 +52,7 @@ public class RFRanker extends Ranker {
 	{
 		PRINT("Initializing... ");
 		ensembles = new Ensemble[nBag];
+		ensembleScorer = null;
 		//initialize parameters for the tree(s) built in each bag
 		LambdaMART.nTrees = nTrees;
 		LambdaMART.nTreeLeaves = nTreeLeaves;
@@ -56,6 +60,9 @@ public class RFRanker extends Ranker {
 		LambdaMART.nThreshold = nThreshold;
 		LambdaMART.minLeafSupport = minLeafSupport;
 		LambdaMART.nRoundToStopEarly = -1;//no early-stopping since we're doing bagging
+		LambdaMART.checkpointFile = null;//nor checkpoints: they are for single LambdaMART/MART runs
+		LambdaMART.resumeFrom = null;
+		LambdaMART.initModel = null;
 		//turn on feature sampling
 		FeatureHistogram.samplingRate = featureSamplingRate;
 		PRINTLN("[Done]");
@@ -79,6 +86,7 @@ public class RFRanker extends Ranker {
 			//"out-of-bag" samples
 			//List<RankList> outOfBag = sp.getRemains();
 			LambdaMART r = (LambdaMART)rf.createRanker(rType, bag, features, scorer);
+			r.isBag = true;//no scorer of its own (e.g. compiled code): it is only scored as part of the forest
 			//r.setValidationSet(outOfBag);
 			
 			boolean tmp = Ranker.verbose;
@@ -90,6 +98,7 @@ public class RFRanker extends Ranker {
 			PRINTLN(new int[]{9, 9}, new String[]{"b["+(i+1)+"]", SimpleMath.round(r.getScoreOnTrainingData(), 4)+""});
 			ensembles[i] = r.getEnsemble();
 		}
+		ensembleScorer = new EnsembleScorerFactory().createScorer(ensembles, true);
 		//Finishing up
 		scoreOnTrainingData = scorer.score(rank(samples));
 		PRINTLN("------------------------------------");
@@ -104,82 +113,123 @@ public class RFRanker extends Ranker {
 	}
 	public double eval(DataPoint dp)
 	{
+		if(ensembleScorer != null)
+			return ensembleScorer.eval(dp);
 		double s = 0;
 		for(int i=0;i<ensembles.length;i++)
 			s += ensembles[i].eval(dp);
 		return s/ensembles.length;
 	}
+	public void scoreBatch(RankList rl, double[] out)
+	{
+		if(ensembleScorer == null)
+		{
+			super.scoreBatch(rl, out);
+			return;
+		}
+		float[][] rows = new float[rl.size()][];
+		for(int i=0;i<rl.size();i++)
+			rows[i] = ensembleScorer.toRow(rl.get(i));
+		ensembleScorer.eval(rows, out);
+	}
+	public void scoreBatch(float[][] rows, double[] out)
+	{
+		if(ensembleScorer == null)
+		{
+			super.scoreBatch(rows, out);
+			return;
+		}
+		ensembleScorer.eval(rows, out);
+	}
 	public Ranker createNew()
 	{
 		return new RFRanker();
 	}
 	public String toString()
 	{
-		String str = "";
-		for(int i=0;i<nBag;i++)
-			str += ensembles[i].toString() + "\n";
-		return str;
+		StringWriter out = new StringWriter();
+		try {
+			writeEnsembles(out);
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create(ex);
+		}
+		return out.toString();
 	}
 	public String model()
 	{
-		String output = "## " + name() + "\n";
-		output += "## No. of bags = " + nBag + "\n";
-		output += "## Sub-sampling = " + subSamplingRate + "\n";
-		output += "## Feature-sampling = " + featureSamplingRate + "\n";
-		output += "## No. of trees = " + nTrees + "\n";
-		output += "## No. of leaves = " + nTreeLeaves + "\n";
-		output += "## No. of threshold candidates = " + nThreshold + "\n";
-		output += "## Learning rate = " + learningRate + "\n";
-		output += "\n";
-		output += toString();
-		return output;
+		return writeModelToString();
+	}
+	public void writeModel(Writer out) throws IOException
+	{
+		out.write("## " + name() + "\n");
+		out.write("## No. of bags = " + nBag + "\n");
+		out.write("## Sub-sampling = " + subSamplingRate + "\n");
+		out.write("## Feature-sampling = " + featureSamplingRate + "\n");
+		out.write("## No. of trees = " + nTrees + "\n");
+		out.write("## No. of leaves = " + nTreeLeaves + "\n");
+		out.write("## No. of threshold candidates = " + nThreshold + "\n");
+		out.write("## Learning rate = " + learningRate + "\n");
+		out.write("\n");
+		writeEnsembles(out);
+	}
+	private void writeEnsembles(Writer out) throws IOException
+	{
+		for(int i=0;i<ensembles.length;i++)//not nBag: loaded models may have any number of bags
+		{
+			ensembles[i].write(out);
+			out.write("\n");
+		}
 	}
   @Override
 	public void loadFromString(String fullText)
 	{
 		try {
-			String content = "";
-			String model = "";
-			BufferedReader in = new BufferedReader(new StringReader(fullText));
-			List<Ensemble> ens = new ArrayList<Ensemble>();
-			while((content = in.readLine()) != null)
-			{
-				content = content.trim();
-				if(content.length() == 0)
-					continue;
-				if(content.indexOf("##")==0)
-					continue;
-				//actual model component
-				model += content;
-				if(content.indexOf("</ensemble>") != -1)
-				{
-					//load the ensemble
-					ens.add(new Ensemble(model));
-					model = "";
-				}				
-			}
-			in.close();
-			HashSet<Integer> uniqueFeatures = new HashSet<Integer>();
-			ensembles = new Ensemble[ens.size()];
-			for(int i=0;i<ens.size();i++)
-			{
-				ensembles[i] = ens.get(i);
-				//obtain used features
-				int[] fids = ens.get(i).getFeatures();
-				for(int f=0;f<fids.length;f++)
-					if(!uniqueFeatures.contains(fids[f]))
-						uniqueFeatures.add(fids[f]);
-			}
-			int fi = 0;
-			features = new int[uniqueFeatures.size()];
-			for(Integer f : uniqueFeatures)
-				features[fi++] = f.intValue();
+			//load the bags (streamed from the text, skipping the "##" header lines)
+			List<Ensemble> ens = Ensemble.parseAll(fullText);
+			setEnsembles(ens.toArray(new Ensemble[ens.size()]));
 		}
 		catch(Exception ex)
 		{
 			throw RankLibError.create("Error in RFRanker::load(): ", ex);
 		}
 	}
+	public boolean hasBinaryModel()
+	{
+		return true;
+	}
+	protected void writeBinaryModel(DataOutput out) throws IOException
+	{
+		out.writeInt(ensembles.length);
+		for(int i=0;i<ensembles.length;i++)
+			ensembles[i].write(out);
+	}
+	public void loadBinaryModel(DataInput in) throws IOException
+	{
+		Ensemble[] ens = new Ensemble[in.readInt()];
+		for(int i=0;i<ens.length;i++)
+			ens[i] = new Ensemble(in);
+		setEnsembles(ens);
+	}
+	private void setEnsembles(Ensemble[] ens)
+	{
+		HashSet<Integer> uniqueFeatures = new HashSet<Integer>();
+		ensembles = ens;
+		for(int i=0;i<ens.length;i++)
+		{
+			//obtain used features
+			int[] fids = ens[i].getFeatures();
+			for(int f=0;f<fids.length;f++)
+				if(!uniqueFeatures.contains(fids[f]))
+					uniqueFeatures.add(fids[f]);
+		}
+		ensembleScorer = new EnsembleScorerFactory().createScorer(ensembles, true);
+		int fi = 0;
+		features = new int[uniqueFeatures.size()];
+		for(Integer f : uniqueFeatures)
+			features[fi++] = f.intValue();
+	}
 	public void printParameters()
 	{
 		PRINTLN("No. of bags: " + nBag);
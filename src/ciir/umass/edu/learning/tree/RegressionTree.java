@@ -10,18 +10,56 @@
 package ciir.umass.edu.learning.tree;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.utilities.RankLibError;
 
 /**
  * @author vdang
  */
 public class RegressionTree {
 	
+	/**
+	 * How trees grow:
+	 *  - BEST_FIRST: always split the leaf with the largest deviance next.
+	 *  - DEPTH_WISE: split all leaves of a level before going down to the next one. The histograms of all new nodes of a level
+	 *    are built with a single pass over their samples (see FeatureHistogram.constructChildren()).
+	 */
+	public enum Growth {
+		BEST_FIRST("bestfirst"),
+		DEPTH_WISE("depthwise");
+		
+		private final String name;
+		Growth(String name)
+		{
+			this.name = name;
+		}
+		public String toString()
+		{
+			return name;
+		}
+	}
+	/**
+	 * @param name
+	 * @return The growth policy with the given name ("bestfirst" or "depthwise").
+	 */
+	public static Growth getGrowth(String name)
+	{
+		for(Growth g : Growth.values())
+			if(g.toString().equalsIgnoreCase(name))
+				return g;
+		throw RankLibError.create("Unknown tree growth policy: " + name + " (must be either bestfirst or depthwise)");
+	}
+	
 	//Parameters
 	protected int nodes = 10;//-1 for unlimited number of nodes (the size of the tree will then be controlled *ONLY* by minLeafSupport)
 	protected int minLeafSupport = 1;
+	protected Growth growth = Growth.BEST_FIRST;
+	protected int maxDepth = -1;//-1 for no limit
 	
 	//Member variables and functions 
 	protected Split root = null;
@@ -31,7 +69,7 @@ public class RegressionTree {
 	protected double[] trainingLabels = null;
 	protected int[] features = null;
 	protected float[][] thresholds = null;
-	protected int[] index = null;
+	protected DataPartition partition = null;
 	protected FeatureHistogram hist = null;
 	
 	public RegressionTree(Split root)
@@ -40,15 +78,37 @@ public class RegressionTree {
 		leaves = root.leaves();
 	}
 	public RegressionTree(int nLeaves, DataPoint[] trainingSamples, double[] labels, FeatureHistogram hist, int minLeafSupport)
+	{
+		this(nLeaves, trainingSamples, labels, hist, minLeafSupport, new DataPartition(trainingSamples.length));
+	}
+	/**
+	 * @param nLeaves
+	 * @param trainingSamples
+	 * @param labels
+	 * @param hist
+	 * @param minLeafSupport
+	 * @param partition Where to keep track of the samples of each node (it can be re-used by the next tree once this one no
+	 * longer needs its samples)
+	 */
+	public RegressionTree(int nLeaves, DataPoint[] trainingSamples, double[] labels, FeatureHistogram hist, int minLeafSupport, DataPartition partition)
 	{
 		this.nodes = nLeaves;
 		this.trainingSamples = trainingSamples;
 		this.trainingLabels = labels;
 		this.hist = hist;
 		this.minLeafSupport = minLeafSupport;
-		index = new int[trainingSamples.length];
-		for(int i=0;i<trainingSamples.length;i++)
-			index[i] = i;
+		this.partition = partition;
+	}
+	
+	/**
+	 * @param growth
+	 * @param maxDepth Max depth of the leaves (-1 for no limit). Trees stop growing as soon as they reach either this or
+	 * their max number of leaves.
+	 */
+	public void setGrowth(Growth growth, int maxDepth)
+	{
+		this.growth = growth;
+		this.maxDepth = maxDepth;
 	}
 	
 	/**
@@ -56,23 +116,33 @@ public class RegressionTree {
 	 */
 	public void fit()
 	{
-		List<Split> queue = new ArrayList<Split>();
-		root = new Split(index, hist, Float.MAX_VALUE, 0);
+		partition.reset();
+		root = new Split(partition, 0, partition.size(), hist, Float.MAX_VALUE, 0);
 		root.setRoot(true);
+		
+		if(growth == Growth.DEPTH_WISE)
+			fitDepthWise();
+		else
+			fitBestFirst();
+		leaves = root.leaves();
+	}
+	protected void fitBestFirst()
+	{
+		PriorityQueue<QueueEntry> queue = new PriorityQueue<QueueEntry>();
+		int nInserted = 0;
 
 		// Ensure inserts occur only after successful splits
-		if(root.split(trainingLabels, minLeafSupport)) {
-	              insert(queue, root.getLeft());
-		      insert(queue, root.getRight());
+		if(maxDepth != 0 && root.split(trainingLabels, minLeafSupport)) {
+			queue.add(new QueueEntry(root.getLeft(), nInserted++));
+			queue.add(new QueueEntry(root.getRight(), nInserted++));
 		}
 
 		int taken = 0;
 		while( (nodes == -1 || taken + queue.size() < nodes) && queue.size() > 0)
 		{
-			Split leaf = queue.get(0);
-			queue.remove(0);
+			Split leaf = queue.poll().split;
 			
-			if(leaf.getSamples().length < 2 * minLeafSupport)
+			if(leaf.getSampleCount() < 2 * minLeafSupport || (maxDepth != -1 && leaf.getDepth() >= maxDepth))
 			{
 				taken++;
 				continue;
@@ -82,11 +152,46 @@ public class RegressionTree {
 				taken++;
 			else
 			{
-				insert(queue, leaf.getLeft());
-				insert(queue, leaf.getRight());
+				queue.add(new QueueEntry(leaf.getLeft(), nInserted++));
+				queue.add(new QueueEntry(leaf.getRight(), nInserted++));
 			}			
 		}
-		leaves = root.leaves();
+	}
+	protected void fitDepthWise()
+	{
+		List<Split> level = new ArrayList<Split>();
+		level.add(root);
+		int nLeaves = 1;
+		for(int depth=0;(maxDepth == -1 || depth < maxDepth) && level.size() > 0;depth++)
+		{
+			//if only some of them can be split, go for those with the largest deviance
+			Collections.sort(level, new Comparator<Split>() {
+				public int compare(Split a, Split b)
+				{
+					return Double.compare(b.getDeviance(), a.getDeviance());
+				}
+			});
+			List<Split> parents = new ArrayList<Split>();
+			for(int i=0;i<level.size() && (nodes == -1 || nLeaves < nodes);i++)
+			{
+				Split s = level.get(i);
+				if(s.getSampleCount() < 2 * minLeafSupport)
+					continue;
+				if(s.splitSamples(minLeafSupport))
+				{
+					parents.add(s);
+					nLeaves++;
+				}
+			}
+			FeatureHistogram.constructChildren(parents, trainingLabels);
+			
+			level = new ArrayList<Split>();
+			for(int i=0;i<parents.size();i++)
+			{
+				level.add(parents.get(i).getLeft());
+				level.add(parents.get(i).getRight());
+			}
+		}
 	}
 	
 	/**
@@ -115,7 +220,7 @@ public class RegressionTree {
 		trainingLabels = null;
 		features = null;
 		thresholds = null;
-		index = null;
+		partition = null;
 		hist = null;
 		for(int i=0;i<leaves.size();i++)
 			leaves.get(i).clearSamples();
@@ -145,17 +250,27 @@ public class RegressionTree {
 		return var;
 	}
 
-	protected void insert(List<Split> ls, Split s)
-	{
-		int i=0;
-		while(i < ls.size())
+	/**
+	 * Leaf waiting to be split in best-first order: the largest deviance first, and the latest one first among leaves with
+	 * the same deviance.
+	 */
+	static class QueueEntry implements Comparable<QueueEntry> {
+		Split split = null;
+		int order = 0;
+		
+		QueueEntry(Split split, int order)
 		{
-			if(ls.get(i).getDeviance() > s.getDeviance())
-				i++;
-			else
-				break;
+			this.split = split;
+			this.order = order;
+		}
+		public int compareTo(QueueEntry o)
+		{
+			if(split.getDeviance() > o.split.getDeviance())
+				return -1;
+			if(split.getDeviance() < o.split.getDeviance())
+				return 1;
+			return o.order - order;
 		}
-		ls.add(i, s);
 	}
 
 }
@@ -9,10 +9,15 @@
 
 package ciir.umass.edu.learning.tree;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.utilities.RankLibError;
 
 /**
  * 
@@ -34,7 +39,10 @@ public class Split {
 	private Split right = null;
 	private double deviance = 0F;//mean squared error "S"
 	private int[][] sortedSampleIDs = null;
-	public int[] samples = null;
+	private DataPartition partition = null;//samples of this node are [begin, end) of the partition
+	private int begin = 0;
+	private int end = 0;
+	private int depth = 0;//of this node in the tree (root: 0)
 	public FeatureHistogram hist = null;
 	
 	public Split()
@@ -55,13 +63,15 @@ public class Split {
 		this.sqSumLabel = sqSumLabel;
 		avgLabel = sumLabel/sortedSampleIDs[0].length;
 	}
-	public Split(int[] samples, FeatureHistogram hist, double deviance, double sumLabel)
+	public Split(DataPartition partition, int begin, int end, FeatureHistogram hist, double deviance, double sumLabel)
 	{
-		this.samples = samples;
+		this.partition = partition;
+		this.begin = begin;
+		this.end = end;
 		this.hist = hist;
 		this.deviance = deviance;
 		this.sumLabel = sumLabel;
-		avgLabel = sumLabel/samples.length;
+		avgLabel = sumLabel/(end-begin);
 	}
 	
 	public void set(int featureID, float threshold, double deviance)
@@ -83,6 +93,14 @@ public class Split {
 		avgLabel = output;
 	}
 	
+	public int getFeatureID()
+	{
+		return featureID;
+	}
+	public float getThreshold()
+	{
+		return threshold;
+	}
 	public Split getLeft()
 	{
 		return left;
@@ -136,30 +154,56 @@ public class Split {
 	}
 	public String toString(String indent)
 	{
-		String strOutput = indent + "<split>" + "\n";
-		strOutput += getString(indent + "\t");
-		strOutput += indent + "</split>" + "\n";
-		return strOutput;
+		StringWriter out = new StringWriter();
+		try {
+			write(out, indent);
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create(ex);
+		}
+		return out.toString();
 	}
 	public String getString(String indent)
 	{
-		String strOutput = "";
+		StringWriter out = new StringWriter();
+		try {
+			writeContent(out, indent);
+		}
+		catch(IOException ex)
+		{
+			throw RankLibError.create(ex);
+		}
+		return out.toString();
+	}
+	/**
+	 * Write the subtree under this node (the same text as toString(indent)).
+	 * @param out
+	 * @param indent
+	 */
+	public void write(Writer out, String indent) throws IOException
+	{
+		out.write(indent + "<split>" + "\n");
+		writeContent(out, indent + "\t");
+		out.write(indent + "</split>" + "\n");
+	}
+	private void writeContent(Writer out, String indent) throws IOException
+	{
 		if(featureID == -1)
 		{
-			strOutput += indent + "<output> " + avgLabel + " </output>" + "\n";
+			out.write(indent + "<output> " + avgLabel + " </output>" + "\n");
 		}
 		else
 		{
-			strOutput += indent + "<feature> " + featureID + " </feature>" + "\n";
-			strOutput += indent + "<threshold> " + threshold + " </threshold>" + "\n";
-			strOutput += indent + "<split pos=\"left\">" + "\n";
-			strOutput += left.getString(indent + "\t");
-			strOutput += indent + "</split>" + "\n";
-			strOutput += indent + "<split pos=\"right\">" + "\n";
-			strOutput += right.getString(indent + "\t");
-			strOutput += indent + "</split>" + "\n";
+			out.write(indent + "<feature> " + featureID + " </feature>" + "\n");
+			out.write(indent + "<threshold> " + threshold + " </threshold>" + "\n");
+			out.write(indent + "<split pos=\"left\">" + "\n");
+			left.writeContent(out, indent + "\t");
+			out.write(indent + "</split>" + "\n");
+			out.write(indent + "<split pos=\"right\">" + "\n");
+			right.writeContent(out, indent + "\t");
+			out.write(indent + "</split>" + "\n");
 		}
-		return strOutput;
 	}
 
 	//Internal functions(ONLY used during learning)
@@ -168,11 +212,53 @@ public class Split {
 	{
 		return hist.findBestSplit(this, trainingLabels, minLeafSupport);
 	}
+	/**
+	 * Split this node without building the histograms of its children (see FeatureHistogram.constructChildren())
+	 * @param minLeafSupport
+	 * @return
+	 */
+	public boolean splitSamples(int minLeafSupport)
+	{
+		return hist.splitSamples(this, minLeafSupport);
+	}
+	/**
+	 * Attach the histogram of this node's samples (this also sets its deviance).
+	 * @param hist
+	 */
+	public void setHistogram(FeatureHistogram hist)
+	{
+		this.hist = hist;
+		int n = getSampleCount();
+		deviance = hist.sqSumResponse - hist.sumResponse * hist.sumResponse / n;
+	}
 	public int[] getSamples()
 	{
 		if(sortedSampleIDs != null)
 			return sortedSampleIDs[0];
-		return samples;
+		if(partition != null)
+			return Arrays.copyOfRange(partition.getIndex(), begin, end);
+		return null;
+	}
+	public int getSampleCount()
+	{
+		if(sortedSampleIDs != null)
+			return sortedSampleIDs[0].length;
+		return end - begin;
+	}
+	/**
+	 * @return The partition holding the samples of this node, which are getPartition().getIndex()[getBegin()..getEnd()-1].
+	 */
+	public DataPartition getPartition()
+	{
+		return partition;
+	}
+	public int getBegin()
+	{
+		return begin;
+	}
+	public int getEnd()
+	{
+		return end;
 	}
 	public int[][] getSampleSortedIndex()
 	{
@@ -189,7 +275,9 @@ public class Split {
 	public void clearSamples()
 	{
 		sortedSampleIDs = null;
-		samples = null;
+		partition = null;
+		if(hist != null && !isRoot)//the root's histogram is kept by the learner for the next tree
+			hist.release();
 		hist = null;
 	}
 	public void setRoot(boolean isRoot)
@@ -200,4 +288,12 @@ public class Split {
 	{
 		return isRoot;
 	}
+	public void setDepth(int depth)
+	{
+		this.depth = depth;
+	}
+	public int getDepth()
+	{
+		return depth;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,156 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.utilities.MyThreadPool;
+import ciir.umass.edu.utilities.RankLibError;
+import ciir.umass.edu.utilities.WorkerThread;
+
+import java.util.Arrays;
+
+/**
+ * Builds the table of candidate thresholds for tree splits (one row per feature, on all threads of MyThreadPool).
+ *
+ * Features with at most nThreshold distinct values get all of them as candidates. For the others, there are two ways to
+ * pick nThreshold candidates:
+ *  - EQUAL_WIDTH: evenly spaced between the min and max value of the feature.
+ *  - QUANTILE: the values at each 1/nThreshold quantile of the training samples (ties collapse into a single candidate),
+ *    so that each bin holds about as many samples. Unlike equal-width bins, these don't get wasted on the empty parts
+ *    of skewed features (e.g. BM25 scores).
+ * The last candidate is always Float.MAX_VALUE.
+ *
+ * Quantiles are computed exactly from the samples sorted by each feature, which tree learners need anyway.
+ */
+public class ThresholdBuilder {
+
+	public enum Mode {
+		EQUAL_WIDTH,
+		QUANTILE
+	}
+
+	/**
+	 * @param name
+	 * @return The mode with the given name ("equal" or "quantile").
+	 */
+	public static Mode getMode(String name)
+	{
+		if(name.equalsIgnoreCase("equal") || name.equalsIgnoreCase("equal_width"))
+			return Mode.EQUAL_WIDTH;
+		if(name.equalsIgnoreCase("quantile"))
+			return Mode.QUANTILE;
+		throw RankLibError.create("Unknown threshold candidate mode: " + name + " (must be either equal or quantile)");
+	}
+
+	/**
+	 * @param values Feature values of the samples, one column per feature (read-only, see FeatureMatrix.getColumns())
+	 * @param sortedIdx sortedIdx[f] lists the samples in ascending order of values[f]
+	 * @param nThreshold Max number of candidates (besides Float.MAX_VALUE) per feature. -1 for all distinct values
+	 * @param mode
+	 * @return Candidate thresholds of each feature, in ascending order.
+	 */
+	public static float[][] build(float[][] values, int[][] sortedIdx, int nThreshold, Mode mode)
+	{
+		float[][] thresholds = new float[values.length][];
+		MyThreadPool p = MyThreadPool.getInstance();
+		if(p.size() == 1 || values.length < 2)
+			build(values, sortedIdx, nThreshold, mode, thresholds, 0, values.length-1);
+		else
+			p.execute(new Worker(values, sortedIdx, nThreshold, mode, thresholds), values.length);
+		return thresholds;
+	}
+
+	protected static void build(float[][] values, int[][] sortedIdx, int nThreshold, Mode mode, float[][] thresholds, int start, int end)
+	{
+		float[] unique = null;//distinct values of the current feature (re-used for all features)
+		for(int f=start;f<=end;f++)
+		{
+			float[] column = values[f];
+			int[] idx = sortedIdx[f];
+			if(unique == null)
+				unique = new float[idx.length];
+
+			//For this feature, keep track of the list of unique values and the max/min
+			int nValues = 0;
+			float fmax = Float.NEGATIVE_INFINITY;
+			float fmin = Float.MAX_VALUE;
+			for(int i=0;i<idx.length;i++)
+			{
+				float fv = column[idx[i]];
+				unique[nValues++] = fv;
+				if(fmax < fv)
+					fmax = fv;
+				if(fmin > fv)
+					fmin = fv;
+				//skip all samples with the same feature value
+				int j=i+1;
+				while(j < idx.length)
+				{
+					if(column[idx[j]] > fv)
+						break;
+					j++;
+				}
+				i = j-1;//[i, j] gives the range of samples with the same feature value
+			}
+
+			if(nValues <= nThreshold || nThreshold == -1)
+			{
+				thresholds[f] = Arrays.copyOf(unique, nValues+1);
+				thresholds[f][nValues] = Float.MAX_VALUE;
+			}
+			else if(mode == Mode.QUANTILE)
+			{
+				float[] t = new float[nThreshold+1];
+				int n = 0;
+				for(int b=1;b<=nThreshold;b++)
+				{
+					float fv = column[idx[(int)((long)b * idx.length / nThreshold) - 1]];
+					if(n == 0 || fv > t[n-1])
+						t[n++] = fv;
+				}
+				t[n++] = Float.MAX_VALUE;
+				thresholds[f] = (n == t.length) ? t : Arrays.copyOf(t, n);
+			}
+			else
+			{
+				float step = (Math.abs(fmax - fmin))/nThreshold;
+				thresholds[f] = new float[nThreshold+1];
+				thresholds[f][0] = fmin;
+				for(int j=1;j<nThreshold;j++)
+					thresholds[f][j] = thresholds[f][j-1] + step;
+				thresholds[f][nThreshold] = Float.MAX_VALUE;
+			}
+		}
+	}
+
+	static class Worker extends WorkerThread {
+		float[][] values = null;
+		int[][] sortedIdx = null;
+		int nThreshold = 0;
+		Mode mode = null;
+		float[][] thresholds = null;
+
+		Worker(float[][] values, int[][] sortedIdx, int nThreshold, Mode mode, float[][] thresholds)
+		{
+			this.values = values;
+			this.sortedIdx = sortedIdx;
+			this.nThreshold = nThreshold;
+			this.mode = mode;
+			this.thresholds = thresholds;
+		}
+		public void run()
+		{
+			build(values, sortedIdx, nThreshold, mode, thresholds, start, end);
+		}
+		public WorkerThread clone()
+		{
+			return new Worker(values, sortedIdx, nThreshold, mode, thresholds);
+		}
+	}
+}
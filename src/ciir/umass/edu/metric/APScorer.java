@@ -157,4 +157,54 @@ public class APScorer extends MetricScorer {
 		}
 		return changes;
 	}
+	/**
+	 * Same changes as swapChange(rl) (ignoring K as well), in O(n) per row instead of O(n^2): the precision changes at the
+	 * relevant documents between i and j are accumulated as j moves down the list.
+	 */
+	public void swapChange(RankList rl, int depth, SwapChangeListener listener)
+	{
+		swapChange(createContext(rl), identity(rl.size()), depth, listener);
+	}
+	public void swapChange(QueryContext ctx, int[] order, int depth, SwapChangeListener listener)
+	{
+		int n = ctx.size();
+		float[] labels = ctx.labels;
+		int count = 0;
+		for(int i=0;i<n;i++)
+			if(labels[order[i]] > 0)//relevant
+				count++;
+		int rdCount = 0;//total number of relevant documents
+		if(relDocCount != null)//if an external qrels file is specified
+		{
+			Integer it = relDocCount.get(ctx.getID());
+			if(it != null)
+				rdCount = it;
+		}
+		else
+			rdCount = count;
+		if(rdCount == 0 || count == 0)
+			return;
+
+		//relevance (0/1) and number of relevant documents so far are tracked along the way, so nothing is allocated per query
+		int rows = Math.min(depth, n-1);
+		int relCountI = 0;
+		for(int i=0;i<rows;i++)
+		{
+			int labelI = (labels[order[i]] > 0) ? 1 : 0;
+			relCountI += labelI;
+			//only documents with the other label change the score when swapped with i
+			int diff = 1 - 2*labelI;
+			double change = ((double)((relCountI+diff)*(1-labelI) - relCountI*labelI)) / (i+1);
+			int relCountJ = relCountI;
+			for(int j=i+1;j<n;j++)
+			{
+				int labelJ = (labels[order[j]] > 0) ? 1 : 0;
+				relCountJ += labelJ;
+				if(labelJ != labelI)
+					listener.swapChange(i, j, (change + ((double)(-relCountJ*diff)) / (j+1))/rdCount);
+				if(labelJ > 0)
+					change += ((double)diff) / (j+1);
+			}
+		}
+	}
 }
@@ -79,6 +79,60 @@ public class DCGScorer extends MetricScorer {
 
 		return changes;
 	}
+	public void swapChange(RankList rl, int depth, SwapChangeListener listener)
+	{
+		swapChange(createContext(rl), identity(rl.size()), depth, listener);
+	}
+	public QueryContext createContext(RankList rl)
+	{
+		return createContext(rl, 0);
+	}
+	/**
+	 * @param rl
+	 * @param ideal
+	 * @return A context with the gains of the documents of @rl and the discounts of its positions.
+	 */
+	protected QueryContext createContext(RankList rl, double ideal)
+	{
+		int[] rel = getRelevanceLabels(rl);
+		double[] g = new double[rl.size()];
+		double[] d = new double[rl.size()];
+		for(int i=0;i<rl.size();i++)
+		{
+			g[i] = gain(rel[i]);
+			d[i] = discount(i);
+		}
+		return new QueryContext(rl, g, d, ideal);
+	}
+	public double score(QueryContext ctx, int[] order)
+	{
+		int size = k;
+		if(k > ctx.size() || k <= 0)
+			size = ctx.size();
+		return getDCG(ctx, order, size);
+	}
+	public void swapChange(QueryContext ctx, int[] order, int depth, SwapChangeListener listener)
+	{
+		swapChange(ctx, order, depth, 1.0, listener);
+	}
+	/**
+	 * Report the changes in DCG divided by @norm.
+	 */
+	protected void swapChange(QueryContext ctx, int[] order, int depth, double norm, SwapChangeListener listener)
+	{
+		int n = ctx.size();
+		int size = Math.min(Math.min(k, depth), n);//changes are 0 below k
+		for(int i=0;i<size;i++)
+		{
+			int di = order[i];
+			for(int j=i+1;j<n;j++)
+			{
+				int dj = order[j];
+				if(ctx.rel[di] != ctx.rel[dj])
+					listener.swapChange(i, j, (ctx.discount[i] - ctx.discount[j]) * (ctx.gain[di] - ctx.gain[dj]) / norm);
+			}
+		}
+	}
 	public String name()
 	{
 		return "DCG@"+k;
@@ -91,6 +145,16 @@ public class DCGScorer extends MetricScorer {
 			dcg += gain(rel[i]) * discount(i);
 		return dcg;
 	}
+	/**
+	 * Same as getDCG(int[], int), with the tables of @ctx only.
+	 */
+	protected double getDCG(QueryContext ctx, int[] order, int topK)
+	{
+		double dcg = 0;
+		for(int i=0;i<topK;i++)
+			dcg += ctx.gain[order[i]] * ctx.discount[i];
+		return dcg;
+	}
 	
 	//lazy caching
 	protected double discount(int index)
@@ -115,4 +115,52 @@ public class ERRScorer extends MetricScorer {
 		}
 		return changes;
 	}
+	/**
+	 * Same changes as swapChange(rl). Documents below k count as non-relevant (R = 0), so the terms they add to the sum
+	 * over the documents between i and j are exactly 0 and are skipped.
+	 */
+	public void swapChange(RankList rl, int depth, SwapChangeListener listener)
+	{
+		swapChange(createContext(rl), identity(rl.size()), depth, listener);
+	}
+	public void swapChange(QueryContext ctx, int[] order, int depth, SwapChangeListener listener)
+	{
+		int n = ctx.size();
+		int size = (n > k) ? k : n;
+		int[] labels = new int[size];
+		double[] R = new double[size];
+		double[] np = new double[size];//p[i] = (1 - p[0])(1 - p[1])...(1-p[i-1])
+		double p = 1.0;
+		for(int i=0;i<size;i++)
+		{
+			labels[i] = ctx.rel[order[i]];
+			R[i] = R(labels[i]);
+			np[i] = p * (1.0 - R[i]);
+			p *= np[i];
+		}
+
+		int rows = Math.min(size, depth);
+		for(int i=0;i<rows;i++)
+		{
+			double v1 = 1.0/(i+1) * (i==0?1:np[i-1]);
+			for(int j=i+1;j<n;j++)
+			{
+				int lj = (j < size) ? labels[j] : 0;
+				if(labels[i] == lj)
+					continue;
+				double Rj = (j < size) ? R[j] : 0;
+				double change = v1 * (Rj - R[i]);
+				p = (i==0?1:np[i-1]) * (R[i] - Rj);
+				int last = Math.min(j, size);
+				for(int k=i+1;k<last;k++)
+				{
+					change += p * R[k]/(1+k);
+					p *= 1.0 - R[k];
+				}
+				double npj = (j-1 < size) ? np[j-1] : 0;
+				change += (npj*(1.0 - Rj) * R[i]/(1.0 - R[i]) - npj * Rj) / (j+1);
+				listener.swapChange(i, j, change);
+			}
+		}
+	}
 }
@@ -11,6 +11,7 @@ package ciir.umass.edu.metric;
 
 import ciir.umass.edu.learning.RankList;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -64,4 +65,68 @@ public abstract class MetricScorer {
 	public abstract MetricScorer copy();
 	public abstract String name();
 	public abstract double[][] swapChange(RankList rl);
+	/**
+	 * Report the changes in score from swapping documents i and j of @rl, for i < j and i < @depth only: learners which
+	 * ignore swaps below the cut-off of the measure don't need the whole n x n matrix of swapChange(rl). Pairs whose change
+	 * is 0 may be skipped. Scorers override this to compute the changes of these pairs only; by default, they are read off
+	 * swapChange(rl).
+	 * @param rl
+	 * @param depth
+	 * @param listener
+	 */
+	public void swapChange(RankList rl, int depth, SwapChangeListener listener)
+	{
+		double[][] changes = swapChange(rl);
+		int rows = Math.min(depth, rl.size());
+		for(int i=0;i<rows;i++)
+			for(int j=i+1;j<rl.size();j++)
+				if(changes[i][j] != 0)
+					listener.swapChange(i, j, changes[i][j]);
+	}
+	/**
+	 * @param rl
+	 * @return Everything about @rl this scorer needs in swapChange(QueryContext, int[], int, SwapChangeListener).
+	 */
+	public QueryContext createContext(RankList rl)
+	{
+		return new QueryContext(rl);
+	}
+	/**
+	 * Same as swapChange(RankList, int, SwapChangeListener) on the documents of @ctx ranked in the order of @order, using
+	 * what was precomputed in @ctx. Safe to call from several threads at once.
+	 * @param ctx
+	 * @param order order[i] is the document of ctx.getRankList() at position i (only the first ctx.size() are used)
+	 * @param depth
+	 * @param listener
+	 */
+	public void swapChange(QueryContext ctx, int[] order, int depth, SwapChangeListener listener)
+	{
+		if(order.length > ctx.size())
+			order = Arrays.copyOf(order, ctx.size());
+		swapChange(new RankList(ctx.getRankList(), order), depth, listener);
+	}
+	/**
+	 * Same as score(RankList) on the documents of @ctx ranked in the order of @order. Unlike score(RankList), which may
+	 * cache things about the queries it sees, this is safe to call from several threads at once.
+	 * @param ctx
+	 * @param order order[i] is the document of ctx.getRankList() at position i (only the first ctx.size() are used)
+	 * @return
+	 */
+	public double score(QueryContext ctx, int[] order)
+	{
+		if(order.length > ctx.size())
+			order = Arrays.copyOf(order, ctx.size());
+		return score(new RankList(ctx.getRankList(), order));
+	}
+	/**
+	 * @param n
+	 * @return {0, 1, ..., n-1}
+	 */
+	protected static int[] identity(int n)
+	{
+		int[] order = new int[n];
+		for(int i=0;i<n;i++)
+			order[i] = i;
+		return order;
+	}
 }
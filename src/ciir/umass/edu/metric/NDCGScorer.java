@@ -11,7 +11,6 @@ package ciir.umass.edu.metric;
 
 import ciir.umass.edu.learning.RankList;
 import ciir.umass.edu.utilities.RankLibError;
-import ciir.umass.edu.utilities.Sorter;
 
 import java.io.BufferedReader;
 import java.io.FileInputStream;
@@ -151,6 +150,39 @@ public class NDCGScorer extends DCGScorer {
 
 		return changes;
 	}
+	public QueryContext createContext(RankList rl)
+	{
+		//same depth as score(): the ideal DCG of the whole list if k <= 0, so that score(QueryContext, int[]) never has to
+		//compute it (and grow the shared gain/discount caches) from the worker threads
+		int size = k;
+		if(k > rl.size() || k <= 0)
+			size = rl.size();
+		double ideal = 0;
+		Double d = idealGains.get(rl.getID());
+		if(d != null)
+			ideal = d;
+		else
+			ideal = getIdealDCG(getRelevanceLabels(rl), size);//no caching here either
+		return createContext(rl, ideal);
+	}
+	public double score(QueryContext ctx, int[] order)
+	{
+		if(ctx.size() == 0)
+			return 0;
+
+		int size = k;
+		if(k > ctx.size() || k <= 0)
+			size = ctx.size();
+		double ideal = ctx.getIdealDCG();
+		if(ideal <= 0.0)
+			return 0.0;
+		return getDCG(ctx, order, size)/ideal;
+	}
+	public void swapChange(QueryContext ctx, int[] order, int depth, SwapChangeListener listener)
+	{
+		if(ctx.getIdealDCG() > 0)
+			swapChange(ctx, order, depth, ctx.getIdealDCG(), listener);
+	}
 	public String name()
 	{
 		return "NDCG@"+k;
@@ -158,10 +190,11 @@ public class NDCGScorer extends DCGScorer {
 	
 	private double getIdealDCG(int[] rel, int topK)
 	{
-		int[] idx = Sorter.sort(rel, false);
+		int[] sorted = Arrays.copyOf(rel, rel.length);
+		Arrays.sort(sorted);//ascending: the i-th highest label is sorted[n-1-i]
 		double dcg = 0;
 		for(int i=0;i<topK;i++)
-			dcg += gain(rel[idx[i]]) * discount(i);
+			dcg += gain(sorted[sorted.length-1-i]) * discount(i);
 		return dcg;
 	}
 }
@@ -0,0 +1,114 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.metric;
+
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.utilities.MergeSorter;
+
+/**
+ * What a MetricScorer needs to know about a query that doesn't depend on how its documents are ranked: their labels, and
+ * for the DCG family, their gains, the discounts of each position and the ideal DCG. Learners build it once per training
+ * query (see MetricScorer.createContext()) and then only pass the current order of the documents to
+ * MetricScorer.swapChange(QueryContext, int[], int, SwapChangeListener). A context never changes once built, so any
+ * number of threads can use it at the same time.
+ */
+public class QueryContext {
+
+	protected final RankList rl;
+	protected final float[] labels;//labels of the documents of @rl
+	protected final int[] rel;//same, as relevance levels (see MetricScorer.getRelevanceLabels())
+	protected final int[] byLabel;//documents sorted by label, from the highest
+	protected final int[] groupStart;//documents with the g-th highest label are byLabel[groupStart[g]...groupStart[g+1]-1]
+	protected final double[] gain;//gain of each document (null if the scorer doesn't use gains)
+	protected final double[] discount;//discount of each position
+	protected final double ideal;//ideal DCG (0 if not used)
+
+	public QueryContext(RankList rl)
+	{
+		this(rl, null, null, 0);
+	}
+	/**
+	 * @param rl
+	 * @param gain Gain of each document of @rl
+	 * @param discount Discount of each position of @rl
+	 * @param ideal Ideal DCG of @rl
+	 */
+	public QueryContext(RankList rl, double[] gain, double[] discount, double ideal)
+	{
+		this.rl = rl;
+		labels = new float[rl.size()];
+		rel = new int[rl.size()];
+		for(int i=0;i<rl.size();i++)
+		{
+			labels[i] = rl.get(i).getLabel();
+			rel[i] = (int)labels[i];
+		}
+		byLabel = MergeSorter.sort(labels, false);
+		int nGroups = 0;
+		for(int i=0;i<byLabel.length;i++)
+			if(i == 0 || labels[byLabel[i]] != labels[byLabel[i-1]])
+				nGroups++;
+		groupStart = new int[nGroups+1];
+		for(int i=0,g=0;i<byLabel.length;i++)
+			if(i == 0 || labels[byLabel[i]] != labels[byLabel[i-1]])
+				groupStart[g++] = i;
+		groupStart[nGroups] = byLabel.length;
+		this.gain = gain;
+		this.discount = discount;
+		this.ideal = ideal;
+	}
+
+	public RankList getRankList()
+	{
+		return rl;
+	}
+	public String getID()
+	{
+		return rl.getID();
+	}
+	public int size()
+	{
+		return labels.length;
+	}
+	public float[] getLabels()
+	{
+		return labels;
+	}
+	public int[] getRelevanceLabels()
+	{
+		return rel;
+	}
+	/**
+	 * @return Number of distinct labels. With less than two, no swap of documents changes the order of labels.
+	 */
+	public int labelGroupCount()
+	{
+		return groupStart.length-1;
+	}
+	/**
+	 * @return Documents sorted by label, from the highest (see labelGroupStart()).
+	 */
+	public int[] getDocumentsByLabel()
+	{
+		return byLabel;
+	}
+	/**
+	 * @param g
+	 * @return Position in getDocumentsByLabel() of the first document with the g-th highest label.
+	 */
+	public int labelGroupStart(int g)
+	{
+		return groupStart[g];
+	}
+	public double getIdealDCG()
+	{
+		return ideal;
+	}
+}
@@ -0,0 +1,23 @@
+/*===============================================================================
+ * Copyright (c) 2010-2016 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+package ciir.umass.edu.metric;
+
+/**
+ * Receives the changes in score computed by MetricScorer.swapChange(RankList, int, SwapChangeListener), one pair of
+ * documents at a time.
+ */
+public interface SwapChangeListener {
+	/**
+	 * @param i Position of the first document in the ranked list
+	 * @param j Position of the second document (i < j)
+	 * @param change Change in score if the two documents are swapped (same as swapChange(rl)[i][j])
+	 */
+	void swapChange(int i, int j, double change);
+}
@@ -32,14 +32,14 @@ public class MyThreadPool extends ThreadPoolExecutor {
 	}
 	
 	private static MyThreadPool singleton = null;
-	public static MyThreadPool getInstance()
+	public static synchronized MyThreadPool getInstance()
 	{
-		if(singleton == null)
+		if(singleton == null || singleton.isShutdown())
 			init(Runtime.getRuntime().availableProcessors());
 		return singleton;
 	}
 	
-	public static void init(int poolSize)
+	public static synchronized void init(int poolSize)
 	{
 		singleton = new MyThreadPool(poolSize);
 	}
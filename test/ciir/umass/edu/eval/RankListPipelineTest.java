@@ -0,0 +1,71 @@
+package ciir.umass.edu.eval;
+
+import ciir.umass.edu.features.FeatureManager;
+import ciir.umass.edu.features.RankListReader;
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.learning.RestoreFeatureCount;
+import ciir.umass.edu.utilities.MyThreadPool;
+import ciir.umass.edu.utilities.TmpFile;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class RankListPipelineTest {
+  @Rule
+  public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+  private static String dump(RankList rl) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(rl.getID()).append('\n');
+    for (int i = 0; i < rl.size(); i++)
+      sb.append(rl.get(i).toString()).append('\n');
+    return sb.toString();
+  }
+
+  @Test
+  public void testSameOrderAsSequential() throws IOException {
+    try (TmpFile dataFile = new TmpFile()) {
+      try (PrintWriter out = dataFile.getWriter()) {
+        Random rand = new Random(42);
+        for (int q = 0; q < 200; q++) {
+          if (q % 10 == 0)
+            out.println("# comment");
+          int nDocs = 1 + rand.nextInt(8);
+          for (int d = 0; d < nDocs; d++)
+            out.println(rand.nextInt(3) + " qid:" + q + " 1:" + rand.nextFloat() + " 2:" + rand.nextInt(5) + " # doc" + d);
+        }
+      }
+
+      synchronized (DataPoint.class) {
+        for (boolean mustHaveRelDoc : new boolean[]{false, true}) {
+          StringBuilder expected = new StringBuilder();
+          List<RankList> samples = FeatureManager.readInput(dataFile.getPath(), mustHaveRelDoc, false);
+          for (RankList rl : samples)
+            expected.append(dump(rl));
+
+          MyThreadPool.init(3);
+          try (RankListReader in = new RankListReader(dataFile.getPath(), mustHaveRelDoc, false)) {
+            StringWriter out = new StringWriter();
+            RankListPipeline.run(in, new RankListPipeline.Task() {
+              public String process(RankList rl) {
+                return dump(rl);
+              }
+            }, out, true);
+            assertEquals(expected.toString(), out.toString());
+            assertEquals(samples.size(), in.getRankListCount());
+          } finally {
+            MyThreadPool.getInstance().shutdown();
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package ciir.umass.edu.features;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.learning.RestoreFeatureCount;
+import ciir.umass.edu.utilities.TmpFile;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryDatasetTest {
+  @Rule
+  public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+  private void writeData(TmpFile dataFile) throws IOException {
+    try (PrintWriter out = dataFile.getWriter()) {
+      out.println("2,1 qid:q1 1:0.5 3:1.5 # doc0");
+      out.println("0,0 qid:q1 1:0.25 2:-7 3:2 # doc1");
+      out.println("0,1 qid:q2 1:3 2:4 3:5 #doc2 é");
+      out.println("0,0 qid:q3 1:1 2:1 3:1 # no relevant doc");
+    }
+  }
+
+  private String dump(List<RankList> samples) {
+    StringBuilder sb = new StringBuilder();
+    for (RankList rl : samples) {
+      sb.append(rl.getID()).append('\n');
+      for (int i = 0; i < rl.size(); i++) {
+        DataPoint dp = rl.get(i);
+        sb.append(dp.toString()).append(Arrays.toString(dp.getLabels()));
+        for (int f = 1; f <= 3; f++)
+          sb.append(' ').append(dp.getFeatureValue(f));
+        sb.append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    try (TmpFile dataFile = new TmpFile();
+         TmpFile denseFile = new TmpFile();
+         TmpFile sparseFile = new TmpFile()) {
+      writeData(dataFile);
+      synchronized (DataPoint.class) {
+        // data points of either representation can be written
+        for (boolean sparseSource : new boolean[]{false, true}) {
+          List<RankList> samples = FeatureManager.readInput(dataFile.getPath(), false, sparseSource);
+          BinaryDataset.write(samples, denseFile.getPath(), false);
+          BinaryDataset.write(samples, sparseFile.getPath(), true);
+          assertFalse(BinaryDataset.isBinary(dataFile.getPath()));
+          assertTrue(BinaryDataset.isBinary(denseFile.getPath()));
+          assertTrue(BinaryDataset.isBinary(sparseFile.getPath()));
+
+          String expected = dump(samples);
+          for (String file : new String[]{denseFile.getPath(), sparseFile.getPath()}) {
+            for (boolean useSparse : new boolean[]{false, true}) {
+              DataPoint.featureCount = 0;
+              assertEquals(expected, dump(FeatureManager.readInput(file, false, useSparse)));
+              assertEquals(3, DataPoint.featureCount);
+              assertEquals(1, FeatureManager.readInput(file, true, useSparse).size());
+            }
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package ciir.umass.edu.features;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.Dataset;
+import ciir.umass.edu.learning.RestoreFeatureCount;
+import ciir.umass.edu.utilities.MyThreadPool;
+import ciir.umass.edu.utilities.TmpFile;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DatasetBuilderTest {
+  @Rule
+  public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+  @Test
+  public void testFeatureCountPerDataset() throws IOException {
+    try (TmpFile small = new TmpFile(); TmpFile large = new TmpFile()) {
+      try (PrintWriter out = small.getWriter()) {
+        out.println("1 qid:1 1:0.5 2:1 # doc0");
+        out.println("0 qid:2 1:0.25 # doc1");
+      }
+      try (PrintWriter out = large.getWriter()) {
+        out.println("1 qid:1 1:0.5 9:1 # doc0");
+        out.println("0 qid:1 3:2 # doc1");
+      }
+      synchronized (DataPoint.class) {
+        for (boolean sparse : new boolean[]{false, true}) {
+          DatasetBuilder builder = new DatasetBuilder().setSparse(sparse);
+          // loading the large file first (or at the same time) doesn't change the dimensionality of the small one
+          Dataset l = builder.load(large.getPath());
+          Dataset s = builder.load(small.getPath());
+          assertEquals(9, l.getFeatureCount());
+          assertEquals(2, s.getFeatureCount());
+          assertArrayEquals(new int[]{1, 2}, s.getFeatures());
+          assertArrayEquals(new int[]{1, 2}, FeatureManager.getFeatureFromSampleVector(s.getRankLists()));
+
+          MyThreadPool.init(3);
+          try {
+            Dataset[] all = builder.loadAll(small.getPath(), "", large.getPath());
+            assertEquals(2, all[0].getFeatureCount());
+            assertEquals(2, all[0].size());
+            assertNull(all[1]);
+            assertEquals(9, all[2].getFeatureCount());
+            assertEquals(1, all[2].size());
+            assertEquals(l.getRankLists().get(0).get(1).toString(), all[2].getRankLists().get(0).get(1).toString());
+          } finally {
+            MyThreadPool.getInstance().shutdown();
+          }
+        }
+      }
+    }
+  }
+}
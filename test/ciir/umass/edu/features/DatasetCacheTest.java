@@ -0,0 +1,154 @@
+package ciir.umass.edu.features;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.learning.RestoreFeatureCount;
+import ciir.umass.edu.utilities.TmpFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DatasetCacheTest {
+  @Rule
+  public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+  // DatasetCache has ugly globals: don't leak them into other tests
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("ranklib-cache").toFile();
+    DatasetCache.cacheDir = dir.getPath();
+  }
+
+  @After
+  public void tearDown() {
+    DatasetCache.cacheDir = "";
+    DatasetCache.maxSize = 10L << 30;
+    File[] files = dir.listFiles();
+    if (files != null)
+      for (File f : files)
+        f.delete();
+    dir.delete();
+  }
+
+  private String dump(List<RankList> samples) {
+    StringBuilder sb = new StringBuilder();
+    for (RankList rl : samples) {
+      sb.append(rl.getID()).append('\n');
+      for (int i = 0; i < rl.size(); i++)
+        sb.append(rl.get(i).toString()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testHitSameAsMiss() throws IOException {
+    try (TmpFile dataFile = new TmpFile()) {
+      try (PrintWriter out = dataFile.getWriter()) {
+        out.println("2 qid:q1 1:0.5 3:1.5 # doc0");
+        out.println("0 qid:q1 1:0.25 2:-7 3:2 # doc1");
+        out.println("0 qid:q2 1:1 2:1 7:1 # no relevant doc");
+      }
+      synchronized (DataPoint.class) {
+        for (boolean sparse : new boolean[]{false, true}) {
+          File entry = DatasetCache.getEntry(dataFile.getPath(), sparse);
+          assertFalse(entry.exists());
+          for (boolean mustHaveRelDoc : new boolean[]{false, true}) {
+            DataPoint.featureCount = 0;
+            String miss = dump(FeatureManager.readInput(dataFile.getPath(), mustHaveRelDoc, sparse));
+            assertTrue(entry.exists());
+            DataPoint.featureCount = 0;
+            String hit = dump(FeatureManager.readInput(dataFile.getPath(), mustHaveRelDoc, sparse));
+            assertEquals(miss, hit);
+            // the ranked list without relevant document still counts
+            assertEquals(7, DataPoint.featureCount);
+          }
+          entry.delete();
+        }
+
+        // changing the file changes the entry
+        File before = DatasetCache.getEntry(dataFile.getPath(), false);
+        try (PrintWriter out = dataFile.getWriter()) {
+          out.println("1 qid:q1 1:0.5 3:1.5 # doc0");
+        }
+        assertNotEquals(before, DatasetCache.getEntry(dataFile.getPath(), false));
+      }
+    }
+  }
+
+  @Test
+  public void testTouchedFileKeepsEntry() throws IOException {
+    try (TmpFile dataFile = new TmpFile()) {
+      try (PrintWriter out = dataFile.getWriter()) {
+        out.println("2 qid:q1 1:0.5 3:1.5 # doc0");
+        out.println("0 qid:q1 1:0.25 2:-7 3:2 # doc1");
+      }
+      synchronized (DataPoint.class) {
+        String expected = dump(FeatureManager.readInput(dataFile.getPath(), false, false));
+        File before = DatasetCache.getEntry(dataFile.getPath(), false);
+        assertTrue(before.exists());
+        assertTrue(dataFile.get().setLastModified(dataFile.get().lastModified() + 60000));
+        File after = DatasetCache.getEntry(dataFile.getPath(), false);
+        assertNotEquals(before, after);
+        assertFalse(before.exists());
+        assertTrue(after.exists());
+        assertEquals(expected, dump(DatasetCache.load(after, false, false)));
+      }
+    }
+  }
+
+  @Test
+  public void testProjectedHitSameAsText() throws IOException {
+    try (TmpFile dataFile = new TmpFile()) {
+      try (PrintWriter out = dataFile.getWriter()) {
+        out.println("2 qid:q1 1:0.5 3:1.5 # doc0");
+        out.println("0 qid:q1 1:0.25 2:-7 3:2 4:1 # doc1");
+        out.println("1 qid:q2 2:1 4:3 # doc2");
+      }
+      int[] features = {1, 4};
+      synchronized (DataPoint.class) {
+        for (boolean sparse : new boolean[]{false, true}) {
+          DatasetCache.cacheDir = "";
+          String text = dump(FeatureManager.readInput(dataFile.getPath(), false, sparse, features));
+          DatasetCache.cacheDir = dir.getPath();
+          assertEquals(text, dump(FeatureManager.readInput(dataFile.getPath(), false, sparse, features)));
+          assertEquals(text, dump(FeatureManager.readInput(dataFile.getPath(), false, sparse, features)));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    try (TmpFile a = new TmpFile(); TmpFile b = new TmpFile()) {
+      for (TmpFile f : new TmpFile[]{a, b})
+        try (PrintWriter out = f.getWriter()) {
+          out.println("1 qid:q1 1:0.5 2:1.5 # " + f.getPath());
+        }
+      synchronized (DataPoint.class) {
+        File entryA = DatasetCache.getEntry(a.getPath(), false);
+        File entryB = DatasetCache.getEntry(b.getPath(), false);
+        FeatureManager.readInput(a.getPath(), false, false);
+        entryA.setLastModified(System.currentTimeMillis() - 60000);
+        // room for one entry only (their sizes differ by a few bytes: the paths in the descriptions do)
+        DatasetCache.maxSize = entryA.length() + 64;
+        FeatureManager.readInput(b.getPath(), false, false);
+        assertFalse(entryA.exists());
+        assertTrue(entryB.exists());
+      }
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package ciir.umass.edu.features;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.utilities.MyThreadPool;
+import ciir.umass.edu.utilities.TmpFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelFeatureReaderTest {
+  private String dump(List<RankList> samples) {
+    StringBuilder sb = new StringBuilder();
+    for (RankList rl : samples) {
+      sb.append(rl.getID()).append('\n');
+      for (int i = 0; i < rl.size(); i++)
+        sb.append(rl.get(i).toString()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testSameAsSequential() throws IOException {
+    try (TmpFile dataFile = new TmpFile()) {
+      try (PrintWriter out = dataFile.getWriter()) {
+        Random rand = new Random(42);
+        for (int q = 0; q < 50; q++) {
+          if (q % 10 == 0)
+            out.print("# comment\r\n\r\n");
+          int nDocs = 1 + rand.nextInt(8);
+          for (int d = 0; d < nDocs; d++)
+            out.print(rand.nextInt(3) + " qid:" + (q / 2) + " 1:" + rand.nextFloat() + " 2:" + rand.nextInt(5) + " # doc" + d + ((q % 3 == 0) ? "\r\n" : "\n"));
+        }
+      }
+
+      long minFileSize = ParallelFeatureReader.minFileSize;
+      int chunksPerThread = ParallelFeatureReader.chunksPerThread;
+      synchronized (DataPoint.class) {
+        try {
+          for (boolean mustHaveRelDoc : new boolean[]{false, true}) {
+            ParallelFeatureReader.minFileSize = Long.MAX_VALUE;
+            String expected = dump(FeatureManager.readInput(dataFile.getPath(), mustHaveRelDoc, false));
+
+            // lots of tiny chunks: most boundaries have to be moved to the next qid
+            MyThreadPool.init(3);
+            ParallelFeatureReader.minFileSize = 0;
+            ParallelFeatureReader.chunksPerThread = 20;
+            assertEquals(expected, dump(FeatureManager.readInput(dataFile.getPath(), mustHaveRelDoc, false)));
+            assertEquals(expected, dump(ParallelFeatureReader.read(dataFile.getPath(), mustHaveRelDoc, true)));
+          }
+        } finally {
+          ParallelFeatureReader.minFileSize = minFileSize;
+          ParallelFeatureReader.chunksPerThread = chunksPerThread;
+          MyThreadPool.getInstance().shutdown();
+        }
+      }
+    }
+  }
+}
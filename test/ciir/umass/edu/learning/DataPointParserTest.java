@@ -0,0 +1,51 @@
+package ciir.umass.edu.learning;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DataPointParserTest {
+  @Rule
+  public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+  private static float parseFloat(String s) {
+    return DataPointParser.parseFloat(s.toCharArray(), 0, s.length());
+  }
+
+  @Test
+  public void testParseFloatSameAsJdk() {
+    String[] fixed = {"0", "-0", "+3", "1.", ".5", "0.1", "1e-3", "2.5E+7", "16777216", "16777217", "0.30000001",
+        "1e10", "1e-10", "1e11", "123456789012", "3.4028235e38", "1e-45", "NaN", "-Infinity", "0x1p3"};
+    for (String s : fixed)
+      assertEquals(s, Float.floatToRawIntBits(Float.parseFloat(s)), Float.floatToRawIntBits(parseFloat(s)));
+
+    Random rand = new Random(1);
+    for (int i = 0; i < 100000; i++) {
+      String s;
+      switch (i % 3) {
+        case 0: s = Float.toString(rand.nextFloat() * (float) Math.pow(10, rand.nextInt(20) - 10)); break;
+        case 1: s = String.format("%." + rand.nextInt(9) + "f", rand.nextDouble() * 2000 - 1000); break;
+        default: s = Integer.toString(rand.nextInt()); break;
+      }
+      assertEquals(s, Float.floatToRawIntBits(Float.parseFloat(s)), Float.floatToRawIntBits(parseFloat(s)));
+    }
+  }
+
+  @Test
+  public void testParseLine() {
+    String line = "  2,1,, qid:q:7\t1:-2 3:4 # doc 1 ";
+    for (DataPoint dp : new DataPoint[]{new DenseDataPoint(line.trim()),
+        new SparseDataPoint(line.toCharArray(), 2, line.length() - 1)}) {
+      assertArrayEquals(new float[]{2, 1}, dp.getLabels(), 0);
+      assertEquals("7", dp.getID());
+      assertEquals("# doc 1", dp.getDescription());
+      assertEquals(-2, dp.getFeatureValue(1), 0);
+      assertEquals(0, dp.getFeatureValue(2), 0);
+      assertEquals(4, dp.getFeatureValue(3), 0);
+    }
+  }
+}
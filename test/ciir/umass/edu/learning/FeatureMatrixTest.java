@@ -0,0 +1,180 @@
+package ciir.umass.edu.learning;
+
+import ciir.umass.edu.learning.tree.LambdaMART;
+import ciir.umass.edu.metric.NDCGScorer;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FeatureMatrixTest {
+    @Rule
+    public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+    private static List<RankList> sampleLists() {
+        List<RankList> samples = new ArrayList<>();
+        samples.add(new RankList(Arrays.<DataPoint>asList(
+                new DenseDataPoint("2 qid:1 1:0.5 3:1.5 #doc0"),
+                new DenseDataPoint("0 qid:1 1:0.25 2:7 3:2 #doc1"))));
+        samples.add(new RankList(Arrays.<DataPoint>asList(
+                new DenseDataPoint("1 qid:2 1:3 2:4 3:5 #doc2"))));
+        return samples;
+    }
+
+    @Test
+    public void testColumns() {
+        FeatureMatrix m = new FeatureMatrix(sampleLists());
+        assertEquals(3, m.rowCount());
+        assertEquals(3, m.featureCount());
+        assertEquals(2, m.rankListCount());
+        assertEquals(2, m.getOffset(1));
+        assertArrayEquals(new float[]{0.5f, 0.25f, 3f}, m.getColumn(1), 0f);
+        assertArrayEquals(new float[]{0f, 7f, 4f}, m.getColumn(2), 0f);
+        assertArrayEquals(new float[]{2f, 0f, 1f}, m.getLabels(), 0f);
+        assertNull(m.getColumn(4));
+        assertNull(m.getColumn(0));
+    }
+
+    @Test
+    public void testViews() {
+        List<RankList> samples = sampleLists();
+        List<RankList> views = new FeatureMatrix(samples).getRankLists();
+        assertEquals(2, views.size());
+        for (int i = 0; i < samples.size(); i++) {
+            assertEquals(samples.get(i).size(), views.get(i).size());
+            for (int j = 0; j < samples.get(i).size(); j++) {
+                DataPoint dp = samples.get(i).get(j);
+                DataPoint view = views.get(i).get(j);
+                assertEquals(dp.toString(), view.toString());
+                assertEquals(dp.getLastFeature(), view.getLastFeature());
+                for (int f = 1; f <= 3; f++)
+                    assertEquals(dp.getFeatureValue(f), view.getFeatureValue(f), 0f);
+            }
+        }
+
+        RankList rl = views.get(1);
+        assertSame(rl.getFeatureMatrix().getColumn(2), rl.getFeatureColumn(2));
+        assertEquals(2, rl.getMatrixOffset());
+        rl.get(0).setFeatureValue(2, 9f);
+        assertEquals(9f, rl.getFeatureColumn(2)[2], 0f);
+        // reordered lists are no longer contiguous blocks of the matrix
+        assertNull(new RankList(views.get(0), new int[]{1, 0}).getFeatureMatrix());
+    }
+
+    @Test
+    public void testUnknownFeatures() {
+        RankList rl = new FeatureMatrix(sampleLists()).getRankLists().get(0);
+        // doc0 doesn't specify feature 2: it reads as 0, prints as unknown, and becomes known once it's set
+        assertEquals(0f, rl.get(0).getFeatureValue(2), 0f);
+        assertEquals("2 qid:1 1:0.5 3:1.5 #doc0", rl.get(0).toString());
+        rl.get(0).setFeatureValue(2, 1f);
+        assertEquals("2 qid:1 1:0.5 2:1.0 3:1.5 #doc0", rl.get(0).toString());
+    }
+
+    @Test
+    public void testColumnsAreReadOnly() {
+        // getColumns() hands out the columns themselves: learners must not write into them
+        List<RankList> views = new FeatureMatrix(sampleLists()).getRankLists();
+        FeatureMatrix m = views.get(0).getFeatureMatrix();
+        List<DataPoint> points = new ArrayList<>();
+        for (RankList rl : views)
+            for (int j = 0; j < rl.size(); j++)
+                points.add(rl.get(j));
+        int[] fids = {1, 2, 3};
+        float[][] columns = FeatureMatrix.getColumns(points.toArray(new DataPoint[0]), fids);
+        float[][] before = new float[fids.length][];
+        for (int f = 0; f < fids.length; f++) {
+            assertSame(m.getColumn(fids[f]), columns[f]);
+            before[f] = columns[f].clone();
+        }
+        new LambdaMART(views, fids, new NDCGScorer(10)).init();
+        for (int f = 0; f < fids.length; f++)
+            assertArrayEquals(before[f], m.getColumn(fids[f]), 0f);
+    }
+
+    private static FeatureMatrixBuilder builderOf(boolean mustHaveRelDoc, String... lines) {
+        FeatureMatrixBuilder b = new FeatureMatrixBuilder(null, mustHaveRelDoc);
+        for (String line : lines)
+            b.add(line.toCharArray(), 0, line.length());
+        return b;
+    }
+
+    @Test
+    public void testBuilder() {
+        // same matrix as copying parsed data points, whether the file is read in one part or two
+        FeatureMatrix expected = new FeatureMatrix(sampleLists());
+        String[] lines = {"2 qid:1 1:0.5 3:1.5 #doc0", "0 qid:1 1:0.25 2:7 3:2 #doc1", "1 qid:2 1:3 2:4 3:5 #doc2"};
+        FeatureMatrix whole = builderOf(false, lines).build();
+        FeatureMatrix parts = FeatureMatrixBuilder.build(Arrays.asList(
+                builderOf(false, lines[0], lines[1]), builderOf(false, lines[2])));
+        for (FeatureMatrix m : new FeatureMatrix[]{whole, parts}) {
+            assertEquals(expected.rowCount(), m.rowCount());
+            assertEquals(expected.featureCount(), m.featureCount());
+            assertEquals(expected.rankListCount(), m.rankListCount());
+            assertEquals(expected.getOffset(1), m.getOffset(1));
+            for (int f = 1; f <= 3; f++)
+                assertArrayEquals(expected.getColumn(f), m.getColumn(f), 0f);
+            assertArrayEquals(expected.getLabels(), m.getLabels(), 0f);
+            for (int i = 0; i < 2; i++)
+                for (int j = 0; j < expected.getRankLists().get(i).size(); j++)
+                    assertEquals(expected.getRankLists().get(i).get(j).toString(), m.getRankLists().get(i).get(j).toString());
+        }
+
+        // ranked lists without a relevant document are dropped, and their rows re-used
+        FeatureMatrix m = builderOf(true, "0 qid:1 1:9 4:9 #a", "1 qid:2 1:1 #b", "0 qid:3 2:9 #c", "0 qid:4 1:2 2:3 #d", "2 qid:4 1:4 #e").build();
+        assertEquals(3, m.rowCount());
+        assertEquals(2, m.rankListCount());
+        assertEquals(2, m.featureCount());
+        assertArrayEquals(new float[]{1f, 2f, 4f}, m.getColumn(1), 0f);
+        assertArrayEquals(new float[]{0f, 3f, 0f}, m.getColumn(2), 0f);
+        assertEquals("2 qid:4 1:4.0 #e", m.getRankLists().get(1).get(1).toString());
+    }
+
+    @Test
+    public void testProjection() {
+        int[] features = {1, 3};
+        List<RankList> views = new FeatureMatrix(sampleLists(), features).getRankLists();
+        FeatureMatrix m = views.get(0).getFeatureMatrix();
+        assertNull(m.getColumn(2));
+        assertArrayEquals(new float[]{1.5f, 2f, 5f}, m.getColumn(3), 0f);
+
+        // same as parsing only the selected features: feature 2 is left unspecified but rows keep their last feature
+        DataPoint view = views.get(0).get(1);
+        String line = "0 qid:1 1:0.25 2:7 3:2 #doc1";
+        FeatureMatrixBuilder b = new FeatureMatrixBuilder(DataPoint.featureMask(features), false);
+        b.add(line.toCharArray(), 0, line.length());
+        DataPoint parsed = b.build().getRankLists().get(0).get(0);
+        assertEquals("0 qid:1 1:0.25 3:2.0 #doc1", parsed.toString());
+        assertEquals(parsed.toString(), view.toString());
+        assertEquals(parsed.toString(), new SparseDataPoint(line.toCharArray(), 0, line.length(), DataPoint.featureMask(features)).toString());
+        assertEquals(3, view.getLastFeature() - 1);
+        assertEquals(3, parsed.getLastFeature() - 1);
+        assertEquals(0f, view.getFeatureValue(2), 0f);
+        assertEquals(2f, view.getFeatureValue(3), 0f);
+
+        // features left out are unknown through their null column only, and read as 0
+        FeatureMatrix pm = ((MatrixDataPoint) parsed).getFeatureMatrix();
+        for (FeatureMatrix fm : new FeatureMatrix[]{m, pm}) {
+            for (int row = 0; row < fm.rowCount(); row++)
+                assertNull(fm.unknown[row]);
+            assertTrue(fm.isUnknown(0, 2));
+            assertEquals(0f, fm.getFeatureValue(0, 2), 0f);
+        }
+        assertEquals(2, view.knownFeatures);
+        assertEquals(2, parsed.knownFeatures);
+
+        // nothing is stored for features left out, however large their ids
+        line = "0 qid:1 3:2 900:3 1:0.25 3:4 2:7";
+        SparseDataPoint sparse = new SparseDataPoint(line.toCharArray(), 0, line.length(), DataPoint.featureMask(features));
+        assertArrayEquals(new int[]{1, 3}, sparse.fIds);
+        assertArrayEquals(new float[]{0.25f, 4f}, sparse.fVals, 0f);
+    }
+}
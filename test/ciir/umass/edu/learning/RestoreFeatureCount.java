@@ -0,0 +1,21 @@
+package ciir.umass.edu.learning;
+
+import org.junit.rules.ExternalResource;
+
+/**
+ * DataPoint.featureCount is global, and raised by every data point that is parsed: tests that parse data declare
+ * this as a @Rule so that the feature count of their data does not leak into other tests.
+ */
+public class RestoreFeatureCount extends ExternalResource {
+  private int featureCount;
+
+  @Override
+  protected void before() {
+    featureCount = DataPoint.featureCount;
+  }
+
+  @Override
+  protected void after() {
+    DataPoint.featureCount = featureCount;
+  }
+}
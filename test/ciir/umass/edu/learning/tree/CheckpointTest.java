@@ -0,0 +1,151 @@
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.DenseDataPoint;
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.learning.Ranker;
+import ciir.umass.edu.learning.RestoreFeatureCount;
+import ciir.umass.edu.metric.NDCGScorer;
+import ciir.umass.edu.utilities.TmpFile;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointTest {
+  @Rule
+  public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+  private static List<RankList> randomQueries(Random rand, int nQueries) {
+    List<RankList> queries = new ArrayList<>();
+    for (int q = 0; q < nQueries; q++) {
+      List<DataPoint> points = new ArrayList<>();
+      for (int d = 0; d < 20; d++) {
+        float f1 = rand.nextFloat();
+        float f2 = rand.nextFloat();
+        int label = Math.min(4, (int) (f1 * 3 + f2 * rand.nextFloat() * 2));
+        points.add(new DenseDataPoint(label + " qid:" + q + " 1:" + f1 + " 2:" + f2 + " 3:" + rand.nextFloat()));
+      }
+      queries.add(new RankList(points));
+    }
+    return queries;
+  }
+
+  private static LambdaMART train(List<RankList> train, List<RankList> validation, int nTrees) {
+    LambdaMART.nTrees = nTrees;
+    LambdaMART lm = new LambdaMART(train, new int[]{1, 2, 3}, new NDCGScorer(10));
+    lm.setValidationSet(validation);
+    lm.init();
+    lm.learn();
+    return lm;
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    synchronized (DataPoint.class) {
+      int oldTrees = LambdaMART.nTrees;
+      int oldLeaves = LambdaMART.nTreeLeaves;
+      int oldStop = LambdaMART.nRoundToStopEarly;
+      int oldSupport = LambdaMART.minLeafSupport;
+      float oldRate = LambdaMART.learningRate;
+      float oldSampling = FeatureHistogram.samplingRate;
+      boolean oldVerbose = Ranker.verbose;
+      try (TmpFile checkpoint = new TmpFile()) {
+        // RFRanker sets these for its own bags
+        LambdaMART.nRoundToStopEarly = 100;
+        LambdaMART.minLeafSupport = 1;
+        LambdaMART.learningRate = 0.1f;
+        FeatureHistogram.samplingRate = 1;
+        Ranker.verbose = false;
+        LambdaMART.nTreeLeaves = 4;
+        Random rand = new Random(5);
+        List<RankList> train = randomQueries(rand, 15);
+        List<RankList> validation = randomQueries(rand, 5);
+        String full = train(train, validation, 12).model();
+
+        // stopped after 8 trees (checkpoints at 4 and 8), then resumed up to 12
+        LambdaMART.checkpointFile = checkpoint.getPath();
+        LambdaMART.checkpointEvery = 4;
+        train(train, validation, 8);
+        LambdaMART.checkpointFile = null;
+        assertEquals(8, Checkpoint.read(checkpoint.get()).getRounds());
+        LambdaMART.resumeFrom = checkpoint.getPath();
+        assertEquals(full, train(train, validation, 12).model());
+
+        // the trees of the checkpoint are not fitted again
+        LambdaMART.nTreeLeaves = 2;
+        Ensemble resumed = train(train, validation, 12).ensemble;
+        Ensemble first = Checkpoint.read(checkpoint.get()).ensemble;
+        for (int i = 0; i < first.treeCount(); i++)
+          assertEquals(first.getTree(i).toString(), resumed.getTree(i).toString());
+        assertEquals(2, resumed.getTree(resumed.treeCount() - 1).leaves().size());
+      } finally {
+        LambdaMART.checkpointFile = null;
+        LambdaMART.checkpointEvery = 100;
+        LambdaMART.resumeFrom = null;
+        restore(oldTrees, oldLeaves, oldStop, oldSupport, oldRate, oldSampling, oldVerbose);
+      }
+    }
+  }
+
+  @Test
+  public void testWarmStart() throws IOException {
+    synchronized (DataPoint.class) {
+      int oldTrees = LambdaMART.nTrees;
+      int oldLeaves = LambdaMART.nTreeLeaves;
+      int oldStop = LambdaMART.nRoundToStopEarly;
+      int oldSupport = LambdaMART.minLeafSupport;
+      float oldRate = LambdaMART.learningRate;
+      float oldSampling = FeatureHistogram.samplingRate;
+      boolean oldVerbose = Ranker.verbose;
+      try (TmpFile model = new TmpFile()) {
+        LambdaMART.nRoundToStopEarly = 100;
+        LambdaMART.minLeafSupport = 1;
+        LambdaMART.learningRate = 0.1f;
+        FeatureHistogram.samplingRate = 1;
+        Ranker.verbose = false;
+        LambdaMART.nTreeLeaves = 4;
+        Random rand = new Random(7);
+        List<RankList> train = randomQueries(rand, 15);
+        LambdaMART first = train(train, null, 6);
+        first.save(model.getPath());
+
+        // the model scores start from the outputs of the initial model
+        LambdaMART.initModel = model.getPath();
+        LambdaMART.nTrees = 4;
+        LambdaMART lm = new LambdaMART(train, new int[]{1, 2, 3}, new NDCGScorer(10));
+        lm.init();
+        lm.warmStart(model.getPath());
+        for (int i = 0, k = 0; i < train.size(); i++)
+          for (int j = 0; j < train.get(i).size(); j++, k++)
+            assertEquals(first.eval(train.get(i).get(j)), lm.modelScores[k], 1e-5);
+
+        // and boosting adds trees after the initial ones
+        lm = train(train, null, 4);
+        assertEquals(10, lm.ensemble.treeCount());
+        for (int i = 0; i < first.ensemble.treeCount(); i++)
+          assertEquals(first.ensemble.getTree(i).toString(), lm.ensemble.getTree(i).toString());
+        assertTrue(lm.getScoreOnTrainingData() >= first.getScoreOnTrainingData());
+      } finally {
+        LambdaMART.initModel = null;
+        restore(oldTrees, oldLeaves, oldStop, oldSupport, oldRate, oldSampling, oldVerbose);
+      }
+    }
+  }
+
+  private static void restore(int trees, int leaves, int stop, int support, float rate, float sampling, boolean verbose) {
+    LambdaMART.nTrees = trees;
+    LambdaMART.nTreeLeaves = leaves;
+    LambdaMART.nRoundToStopEarly = stop;
+    LambdaMART.minLeafSupport = support;
+    LambdaMART.learningRate = rate;
+    FeatureHistogram.samplingRate = sampling;
+    Ranker.verbose = verbose;
+  }
+}
@@ -0,0 +1,46 @@
+package ciir.umass.edu.learning.tree;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DataPartitionTest {
+  @Test
+  public void testSplitInPlace() {
+    Random rand = new Random(42);
+    int nSamples = 100;
+    int[] codes = new int[nSamples];
+    for (int k = 0; k < nSamples; k++)
+      codes[k] = rand.nextInt(10);
+    FeatureBins bins = new FeatureBins(1, nSamples);
+    bins.set(0, codes, 9);
+
+    DataPartition partition = new DataPartition(nSamples);
+    // split the whole range, then the right part of it, each time comparing with copying samples out
+    int mid = partition.split(bins, 0, 4, 0, nSamples);
+    int[] all = new int[nSamples];
+    for (int k = 0; k < nSamples; k++)
+      all[k] = k;
+    int[] left = new int[mid];
+    int[] right = new int[nSamples - mid];
+    bins.partition(0, 4, all, left, right);
+    assertArrayEquals(left, Arrays.copyOfRange(partition.getIndex(), 0, mid));
+    assertArrayEquals(right, Arrays.copyOfRange(partition.getIndex(), mid, nSamples));
+
+    int mid2 = partition.split(bins, 0, 6, mid, nSamples);
+    int[] rightLeft = new int[mid2 - mid];
+    int[] rightRight = new int[nSamples - mid2];
+    bins.partition(0, 6, right, rightLeft, rightRight);
+    assertArrayEquals(left, Arrays.copyOfRange(partition.getIndex(), 0, mid));
+    assertArrayEquals(rightLeft, Arrays.copyOfRange(partition.getIndex(), mid, mid2));
+    assertArrayEquals(rightRight, Arrays.copyOfRange(partition.getIndex(), mid2, nSamples));
+
+    partition.reset();
+    for (int k = 0; k < nSamples; k++)
+      assertEquals(k, partition.getIndex()[k]);
+  }
+}
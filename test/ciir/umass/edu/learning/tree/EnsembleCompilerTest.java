@@ -0,0 +1,108 @@
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.DenseDataPoint;
+import ciir.umass.edu.learning.RestoreFeatureCount;
+import ciir.umass.edu.utilities.RankLibError;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class EnsembleCompilerTest {
+  @Rule
+  public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+  // EnsembleCompiler has ugly globals: don't leak them into other tests
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("ranklib-codegen").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    EnsembleCompiler.maxNodesPerMethod = 128;
+    EnsembleCompiler.maxTreesPerMethod = 64;
+    EnsembleCompiler.maxNodesPerClass = 4000;
+    File[] files = dir.listFiles();
+    if (files != null)
+      for (File f : files)
+        f.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testSameScoresAndCache() {
+    assumeTrue(EnsembleCompiler.isAvailable());
+    // small limits, so that trees, groups and classes get split
+    EnsembleCompiler.maxNodesPerMethod = 20;
+    EnsembleCompiler.maxTreesPerMethod = 4;
+    EnsembleCompiler.maxNodesPerClass = 500;
+
+    Random rand = new Random(42);
+    Ensemble[] bags = {TestEnsembles.randomEnsemble(rand, 30, 8, 5, false, false), TestEnsembles.randomEnsemble(rand, 1, 8, 5, false, false), TestEnsembles.randomEnsemble(rand, 3, 8, 5, false, false)};
+    EnsembleCompiler compiler = new EnsembleCompiler(dir);
+    CompiledEnsemble ce = compiler.compile(bags, true);
+    assertEquals(34, ce.treeCount());
+
+    synchronized (DataPoint.class) {
+      for (int i = 0; i < 1000; i++) {
+        StringBuilder sb = new StringBuilder("0 qid:1");
+        for (int f = 1; f <= 10; f++)
+          sb.append(" ").append(f).append(":").append((float) rand.nextGaussian());
+        DataPoint dp = new DenseDataPoint(sb.toString());
+
+        double s = 0;
+        for (Ensemble bag : bags)
+          s += bag.eval(dp);
+        assertEquals(s / bags.length, ce.eval(dp), 0);
+      }
+    }
+    assertTrue(new EnsembleScorerFactory().check(ce, bags, true));
+
+    // the same model again is loaded from the cache
+    File[] classes = dir.listFiles();
+    assertTrue(classes.length > 1);
+    for (File f : classes)
+      assertTrue(f.setLastModified(1000000000000L));
+    CompiledEnsemble cached = compiler.compile(bags, true);
+    assertEquals(ce.getClass().getName(), cached.getClass().getName());
+    for (File f : dir.listFiles())
+      assertEquals(1000000000000L, f.lastModified());
+  }
+
+  @Test
+  public void testTamperedCache() throws IOException {
+    assumeTrue(EnsembleCompiler.isAvailable());
+    Ensemble[] model = {TestEnsembles.randomEnsemble(new Random(7), 5, 8, 5, false, false)};
+    EnsembleCompiler compiler = new EnsembleCompiler(dir);
+    CompiledEnsemble ce = compiler.compile(model, false);
+
+    // classes that don't match the model are compiled again rather than run
+    File classFile = new File(dir, ce.getClass().getName() + ".class");
+    Files.write(classFile.toPath(), new byte[]{(byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe, 0, 0});
+    CompiledEnsemble again = compiler.compile(model, false);
+    assertTrue(new EnsembleScorerFactory().check(again, model, false));
+    assertTrue(classFile.length() > 6);
+  }
+
+  @Test(expected = RankLibError.class)
+  public void testSharedCacheIsRefused() throws IOException {
+    assumeTrue(EnsembleCompiler.isAvailable());
+    assumeTrue(dir.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+    Files.setPosixFilePermissions(dir.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+    new EnsembleCompiler(dir).compile(new Ensemble[]{TestEnsembles.randomEnsemble(new Random(7), 1, 8, 5, false, false)}, false);
+  }
+}
@@ -0,0 +1,82 @@
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.Ranker;
+import ciir.umass.edu.learning.RankerFactory;
+import ciir.umass.edu.utilities.TmpFile;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EnsembleTest {
+
+  @Test
+  public void testFormats() throws IOException {
+    Random rand = new Random(42);
+    Ensemble e = TestEnsembles.randomEnsemble(rand, 50);
+    Ensemble bag = TestEnsembles.randomEnsemble(rand, 3);
+
+    // streamed from the text, as many ensembles as there are, skipping headers
+    String text = "## Random Forests\n## No. of bags = 2\n" + e.toString() + bag.toString();
+    List<Ensemble> parsed = Ensemble.parseAll(text);
+    assertEquals(2, parsed.size());
+    assertEquals(e.toString(), parsed.get(0).toString());
+    assertEquals(bag.toString(), parsed.get(1).toString());
+    assertEquals(e.toString(), new Ensemble(e.toString()).toString());
+    int[] features = parsed.get(0).getFeatures();
+    assertTrue(features.length > 0);
+
+    // binary
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    e.write(new DataOutputStream(bytes));
+    Ensemble read = new Ensemble(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(e.toString(), read.toString());
+    assertArrayEquals(features, read.getFeatures());
+  }
+
+  @Test
+  public void testBinaryModel() throws IOException {
+    Random rand = new Random(7);
+    LambdaMART lm = new LambdaMART();
+    lm.loadFromString("## LambdaMART\n" + TestEnsembles.randomEnsemble(rand, 20).toString());
+    try (TmpFile modelFile = new TmpFile()) {
+      synchronized (DataPoint.class) {
+        lm.saveBinary(modelFile.getPath());
+        Ranker loaded = new RankerFactory().loadRankerFromFile(modelFile.getPath());
+        assertTrue(loaded instanceof LambdaMART);
+        assertEquals(lm.model(), loaded.model());
+      }
+    }
+  }
+
+  @Test
+  public void testStreamedModel() throws IOException {
+    Random rand = new Random(11);
+    Ensemble e = TestEnsembles.randomEnsemble(rand, 30);
+    LambdaMART lm = new LambdaMART();
+    lm.loadFromString("## LambdaMART\n" + e.toString());
+    assertTrue(lm.model().endsWith(e.toString()));
+    try (TmpFile modelFile = new TmpFile()) {
+      synchronized (DataPoint.class) {
+        lm.save(modelFile.getPath());
+        String saved = new String(Files.readAllBytes(Paths.get(modelFile.getPath())), StandardCharsets.US_ASCII);
+        assertEquals(lm.model(), saved);
+        Ranker loaded = new RankerFactory().loadRankerFromFile(modelFile.getPath());
+        assertEquals(lm.model(), loaded.model());
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package ciir.umass.edu.learning.tree;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class FeatureBinsTest {
+  @Test
+  public void testSameAsIntCodes() {
+    Random rand = new Random(42);
+    int nSamples = 1000;
+    int[] maxCodes = {1, 255, 256, 65535, 65536, 1 << 20};
+    FeatureBins bins = new FeatureBins(maxCodes.length, nSamples);
+    int[][] codes = new int[maxCodes.length][nSamples];
+    for (int f = 0; f < maxCodes.length; f++) {
+      for (int k = 0; k < nSamples; k++)
+        codes[f][k] = rand.nextInt(maxCodes[f] + 1);
+      codes[f][rand.nextInt(nSamples)] = maxCodes[f];
+      bins.set(f, codes[f], maxCodes[f]);
+    }
+    assertNotNull(bins.codes8[1]);
+    assertNotNull(bins.codes16[2]);
+    assertNotNull(bins.codes16[3]);
+    assertNotNull(bins.codes32[4]);
+
+    double[] labels = new double[nSamples];
+    for (int k = 0; k < nSamples; k++)
+      labels[k] = rand.nextGaussian();
+    int[] soi = {3, 1, 4, 159, 26, 535, 897, 932, 384, 626};
+
+    for (int f = 0; f < maxCodes.length; f++) {
+      for (int k = 0; k < nSamples; k++)
+        assertEquals(codes[f][k], bins.get(f, k));
+
+      double[] expectedSum = new double[maxCodes[f] + 1];
+      for (int k = 0; k < nSamples; k++)
+        expectedSum[codes[f][k]] += labels[k];
+      double[] sum = new double[maxCodes[f] + 1];
+      bins.accumulate(f, labels, sum);
+      assertArrayEquals(expectedSum, sum, 0);
+
+      expectedSum = new double[maxCodes[f] + 1];
+      int[] expectedCount = new int[maxCodes[f] + 1];
+      for (int k : soi) {
+        expectedSum[codes[f][k]] += labels[k];
+        expectedCount[codes[f][k]]++;
+      }
+      sum = new double[maxCodes[f] + 1];
+      int[] count = new int[maxCodes[f] + 1];
+      bins.accumulate(f, soi, labels, sum, count);
+      assertArrayEquals(expectedSum, sum, 0);
+      assertArrayEquals(expectedCount, count);
+
+      int threshold = maxCodes[f] / 2;
+      int nLeft = 0;
+      for (int k : soi)
+        if (codes[f][k] <= threshold)
+          nLeft++;
+      int[] left = new int[nLeft];
+      int[] right = new int[soi.length - nLeft];
+      bins.partition(f, threshold, soi, left, right);
+      int l = 0;
+      int r = 0;
+      for (int k : soi) {
+        if (codes[f][k] <= threshold)
+          assertEquals(k, left[l++]);
+        else
+          assertEquals(k, right[r++]);
+      }
+    }
+  }
+}
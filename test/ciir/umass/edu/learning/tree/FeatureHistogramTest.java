@@ -0,0 +1,138 @@
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.utilities.MyThreadPool;
+import ciir.umass.edu.utilities.Sorter;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FeatureHistogramTest {
+  private static void assertSameHistogram(FeatureHistogram expected, FeatureHistogram actual) {
+    assertEquals(expected.sumResponse, actual.sumResponse, 1e-9);
+    assertEquals(expected.sqSumResponse, actual.sqSumResponse, 1e-9);
+    for (int f = 0; f < expected.features.length; f++) {
+      assertArrayEquals(expected.count[f], actual.count[f]);
+      assertArrayEquals(expected.sum[f], actual.sum[f], 1e-9);
+    }
+  }
+
+  private final int nSamples = 500;
+  private final int[] features = {1, 2, 3};
+  private final float[][] values = new float[features.length][nSamples];
+  private final int[][] sortedIdx = new int[features.length][];
+  private final double[] labels = new double[nSamples];
+  private final float[][] thresholds;
+
+  public FeatureHistogramTest() {
+    Random rand = new Random(42);
+    for (int f = 0; f < features.length; f++) {
+      double[] v = new double[nSamples];
+      for (int k = 0; k < nSamples; k++)
+        v[k] = values[f][k] = rand.nextInt(50);
+      sortedIdx[f] = Sorter.sort(v, true);
+    }
+    for (int k = 0; k < nSamples; k++)
+      labels[k] = rand.nextGaussian();
+    thresholds = ThresholdBuilder.build(values, sortedIdx, 16, ThresholdBuilder.Mode.EQUAL_WIDTH);
+  }
+
+  @Test
+  public void testSplitsWithPool() {
+    FeatureHistogram hist = new FeatureHistogram();
+    hist.construct(values, labels, sortedIdx, features, thresholds);
+    int nLeaves = 8;
+    hist.pool = new HistogramPool(thresholds, nLeaves);
+
+    for (int tree = 0; tree < 3; tree++) {
+      RegressionTree rt = new RegressionTree(nLeaves, new DataPoint[nSamples], labels, hist, 1);
+      rt.fit();
+      assertEquals(nLeaves, rt.leaves().size());
+      // whichever child was built from its samples, every leaf has the histogram of its own samples
+      for (Split leaf : rt.leaves()) {
+        FeatureHistogram direct = new FeatureHistogram();
+        direct.construct(hist, leaf.getSamples(), labels);
+        assertSameHistogram(direct, leaf.hist);
+      }
+      rt.clearSamples();
+      // all leaf histograms went back to the pool, and the root kept its own
+      assertEquals(nLeaves, hist.pool.size());
+      for (Split leaf : rt.leaves())
+        assertNull(leaf.hist);
+      assertTrue(hist.sum != null);
+    }
+  }
+
+  @Test
+  public void testRowParallel() {
+    int[] soi = new int[nSamples - nSamples / 5];
+    for (int i = 0, k = 1; i < soi.length; k++)
+      if (k % 5 != 0)
+        soi[i++] = k;
+    double[] newLabels = new double[nSamples];
+    for (int k = 0; k < nSamples; k++)
+      newLabels[k] = labels[(k + 1) % nSamples];
+
+    FeatureHistogram hist = new FeatureHistogram();
+    hist.construct(values, labels, sortedIdx, features, thresholds);
+    assertFalse(hist.byRows(nSamples));
+    hist.update(newLabels);
+    FeatureHistogram child = new FeatureHistogram();
+    child.construct(hist, soi, newLabels);
+
+    int minRowsPerThread = FeatureHistogram.minRowsPerThread;
+    FeatureHistogram.minRowsPerThread = 1;
+    MyThreadPool.init(4);
+    try {
+      FeatureHistogram parallelHist = new FeatureHistogram();
+      parallelHist.construct(values, labels, sortedIdx, features, thresholds);
+      parallelHist.pool = new HistogramPool(thresholds, 8);
+      // 3 features on 4 threads: each thread gets a range of samples instead
+      assertTrue(parallelHist.byRows(soi.length));
+      parallelHist.update(newLabels);
+      assertSameHistogram(hist, parallelHist);
+      FeatureHistogram parallelChild = new FeatureHistogram();
+      parallelChild.construct(parallelHist, soi, newLabels);
+      assertSameHistogram(child, parallelChild);
+      // the partial histograms went back to the pool
+      assertEquals(4, parallelHist.pool.size());
+    } finally {
+      FeatureHistogram.minRowsPerThread = minRowsPerThread;
+      MyThreadPool.getInstance().shutdown();
+    }
+  }
+
+  @Test
+  public void testDepthWise() {
+    for (int nThreads : new int[]{1, 3}) {
+      MyThreadPool.init(nThreads);
+      try {
+        FeatureHistogram hist = new FeatureHistogram();
+        hist.construct(values, labels, sortedIdx, features, thresholds);
+        hist.pool = new HistogramPool(thresholds, 16);
+        RegressionTree rt = new RegressionTree(-1, new DataPoint[nSamples], labels, hist, 1);
+        rt.setGrowth(RegressionTree.Growth.DEPTH_WISE, 3);
+        rt.fit();
+        assertEquals(8, rt.leaves().size());
+        int total = 0;
+        for (Split leaf : rt.leaves()) {
+          assertEquals(3, leaf.getDepth());
+          FeatureHistogram direct = new FeatureHistogram();
+          direct.construct(hist, leaf.getSamples(), labels);
+          assertSameHistogram(direct, leaf.hist);
+          total += leaf.getSampleCount();
+        }
+        assertEquals(nSamples, total);
+        rt.clearSamples();
+      } finally {
+        MyThreadPool.getInstance().shutdown();
+      }
+    }
+  }
+}
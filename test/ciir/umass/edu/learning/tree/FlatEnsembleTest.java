@@ -0,0 +1,64 @@
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.DenseDataPoint;
+import ciir.umass.edu.learning.RestoreFeatureCount;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FlatEnsembleTest {
+  @Rule
+  public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+  @Test
+  public void testSameScores() {
+    Random rand = new Random(42);
+    Ensemble e = TestEnsembles.randomEnsemble(rand, 200);
+    Ensemble[] bags = {TestEnsembles.randomEnsemble(rand, 3), TestEnsembles.randomEnsemble(rand, 1), e};
+    FlatEnsemble flat = new FlatEnsemble(e);
+    FlatEnsemble flatBags = new FlatEnsemble(bags, true);
+    assertEquals(200, flat.treeCount());
+    assertEquals(204, flatBags.treeCount());
+
+    int n = 1000;
+    float[][] rows = new float[n][];
+    double[] expectedScores = new double[n];
+    float[][] bagRows = new float[n][];
+    double[] expectedBagScores = new double[n];
+    synchronized (DataPoint.class) {
+      for (int i = 0; i < n; i++) {
+        StringBuilder sb = new StringBuilder("0 qid:1");
+        for (int f = 1; f <= 10; f++)
+          sb.append(" ").append(f).append(":").append((float) rand.nextGaussian());
+        DataPoint dp = new DenseDataPoint(sb.toString());
+
+        double expected = e.eval(dp);
+        assertEquals(expected, flat.eval(dp), 0);
+        assertEquals(expected, flat.eval(flat.toRow(dp)), 0);
+        rows[i] = flat.toRow(dp);
+        expectedScores[i] = expected;
+
+        // same as RFRanker.eval()
+        double s = 0;
+        for (Ensemble bag : bags)
+          s += bag.eval(dp);
+        assertEquals(s / bags.length, flatBags.eval(dp), 0);
+        assertEquals(s / bags.length, flatBags.eval(flatBags.toRow(dp)), 0);
+        bagRows[i] = flatBags.toRow(dp);
+        expectedBagScores[i] = s / bags.length;
+      }
+    }
+
+    // in blocks of rows (and trees)
+    double[] out = new double[n];
+    flat.eval(rows, out);
+    assertArrayEquals(expectedScores, out, 0);
+    flatBags.eval(bagRows, out);
+    assertArrayEquals(expectedBagScores, out, 0);
+  }
+}
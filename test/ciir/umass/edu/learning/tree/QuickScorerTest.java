@@ -0,0 +1,86 @@
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.DenseDataPoint;
+import ciir.umass.edu.learning.RestoreFeatureCount;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuickScorerTest {
+  @Rule
+  public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+  @Test
+  public void testSameScores() {
+    Random rand = new Random(42);
+    Ensemble e = TestEnsembles.randomEnsemble(rand, 200, 6, 4, true, true);
+    Ensemble[] bags = {TestEnsembles.randomEnsemble(rand, 3, 6, 4, true, true), TestEnsembles.randomEnsemble(rand, 1, 0, 4, true, true), e};
+    QuickScorer qs = new QuickScorer(new Ensemble[]{e}, false);
+    QuickScorer qsBags = new QuickScorer(bags, true);
+    assertEquals(64, e.getTree(0).leaves().size());
+    assertEquals(204, qsBags.treeCount());
+
+    int n = 1000;
+    float[][] rows = new float[n][];
+    double[] expectedScores = new double[n];
+    float[][] bagRows = new float[n][];
+    double[] expectedBagScores = new double[n];
+    synchronized (DataPoint.class) {
+      for (int i = 0; i < n; i++) {
+        StringBuilder sb = new StringBuilder("0 qid:1");
+        for (int f = 1; f <= 10; f++)
+          sb.append(" ").append(f).append(":").append(rand.nextInt(3) == 0 ? rand.nextGaussian() : rand.nextInt(5) - 2);
+        DataPoint dp = new DenseDataPoint(sb.toString());
+
+        double expected = e.eval(dp);
+        assertEquals(expected, qs.eval(dp), 0);
+        assertEquals(expected, qs.eval(qs.toRow(dp)), 0);
+        rows[i] = qs.toRow(dp);
+        expectedScores[i] = expected;
+
+        double s = 0;
+        for (Ensemble bag : bags)
+          s += bag.eval(dp);
+        assertEquals(s / bags.length, qsBags.eval(dp), 0);
+        assertEquals(s / bags.length, qsBags.eval(qsBags.toRow(dp)), 0);
+        bagRows[i] = qsBags.toRow(dp);
+        expectedBagScores[i] = s / bags.length;
+      }
+    }
+
+    // in blocks of rows (and trees)
+    double[] out = new double[n];
+    qs.eval(rows, out);
+    assertArrayEquals(expectedScores, out, 0);
+    qsBags.eval(bagRows, out);
+    assertArrayEquals(expectedBagScores, out, 0);
+  }
+
+  @Test
+  public void testFactory() {
+    Random rand = new Random(7);
+    Ensemble small = TestEnsembles.randomEnsemble(rand, 20, 6, 4, true, true);
+    Ensemble large = TestEnsembles.randomEnsemble(rand, 20, 7, 4, true, true);
+    EnsembleScorerFactory factory = new EnsembleScorerFactory();
+    synchronized (DataPoint.class) {
+      assertTrue(factory.createScorer(small) instanceof QuickScorer);
+      // the first tree has 128 leaves
+      assertTrue(factory.createScorer(large) instanceof FlatEnsemble);
+      assertTrue(factory.createScorer(new Ensemble[]{small, small}, true) instanceof QuickScorer);
+
+      // the check catches scorers that don't match the trees
+      Ensemble[] other = {TestEnsembles.randomEnsemble(rand, 20, 6, 4, true, true)};
+      assertTrue(factory.check(new QuickScorer(other, false), other, false));
+      assertFalse(factory.check(new QuickScorer(other, false), new Ensemble[]{small}, false));
+      Ensemble[] both = {small, other[0]};
+      assertFalse(factory.check(new QuickScorer(both, false), both, true));
+    }
+  }
+}
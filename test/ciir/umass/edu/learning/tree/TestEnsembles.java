@@ -0,0 +1,47 @@
+package ciir.umass.edu.learning.tree;
+
+import java.util.Random;
+
+/**
+ * Random trees for the tests of the tree scorers and model formats.
+ */
+final class TestEnsembles {
+  private TestEnsembles() {
+  }
+
+  /**
+   * @param depth Maximum depth of the tree
+   * @param leafOdds Below the root, each node is a leaf with probability 1/leafOdds
+   * @param full Whether to grow the tree down to @depth everywhere (i.e. no early leaves)
+   * @param smallThresholds Use small integers as thresholds, so that data points can fall right on them
+   */
+  static Split randomTree(Random rand, int depth, int leafOdds, boolean full, boolean smallThresholds) {
+    if (depth == 0 || (!full && rand.nextInt(leafOdds) == 0)) {
+      Split leaf = new Split();
+      leaf.setOutput((float) rand.nextGaussian());
+      return leaf;
+    }
+    Split s = new Split(1 + rand.nextInt(10), smallThresholds ? rand.nextInt(5) - 2 : (float) rand.nextGaussian(), 0);
+    s.setLeft(randomTree(rand, depth - 1, leafOdds, full, smallThresholds));
+    s.setRight(randomTree(rand, depth - 1, leafOdds, full, smallThresholds));
+    return s;
+  }
+
+  /**
+   * Trees over features 1 to 10, with random weights. See randomTree() for the parameters.
+   * @param fullFirstTree Whether the first tree is full (i.e. has 2^depth leaves)
+   */
+  static Ensemble randomEnsemble(Random rand, int nTrees, int depth, int leafOdds, boolean fullFirstTree, boolean smallThresholds) {
+    Ensemble e = new Ensemble();
+    for (int i = 0; i < nTrees; i++)
+      e.add(new RegressionTree(randomTree(rand, depth, leafOdds, fullFirstTree && i == 0, smallThresholds)), 0.1f + rand.nextFloat());
+    return e;
+  }
+
+  /**
+   * @return Trees of depth 6 at most, with gaussian thresholds.
+   */
+  static Ensemble randomEnsemble(Random rand, int nTrees) {
+    return randomEnsemble(rand, nTrees, 6, 4, false, false);
+  }
+}
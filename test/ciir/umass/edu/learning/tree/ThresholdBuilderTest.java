@@ -0,0 +1,73 @@
+package ciir.umass.edu.learning.tree;
+
+import ciir.umass.edu.utilities.MyThreadPool;
+import ciir.umass.edu.utilities.Sorter;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ThresholdBuilderTest {
+  private static int[][] sort(float[][] values) {
+    int[][] sortedIdx = new int[values.length][];
+    for (int f = 0; f < values.length; f++) {
+      double[] v = new double[values[f].length];
+      for (int k = 0; k < v.length; k++)
+        v[k] = values[f][k];
+      sortedIdx[f] = Sorter.sort(v, true);
+    }
+    return sortedIdx;
+  }
+
+  @Test
+  public void testModes() {
+    Random rand = new Random(42);
+    int n = 10000;
+    float[][] values = new float[3][n];
+    for (int k = 0; k < n; k++) {
+      values[0][k] = rand.nextInt(5);// few distinct values
+      values[1][k] = (float) Math.exp(4 * rand.nextDouble());// skewed
+      values[2][k] = rand.nextFloat();
+    }
+    int[][] sortedIdx = sort(values);
+    int nThreshold = 16;
+
+    for (ThresholdBuilder.Mode mode : ThresholdBuilder.Mode.values()) {
+      float[][] t = ThresholdBuilder.build(values, sortedIdx, nThreshold, mode);
+      assertArrayEquals(new float[]{0, 1, 2, 3, 4, Float.MAX_VALUE}, t[0], 0);
+      for (float[] row : t) {
+        assertTrue(row.length <= nThreshold + 1);
+        assertEquals(Float.MAX_VALUE, row[row.length - 1], 0);
+        for (int i = 1; i < row.length; i++)
+          assertTrue(row[i - 1] < row[i]);
+      }
+
+      // the same on several threads
+      MyThreadPool.init(3);
+      try {
+        float[][] parallel = ThresholdBuilder.build(values, sortedIdx, nThreshold, mode);
+        for (int f = 0; f < values.length; f++)
+          assertArrayEquals(t[f], parallel[f], 0);
+      } finally {
+        MyThreadPool.getInstance().shutdown();
+      }
+    }
+
+    // quantile bins of the skewed feature hold about the same number of samples
+    float[] t = ThresholdBuilder.build(values, sortedIdx, nThreshold, ThresholdBuilder.Mode.QUANTILE)[1];
+    assertEquals(nThreshold + 1, t.length);
+    int[] count = new int[t.length];
+    for (int k = 0; k < n; k++) {
+      int b = 0;
+      while (values[1][k] > t[b])
+        b++;
+      count[b]++;
+    }
+    for (int b = 0; b < nThreshold; b++)
+      assertEquals(n / nThreshold, count[b], 2);
+    assertEquals(0, count[nThreshold]);
+  }
+}
@@ -0,0 +1,87 @@
+package ciir.umass.edu.metric;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.DenseDataPoint;
+import ciir.umass.edu.learning.RankList;
+import ciir.umass.edu.learning.RestoreFeatureCount;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SwapChangeTest {
+    @Rule
+    public final RestoreFeatureCount featureCount = new RestoreFeatureCount();
+
+    private static RankList randomList(Random rand, int n, int maxLabel) {
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            points.add(new DenseDataPoint(rand.nextInt(maxLabel + 1) + " qid:" + n + " 1:" + rand.nextFloat()));
+        return new RankList(points);
+    }
+
+    // the changes reported to the listener must be exactly the ones of the dense matrix, for the requested rows
+    private static void check(MetricScorer scorer, RankList rl, int depth) {
+        final double[][] streamed = new double[rl.size()][rl.size()];
+        scorer.swapChange(rl, depth, new SwapChangeListener() {
+            public void swapChange(int i, int j, double change) {
+                assertEquals(0.0, streamed[i][j], 0.0);
+                streamed[i][j] = change;
+            }
+        });
+        double[][] dense = scorer.swapChange(rl);
+        for (int i = 0; i < rl.size(); i++)
+            for (int j = i + 1; j < rl.size(); j++) {
+                double expected = (i < depth) ? dense[i][j] : 0;
+                assertEquals(scorer.name() + " " + i + "," + j, expected, streamed[i][j], 0.0);
+            }
+    }
+
+    // a context built once must give the same changes as the ranked list itself, whatever the order of its documents
+    private static void checkContext(MetricScorer scorer, RankList rl, Random rand) {
+        QueryContext ctx = scorer.createContext(rl);
+        int[] order = new int[rl.size() + 3];// longer than the list: only the first ctx.size() are used
+        for (int i = 0; i < rl.size(); i++)
+            order[i] = i;
+        for (int i = rl.size() - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        final double[][] streamed = new double[rl.size()][rl.size()];
+        scorer.swapChange(ctx, order, rl.size(), new SwapChangeListener() {
+            public void swapChange(int i, int j, double change) {
+                streamed[i][j] = change;
+            }
+        });
+        RankList ranked = new RankList(rl, Arrays.copyOf(order, rl.size()));
+        double[][] dense = scorer.swapChange(ranked);
+        for (int i = 0; i < rl.size(); i++)
+            for (int j = i + 1; j < rl.size(); j++)
+                assertEquals(scorer.name() + " " + i + "," + j, dense[i][j], streamed[i][j], 0.0);
+        assertEquals(scorer.name(), scorer.score(ranked), scorer.score(ctx, order), 1e-12);
+    }
+
+    @Test
+    public void testStreamedChanges() {
+        synchronized (DataPoint.class) {
+            Random rand = new Random(3);
+            MetricScorerFactory factory = new MetricScorerFactory();
+            String[] metrics = {"NDCG@10", "NDCG@0", "DCG@5", "ERR@10", "ERR@3", "MAP", "P@5", "RR@10"};
+            for (int n : new int[]{1, 7, 30, 120})
+                for (String metric : metrics) {
+                    MetricScorer scorer = factory.createScorer(metric);
+                    RankList rl = randomList(rand, n, metric.startsWith("MAP") ? 1 : 4);
+                    for (int depth : new int[]{0, 1, 4, 11, n})
+                        check(scorer, rl, depth);
+                    checkContext(scorer, rl, rand);
+                }
+        }
+    }
+}